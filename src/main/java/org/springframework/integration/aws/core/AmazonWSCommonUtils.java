@@ -77,6 +77,24 @@ public class AmazonWSCommonUtils {
 		return null;
 	}
 	
+	/**
+	 * Compute the MD5 hash of the given region of the byte array
+	 * @param bytes the array holding the contents
+	 * @param offset the offset in the array where the contents start
+	 * @param length the number of bytes to digest
+	 * @return
+	 */
+	public static byte[] getContentsMD5AsBytes(byte[] bytes,int offset,int length) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("MD5");
+			digest.update(bytes, offset, length);
+			return digest.digest();
+		} catch (NoSuchAlgorithmException e) {
+			logger.error("Unable to digest the given byte array",e);
+		}
+		return null;
+	}
+
 	/**
 	 * Encodes the given raw bytes into hex
 	 * @param rawBytes
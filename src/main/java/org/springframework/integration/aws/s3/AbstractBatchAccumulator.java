@@ -0,0 +1,141 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.util.Assert;
+
+/**
+ * The base class of the accumulators of entries in batches, one open batch per key. 
+ * A batch open for the max age is completed by a scheduler thread, all the open batches
+ * are completed on flush and on close. The open batches are guarded by {@link #lock}, 
+ * the batches are completed outside it.
+ * 
+ * @author Amol Nayak
+ *
+ */
+abstract class AbstractBatchAccumulator<B> {
+	
+	/**
+	 * The lock to hold while accessing the open batches
+	 */
+	protected final Object lock = new Object();
+	
+	private final Map<String, B> openBatches = new HashMap<String, B>();
+	
+	private final long maxAge;
+	
+	private final ScheduledExecutorService scheduler;
+	
+	/**
+	 * 
+	 * @param maxAge the time in milliseconds after which a batch is completed, 0 if not bounded
+	 * @param threadName the name of the thread completing the aged batches
+	 */
+	protected AbstractBatchAccumulator(long maxAge,final String threadName) {
+		Assert.isTrue(maxAge >= 0, "Max batch age should not be negative");
+		this.maxAge = maxAge;
+		if(maxAge > 0) {
+			scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, threadName);
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		} else
+			scheduler = null;
+	}
+	
+	/**
+	 * Gets the open batch of the key, the lock is to be held
+	 * @param key
+	 * @return the open batch, null if none is open
+	 */
+	protected final B getOpenBatch(String key) {
+		return openBatches.get(key);
+	}
+	
+	/**
+	 * Adds the batch opened for the key, the batch is completed once open for the max age
+	 * unless removed before. The lock is to be held.
+	 * @param key
+	 * @param batch
+	 */
+	protected final void addOpenBatch(final String key,final B batch) {
+		openBatches.put(key, batch);
+		if(scheduler != null) {
+			scheduler.schedule(new Runnable() {
+				public void run() {
+					boolean expired = false;
+					synchronized (lock) {
+						if(openBatches.get(key) == batch) {
+							openBatches.remove(key);
+							expired = true;
+						}
+					}
+					if(expired)
+						complete(batch);
+				}
+			}, maxAge, TimeUnit.MILLISECONDS);
+		}
+	}
+	
+	/**
+	 * Removes the open batch of the key, the lock is to be held. The caller completes 
+	 * the batch removed, if needed.
+	 * @param key
+	 */
+	protected final void removeOpenBatch(String key) {
+		openBatches.remove(key);
+	}
+	
+	/**
+	 * Completes all the open batches
+	 */
+	void flush() {
+		List<B> batches;
+		synchronized (lock) {
+			batches = new ArrayList<B>(openBatches.values());
+			openBatches.clear();
+		}
+		for(B batch:batches)
+			complete(batch);
+	}
+	
+	/**
+	 * Completes all the open batches and stops the scheduler completing the aged batches
+	 */
+	void close() {
+		if(scheduler != null)
+			scheduler.shutdownNow();
+		flush();
+	}
+	
+	/**
+	 * Completes the batch no longer open, invoked without the lock held
+	 * @param batch
+	 */
+	protected abstract void complete(B batch);
+}
@@ -15,6 +15,10 @@
  */
 package org.springframework.integration.aws.s3;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
 import org.springframework.util.StringUtils;
 
 /**
@@ -35,8 +39,21 @@ public abstract class AbstractFileNameFilter implements FileNameFilter {
 	 */
 	
 	public boolean accept(String fileName) {
+		return accept(folderName, fileName);
+	}
+	
+	/**
+	 * Accepts the file if it is directly under the given folder rather than the folder
+	 * set on the filter, lets the filter be shared by threads listing different folders
+	 * @param folderName the folder, null for the root of the bucket
+	 * @param fileName the key of the object
+	 * @return
+	 */
+	public boolean accept(String folderName,String fileName) {
 		if(!StringUtils.hasText(fileName))	
 			return false;
+		if(StringUtils.hasText(folderName) && !folderName.endsWith("/"))
+			folderName += "/";
 		
 		if(StringUtils.hasText(folderName)) {
 			if(fileName.startsWith(folderName)) {
@@ -76,5 +93,52 @@ public abstract class AbstractFileNameFilter implements FileNameFilter {
 	}
 
 	public abstract boolean isFileNameAccepted(String fileName);
+	
+	/**
+	 * Gets the prefixes one of which every key accepted by the filter starts with, the 
+	 * listing of the objects can then be limited to the keys with these prefixes. 
+	 * @return the prefixes, null if keys with any prefix may be accepted
+	 */
+	public Set<String> getKeyPrefixes() {
+		return null;
+	}
+	
+	/**
+	 * Gets the prefixes one of which every key under the given folder accepted by the filter
+	 * starts with. 
+	 * @param folderPrefix the folder of the keys, ending with the delimiter
+	 * @return the prefixes, empty if no key of the folder is accepted and null if keys 
+	 * 			with any prefix may be accepted
+	 */
+	public Set<String> getKeyPrefixes(String folderPrefix) {
+		return getKeyPrefixes();
+	}
+	
+	/**
+	 * Gets the prefixes of the names directly under the given folder that the filter may 
+	 * accept, as derived from the prefixes of the keys. Only the names with these prefixes 
+	 * need to be listed.
+	 * @param folderPrefix the folder of the keys, ending with the delimiter, empty for the root
+	 * @return the prefixes, empty if the filter accepts no key of the folder and null
+	 * 			if it may accept names with any prefix
+	 */
+	public List<String> getNamePrefixes(String folderPrefix) {
+		Set<String> keyPrefixes = getKeyPrefixes(folderPrefix);
+		if(keyPrefixes == null)
+			return null;
+		List<String> namePrefixes = new ArrayList<String>();
+		for(String keyPrefix:keyPrefixes) {
+			if(keyPrefix.startsWith(folderPrefix)) {
+				String namePrefix = keyPrefix.substring(folderPrefix.length());
+				if(namePrefix.length() == 0)
+					return null;
+				//Else only keys in the sub folders, never accepted, have the prefix
+				if(namePrefix.indexOf("/") == -1)
+					namePrefixes.add(namePrefix);
+			} else if(folderPrefix.startsWith(keyPrefix))
+				return null;	//Any key of the folder has the prefix
+		}
+		return namePrefixes;
+	}
 
 }
@@ -0,0 +1,496 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.integration.Message;
+import org.springframework.integration.aws.core.AmazonWSCredentials;
+import org.springframework.integration.aws.s3.core.AmazonS3Metrics;
+import org.springframework.integration.aws.s3.core.AmazonS3Object;
+import org.springframework.integration.aws.s3.core.AmazonS3OperationException;
+import org.springframework.integration.aws.s3.core.AmazonS3Operations;
+import org.springframework.integration.aws.s3.core.AmazonS3OperationsImpl;
+import org.springframework.integration.aws.s3.core.Compression;
+import org.springframework.integration.aws.s3.core.PaginatedObjectsView;
+import org.springframework.integration.aws.s3.core.S3ObjectSummary;
+import org.springframework.integration.context.IntegrationObjectSupport;
+import org.springframework.integration.core.MessageSource;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+
+/**
+ * The message source emitting the contents of the objects of the remote directory without
+ * writing them to the local file system. Objects up to the in memory threshold are read 
+ * fully and emitted as a byte[], larger objects are emitted as an {@link InputStream} that
+ * gets the object from S3 only when first read. The key, ETag, size, last modified time and
+ * the metadata of the object are set in the headers.
+ * The contents are got only if the object still has the ETag it was listed with, an object
+ * modified in between is emitted on the next listing instead.
+ * <p>
+ * A message source is not notified when the downstream processing of a message completes,
+ * the stream hence releases the connection it holds when it is read till the end or closed
+ * and the consumer is expected to do either once done with the payload. An object is recorded
+ * as emitted when its byte[] is emitted or its stream is released. An unchanged object whose
+ * stream is not yet released is not emitted again until the in flight timeout expires, a 
+ * stream discarded without being closed is thus emitted again on the first listing after the
+ * timeout.
+ * 
+ * @author Amol Nayak
+ *
+ */
+public class AmazonS3InboundStreamingMessageSource extends
+		IntegrationObjectSupport implements MessageSource<Object>,DisposableBean {
+
+	public static final long DEFAULT_IN_MEMORY_THRESHOLD = 64 * 1024;
+	public static final long DEFAULT_IN_FLIGHT_TIMEOUT = 10 * 60 * 1000;
+	
+	private static final String DELIMITER = "/";
+	
+	private static final String CONTENT_ENCODING = "Content-Encoding";
+	
+	private static final String ETAG = "ETag";
+	
+	private AmazonS3Operations client;
+	private AmazonWSCredentials credentials;
+	private String bucket;
+	private String remoteDirectory;
+	private int maxObjectsPerBatch;
+	private String fileWildcard;
+	private String fileNameRegex;
+	private long inMemoryThreshold = DEFAULT_IN_MEMORY_THRESHOLD;
+	private long inFlightTimeout = DEFAULT_IN_FLIGHT_TIMEOUT;
+	private boolean decompress = true;
+	private AmazonS3Metrics metrics;
+	private SyncStateStore syncStateStore;
+	private AbstractFileNameFilter filter;
+	private final LinkedList<S3ObjectSummary> pendingObjects = new LinkedList<S3ObjectSummary>();
+	private String nextMarker;
+	//The prefixes of the names listed as derived from the filter, null to list all the names
+	private List<String> namePrefixes;
+	private int namePrefixIndex;
+	//Objects recorded when no sync state store is configured
+	private final ConcurrentMap<String, SyncedObject> emittedObjects = 
+							new ConcurrentHashMap<String, SyncedObject>();
+	//The keys listed in the current pass of the listing when no sync state store is configured
+	private final Set<String> listedKeys = new HashSet<String>();
+	//Objects whose streams are emitted but not yet read fully or closed
+	private final ConcurrentMap<String, InFlightObject> inFlightObjects = 
+							new ConcurrentHashMap<String, InFlightObject>();
+	
+	
+	public Message<Object> receive() {
+		S3ObjectSummary summary;
+		while((summary = nextObject()) != null) {
+			Message<Object> message = buildMessage(summary);
+			if(message != null)
+				return message;
+		}
+		return null;
+	}
+	
+	/**
+	 * Builds the message of the listed object
+	 * @return the message, null if the object was modified since it was listed
+	 */
+	private Message<Object> buildMessage(S3ObjectSummary summary) {
+		String key = summary.getKey();
+		MessageBuilder<Object> builder;
+		AmazonS3Object object;
+		if(summary.getSize() <= inMemoryThreshold) {
+			object = client.getObjectIfMatch(bucket, null, key, summary.getETag());
+			if(object == null)
+				return null;
+			builder = MessageBuilder.withPayload((Object)readFully(key, object, summary.getSize()));
+			recordEmitted(summary);
+		} else {
+			//Only the metadata is fetched, the stream gets the object when first read
+			object = client.getObjectMetadata(bucket, null, key);
+			if(!hasETag(object, summary.getETag()))
+				return null;
+			InFlightObject inFlight = new InFlightObject(summary);
+			inFlightObjects.put(key, inFlight);
+			builder = MessageBuilder.withPayload((Object)new ObjectContentStream(inFlight, 
+					decompress?getCompression(object.getMetaData()):null));
+		}
+		return builder.setHeader(AmazonS3MessageHeaders.BUCKET_NAME, bucket)
+			.setHeader(AmazonS3MessageHeaders.OBJECT_KEY, key)
+			.setHeader(AmazonS3MessageHeaders.FILE_NAME, key.substring(key.lastIndexOf(DELIMITER) + 1))
+			.setHeader(AmazonS3MessageHeaders.OBJECT_ETAG, summary.getETag())
+			.setHeader(AmazonS3MessageHeaders.OBJECT_SIZE, summary.getSize())
+			.setHeader(AmazonS3MessageHeaders.OBJECT_LAST_MODIFIED, summary.getLastModified())
+			.setHeader(AmazonS3MessageHeaders.USER_METADATA, object.getUserMetaData())
+			.setHeader(AmazonS3MessageHeaders.METADATA, object.getMetaData())
+			.build();
+	}
+	
+	/**
+	 * Gets the next object to be emitted, the remote directory is listed page by page until
+	 * an object not yet emitted is found or the listing completes. If the filter accepts only 
+	 * the names with some prefixes, only the names with these prefixes are listed, one prefix
+	 * after the other. The next listing then starts again from the first key of the directory
+	 * @return the object, null if all the objects of the directory are emitted 
+	 */
+	private synchronized S3ObjectSummary nextObject() {
+		if(namePrefixes != null && namePrefixes.isEmpty())
+			return null;	//No key of the directory is accepted
+		while(pendingObjects.isEmpty()) {
+			String namePrefix = namePrefixes != null?namePrefixes.get(namePrefixIndex):null;
+			String listingName = getListingName(namePrefix);
+			if(nextMarker == null) {
+				if(syncStateStore != null)
+					syncStateStore.startListing(listingName);
+				else if(namePrefixIndex == 0)
+					listedKeys.clear();
+			}
+			PaginatedObjectsView paginatedView = client.listObjects(bucket, remoteDirectory, nextMarker, 
+					maxObjectsPerBatch, DELIMITER, namePrefix);
+			nextMarker = paginatedView != null?paginatedView.getNextMarker():null;
+			if(paginatedView != null) {
+				List<S3ObjectSummary> summaries = paginatedView.getObjectSummary();
+				for(S3ObjectSummary summary:summaries) {
+					if(!filter.accept(remoteDirectory, summary.getKey()))
+						continue;
+					if(syncStateStore != null)
+						syncStateStore.listed(listingName, summary.getKey());
+					else
+						listedKeys.add(summary.getKey());
+					if(!isEmitted(summary))
+						pendingObjects.add(summary);
+				}
+			}
+			if(nextMarker == null) {
+				//The objects deleted since emitted are no longer recorded
+				if(syncStateStore != null)
+					syncStateStore.completeListing(listingName, 
+							getKeyPrefix() + (namePrefix != null?namePrefix:""), DELIMITER);
+				if(namePrefixes != null && ++namePrefixIndex < namePrefixes.size())
+					continue;
+				namePrefixIndex = 0;
+				if(syncStateStore != null)
+					syncStateStore.flush();
+				else
+					emittedObjects.keySet().retainAll(listedKeys);
+				break;
+			}
+		}
+		return pendingObjects.poll();
+	}
+	
+	/**
+	 * Gets the prefix of the keys in the remote directory
+	 */
+	private String getKeyPrefix() {
+		if(remoteDirectory == null || DELIMITER.equals(remoteDirectory))
+			return "";
+		return remoteDirectory.endsWith(DELIMITER)?remoteDirectory:remoteDirectory + DELIMITER;
+	}
+	
+	/**
+	 * Gets the name the keys listed with the given name prefix are recorded with in the 
+	 * sync state store
+	 */
+	private String getListingName(String namePrefix) {
+		if(namePrefix == null)
+			return remoteDirectory;
+		return getKeyPrefix() + namePrefix;
+	}
+	
+	/**
+	 * Checks if the object, unchanged since, is already emitted or its stream is being read
+	 */
+	private boolean isEmitted(S3ObjectSummary summary) {
+		InFlightObject inFlight = inFlightObjects.get(summary.getKey());
+		if(inFlight != null) {
+			if(inFlight.object.matches(summary) && !inFlight.isExpired())
+				return true;
+			if(inFlight.isExpired() && logger.isWarnEnabled())
+				logger.warn("The stream of " + summary.getKey() + " was neither read till the end nor closed in "
+						+ inFlightTimeout + " ms, the object will be emitted again");
+			inFlightObjects.remove(summary.getKey(), inFlight);
+		}
+		SyncedObject emitted = syncStateStore != null?
+				syncStateStore.get(summary.getKey()):emittedObjects.get(summary.getKey());
+		return emitted != null && emitted.matches(summary);
+	}
+	
+	private void recordEmitted(S3ObjectSummary summary) {
+		SyncedObject emitted = new SyncedObject(summary);
+		if(syncStateStore != null)
+			syncStateStore.put(emitted);
+		else
+			emittedObjects.put(emitted.getKey(), emitted);
+	}
+	
+	/**
+	 * Reads the contents of the object in memory, decompressing them if required
+	 */
+	private byte[] readFully(String key,AmazonS3Object object,long size) {
+		InputStream in = object.getInputStream();
+		try {
+			try {
+				Compression compression = decompress?getCompression(object.getMetaData()):null;
+				if(compression != null)
+					in = compression.decompress(in);
+				ByteArrayOutputStream bos = new ByteArrayOutputStream((int)size);
+				byte[] bytes = new byte[8192];
+				for(int read = 0;(read = in.read(bytes)) != -1;)
+					bos.write(bytes, 0, read);
+				return bos.toByteArray();
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			throw new AmazonS3OperationException(credentials.getAccessKey(), bucket, key, 
+					"Encountered Exception while reading the object from S3, " +
+					"see nested exceptions for more details", e);
+		}
+	}
+	
+	/**
+	 * Checks if the metadata got is that of the object with the given ETag
+	 */
+	private boolean hasETag(AmazonS3Object object,String eTag) {
+		Object objectETag = object.getMetaData() != null?object.getMetaData().get(ETAG):null;
+		if(objectETag == null || eTag == null)
+			return true;
+		return unquote(objectETag.toString()).equals(unquote(eTag));
+	}
+	
+	private String unquote(String eTag) {
+		return eTag.startsWith("\"") && eTag.endsWith("\"") && eTag.length() > 1?
+				eTag.substring(1, eTag.length() - 1):eTag;
+	}
+	
+	private Compression getCompression(Map<String, Object> metadata) {
+		Object contentEncoding = metadata != null?metadata.get(CONTENT_ENCODING):null;
+		return contentEncoding != null?Compression.forContentEncoding(contentEncoding.toString()):null;
+	}
+	
+	
+	protected void onInit() throws Exception {
+		Assert.notNull(bucket,"Providing a valid S3 Bucket name is mandatory");
+		Assert.isTrue(!(StringUtils.hasText(fileWildcard) && StringUtils.hasText(fileNameRegex)),
+				"Only one of the file wildcard or the file name regex can be specified");
+		Assert.isTrue(inMemoryThreshold >= 0, "In memory threshold should not be negative");
+		Assert.isTrue(inFlightTimeout > 0, "In flight timeout should be positive");
+		AmazonS3OperationsImpl s3Operations = new AmazonS3OperationsImpl(credentials);
+		if(metrics != null)
+			s3Operations.setMetrics(metrics);
+		s3Operations.afterPropertiesSet();
+		client = s3Operations;
+		if(StringUtils.hasText(fileWildcard))
+			filter = new WildcardFileNameFilter(fileWildcard);
+		else if(StringUtils.hasText(fileNameRegex))
+			filter = new RegexFileNameFilter(fileNameRegex);
+		else
+			filter = new AlwaysTrueFileNamefilter();
+		namePrefixes = filter.getNamePrefixes(getKeyPrefix());
+	}
+	
+	/**
+	 * Persists the state of the objects emitted, if a sync state store is configured, and
+	 * stops the threads of the S3 operations
+	 */
+	public void destroy() throws Exception {
+		if(syncStateStore != null)
+			syncStateStore.flush();
+		if(client instanceof DisposableBean)
+			((DisposableBean)client).destroy();
+	}
+	
+	/**
+	 * The object whose stream is emitted, considered discarded once expired
+	 */
+	private class InFlightObject {
+		
+		private final S3ObjectSummary summary;
+		
+		private final SyncedObject object;
+		
+		private final long expiry;
+		
+		InFlightObject(S3ObjectSummary summary) {
+			this.summary = summary;
+			this.object = new SyncedObject(summary);
+			this.expiry = System.currentTimeMillis() + inFlightTimeout;
+		}
+		
+		boolean isExpired() {
+			return System.currentTimeMillis() >= expiry;
+		}
+	}
+	
+	/**
+	 * The stream of the contents of an object, the object is fetched from S3 on the first
+	 * read. Reaching the end of the contents or closing the stream releases the connection
+	 * and records the object as emitted
+	 */
+	private class ObjectContentStream extends InputStream {
+		
+		private final InFlightObject inFlight;
+		
+		private final Compression compression;
+		
+		private InputStream rawStream;
+		
+		private InputStream in;
+		
+		private boolean released;
+		
+		ObjectContentStream(InFlightObject inFlight,Compression compression) {
+			this.inFlight = inFlight;
+			this.compression = compression;
+		}
+		
+		public int read() throws IOException {
+			InputStream stream = open();
+			if(stream == null)
+				return -1;
+			int read = stream.read();
+			if(read == -1)
+				release(true);
+			return read;
+		}
+		
+		public int read(byte[] b, int off, int len) throws IOException {
+			InputStream stream = open();
+			if(stream == null)
+				return -1;
+			int read = stream.read(b, off, len);
+			if(read == -1)
+				release(true);
+			return read;
+		}
+		
+		public int available() throws IOException {
+			return in != null && !released?in.available():0;
+		}
+		
+		/**
+		 * Releases the connection, an object not read till the end is considered processed too
+		 */
+		public void close() throws IOException {
+			release(false);
+		}
+		
+		/**
+		 * Gets the object from S3 if not yet done, only if unchanged since emitted
+		 * @return the stream to read the contents from, null once released
+		 */
+		private synchronized InputStream open() throws IOException {
+			if(released)
+				return null;
+			if(in == null) {
+				String key = inFlight.summary.getKey();
+				AmazonS3Object object = client.getObjectIfMatch(bucket, null, key, inFlight.summary.getETag());
+				if(object == null)
+					throw new IOException("Object " + key + " was modified since it was emitted");
+				rawStream = object.getInputStream();
+				in = compression != null?compression.decompress(rawStream):rawStream;
+			}
+			return in;
+		}
+		
+		/**
+		 * @param endReached true if the contents are read till the end
+		 */
+		private synchronized void release(boolean endReached) throws IOException {
+			if(released)
+				return;
+			released = true;
+			recordEmitted(inFlight.summary);
+			//Unless expired and emitted again since
+			inFlightObjects.remove(inFlight.summary.getKey(), inFlight);
+			if(in == null)
+				return;
+			//Aborting avoids reading the remaining contents just to reuse the connection
+			if(!endReached && rawStream instanceof S3ObjectInputStream)
+				((S3ObjectInputStream)rawStream).abort();
+			in.close();
+		}
+	}
+
+	//-- For Spring DI
+	
+	public void setCredentials(AmazonWSCredentials credentials) {
+		this.credentials = credentials;
+	}
+
+	public void setBucket(String bucket) {
+		this.bucket = bucket;
+	}
+
+	public void setRemoteDirectory(String remoteDirectory) {
+		this.remoteDirectory = remoteDirectory;
+	}
+
+	public void setMaxObjectsPerBatch(int maxObjectsPerBatch) {
+		this.maxObjectsPerBatch = maxObjectsPerBatch;
+	}
+
+	public void setFileWildcard(String fileWildcard) {
+		this.fileWildcard = fileWildcard;
+	}
+
+	public void setFileNameRegex(String fileNameRegex) {
+		this.fileNameRegex = fileNameRegex;
+	}
+
+	/**
+	 * Sets the size in bytes up to which the objects are emitted as a byte[]
+	 * @param inMemoryThreshold
+	 */
+	public void setInMemoryThreshold(long inMemoryThreshold) {
+		this.inMemoryThreshold = inMemoryThreshold;
+	}
+
+	/**
+	 * Sets the time in milliseconds after which an unchanged object whose stream is neither
+	 * read till the end nor closed is emitted again
+	 * @param inFlightTimeout
+	 */
+	public void setInFlightTimeout(long inFlightTimeout) {
+		this.inFlightTimeout = inFlightTimeout;
+	}
+
+	public void setDecompress(boolean decompress) {
+		this.decompress = decompress;
+	}
+
+	public void setMetrics(AmazonS3Metrics metrics) {
+		this.metrics = metrics;
+	}
+
+	public void setSyncStateStore(SyncStateStore syncStateStore) {
+		this.syncStateStore = syncStateStore;
+	}
+	
+	//----
+}
@@ -16,30 +16,46 @@
 package org.springframework.integration.aws.s3;
 
 import java.io.File;
+import java.util.Queue;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.integration.Message;
 import org.springframework.integration.aws.core.AmazonWSCredentials;
+import org.springframework.integration.aws.s3.core.AmazonS3Metrics;
 import org.springframework.integration.aws.s3.core.AmazonS3OperationsImpl;
 import org.springframework.integration.context.IntegrationObjectSupport;
 import org.springframework.integration.core.MessageSource;
 import org.springframework.integration.support.MessageBuilder;
 import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
 
 /**
  * The message source used to receive the File instances stored on the local file system
- * synchronized from the S3
+ * synchronized from the S3. By default the synchronization runs on the polling thread when
+ * no synchronized file is pending. With the background synchronization, a dedicated thread 
+ * synchronizes the remote directory over and over, the files are received as soon as they 
+ * are downloaded and the polling thread never waits for the synchronization.
  *  
  * @author Amol Nayak
  *
  */
 public class AmazonS3InboundSynchronizationMessageSource extends
-		IntegrationObjectSupport implements MessageSource<File>,FileEventHandler {
+		IntegrationObjectSupport implements MessageSource<File>,FileEventHandler,DisposableBean {
 
+	public static final String CHANGE_DETECTION_SIZE_AND_LAST_MODIFIED = "size-and-last-modified";
+	public static final String CHANGE_DETECTION_ETAG = "etag";
+	public static final String CHANGE_DETECTION_DIGEST = "digest";
+	public static final long DEFAULT_SYNC_INTERVAL = 1000;
+	
+	private static final long DESTROY_TIMEOUT = 10000;
 
 	private InboundFileSynchronizer synchronizer;
+	private AmazonS3OperationsImpl s3Operations;
 	private String bucket;
 	private String remoteDirectory;
 	private File directory;
@@ -50,17 +66,43 @@ public class AmazonS3InboundSynchronizationMessageSource extends
 	private String fileWildcard;
 	private String fileNameRegex;
 	private BlockingQueue<File> filesQueue;
+	//The files downloaded once the queue is full, when synchronizing on the polling thread
+	private final Queue<File> overflowFiles = new ConcurrentLinkedQueue<File>();
 	private int queueSize;
+	private long parallelDownloadThreshold;
+	private long downloadRangeSize;
+	private String changeDetection;
+	private ChangeDetectionPolicy changeDetectionPolicy;
+	private boolean decompress = true;
+	private AmazonS3Metrics metrics;
+	private int keyShards;
+	private int parallelism;
+	private SyncStateStore syncStateStore;
+	private boolean persistSyncState;
+	private int maxPagesPerPoll;
+	private String listingPartitions;
+	private int listingThreads;
+	private boolean recursive;
+	private int folderParallelism;
+	private boolean backgroundSync;
+	private long syncInterval = DEFAULT_SYNC_INTERVAL;
+	private String durability;
+	private int syncBatchSize;
+	private final AtomicBoolean backgroundSyncStarted = new AtomicBoolean();
+	private volatile Thread backgroundSyncThread;
 	//We will hard code the max queue capacity here
 	private final int MAX_QUEUE_CAPACITY = 1024;
 	
 	
 	public Message<File> receive() {
-		File headElement = filesQueue.poll();
-		if(headElement == null) {
+		File headElement = pollFile();
+		if(backgroundSync) {
+			if(backgroundSyncStarted.compareAndSet(false, true))
+				startBackgroundSync();
+		} else if(headElement == null) {
 			synchronizer.synchronizeToLocalDirectory(directory, bucket, remoteDirectory);
 			//Now check the queue again
-			headElement = filesQueue.poll();
+			headElement = pollFile();
 		}
 		if(headElement != null)
 			return MessageBuilder.withPayload(headElement).build();
@@ -68,21 +110,37 @@ public class AmazonS3InboundSynchronizationMessageSource extends
 			return null;
 	}
 
+	private File pollFile() {
+		File file = filesQueue.poll();
+		return file != null?file:overflowFiles.poll();
+	}
 	
 	protected void onInit() throws Exception {		
 		Assert.notNull(bucket,"Providing a valid S3 Bucket name is mandatory");		
 		Assert.isTrue(directory != null && directory.exists() && directory.isDirectory(), 
 				"Please provide a valid local directory to synchronize the remote files with");
+		Assert.isTrue(syncInterval >= 0, "Sync interval should not be negative");
 		
 		//First instantiate the SSOperations instance 
-		AmazonS3OperationsImpl s3Operations = new AmazonS3OperationsImpl(credentials);	
+		s3Operations = new AmazonS3OperationsImpl(credentials);	
 		s3Operations.setTemporaryFileSuffix(temporarySuffix);
 		s3Operations.setThreadPoolExecutor(threadPoolExecutor);		
+		if(parallelDownloadThreshold > 0)
+			s3Operations.setParallelDownloadThreshold(parallelDownloadThreshold);
+		if(downloadRangeSize > 0)
+			s3Operations.setDownloadRangeSize(downloadRangeSize);
+		s3Operations.setDecompressDownloads(decompress);
+		if(metrics != null)
+			s3Operations.setMetrics(metrics);
 		s3Operations.afterPropertiesSet();
 		
 		//Now the file operations class
 		InboundLocalFileOperationsImpl fileOperations = new InboundLocalFileOperationsImpl();
 		fileOperations.setTemporaryFileSuffix(temporarySuffix);
+		if(StringUtils.hasText(durability))
+			fileOperations.setDurability(durability);
+		if(syncBatchSize > 0)
+			fileOperations.setSyncBatchSize(syncBatchSize);
 		fileOperations.addEventListener(this);
 		
 		
@@ -91,12 +149,97 @@ public class AmazonS3InboundSynchronizationMessageSource extends
 		synchronizationImpl.setSynchronizingBatchSize(maxObjectsPerBatch);
 		synchronizationImpl.setFileWildcard(fileWildcard);
 		synchronizationImpl.setFileNamePattern(fileNameRegex);
+		synchronizationImpl.setChangeDetectionPolicy(getChangeDetectionPolicy());
+		if(keyShards > 0)
+			synchronizationImpl.setKeyShardingScheme(new KeyShardingScheme(keyShards));
+		if(parallelism > 0)
+			synchronizationImpl.setParallelism(parallelism);
+		if(syncStateStore != null)
+			synchronizationImpl.setSyncStateStore(syncStateStore);
+		else if(persistSyncState)
+			synchronizationImpl.setSyncStateStore(
+					new FileSyncStateStore(new File(directory, FileSyncStateStore.DEFAULT_STATE_FILE_NAME)));
+		synchronizationImpl.setMaxPagesPerPoll(maxPagesPerPoll);
+		synchronizationImpl.setListingPartitions(listingPartitions);
+		synchronizationImpl.setListingThreads(listingThreads);
+		synchronizationImpl.setRecursive(recursive);
+		if(folderParallelism > 0)
+			synchronizationImpl.setFolderParallelism(folderParallelism);
 		synchronizationImpl.afterPropertiesSet();
 		this.synchronizer = synchronizationImpl;
 		
 		filesQueue = new ArrayBlockingQueue<File>(queueSize > 0 && queueSize < MAX_QUEUE_CAPACITY?queueSize:MAX_QUEUE_CAPACITY);
 	}
 	
+	/**
+	 * Starts the thread synchronizing the remote directory until the source is destroyed,
+	 * waiting for the sync interval between the synchronizations. The files synchronized 
+	 * are put on the files queue as they are downloaded, the synchronization blocks while
+	 * the queue is full.
+	 */
+	private void startBackgroundSync() {
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				while(!Thread.currentThread().isInterrupted()) {
+					try {
+						synchronizer.synchronizeToLocalDirectory(directory, bucket, remoteDirectory);
+					} catch (RuntimeException e) {
+						//Failures caused by the interruption on destroy are expected
+						if(!Thread.currentThread().isInterrupted())
+							logger.error("Caught Exception while synchronizing with the remote directory", e);
+					}
+					try {
+						Thread.sleep(syncInterval);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				if(logger.isInfoEnabled())
+					logger.info("Background synchronization stopped");
+			}
+		}, "s3-background-sync-" + bucket);
+		thread.setDaemon(true);
+		backgroundSyncThread = thread;
+		thread.start();
+	}
+	
+	/**
+	 * Stops the background synchronization, the threads of the synchronizer, if any, and
+	 * those of the S3 operations
+	 */
+	public void destroy() throws Exception {
+		Thread thread = backgroundSyncThread;
+		if(thread != null)
+			thread.interrupt();
+		//The download threads, possibly blocked on the full files queue, are interrupted 
+		//first for the synchronization in progress to complete
+		if(synchronizer instanceof DisposableBean)
+			((DisposableBean)synchronizer).destroy();
+		if(thread != null) {
+			thread.join(DESTROY_TIMEOUT);
+			if(thread.isAlive() && logger.isWarnEnabled())
+				logger.warn("The background synchronization did not stop in " + DESTROY_TIMEOUT + " ms");
+		}
+		if(s3Operations != null)
+			s3Operations.destroy();
+	}
+	
+	/**
+	 * Gets the configured policy, or the one for the configured change detection mode,
+	 * null for the default policy of the synchronizer
+	 */
+	private ChangeDetectionPolicy getChangeDetectionPolicy() {
+		if(changeDetectionPolicy != null)
+			return changeDetectionPolicy;
+		if(!StringUtils.hasText(changeDetection) || CHANGE_DETECTION_DIGEST.equals(changeDetection))
+			return null;
+		if(CHANGE_DETECTION_SIZE_AND_LAST_MODIFIED.equals(changeDetection))
+			return new SizeAndLastModifiedChangeDetectionPolicy();
+		if(CHANGE_DETECTION_ETAG.equals(changeDetection))
+			return new ETagChangeDetectionPolicy();
+		throw new IllegalArgumentException("Unknown change detection mode " + changeDetection);
+	}
+	
 	//-- For Spring DI
 
 	public void setCredentials(AmazonWSCredentials credentials) {
@@ -139,6 +282,82 @@ public class AmazonS3InboundSynchronizationMessageSource extends
 		this.queueSize = queueSize;
 	}
 	
+	public void setParallelDownloadThreshold(long parallelDownloadThreshold) {
+		this.parallelDownloadThreshold = parallelDownloadThreshold;
+	}
+	
+	public void setDownloadRangeSize(long downloadRangeSize) {
+		this.downloadRangeSize = downloadRangeSize;
+	}
+	
+	public void setChangeDetection(String changeDetection) {
+		this.changeDetection = changeDetection;
+	}
+	
+	public void setChangeDetectionPolicy(ChangeDetectionPolicy changeDetectionPolicy) {
+		this.changeDetectionPolicy = changeDetectionPolicy;
+	}
+	
+	public void setDecompress(boolean decompress) {
+		this.decompress = decompress;
+	}
+	
+	public void setMetrics(AmazonS3Metrics metrics) {
+		this.metrics = metrics;
+	}
+	
+	public void setKeyShards(int keyShards) {
+		this.keyShards = keyShards;
+	}
+	
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+	
+	public void setSyncStateStore(SyncStateStore syncStateStore) {
+		this.syncStateStore = syncStateStore;
+	}
+	
+	public void setPersistSyncState(boolean persistSyncState) {
+		this.persistSyncState = persistSyncState;
+	}
+	
+	public void setMaxPagesPerPoll(int maxPagesPerPoll) {
+		this.maxPagesPerPoll = maxPagesPerPoll;
+	}
+	
+	public void setListingPartitions(String listingPartitions) {
+		this.listingPartitions = listingPartitions;
+	}
+	
+	public void setListingThreads(int listingThreads) {
+		this.listingThreads = listingThreads;
+	}
+	
+	public void setRecursive(boolean recursive) {
+		this.recursive = recursive;
+	}
+	
+	public void setFolderParallelism(int folderParallelism) {
+		this.folderParallelism = folderParallelism;
+	}
+	
+	public void setBackgroundSync(boolean backgroundSync) {
+		this.backgroundSync = backgroundSync;
+	}
+	
+	public void setSyncInterval(long syncInterval) {
+		this.syncInterval = syncInterval;
+	}
+	
+	public void setDurability(String durability) {
+		this.durability = durability;
+	}
+	
+	public void setSyncBatchSize(int syncBatchSize) {
+		this.syncBatchSize = syncBatchSize;
+	}
+	
 	//----
 
 	
@@ -147,17 +366,29 @@ public class AmazonS3InboundSynchronizationMessageSource extends
 	public void onEvent(FileEvent event) {
 		//We are interested in Create new file events only
 		if(FileOperationType.CREATE.equals(event.getFileOperation())) {
-			try {
-				filesQueue.put(event.getFile());
+			if(!backgroundSync) {
 				//The call hierarchy is
 				//if, no file found in queue, then 
 				// receive() 
 				//	-> InboundFileSynchronizer.synchronizeToLocalDirectory()
 				//	->InboundLocalFileOperations.writeToFile()
 				//	->onEvent()
-				//If the Queue is full and the thread blocks, the lock in synchronizeToLocalDirectory
-				//stays and hence preventing further concurrent synchronization
+				//The polling thread draining the queue is the one synchronizing, blocking here 
+				//would never end. Once the queue is full the synchronization is stopped, the 
+				//files still being downloaded are kept aside and received after the queue
+				if(!filesQueue.offer(event.getFile())) {
+					overflowFiles.add(event.getFile());
+					if(synchronizer instanceof InboundFileSynchronizationImpl)
+						((InboundFileSynchronizationImpl)synchronizer).stopSynchronization();
+				}
+				return;
+			}
+			try {
+				//With the background synchronization, the polling threads drain the queue 
+				//and the background synchronization waits for them here
+				filesQueue.put(event.getFile());
 			} catch (InterruptedException e) {				
+				Thread.currentThread().interrupt();
 				logger.error("Interrupted while waiting to put the event on the filesQueue", e);
 			}
 		}
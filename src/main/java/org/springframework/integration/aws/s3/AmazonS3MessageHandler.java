@@ -17,18 +17,28 @@ package org.springframework.integration.aws.s3;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.Map;
 
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.expression.Expression;
 import org.springframework.integration.Message;
+import org.springframework.integration.MessageChannel;
+import org.springframework.integration.MessagingException;
 import org.springframework.integration.aws.core.AmazonWSCredentials;
+import org.springframework.integration.aws.s3.core.AmazonS3DeleteError;
 import org.springframework.integration.aws.s3.core.AmazonS3Object;
+import org.springframework.integration.aws.s3.core.AmazonS3OperationCallback;
 import org.springframework.integration.aws.s3.core.AmazonS3OperationException;
 import org.springframework.integration.aws.s3.core.AmazonS3Operations;
+import org.springframework.integration.core.MessagingTemplate;
 import org.springframework.integration.handler.AbstractMessageHandler;
 import org.springframework.integration.handler.ExpressionEvaluatingMessageProcessor;
+import org.springframework.integration.message.ErrorMessage;
+import org.springframework.integration.support.MessageBuilder;
 import org.springframework.util.Assert;
 
 /**
@@ -36,7 +46,31 @@ import org.springframework.util.Assert;
  * @author Amol Nayak
  *
  */
-public class AmazonS3MessageHandler extends AbstractMessageHandler {
+public class AmazonS3MessageHandler extends AbstractMessageHandler implements DisposableBean {
+	
+	/**
+	 * Uploads the payload of the message, the default operation
+	 */
+	public static final String OPERATION_UPLOAD = "upload";
+	
+	/**
+	 * Deletes the object named by the message, the payload is ignored
+	 */
+	public static final String OPERATION_DELETE = "delete";
+	
+	/**
+	 * Copies the object named by the source key expression to the destination key within
+	 * S3, the payload is ignored
+	 */
+	public static final String OPERATION_COPY = "copy";
+	
+	/**
+	 * Moves the object named by the source key expression to the destination key within
+	 * S3, the payload is ignored
+	 */
+	public static final String OPERATION_MOVE = "move";
+	
+	private static final String PATH_SEPARATOR = "/";
 	
 	
 	private AmazonWSCredentials credentials;
@@ -51,13 +85,84 @@ public class AmazonS3MessageHandler extends AbstractMessageHandler {
 	
 	private FileNameGenerationStrategy fileNameGenerator;
 	
+	private boolean async;
+	
+	private MessageChannel replyChannel;
+	
+	private MessageChannel errorChannel;
+	
+	private final MessagingTemplate messagingTemplate = new MessagingTemplate();
+	
+	private long segmentMaxSize;
+	
+	private int segmentMaxRecords;
+	
+	private long segmentMaxAge;
+	
+	private File segmentDirectory = new File(System.getProperty("java.io.tmpdir"));
+	
+	private String segmentRecordDelimiter;
+	
+	private RollingSegmentWriter segmentWriter;
+	
+	private String operation = OPERATION_UPLOAD;
+	
+	private int deleteBatchSize;
+	
+	private long deleteBatchMaxAge = 1000;
+	
+	private MessageChannel deleteFailureChannel;
+	
+	private BatchingObjectRemover objectRemover;
+	
+	private ExpressionEvaluatingMessageProcessor<String> sourceKeyProcessor;
+	
+	private ExpressionEvaluatingMessageProcessor<String> destinationKeyProcessor;
+	
+	private String destinationBucket;
+	
 	
 	
 	
 	protected void onInit() throws Exception {		
 		super.onInit();
+		Assert.isTrue(OPERATION_UPLOAD.equals(operation) || OPERATION_DELETE.equals(operation)
+				|| OPERATION_COPY.equals(operation) || OPERATION_MOVE.equals(operation), 
+				"Unsupported operation " + operation);
+		if(isCopyOrMove()) {
+			Assert.notNull(sourceKeyProcessor, "Source key expression should be present for the " 
+					+ operation + " operation");
+			Assert.notNull(destinationKeyProcessor, "Destination key expression should be present for the " 
+					+ operation + " operation");
+			Assert.isTrue(segmentMaxSize <= 0 && segmentMaxRecords <= 0 && segmentMaxAge <= 0, 
+					"Segments are not supported with the " + operation + " operation");
+			if(destinationBucket == null)
+				destinationBucket = bucket;
+			return;
+		}
 		Assert.notNull(remoteDirectoryProcessor, "Remote Directory processor should be present");
 		Assert.notNull(fileNameGenerator,"File name generation strategy should be present");
+		if(OPERATION_DELETE.equals(operation)) {
+			Assert.isTrue(segmentMaxSize <= 0 && segmentMaxRecords <= 0 && segmentMaxAge <= 0, 
+					"Segments are not supported with the " + OPERATION_DELETE + " operation");
+			if(deleteBatchSize > 0)
+				objectRemover = new BatchingObjectRemover(operations, deleteBatchSize, deleteBatchMaxAge, 
+						new DeleteResultReporter());
+		} else if(segmentMaxSize > 0 || segmentMaxRecords > 0 || segmentMaxAge > 0) {
+			byte[] delimiter = segmentRecordDelimiter != null ? segmentRecordDelimiter.getBytes(charset) : null;
+			segmentWriter = new RollingSegmentWriter(segmentDirectory, segmentMaxSize, segmentMaxRecords, 
+					segmentMaxAge, delimiter, new SegmentUploader());
+		}
+	}
+	
+	/**
+	 * Uploads the open segments and deletes the objects in the open batches, if any
+	 */
+	public void destroy() throws Exception {
+		if(segmentWriter != null)
+			segmentWriter.close();
+		if(objectRemover != null)
+			objectRemover.close();
 	}
 
 
@@ -77,14 +182,127 @@ public class AmazonS3MessageHandler extends AbstractMessageHandler {
 	/* (non-Javadoc)
 	 * @see org.springframework.integration.handler.AbstractMessageHandler#handleMessageInternal(org.springframework.integration.Message)
 	 */	
-	@SuppressWarnings("unchecked")
 	protected void handleMessageInternal(Message<?> message) throws Exception {
 		
+		if(OPERATION_DELETE.equals(operation)) {
+			remove(message);
+			return;
+		}
+		
+		if(isCopyOrMove()) {
+			copy(message);
+			return;
+		}
+		
 		Object payload = message.getPayload();
-		//The payload can be only of type java.io.File, java.io.InputStream, byte[] or String
+		//The payload can be only of type java.io.File, java.io.InputStream, byte[], ByteBuffer or String
 		File file = null;
 		InputStream in = null;		 
 		
+		String folder = this.remoteDirectoryProcessor.processMessage(message);
+		
+		if(payload instanceof File) {
+			file = (File)payload;
+		} else if (payload instanceof InputStream) {
+			in = (InputStream)payload;
+		} else if(payload instanceof byte[]) {
+			in = new ByteArrayInputStream((byte[])payload);
+		} else if(payload instanceof String) {
+			in = new ByteArrayInputStream(((String)payload).getBytes(charset));
+		} else if(payload instanceof ByteBuffer) {
+			in = getInputStream((ByteBuffer)payload);
+		} else
+			throw new AmazonS3OperationException
+			(credentials.getAccessKey(), 
+					bucket, null, "The Message payload is of unexpected type " 
+					+ payload.getClass().getCanonicalName() + ", only supported types are"
+					+" java.io.File, java.io.InputStream, byte[], java.nio.ByteBuffer and java.lang.String");
+		
+		if(segmentWriter != null) {
+			//Append the payload to the open segment, the segment is uploaded when rolled
+			if(file != null) {
+				InputStream fin = new FileInputStream(file);
+				try {
+					segmentWriter.append(folder, message, fin);
+				} finally {
+					fin.close();
+				}
+			} else
+				segmentWriter.append(folder, message, in);
+			return;
+		}
+		
+		String objectName = this.fileNameGenerator.generateFileName(message);
+		
+		AmazonS3Object object = buildObject(message, file, in);
+		
+		if(logger.isDebugEnabled())
+			logger.debug("Uploading Object to bucket " + bucket + ", to folder " + folder + ", with object name " + objectName);
+		
+		if(async) {
+			operations.putObjectAsync(bucket, folder, objectName, object, 
+					new ResultReportingCallback(message));
+		} else {
+			operations.putObject(bucket, folder, objectName, object);
+		}
+	}
+	
+	/**
+	 * Deletes the object named by the message, immediately or as part of a batch
+	 */
+	private void remove(Message<?> message) {
+		String folder = this.remoteDirectoryProcessor.processMessage(message);
+		String objectName = this.fileNameGenerator.generateFileName(message);
+		if(objectRemover != null) {
+			String key = folder != null?
+					(folder.endsWith(PATH_SEPARATOR)?folder + objectName:folder + PATH_SEPARATOR + objectName)
+					:objectName;
+			objectRemover.remove(bucket, key, message);
+		} else {
+			if(logger.isDebugEnabled())
+				logger.debug("Deleting Object from bucket " + bucket + ", from folder " + folder + ", with object name " + objectName);
+			operations.removeObject(bucket, folder, objectName);
+		}
+	}
+	
+	/**
+	 * Copies or moves the object named by the source key to the destination key
+	 */
+	private void copy(Message<?> message) {
+		String sourceKey = sourceKeyProcessor.processMessage(message);
+		String destinationKey = destinationKeyProcessor.processMessage(message);
+		if(logger.isDebugEnabled())
+			logger.debug((OPERATION_MOVE.equals(operation)?"Moving":"Copying") + " object " + sourceKey 
+					+ " in bucket " + bucket + " to " + destinationKey + " in bucket " + destinationBucket);
+		if(OPERATION_MOVE.equals(operation))
+			operations.moveObject(bucket, null, sourceKey, destinationBucket, null, destinationKey);
+		else
+			operations.copyObject(bucket, null, sourceKey, destinationBucket, null, destinationKey);
+	}
+	
+	private boolean isCopyOrMove() {
+		return OPERATION_COPY.equals(operation) || OPERATION_MOVE.equals(operation);
+	}
+	
+	/**
+	 * Gets a stream over the remaining bytes of the buffer, the buffer is not copied
+	 * if backed by an array
+	 */
+	private InputStream getInputStream(ByteBuffer buffer) {
+		if(buffer.hasArray())
+			return new ByteArrayInputStream(buffer.array(), 
+					buffer.arrayOffset() + buffer.position(), buffer.remaining());
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.duplicate().get(bytes);
+		return new ByteArrayInputStream(bytes);
+	}
+	
+	/**
+	 * Builds the {@link AmazonS3Object} with the given contents and the metadata and ACLs 
+	 * from the headers of the given message
+	 */
+	@SuppressWarnings("unchecked")
+	private AmazonS3Object buildObject(Message<?> message,File file,InputStream in) {
 		//Below headers are expected to be of correct type
 		Map<String, String> userMetaData = 
 			(Map<String, String>)message.getHeaders().get(AmazonS3MessageHeaders.USER_METADATA);
@@ -101,37 +319,116 @@ public class AmazonS3MessageHandler extends AbstractMessageHandler {
 		.withUserMetaData(userMetaData)
 		.withObjectACL(objectAcls);
 		
-		
-		String folder = this.remoteDirectoryProcessor.processMessage(message);
-		
-		String objectName = this.fileNameGenerator.generateFileName(message);
-		
-		if(payload instanceof File) {
-			file = (File)payload;
-		} else if (payload instanceof InputStream) {
-			in = (InputStream)in;
-		} else if(payload instanceof byte[]) {
-			in = new ByteArrayInputStream((byte[])payload);
-		} else if(payload instanceof String) {
-			in = new ByteArrayInputStream(((String)payload).getBytes(charset));
-		} else
-			throw new AmazonS3OperationException
-			(credentials.getAccessKey(), 
-					bucket, objectName, "The Message payload is of unexpected type " 
-					+ payload.getClass().getCanonicalName() + ", only supported types are"
-					+" java.io.File, java.io.InputStream, byte[] and java.lang.String");
 		if(file != null) {
 			builder.fromFile(file);
 		} else if (in != null) {
 			builder.fromInputStream(in);
 		}
+		return builder.build();
+	}
+	
+	/**
+	 * Uploads the rolled segments, the object name is generated and the metadata taken 
+	 * from the first message of the segment. The segment file is deleted once uploaded
+	 * and retained if the upload fails.
+	 */
+	private class SegmentUploader implements RollingSegmentWriter.SegmentHandler {
+
+		public void handleSegment(String folder, Message<?> firstMessage, final File segmentFile) {
+			String objectName = fileNameGenerator.generateFileName(firstMessage);
+			AmazonS3Object object = buildObject(firstMessage, segmentFile, null);
+			Message<File> segmentMessage = MessageBuilder.withPayload(segmentFile)
+				.copyHeaders(firstMessage.getHeaders())
+				.build();
+			if(logger.isDebugEnabled())
+				logger.debug("Uploading segment to bucket " + bucket + ", to folder " + folder + ", with object name " + objectName);
+			ResultReportingCallback callback = new ResultReportingCallback(segmentMessage) {
+				public void onSuccess(String bucketName, String key) {
+					if(!segmentFile.delete())
+						logger.warn("Unable to delete the uploaded segment " + segmentFile);
+					super.onSuccess(bucketName, key);
+				}
+			};
+			if(async) {
+				operations.putObjectAsync(bucket, folder, objectName, object, callback);
+			} else {
+				try {
+					operations.putObject(bucket, folder, objectName, object);
+				} catch (AmazonS3OperationException e) {
+					callback.onFailure(bucket, objectName, e);
+					return;
+				}
+				callback.onSuccess(bucket, objectName);
+			}
+		}
+	}
+	
+	/**
+	 * Sends the message requesting a batched delete to the reply channel once the object is 
+	 * deleted and to the delete failure channel if it could not be deleted
+	 */
+	private class DeleteResultReporter implements BatchingObjectRemover.DeleteResultHandler {
+
+		public void onDeleted(String bucketName, String key, Message<?> message) {
+			if(replyChannel != null) {
+				Message<?> reply = MessageBuilder.fromMessage(message)
+					.setHeader(AmazonS3MessageHeaders.BUCKET_NAME, bucketName)
+					.setHeader(AmazonS3MessageHeaders.OBJECT_KEY, key)
+					.build();
+				messagingTemplate.send(replyChannel, reply);
+			}
+		}
+
+		public void onFailure(String bucketName, String key, Message<?> message,
+				AmazonS3DeleteError error) {
+			if(deleteFailureChannel != null) {
+				Message<?> failure = MessageBuilder.fromMessage(message)
+					.setHeader(AmazonS3MessageHeaders.BUCKET_NAME, bucketName)
+					.setHeader(AmazonS3MessageHeaders.OBJECT_KEY, key)
+					.setHeader(AmazonS3MessageHeaders.DELETE_ERROR_CODE, error.getCode())
+					.setHeader(AmazonS3MessageHeaders.DELETE_ERROR_MESSAGE, error.getMessage())
+					.build();
+				messagingTemplate.send(deleteFailureChannel, failure);
+			} else {
+				logger.error("Delete of object " + key + " from bucket " + bucketName + " failed, " + error);
+			}
+		}
+	}
+	
+	/**
+	 * The callback sending the result of an asynchronous upload or a segment upload 
+	 * to the reply channel on success and the error channel on failure
+	 */
+	private class ResultReportingCallback implements AmazonS3OperationCallback {
 		
-		AmazonS3Object object = builder.build();
-		
-		if(logger.isDebugEnabled())
-			logger.debug("Uploading Object to bucket " + bucket + ", to folder " + folder + ", with object name " + objectName);
+		private final Message<?> message;
 		
-		operations.putObject(bucket, folder, objectName, object);		
+		ResultReportingCallback(Message<?> message) {
+			this.message = message;
+		}
+
+		public void onSuccess(String bucketName, String key) {
+			if(logger.isDebugEnabled())
+				logger.debug("Asynchronous upload of object " + key + " to bucket " + bucketName + " completed");
+			if(replyChannel != null) {
+				Message<?> reply = MessageBuilder.fromMessage(message)
+					.setHeader(AmazonS3MessageHeaders.BUCKET_NAME, bucketName)
+					.setHeader(AmazonS3MessageHeaders.OBJECT_KEY, key)
+					.build();
+				messagingTemplate.send(replyChannel, reply);
+			}
+		}
+
+		public void onFailure(String bucketName, String key,
+				AmazonS3OperationException exception) {
+			if(errorChannel != null) {
+				messagingTemplate.send(errorChannel, new ErrorMessage(new MessagingException(message, 
+						"Asynchronous upload of object " + key + " to bucket " + bucketName + " failed",
+						exception)));
+			} else {
+				logger.error("Asynchronous upload of object " + key + " to bucket " + bucketName + " failed", exception);
+			}
+		}
 	}
 
 
@@ -166,5 +463,144 @@ public class AmazonS3MessageHandler extends AbstractMessageHandler {
 	 */
 	public void setFileNameGenerator(FileNameGenerationStrategy fileNameGenerator) {
 		this.fileNameGenerator = fileNameGenerator;
-	}	
+	}
+	
+	/**
+	 * When true, the objects are uploaded asynchronously and the thread handling the message
+	 * is released as soon as the upload is scheduled. The result of the upload is sent
+	 * to the reply channel or the error channel
+	 * @param async
+	 */
+	public void setAsync(boolean async) {
+		this.async = async;
+	}
+
+	/**
+	 * Sets the channel to which the message is sent once uploaded asynchronously, the 
+	 * message sent has the bucket name and the object key in its headers 
+	 * @param replyChannel
+	 */
+	public void setReplyChannel(MessageChannel replyChannel) {
+		this.replyChannel = replyChannel;
+	}
+
+	/**
+	 * Sets the channel to which an {@link ErrorMessage} is sent if an asynchronous upload 
+	 * fails, if not set the failure is logged
+	 * @param errorChannel
+	 */
+	public void setErrorChannel(MessageChannel errorChannel) {
+		this.errorChannel = errorChannel;
+	}
+	
+	/**
+	 * Sets the size in bytes at which the segment is rolled. Setting any of the max size, 
+	 * max records or max age of the segment enables the rolling writer mode, where the
+	 * payloads of the messages are appended to a local segment file per remote directory
+	 * and the segment is uploaded as one object when rolled
+	 * @param segmentMaxSize
+	 */
+	public void setSegmentMaxSize(long segmentMaxSize) {
+		this.segmentMaxSize = segmentMaxSize;
+	}
+
+	/**
+	 * Sets the number of records at which the segment is rolled
+	 * @param segmentMaxRecords
+	 */
+	public void setSegmentMaxRecords(int segmentMaxRecords) {
+		this.segmentMaxRecords = segmentMaxRecords;
+	}
+
+	/**
+	 * Sets the time in milliseconds after which an open segment is rolled
+	 * @param segmentMaxAge
+	 */
+	public void setSegmentMaxAge(long segmentMaxAge) {
+		this.segmentMaxAge = segmentMaxAge;
+	}
+
+	/**
+	 * Sets the local directory in which the segments are written, defaults to the 
+	 * java.io.tmpdir
+	 * @param segmentDirectory
+	 */
+	public void setSegmentDirectory(File segmentDirectory) {
+		Assert.notNull(segmentDirectory, "Segment directory should be non null");
+		this.segmentDirectory = segmentDirectory;
+	}
+
+	/**
+	 * Sets the delimiter written after each record in the segment, encoded using the charset 
+	 * @param segmentRecordDelimiter
+	 */
+	public void setSegmentRecordDelimiter(String segmentRecordDelimiter) {
+		this.segmentRecordDelimiter = segmentRecordDelimiter;
+	}
+
+	/**
+	 * Sets the operation performed for each message, {@link #OPERATION_UPLOAD} (the default),
+	 * {@link #OPERATION_DELETE}, {@link #OPERATION_COPY} or {@link #OPERATION_MOVE}. The object 
+	 * deleted is named by the remote directory and the file name generation strategy just as 
+	 * the object uploaded would be. The objects copied or moved are named by the source and
+	 * destination key expressions
+	 * @param operation
+	 */
+	public void setOperation(String operation) {
+		this.operation = operation;
+	}
+
+	/**
+	 * Sets the max number of deletes coalesced in one multi object delete request, at most 
+	 * 1000. Deletes are batched only when set, else each object is deleted on the thread
+	 * handling the message. The messages of the deleted objects are sent to the reply 
+	 * channel and those of the objects not deleted to the delete failure channel
+	 * @param deleteBatchSize
+	 */
+	public void setDeleteBatchSize(int deleteBatchSize) {
+		this.deleteBatchSize = deleteBatchSize;
+	}
+
+	/**
+	 * Sets the time in milliseconds after which an open batch of deletes is flushed, 
+	 * defaults to 1000
+	 * @param deleteBatchMaxAge
+	 */
+	public void setDeleteBatchMaxAge(long deleteBatchMaxAge) {
+		this.deleteBatchMaxAge = deleteBatchMaxAge;
+	}
+
+	/**
+	 * Sets the channel to which the message requesting a batched delete is sent if the 
+	 * object could not be deleted, the message has the bucket name, the object key and 
+	 * the error code and message in its headers. If not set the failure is logged 
+	 * @param deleteFailureChannel
+	 */
+	public void setDeleteFailureChannel(MessageChannel deleteFailureChannel) {
+		this.deleteFailureChannel = deleteFailureChannel;
+	}
+
+	/**
+	 * Sets the expression evaluating the key of the object copied or moved in the bucket
+	 * @param expression
+	 */
+	public void setSourceKeyExpression(Expression expression) {
+		sourceKeyProcessor = new ExpressionEvaluatingMessageProcessor<String>(expression);
+	}
+
+	/**
+	 * Sets the expression evaluating the key to which the object is copied or moved
+	 * @param expression
+	 */
+	public void setDestinationKeyExpression(Expression expression) {
+		destinationKeyProcessor = new ExpressionEvaluatingMessageProcessor<String>(expression);
+	}
+
+	/**
+	 * Sets the bucket to which the objects are copied or moved, defaults to the bucket
+	 * @param destinationBucket
+	 */
+	public void setDestinationBucket(String destinationBucket) {
+		this.destinationBucket = destinationBucket;
+	}
 }
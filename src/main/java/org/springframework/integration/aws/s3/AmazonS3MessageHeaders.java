@@ -26,4 +26,11 @@ public interface AmazonS3MessageHeaders {
 	public static final String USER_METADATA		= "user_meta_data";
 	public static final String METADATA				= "meta_data";
 	public static final String OBJECT_ACLS			= "object_acls";
+	public static final String BUCKET_NAME			= "bucket_name";
+	public static final String OBJECT_KEY			= "object_key";
+	public static final String OBJECT_ETAG			= "object_etag";
+	public static final String OBJECT_SIZE			= "object_size";
+	public static final String OBJECT_LAST_MODIFIED	= "object_last_modified";
+	public static final String DELETE_ERROR_CODE	= "delete_error_code";
+	public static final String DELETE_ERROR_MESSAGE	= "delete_error_message";
 }
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.integration.Message;
+import org.springframework.integration.aws.s3.core.AmazonS3DeleteError;
+import org.springframework.integration.aws.s3.core.AmazonS3OperationException;
+import org.springframework.integration.aws.s3.core.AmazonS3Operations;
+import org.springframework.util.Assert;
+
+/**
+ * Coalesces the deletes of objects into multi object delete requests, one open batch
+ * per bucket. A batch is flushed once it reaches the max size or once it has been open
+ * for the max age. The outcome of the delete of each object is reported to the
+ * {@link DeleteResultHandler}.
+ *
+ * @author Amol Nayak
+ *
+ */
+class BatchingObjectRemover extends AbstractBatchAccumulator<BatchingObjectRemover.Batch> {
+
+	private final Log logger = LogFactory.getLog(getClass());
+
+	private final AmazonS3Operations operations;
+
+	private final int maxSize;
+
+	private final DeleteResultHandler resultHandler;
+
+	/**
+	 *
+	 * @param operations the operations used to delete the objects
+	 * @param maxSize the number of objects at which the batch is flushed, at most
+	 * 			{@link AmazonS3Operations#MAX_DELETE_BATCH_SIZE}
+	 * @param maxAge the time in milliseconds after which the batch is flushed, 0 if not bounded
+	 * @param resultHandler the handler of the outcome of the deletes
+	 */
+	BatchingObjectRemover(AmazonS3Operations operations,int maxSize,long maxAge,
+			DeleteResultHandler resultHandler) {
+		super(maxAge, "s3-delete-batch-flusher");
+		Assert.notNull(operations, "S3 Operations should be non null");
+		Assert.isTrue(maxSize > 0 && maxSize <= AmazonS3Operations.MAX_DELETE_BATCH_SIZE,
+				"Max batch size should be between 1 and " + AmazonS3Operations.MAX_DELETE_BATCH_SIZE);
+		Assert.notNull(resultHandler, "Delete result handler should be non null");
+		this.operations = operations;
+		this.maxSize = maxSize;
+		this.resultHandler = resultHandler;
+	}
+
+	/**
+	 * Adds the delete of the object to the open batch of the bucket, the batch is opened
+	 * if none is open.
+	 * @param bucketName the bucket of the object
+	 * @param key the key of the object
+	 * @param message the message requesting the delete
+	 */
+	void remove(String bucketName,String key,Message<?> message) {
+		Batch flushed = null;
+		synchronized (lock) {
+			Batch batch = getOpenBatch(bucketName);
+			if(batch == null) {
+				batch = new Batch(bucketName);
+				addOpenBatch(bucketName, batch);
+			}
+			batch.keys.add(key);
+			batch.messages.add(message);
+			if(batch.keys.size() >= maxSize) {
+				removeOpenBatch(bucketName);
+				flushed = batch;
+			}
+		}
+		if(flushed != null)
+			complete(flushed);
+	}
+
+	/**
+	 * Deletes the objects of the batch
+	 */
+	protected void complete(Batch batch) {
+		if(logger.isDebugEnabled())
+			logger.debug("Deleting a batch of " + batch.keys.size() + " objects from bucket " + batch.bucketName);
+		List<AmazonS3DeleteError> errors;
+		try {
+			errors = operations.removeObjects(batch.bucketName, null, batch.keys);
+		} catch (AmazonS3OperationException e) {
+			//None of the objects of the batch are deleted
+			logger.error("Unable to delete a batch of " + batch.keys.size() + " objects from bucket "
+					+ batch.bucketName, e);
+			for(int i = 0;i < batch.keys.size();i++)
+				report(batch.bucketName, batch.keys.get(i), batch.messages.get(i),
+						new AmazonS3DeleteError(batch.keys.get(i), null, e.getMessage()));
+			return;
+		}
+		Map<String, AmazonS3DeleteError> errorsByKey = new HashMap<String, AmazonS3DeleteError>();
+		for(AmazonS3DeleteError error:errors)
+			errorsByKey.put(error.getKey(), error);
+		for(int i = 0;i < batch.keys.size();i++)
+			report(batch.bucketName, batch.keys.get(i), batch.messages.get(i), errorsByKey.get(batch.keys.get(i)));
+	}
+
+	private void report(String bucketName,String key,Message<?> message,AmazonS3DeleteError error) {
+		try {
+			if(error == null)
+				resultHandler.onDeleted(bucketName, key, message);
+			else
+				resultHandler.onFailure(bucketName, key, message, error);
+		} catch (RuntimeException e) {
+			logger.error("Unable to report the outcome of the delete of " + key, e);
+		}
+	}
+
+	/**
+	 * The handler of the outcome of the deletes
+	 */
+	interface DeleteResultHandler {
+
+		/**
+		 * Invoked when the object is deleted
+		 * @param bucketName the bucket of the object
+		 * @param key the key of the object
+		 * @param message the message that requested the delete
+		 */
+		void onDeleted(String bucketName,String key,Message<?> message);
+
+		/**
+		 * Invoked when the object could not be deleted
+		 * @param bucketName the bucket of the object
+		 * @param key the key of the object
+		 * @param message the message that requested the delete
+		 * @param error the cause of the failure
+		 */
+		void onFailure(String bucketName,String key,Message<?> message,AmazonS3DeleteError error);
+	}
+
+	/**
+	 * One open batch of deletes
+	 */
+	static class Batch {
+
+		private final String bucketName;
+		private final List<String> keys = new ArrayList<String>();
+		private final List<Message<?>> messages = new ArrayList<Message<?>>();
+
+		Batch(String bucketName) {
+			this.bucketName = bucketName;
+		}
+	}
+}
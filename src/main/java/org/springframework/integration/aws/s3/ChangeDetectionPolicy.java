@@ -0,0 +1,38 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3;
+
+import java.io.File;
+
+import org.springframework.integration.aws.s3.core.S3ObjectSummary;
+
+/**
+ * The strategy interface used by the synchronizer to determine if an existing local file
+ * differs from the remote object and is to be downloaded again
+ * @author Amol Nayak
+ *
+ */
+public interface ChangeDetectionPolicy {
+
+	/**
+	 * Determines whether the remote object is different from the local file
+	 * @param file the existing local file
+	 * @param summary the summary of the remote object from the listing
+	 * @param index the digest index of the local directory
+	 * @return true if the object is to be downloaded to the file
+	 */
+	boolean isModified(File file,S3ObjectSummary summary,LocalDigestIndex index);
+}
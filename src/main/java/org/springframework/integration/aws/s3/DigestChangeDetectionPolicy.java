@@ -0,0 +1,134 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.Map;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.integration.aws.s3.core.AmazonS3Object;
+import org.springframework.integration.aws.s3.core.AmazonS3Operations;
+import org.springframework.integration.aws.s3.core.S3ObjectSummary;
+import org.springframework.util.Assert;
+
+/**
+ * The {@link ChangeDetectionPolicy} comparing the MD5 digest of the file with that of the 
+ * object. The ETag of an object uploaded in a single part is its hex MD5, for objects uploaded
+ * in multiple parts the ETag is computed locally using the {@link MultipartETagCalculator} 
+ * and failing a match the MD5 is read from the Content-MD5 user metadata, if present. 
+ * Digests are cached in the {@link LocalDigestIndex} and computed only for files changed
+ * since they were last hashed.
+ * @author Amol Nayak
+ *
+ */
+public class DigestChangeDetectionPolicy implements ChangeDetectionPolicy {
+
+	private final Log logger = LogFactory.getLog(getClass());
+	
+	private final AmazonS3Operations client;
+	
+	private final MultipartETagCalculator multipartETagCalculator;
+	
+	/**
+	 * 
+	 * @param client the client used to get the metadata of multipart objects
+	 * @param multipartETagCalculator
+	 */
+	public DigestChangeDetectionPolicy(AmazonS3Operations client,
+			MultipartETagCalculator multipartETagCalculator) {
+		Assert.notNull(client, "Non null client required");
+		Assert.notNull(multipartETagCalculator, "Non null multipart ETag calculator required");
+		this.client = client;
+		this.multipartETagCalculator = multipartETagCalculator;
+	}
+
+	public boolean isModified(File file, S3ObjectSummary summary,
+			LocalDigestIndex index) {
+		String eTag = summary.getETag();
+		if(eTag != null && eTag.equals(index.getETag(file)))
+			return false;
+		if(file.length() != summary.getSize())
+			return true;
+		try {
+			String md5Hex;
+			if(isEtagMD5Hash(eTag)) {
+				//Single part upload
+				md5Hex = index.getMD5Hex(file);
+				if(!eTag.equalsIgnoreCase(md5Hex))
+					return true;
+			} else {
+				//Multi part upload
+				if(!multipartETagCalculator.matches(file, eTag)) {
+					String remoteMD5Hex = getRemoteMD5Hex(summary);
+					md5Hex = index.getMD5Hex(file);
+					if(remoteMD5Hex == null || !remoteMD5Hex.equalsIgnoreCase(md5Hex))
+						return true;
+				}
+			}
+			index.record(file, null, eTag);
+			return false;
+		} catch (IOException e) {
+			logger.warn("Unable to compare " + file.getAbsolutePath() + " with object " 
+					+ summary.getKey() + ", considering it modified", e);
+			return true;
+		}
+	}
+	
+	/**
+	 * Gets the MD5 of the object from the Content-MD5 user metadata as hex, only the 
+	 * metadata of the object is requested
+	 */
+	private String getRemoteMD5Hex(S3ObjectSummary summary) {
+		AmazonS3Object s3Object = client.getObjectMetadata(summary.getBucketName(), null, summary.getKey());
+		String b64MD5 = null;
+		Map<String, String> userMetaData = s3Object.getUserMetaData();
+		if(userMetaData != null) {
+			//The user metadata names are returned in lower case 
+			for(Map.Entry<String, String> entry:userMetaData.entrySet()) {
+				if(AmazonS3Operations.CONTENT_MD5_HEADER.equalsIgnoreCase(entry.getKey())) {
+					b64MD5 = entry.getValue();
+					break;
+				}
+			}
+		}
+		if(b64MD5 == null)
+			return null;
+		try {
+			return new String(Hex.encodeHex(Base64.decodeBase64(b64MD5.getBytes("UTF-8"))));
+		} catch (UnsupportedEncodingException e) {
+			//Should never get this
+			return null;
+		}
+	}
+	
+	/**
+	 * Checks if the given eTag is a MD5 hash as hex, the hash is 128 bit and hence
+	 * has to be 32 characters in length, also it should contain only hex characters
+	 * In case of multi uploads, the eTag contains a "-", and hence this method will 
+	 * return false.
+	 */
+	static boolean isEtagMD5Hash(String eTag) {
+		if (eTag == null || eTag.length() != 32) {
+			return false;
+		}
+		return eTag.replaceAll("[a-f0-9A-F]", "").length() == 0;
+	}
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3;
+
+import java.io.File;
+
+import org.springframework.integration.aws.s3.core.S3ObjectSummary;
+
+/**
+ * The {@link ChangeDetectionPolicy} comparing the ETag of the object with the one recorded
+ * in the {@link LocalDigestIndex} when the file was last downloaded. The contents of the file
+ * are never read, a file without a recorded ETag, or changed locally since it was recorded, 
+ * is considered modified.
+ * @author Amol Nayak
+ *
+ */
+public class ETagChangeDetectionPolicy implements ChangeDetectionPolicy {
+
+	public boolean isModified(File file, S3ObjectSummary summary,
+			LocalDigestIndex index) {
+		String eTag = index.getETag(file);
+		return eTag == null || !eTag.equals(summary.getETag());
+	}
+}
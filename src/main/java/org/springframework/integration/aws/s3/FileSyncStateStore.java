@@ -0,0 +1,211 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.util.Assert;
+
+/**
+ * The {@link SyncStateStore} persisted in a local file, the default store. The state is 
+ * held in memory and the file is rewritten when flushed, it is replaced atomically where 
+ * the platform permits. The objects not listed in a complete pass of the listing of their 
+ * folder, deleted since synchronized, are pruned from the state. 
+ * 
+ * @author Amol Nayak
+ *
+ */
+public class FileSyncStateStore implements SyncStateStore {
+
+	private final Log logger = LogFactory.getLog(getClass());
+	
+	public static final String DEFAULT_STATE_FILE_NAME = ".s3-sync-state";
+	
+	private static final String OBJECT_PREFIX = "object.";
+	
+	private static final String MARKER_PREFIX = "marker.";
+	
+	private static final String ROOT_FOLDER = "/";
+	
+	private static final String SEPARATOR = ":";
+	
+	private final File stateFile;
+	
+	//Sorted for the pruning by key prefix, guarded by itself
+	private final SortedMap<String, SyncedObject> objects = new TreeMap<String, SyncedObject>();
+	
+	private final ConcurrentMap<String, String> markers = new ConcurrentHashMap<String, String>();
+	
+	//The keys listed in the current pass of the listings started from their first key
+	private final ConcurrentMap<String, Map<String, Boolean>> listings = 
+		new ConcurrentHashMap<String, Map<String, Boolean>>();
+	
+	private volatile boolean dirty;
+	
+	/**
+	 * Creates the store persisted in the given file, the state in the file, if it exists,
+	 * is loaded
+	 * @param stateFile
+	 */
+	public FileSyncStateStore(File stateFile) {
+		Assert.notNull(stateFile, "Non null state file required");
+		this.stateFile = stateFile;
+		load();
+	}
+	
+	public SyncedObject get(String key) {
+		synchronized (objects) {
+			return objects.get(key);
+		}
+	}
+
+	public void put(SyncedObject object) {
+		synchronized (objects) {
+			objects.put(object.getKey(), object);
+		}
+		dirty = true;
+	}
+
+	public String getMarker(String folder) {
+		return markers.get(getName(folder));
+	}
+
+	public void setMarker(String folder, String marker) {
+		String name = getName(folder);
+		if(marker != null)
+			markers.put(name, marker);
+		else
+			markers.remove(name);
+		dirty = true;
+	}
+
+	public void startListing(String folder) {
+		listings.put(getName(folder), new ConcurrentHashMap<String, Boolean>());
+	}
+
+	public void listed(String folder, String key) {
+		Map<String, Boolean> keys = listings.get(getName(folder));
+		if(keys != null)
+			keys.put(key, Boolean.TRUE);
+	}
+
+	public void completeListing(String folder, String keyPrefix, String delimiter) {
+		Map<String, Boolean> keys = listings.remove(getName(folder));
+		if(keys == null)
+			return;
+		int removed = 0;
+		synchronized (objects) {
+			for(Iterator<String> iterator = objects.tailMap(keyPrefix).keySet().iterator();iterator.hasNext();) {
+				String key = iterator.next();
+				if(!key.startsWith(keyPrefix))
+					break;
+				//The keys in the sub folders are not listed with the delimiter
+				if(keys.containsKey(key) || delimiter != null && key.indexOf(delimiter, keyPrefix.length()) != -1)
+					continue;
+				iterator.remove();
+				removed++;
+			}
+		}
+		if(removed > 0) {
+			dirty = true;
+			if(logger.isDebugEnabled())
+				logger.debug("Pruned the state of " + removed + " objects with the prefix " + keyPrefix 
+						+ " no longer listed");
+		}
+	}
+
+	public synchronized void flush() {
+		if(!dirty)
+			return;
+		dirty = false;
+		Properties properties = new Properties();
+		synchronized (objects) {
+			for(SyncedObject object:objects.values())
+				properties.setProperty(OBJECT_PREFIX + object.getKey(), 
+						object.getSize() + SEPARATOR + object.getLastModified() + SEPARATOR 
+						+ (object.getETag() != null?object.getETag():""));
+		}
+		for(Map.Entry<String, String> marker:markers.entrySet())
+			properties.setProperty(MARKER_PREFIX + marker.getKey(), marker.getValue());
+		try {
+			PropertiesFileUtils.store(properties, stateFile, "State of the synchronization from Amazon S3");
+		} catch (IOException e) {
+			dirty = true;
+			logger.warn("Unable to save the sync state " + stateFile.getAbsolutePath(), e);
+		}
+	}
+	
+	/**
+	 * Gets the file the state is persisted in
+	 * @return
+	 */
+	public File getStateFile() {
+		return stateFile;
+	}
+	
+	//Called by the constructor only, the objects are not yet shared
+	private synchronized void load() {
+		Properties properties;
+		try {
+			properties = PropertiesFileUtils.load(stateFile);
+		} catch (IOException e) {
+			logger.warn("Unable to load the sync state " + stateFile.getAbsolutePath() 
+					+ ", all objects will be synchronized again", e);
+			return;
+		}
+		if(properties == null)
+			return;
+		for(Map.Entry<Object, Object> property:properties.entrySet()) {
+			String name = (String)property.getKey();
+			String value = (String)property.getValue();
+			if(name.startsWith(MARKER_PREFIX)) {
+				markers.put(name.substring(MARKER_PREFIX.length()), value);
+			} else if(name.startsWith(OBJECT_PREFIX)) {
+				SyncedObject object = parse(name.substring(OBJECT_PREFIX.length()), value);
+				if(object != null)
+					objects.put(object.getKey(), object);
+			}
+		}
+		if(logger.isDebugEnabled())
+			logger.debug("Loaded the state of " + objects.size() + " objects from " + stateFile.getAbsolutePath());
+	}
+	
+	private SyncedObject parse(String key,String value) {
+		String[] fields = value.split(SEPARATOR, 3);
+		if(fields.length != 3 || key.length() == 0)
+			return null;
+		try {
+			return new SyncedObject(key, fields[2].length() > 0?fields[2]:null, 
+					Long.parseLong(fields[0]), Long.parseLong(fields[1]));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+	
+	private String getName(String folder) {
+		return folder != null?folder:ROOT_FOLDER;
+	}
+}
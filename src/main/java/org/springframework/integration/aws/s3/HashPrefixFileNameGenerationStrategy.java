@@ -0,0 +1,65 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3;
+
+import org.springframework.integration.Message;
+import org.springframework.util.Assert;
+
+/**
+ * The file name generation strategy prefixing the name generated by another strategy
+ * with its hash shard, see {@link KeyShardingScheme}. Sequential names, such as those 
+ * containing timestamps, are thus spread across the shards of the remote folder. 
+ * The inbound adapter synchronizing the folder needs to be configured with the same 
+ * number of shards.
+ * 
+ * @author Amol Nayak
+ *
+ */
+public class HashPrefixFileNameGenerationStrategy implements FileNameGenerationStrategy {
+
+	private final KeyShardingScheme shardingScheme;
+	
+	private FileNameGenerationStrategy fileNameGenerator = new DefaultFileNameGenerationStrategy();
+	
+	/**
+	 * 
+	 * @param shardCount the number of shards the names are spread across
+	 */
+	public HashPrefixFileNameGenerationStrategy(int shardCount) {
+		this.shardingScheme = new KeyShardingScheme(shardCount);
+	}
+
+	/* (non-Javadoc)
+	 * @see org.springframework.integration.aws.s3.FileNameGenerationStrategy#generateFileName(org.springframework.integration.Message)
+	 */
+	public String generateFileName(Message<?> message) {
+		return shardingScheme.getShardedName(fileNameGenerator.generateFileName(message));
+	}
+
+	/**
+	 * Sets the strategy generating the names that are sharded, defaults to 
+	 * {@link DefaultFileNameGenerationStrategy}
+	 * @param fileNameGenerator
+	 */
+	public void setFileNameGenerator(FileNameGenerationStrategy fileNameGenerator) {
+		Assert.notNull(fileNameGenerator, "File name generation strategy should be non null");
+		this.fileNameGenerator = fileNameGenerator;
+	}
+
+	public KeyShardingScheme getShardingScheme() {
+		return shardingScheme;
+	}
+}
@@ -17,37 +17,59 @@ package org.springframework.integration.aws.s3;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
-import org.apache.commons.codec.binary.Base64;
-import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.BeanDefinitionStoreException;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
-import org.springframework.integration.aws.core.AmazonWSCommonUtils;
 import org.springframework.integration.aws.s3.core.AmazonS3Object;
+import org.springframework.integration.aws.s3.core.AmazonS3OperationException;
 import org.springframework.integration.aws.s3.core.AmazonS3Operations;
 import org.springframework.integration.aws.s3.core.PaginatedObjectsView;
+import org.springframework.integration.aws.s3.core.ParallelObjectLister;
+import org.springframework.integration.aws.s3.core.ParallelObjectLister.ObjectSummaryStream;
 import org.springframework.integration.aws.s3.core.S3ObjectSummary;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
+import com.amazonaws.services.s3.Headers;
+
 
 /**
  * The implementation for {@link InboundFileSynchronizer}
  * @author Amol Nayak
  *
  */
-public class InboundFileSynchronizationImpl implements InboundFileSynchronizer,InitializingBean {
+public class InboundFileSynchronizationImpl implements InboundFileSynchronizer,InitializingBean,DisposableBean {
 
 	private final Log logger = LogFactory.getLog(getClass());
 	
 	public static final String CONTENT_MD5 = "Content-MD5";
+	private static final String DELIMITER = "/";
+	private static final int DEFAULT_FOLDER_PARALLELISM = 4;
 	private AmazonS3Operations client;
 	private int maxObjectsPerBatch = -1;
 	private InboundLocalFileOperations fileOperations;
@@ -55,6 +77,26 @@ public class InboundFileSynchronizationImpl implements InboundFileSynchronizer,I
 	private String fileWildcard;
 	private String fileNameRegex;
 	private Lock lock = new ReentrantLock();
+	private MultipartETagCalculator multipartETagCalculator;
+	private ChangeDetectionPolicy changeDetectionPolicy;
+	private final ConcurrentMap<File, LocalDigestIndex> digestIndexes = new ConcurrentHashMap<File, LocalDigestIndex>();
+	private KeyShardingScheme shardingScheme;
+	private int parallelism = 1;
+	private ExecutorService downloadExecutor;
+	private ExecutorService listingExecutor;
+	private Semaphore downloadPermits;
+	private SyncStateStore syncStateStore;
+	private int maxPagesPerPoll;
+	private String listingPartitions;
+	private int listingThreads;
+	private ExecutorService partitionListingExecutor;
+	private ParallelObjectLister objectLister;
+	private boolean recursive;
+	private int folderParallelism = DEFAULT_FOLDER_PARALLELISM;
+	private ExecutorService folderExecutor;
+	//The listings whose marker is recorded once their objects are downloaded
+	private final Queue<ListingProgress> pendingListings = new ConcurrentLinkedQueue<ListingProgress>();
+	private volatile boolean stopRequested;
 	
 	/**
 	 * Constructor
@@ -81,6 +123,49 @@ public class InboundFileSynchronizationImpl implements InboundFileSynchronizer,I
 		} else {
 			filter = new AlwaysTrueFileNamefilter();	//Match all
 		}		
+		if(changeDetectionPolicy == null) {
+			if(multipartETagCalculator == null)
+				multipartETagCalculator = new MultipartETagCalculator();
+			changeDetectionPolicy = new DigestChangeDetectionPolicy(client, multipartETagCalculator);
+		}
+		Assert.isTrue(maxPagesPerPoll <= 0 || syncStateStore != null, 
+				"A sync state store is required to resume the listing across synchronizations");
+		if(parallelism > 1) {
+			downloadExecutor = Executors.newFixedThreadPool(parallelism, new DaemonThreadFactory("s3-sync-download-"));
+			listingExecutor = Executors.newSingleThreadExecutor(new DaemonThreadFactory("s3-sync-listing-"));
+			//Lets the listing run ahead of the downloads by at most one page worth of work per worker
+			downloadPermits = new Semaphore(2 * parallelism);
+		}
+		if(StringUtils.hasText(listingPartitions)) {
+			Assert.isTrue(maxPagesPerPoll <= 0, 
+					"The listing of the partitions cannot be resumed, max pages per poll cannot be set");
+			int partitions = ParallelObjectLister.getCharacterBoundaries(null, listingPartitions).size() + 1;
+			partitionListingExecutor = Executors.newFixedThreadPool(listingThreads > 0?listingThreads:partitions, 
+					new DaemonThreadFactory("s3-sync-partition-"));
+			objectLister = new ParallelObjectLister(client, partitionListingExecutor, maxObjectsPerBatch);
+		}
+		if(recursive) {
+			Assert.isNull(shardingScheme, "The shard folders of a sharded folder cannot be mirrored");
+			if(folderParallelism > 1)
+				folderExecutor = Executors.newFixedThreadPool(folderParallelism, new DaemonThreadFactory("s3-sync-folder-"));
+		}
+	}
+	
+	/**
+	 * Shuts down the download and listing threads
+	 */
+	public void destroy() throws Exception {
+		if(downloadExecutor != null) {
+			//The downloads never run release their permits for the synchronization to complete
+			List<Runnable> pending = downloadExecutor.shutdownNow();
+			downloadPermits.release(pending.size());
+		}
+		if(listingExecutor != null)
+			listingExecutor.shutdownNow();
+		if(partitionListingExecutor != null)
+			partitionListingExecutor.shutdownNow();
+		if(folderExecutor != null)
+			folderExecutor.shutdownNow();
 	}
 
 
@@ -102,46 +187,442 @@ public class InboundFileSynchronizationImpl implements InboundFileSynchronizer,I
 			if(logger.isInfoEnabled())
 				logger.info("Starting sync with local directory");
 			//Below sync can take long, above lock ensures only one thread is synchronizing
+			stopRequested = false;
 			try {
 				if(remoteFolder != null && "/".equals(remoteFolder))
 					remoteFolder = null;
+				//Loaded here, before the downloads that record in it start
+				getDigestIndex(localDirectory);
 				
-				//Set the remote folder for the filter
-				if(filter instanceof AbstractFileNameFilter)
-					((AbstractFileNameFilter)filter).setFolderName(remoteFolder);		
-				
-				String nextMarker = null;
-				do {					
-					PaginatedObjectsView paginatedView = client.listObjects(bucketName, remoteFolder,nextMarker,maxObjectsPerBatch);
-					if(paginatedView == null)
-						break;	//No files to sync
-					nextMarker = paginatedView.getNextMarker();
-					List<S3ObjectSummary> summaries = paginatedView.getObjectSummary();
-					for(S3ObjectSummary summary:summaries) {
-						String key = summary.getKey();
-						if(!filter.accept(key))
-							continue;
-						
-						AmazonS3Object s3Object = client.getObject(bucketName, remoteFolder, key);
-						synchronizeObjectWithFile(localDirectory,summary,s3Object);						
-					}					
-				} while(nextMarker != null);
+				if(recursive)
+					synchronizeTree(localDirectory, bucketName, remoteFolder);
+				else if(shardingScheme != null) {
+					//The objects are in the shard folders, each listed on its own 
+					for(String shardFolder:shardingScheme.getShardFolders(remoteFolder)) {
+						if(stopRequested)
+							break;
+						synchronizeFolder(localDirectory, bucketName, shardFolder);
+					}
+				} else
+					synchronizeFolder(localDirectory, bucketName, remoteFolder);
 				
 			} finally {
+				awaitDownloads();
+				for(ListingProgress progress;(progress = pendingListings.poll()) != null;)
+					saveMarker(progress);
+				//The files are made durable before being recorded as synchronized
+				try {
+					fileOperations.flush();
+				} catch (IOException e) {
+					logger.error("Caught Exception while forcing the files written to the storage device", e);
+				}
+				if(syncStateStore != null)
+					syncStateStore.flush();
+				for(LocalDigestIndex index:digestIndexes.values())
+					index.save();
 				lock.unlock();
 				if(logger.isInfoEnabled())
 					logger.info("Sync completed");
 			}
 	}
+	/**
+	 * Stops the synchronization in progress, if any, once the objects being downloaded are
+	 * synchronized. The objects listed and not yet synchronized are left for the next 
+	 * synchronization, the listing resumes at the first of them.
+	 */
+	public void stopSynchronization() {
+		stopRequested = true;
+	}
+	
+	/**
+	 * Mirrors the remote folder and its sub folders, at any depth, in the local directory.
+	 * The sub folders found listing a folder are synchronized on the folder threads if any,
+	 * a failure to synchronize a folder is thrown once the other folders are synchronized
+	 */
+	private void synchronizeTree(File localDirectory,String bucketName,String remoteFolder) {
+		LinkedList<FolderSynchronizationTask> folders = new LinkedList<FolderSynchronizationTask>();
+		folders.add(new FolderSynchronizationTask(localDirectory, bucketName, remoteFolder));
+		if(folderExecutor == null) {
+			while(!folders.isEmpty() && !stopRequested)
+				folders.addAll(folders.removeFirst().call());
+			return;
+		}
+		CompletionService<List<FolderSynchronizationTask>> completionService = 
+			new ExecutorCompletionService<List<FolderSynchronizationTask>>(folderExecutor);
+		RuntimeException failure = null;
+		int running = 0;
+		do {
+			while(!folders.isEmpty() && !stopRequested) {
+				completionService.submit(folders.removeFirst());
+				running++;
+			}
+			try {
+				Future<List<FolderSynchronizationTask>> done = completionService.take();
+				running--;
+				folders.addAll(done.get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new AmazonS3OperationException(null, bucketName, null, 
+						"Interrupted while synchronizing the folders", e);
+			} catch (ExecutionException e) {
+				logger.error("Caught Exception while synchronizing a folder", e.getCause());
+				if(failure == null)
+					failure = e.getCause() instanceof RuntimeException?(RuntimeException)e.getCause()
+							:new AmazonS3OperationException(null, bucketName, null, "Synchronization of a folder failed", e.getCause());
+			}
+		} while(running > 0 || !folders.isEmpty() && !stopRequested);
+		if(failure != null)
+			throw failure;
+	}
+	
+	/**
+	 * Synchronizes the objects directly under the given remote folder with the local directory,
+	 * the keys in the sub folders are not listed. If the filter accepts only the keys with some 
+	 * prefixes, only the names of the folder with these prefixes are listed, one prefix after 
+	 * the other.
+	 * @return the prefixes of the sub folders of the remote folder
+	 */
+	private List<String> synchronizeFolder(File localDirectory,String bucketName,String remoteFolder) {
+		//The sub folders whose names do not have the prefixes are still to be mirrored
+		List<String> namePrefixes = recursive?null:getNamePrefixes(remoteFolder);
+		if(namePrefixes == null) {
+			if(objectLister != null)
+				return synchronizeFolderPartitioned(localDirectory, bucketName, remoteFolder);
+			return synchronizeFolder(localDirectory, bucketName, remoteFolder, null);
+		}
+		if(logger.isDebugEnabled())
+			logger.debug("Listing the names of folder " + remoteFolder + " with the prefixes " + namePrefixes);
+		List<String> subfolders = new ArrayList<String>();
+		for(String namePrefix:namePrefixes) {
+			if(stopRequested)
+				break;
+			subfolders.addAll(synchronizeFolder(localDirectory, bucketName, remoteFolder, namePrefix));
+		}
+		return subfolders;
+	}
+	
+	/**
+	 * Gets the prefixes of the names in the folder of the keys the filter may accept
+	 * @return the prefixes, empty if the filter accepts no key of the folder and null
+	 * 			if it may accept names with any prefix
+	 */
+	private List<String> getNamePrefixes(String remoteFolder) {
+		if(!(filter instanceof AbstractFileNameFilter))
+			return null;
+		return ((AbstractFileNameFilter)filter).getNamePrefixes(getFolderPrefix(remoteFolder));
+	}
+	
+	/**
+	 * Synchronizes the objects directly under the given remote folder whose names have 
+	 * the given prefix 
+	 * @param namePrefix the prefix, null for all the names
+	 * @return the prefixes of the sub folders with the name prefix
+	 */
+	private List<String> synchronizeFolder(File localDirectory,String bucketName,String remoteFolder,
+			String namePrefix) {
+		if(downloadExecutor != null)
+			return synchronizeFolderInParallel(localDirectory, bucketName, remoteFolder, namePrefix);
+
+		List<String> subfolders = new ArrayList<String>();
+		String listingName = getListingName(remoteFolder, namePrefix);
+		String nextMarker = syncStateStore != null?syncStateStore.getMarker(listingName):null;
+		startListing(listingName, nextMarker);
+		ListingProgress progress = new ListingProgress(listingName);
+		boolean stopped = false;
+		int pages = 0;
+		do {					
+			PaginatedObjectsView paginatedView = client.listObjects(bucketName, remoteFolder,nextMarker,
+					maxObjectsPerBatch,DELIMITER,namePrefix);
+			if(paginatedView == null) {
+				nextMarker = null;
+				break;	//No files to sync
+			}
+			String previousKey = nextMarker;
+			nextMarker = paginatedView.getNextMarker();
+			subfolders.addAll(paginatedView.getCommonPrefixes());
+			List<S3ObjectSummary> summaries = paginatedView.getObjectSummary();
+			for(S3ObjectSummary summary:summaries) {
+				String marker = previousKey;
+				previousKey = summary.getKey();
+				if(!accept(remoteFolder, summary.getKey()))
+					continue;
+				recordListed(listingName, summary);
+				if(isSynchronized(summary))
+					continue;
+				if(stopRequested) {
+					//The listing resumes at this object in the next synchronization
+					progress.failed(marker);
+					stopped = true;
+					break;
+				}
+				
+				if(synchronizeObjectWithFile(localDirectory,bucketName,remoteFolder,summary))
+					recordSynchronized(summary);
+				else
+					progress.failed(marker);
+			}					
+		} while(!stopped && nextMarker != null && !isPageLimitReached(++pages));
+		progress.setNextMarker(nextMarker);
+		saveMarker(progress);
+		if(nextMarker == null && !stopped)
+			completeListing(listingName, remoteFolder, namePrefix);
+		return subfolders;
+	}
+	
+	/**
+	 * Gets the name the marker of the listing of the given folder and name prefix is 
+	 * recorded with
+	 */
+	private String getListingName(String remoteFolder,String namePrefix) {
+		if(namePrefix == null)
+			return remoteFolder;
+		if(remoteFolder == null)
+			return namePrefix;
+		return getFolderPrefix(remoteFolder) + namePrefix;
+	}
+	
+	/**
+	 * Gets the prefix of the keys in the given folder
+	 */
+	private String getFolderPrefix(String remoteFolder) {
+		if(remoteFolder == null)
+			return "";
+		return remoteFolder.endsWith(DELIMITER)?remoteFolder:remoteFolder + DELIMITER;
+	}
+	
+	/**
+	 * Checks the key against the filter for the given folder, the filter is shared by
+	 * the threads synchronizing different folders
+	 */
+	private boolean accept(String remoteFolder,String key) {
+		if(filter instanceof AbstractFileNameFilter)
+			return ((AbstractFileNameFilter)filter).accept(remoteFolder, key);
+		return filter.accept(key);
+	}
+	
+	/**
+	 * Checks if the object is unchanged since it was recorded as synchronized
+	 */
+	private boolean isSynchronized(S3ObjectSummary summary) {
+		if(syncStateStore == null)
+			return false;
+		SyncedObject synced = syncStateStore.get(summary.getKey());
+		return synced != null && synced.matches(summary);
+	}
+	
+	private void recordSynchronized(S3ObjectSummary summary) {
+		if(syncStateStore != null)
+			syncStateStore.put(new SyncedObject(summary));
+	}
+	
+	/**
+	 * Starts recording the keys listed if the listing starts from the first key, the 
+	 * objects no longer listed are pruned from the state once the listing completes
+	 */
+	private void startListing(String listingName,String nextMarker) {
+		if(syncStateStore != null && nextMarker == null)
+			syncStateStore.startListing(listingName);
+	}
+	
+	private void recordListed(String listingName,S3ObjectSummary summary) {
+		if(syncStateStore != null)
+			syncStateStore.listed(listingName, summary.getKey());
+	}
+	
+	private void completeListing(String listingName,String remoteFolder,String namePrefix) {
+		if(syncStateStore != null)
+			syncStateStore.completeListing(listingName, 
+					getFolderPrefix(remoteFolder) + (namePrefix != null?namePrefix:""), DELIMITER);
+	}
+	
+	/**
+	 * Records the marker from which the next synchronization resumes the listing
+	 */
+	private void saveMarker(ListingProgress progress) {
+		if(syncStateStore != null)
+			syncStateStore.setMarker(progress.listingName, progress.getMarker());
+	}
+	
+	private boolean isPageLimitReached(int pages) {
+		return maxPagesPerPoll > 0 && pages >= maxPagesPerPoll;
+	}
+	
+	/**
+	 * Synchronizes the objects of the folder using the download threads, the next page 
+	 * of the listing is fetched while the objects of the current page are synchronized.
+	 * The calling thread blocks when the download threads fall behind the listing.
+	 */
+	private List<String> synchronizeFolderInParallel(final File localDirectory,final String bucketName,
+			final String remoteFolder,String namePrefix) {
+		List<String> subfolders = new ArrayList<String>();
+		String listingName = getListingName(remoteFolder, namePrefix);
+		String nextMarker = syncStateStore != null?syncStateStore.getMarker(listingName):null;
+		startListing(listingName, nextMarker);
+		ListingProgress progress = new ListingProgress(listingName);
+		boolean stopped = false;
+		Future<PaginatedObjectsView> nextPage = listPage(bucketName, remoteFolder, namePrefix, nextMarker);
+		int pages = 0;
+		while(nextPage != null) {
+			PaginatedObjectsView paginatedView = getPage(nextPage);
+			if(paginatedView == null) {
+				nextMarker = null;
+				break;	//No files to sync
+			}
+			String previousKey = nextMarker;
+			nextMarker = paginatedView.getNextMarker();
+			nextPage = nextMarker != null && !isPageLimitReached(++pages)?
+					listPage(bucketName, remoteFolder, namePrefix, nextMarker):null;
+			subfolders.addAll(paginatedView.getCommonPrefixes());
+			for(final S3ObjectSummary summary:paginatedView.getObjectSummary()) {
+				String marker = previousKey;
+				previousKey = summary.getKey();
+				if(!accept(remoteFolder, summary.getKey()))
+					continue;
+				recordListed(listingName, summary);
+				if(isSynchronized(summary))
+					continue;
+				if(stopRequested) {
+					progress.failed(marker);
+					stopped = true;
+					if(nextPage != null)
+						nextPage.cancel(true);
+					nextPage = null;
+					break;
+				}
+				try {
+					submitDownload(localDirectory, bucketName, remoteFolder, summary, progress, marker);
+				} catch (RuntimeException e) {
+					if(nextPage != null)
+						nextPage.cancel(true);
+					throw e;
+				}
+			}
+		}
+		//The objects listed may still be downloading, the marker is recorded once they complete
+		progress.setNextMarker(nextMarker);
+		pendingListings.add(progress);
+		if(nextMarker == null && !stopped)
+			completeListing(listingName, remoteFolder, namePrefix);
+		return subfolders;
+	}
+	
+	/**
+	 * Synchronizes the objects of the folder as they are listed concurrently in the 
+	 * partitions of the key space, the objects are downloaded by the download threads 
+	 * if any, else by the calling thread. No marker is recorded as the partitions are 
+	 * always listed from their start
+	 */
+	private List<String> synchronizeFolderPartitioned(File localDirectory,String bucketName,String remoteFolder) {
+		ObjectSummaryStream stream = objectLister.list(bucketName, remoteFolder, 
+				ParallelObjectLister.getCharacterBoundaries(remoteFolder, listingPartitions), DELIMITER);
+		startListing(remoteFolder, null);
+		try {
+			for(Iterator<S3ObjectSummary> summaries = stream;summaries.hasNext();) {
+				S3ObjectSummary summary = summaries.next();
+				if(!accept(remoteFolder, summary.getKey()))
+					continue;
+				recordListed(remoteFolder, summary);
+				if(isSynchronized(summary))
+					continue;
+				if(stopRequested)
+					return stream.getCommonPrefixes();
+				if(downloadExecutor != null)
+					submitDownload(localDirectory, bucketName, remoteFolder, summary, null, null);
+				else if(synchronizeObjectWithFile(localDirectory, bucketName, remoteFolder, summary))
+					recordSynchronized(summary);
+			}
+			completeListing(remoteFolder, remoteFolder, null);
+		} finally {
+			stream.close();
+		}
+		return stream.getCommonPrefixes();
+	}
+	
+	/**
+	 * Synchronizes the object on one of the download threads, blocking while the 
+	 * download threads are busy
+	 * @param progress the progress of the listing notified if the object is not synchronized, 
+	 * 			null if none
+	 * @param marker the marker of the listing before the object
+	 */
+	private void submitDownload(final File localDirectory,final String bucketName,
+			final String remoteFolder,final S3ObjectSummary summary,
+			final ListingProgress progress,final String marker) {
+		try {
+			downloadPermits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AmazonS3OperationException(null, bucketName, summary.getKey(), 
+					"Interrupted while synchronizing the objects", e);
+		}
+		try {
+			downloadExecutor.execute(new Runnable() {
+				public void run() {
+					boolean done = false;
+					try {
+						if(synchronizeObjectWithFile(localDirectory, bucketName, remoteFolder, summary)) {
+							recordSynchronized(summary);
+							done = true;
+						}
+					} catch (RuntimeException e) {
+						logger.error("Caught Exception while synchronizing object " + summary.getKey(), e);
+					} finally {
+						if(!done && progress != null)
+							progress.failed(marker);
+						downloadPermits.release();
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			downloadPermits.release();
+			throw new AmazonS3OperationException(null, bucketName, summary.getKey(), 
+					"The synchronizer is destroyed", e);
+		}
+	}
+	
+	private Future<PaginatedObjectsView> listPage(final String bucketName,final String remoteFolder,
+			final String namePrefix,final String nextMarker) {
+		return listingExecutor.submit(new Callable<PaginatedObjectsView>() {
+			public PaginatedObjectsView call() throws Exception {
+				return client.listObjects(bucketName, remoteFolder, nextMarker, maxObjectsPerBatch, 
+						DELIMITER, namePrefix);
+			}
+		});
+	}
+	
+	private PaginatedObjectsView getPage(Future<PaginatedObjectsView> page) {
+		try {
+			return page.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			page.cancel(true);
+			throw new AmazonS3OperationException(null, null, null, "Interrupted while listing the objects", e);
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof RuntimeException)
+				throw (RuntimeException)e.getCause();
+			throw new AmazonS3OperationException(null, null, null, "Listing of the objects failed", e.getCause());
+		}
+	}
+	
+	/**
+	 * Waits for the downloads in progress to complete
+	 */
+	private void awaitDownloads() {
+		if(downloadPermits == null)
+			return;
+		int permits = 2 * parallelism;
+		downloadPermits.acquireUninterruptibly(permits);
+		downloadPermits.release(permits);
+	}
+	
 	/**
 	 * Synchronizes the Object with the File on the local file system
 	 * @param localDirectory
 	 * @param summary
+	 * @return true if the file has the contents of the object once done
 	 */
-	private void synchronizeObjectWithFile(File localDirectory,S3ObjectSummary summary,
-			AmazonS3Object s3Object) {
-		//Get the complete object data
-		
+	private boolean synchronizeObjectWithFile(File localDirectory,String bucketName,String remoteFolder,
+			S3ObjectSummary summary) {
 		String key = summary.getKey();
 		String fileName = key.substring(key.lastIndexOf("/") + 1);
 		String filePath = localDirectory.getAbsolutePath();
@@ -151,88 +632,72 @@ public class InboundFileSynchronizationImpl implements InboundFileSynchronizer,I
 		File file = new File(filePath + fileName);
 		if(!file.exists()) {
 			//File doesnt exist, write the contents to it
-			try {
-				fileOperations.writeToFile(localDirectory, fileName,s3Object.getInputStream());
-			} catch (IOException e) {
-				logger.error("Caught Exception while writing to file " + file.getAbsolutePath());
-				//continue with next file.
-			}
+			return downloadToFile(localDirectory, bucketName, summary, fileName);
 		} else {
 			//Synchronize a file that exists
 			if(!file.isFile()) {			
 				if(logger.isWarnEnabled())
 					logger.warn("The file " + file.getAbsolutePath() + " is not a regular file, probably a directory, ");
 				
-				return;
+				return false;
 			}
-			String eTag = summary.getETag();
-			String md5Hex = null;
-			try {
-				md5Hex = AmazonWSCommonUtils.encodeHex(AmazonWSCommonUtils.getContentsMD5AsBytes(file));
-			} catch (UnsupportedEncodingException e) {
-				logger.error("Exception encountered while generating the MED5 hash for the file " + file.getAbsolutePath(), e);
+			if(changeDetectionPolicy.isModified(file, summary, getDigestIndex(localDirectory))) {
+				//The local file is different than the one on S3, could be latest but we will still
+				//sync this with the copy on S3
+				return downloadToFile(localDirectory, bucketName, summary, fileName);
 			}
-			if(isEtagMD5Hash(eTag)) {
-				//Single thread upload				
-				if(!eTag.equals(md5Hex)) {
-					//The local file is different than the one on S3, could be latest but we will still
-					//sync this with the copy on S3
-					try {
-						fileOperations.writeToFile(localDirectory, fileName, s3Object.getInputStream());
-					} catch (IOException e) {
-						logger.error("Caught Exception while writing to file " + file.getAbsolutePath());
-					}					
-				}
-			} else {
-				//Multi part upload
-				//Get the MD5 hash from the headers
-				Map<String, String> userMetaData = s3Object.getUserMetaData();
-				String b64MD5 = userMetaData.get(CONTENT_MD5);
-				if(b64MD5 != null) {
-					//Need to convert to Hex from Base64					
-					try {
-						String remoteHexMD5 = new String(Hex.encodeHex(Base64.decodeBase64(b64MD5.getBytes("UTF-8"))));
-						if(!md5Hex.equals(remoteHexMD5)) {
-							//Update only if the local file is not same as remote file
-							try {
-								fileOperations.writeToFile(localDirectory, fileName, s3Object.getInputStream());
-							} catch (IOException e) {
-								logger.error("Caught Exception while writing to file " + file.getAbsolutePath());
-							}
-						}
-						
-					} catch (UnsupportedEncodingException e) {						
-						//Should never get this, suppress
-					}
-				} else {
-					//Forcefully update the file
-					try {
-						fileOperations.writeToFile(localDirectory, fileName, s3Object.getInputStream());
-					} catch (IOException e) {
-						logger.error("Caught Exception while writing to file " + file.getAbsolutePath());
-					}
-				}				 
-			}		
+			return true;
 		}
 	}	
 	
 	/**
-	 * Checks if the given eTag is a MD5 hash as hex, the hash is 128 bit and hence
-	 * has to be 32 characters in length, also it should contain only hex characters
-	 * In case of multi uploads, the eTag contains a "-", and hence this method will 
-	 * return false.
-	 *   
-	 * @param eTag
-	 * @return
+	 * Downloads the object with the given key to the file with the given name, large objects
+	 * are downloaded in parallel ranges directly into the temporary file. The ETag of the 
+	 * object is recorded in the digest index for the downloaded file
+	 * @return true if downloaded, false if the download failed
 	 */
-	private boolean isEtagMD5Hash(String eTag) {
-		if (eTag == null || eTag.length() != 32) {
-            return false;
-        }
-        return eTag.replaceAll("[a-f0-9A-F]", "").length() == 0;
-        
+	private boolean downloadToFile(File localDirectory,final String bucketName,S3ObjectSummary summary,
+			String fileName) {
+		final String key = summary.getKey();
+		try {
+			final AmazonS3Object[] downloaded = new AmazonS3Object[1];
+			fileOperations.writeToFile(localDirectory, fileName, new LocalFileWriter() {
+				public void write(File file) throws IOException {
+					downloaded[0] = client.getObject(bucketName, null, key, file);
+				}
+			});
+			//The ETag is the MD5 of the file unless the object was decompressed 
+			String eTag = summary.getETag();
+			Map<String, Object> metaData = downloaded[0] != null?downloaded[0].getMetaData():null;
+			boolean encoded = metaData != null && metaData.get(Headers.CONTENT_ENCODING) != null;
+			getDigestIndex(localDirectory).record(new File(localDirectory, fileName), 
+					DigestChangeDetectionPolicy.isEtagMD5Hash(eTag) && !encoded?eTag.toLowerCase():null, eTag);
+			return true;
+		} catch (IOException e) {
+			logger.error("Caught Exception while writing to file " + fileName, e);
+			//continue with next file.
+		} catch (AmazonS3OperationException e) {
+			logger.error("Caught Exception while downloading object " + key, e);
+		}
+		return false;
 	}
-
+	
+	/**
+	 * Gets the digest index of the given directory, loading it if the directory
+	 * is synchronized for the first time
+	 */
+	private LocalDigestIndex getDigestIndex(File localDirectory) {
+		LocalDigestIndex index = digestIndexes.get(localDirectory);
+		if(index == null) {
+			index = new LocalDigestIndex(localDirectory);
+			index.load();
+			LocalDigestIndex existing = digestIndexes.putIfAbsent(localDirectory, index);
+			if(existing != null)
+				index = existing;
+		}
+		return index;
+	}
+	
 	/* (non-Javadoc)
 	 * @see org.springframework.integration.aws.s3.InboundFileSynchronizer#setSynchronizingBatchSize(int)
 	 */
@@ -258,4 +723,200 @@ public class InboundFileSynchronizationImpl implements InboundFileSynchronizer,I
 		this.fileWildcard = fileWildcard;
 	}
 
+	/**
+	 * Sets the policy determining if an existing local file is to be downloaded again,
+	 * defaults to a {@link DigestChangeDetectionPolicy}
+	 * @param changeDetectionPolicy
+	 */
+	public void setChangeDetectionPolicy(ChangeDetectionPolicy changeDetectionPolicy) {
+		this.changeDetectionPolicy = changeDetectionPolicy;
+	}
+
+	/**
+	 * Sets the calculator used by the default {@link DigestChangeDetectionPolicy} to compare 
+	 * local files with objects uploaded in multiple parts, defaults to one hashing on a 
+	 * thread per available processor
+	 * @param multipartETagCalculator
+	 */
+	public void setMultipartETagCalculator(
+			MultipartETagCalculator multipartETagCalculator) {
+		this.multipartETagCalculator = multipartETagCalculator;
+	}
+
+	/**
+	 * Sets the number of objects synchronized in parallel, defaults to 1. When greater than 1, 
+	 * the objects are downloaded by as many threads while the next page of the listing is 
+	 * fetched in the background.
+	 * @param parallelism
+	 */
+	public void setParallelism(int parallelism) {
+		Assert.isTrue(parallelism > 0, "Parallelism should be positive");
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Sets the store recording the objects synchronized and the marker from which the listing
+	 * of the remote folder resumes. The objects unchanged since they were recorded are skipped 
+	 * without looking at the local files, even after a restart. Not set by default
+	 * @param syncStateStore
+	 */
+	public void setSyncStateStore(SyncStateStore syncStateStore) {
+		this.syncStateStore = syncStateStore;
+	}
+
+	/**
+	 * Sets the max number of pages listed per folder in one synchronization, the next 
+	 * synchronization resumes the listing from where this one stopped and the listing starts
+	 * over once the last page is reached. Requires a sync state store, not limited by default
+	 * @param maxPagesPerPoll
+	 */
+	public void setMaxPagesPerPoll(int maxPagesPerPoll) {
+		this.maxPagesPerPoll = maxPagesPerPoll;
+	}
+
+	/**
+	 * Sets the characters at which the key space of the remote folder is partitioned, for 
+	 * e.g. <i>0-9a-f</i> for keys starting with a hex digit. The partitions are listed 
+	 * concurrently which speeds up the listing of folders with a very large number of keys,
+	 * the characters should hence split the keys in partitions of similar sizes. 
+	 * Not used for the folders of which the file name filter accepts only the names with
+	 * some prefixes, these are listed instead. Cannot be used with a max pages per poll, 
+	 * not set by default
+	 * @param listingPartitions the characters, ranges such as a-z are expanded
+	 */
+	public void setListingPartitions(String listingPartitions) {
+		this.listingPartitions = listingPartitions;
+	}
+
+	/**
+	 * Sets the number of threads listing the partitions, defaults to one per partition
+	 * @param listingThreads
+	 */
+	public void setListingThreads(int listingThreads) {
+		this.listingThreads = listingThreads;
+	}
+
+	/**
+	 * Sets the scheme by which the objects of the remote folder are sharded, the objects
+	 * are then synchronized from each of the shard folders of the remote folder one after
+	 * the other, the shard is not part of the local file name. Only the keys in the shard
+	 * folders are listed, not those in other sub folders of the remote folder.
+	 * @param shardingScheme
+	 */
+	public void setKeyShardingScheme(KeyShardingScheme shardingScheme) {
+		this.shardingScheme = shardingScheme;
+	}
+
+	/**
+	 * Mirrors the sub folders of the remote folder in sub directories of the local directory,
+	 * their sub folders are listed in turn. The sub folders are synchronized by as many
+	 * threads as the folder parallelism, the keys in the sub folders are never listed with 
+	 * those of their parent folder. Cannot be used with a key sharding scheme, false by default
+	 * @param recursive
+	 */
+	public void setRecursive(boolean recursive) {
+		this.recursive = recursive;
+	}
+
+	/**
+	 * Sets the number of folders synchronized in parallel when mirroring recursively,
+	 * defaults to 4
+	 * @param folderParallelism
+	 */
+	public void setFolderParallelism(int folderParallelism) {
+		Assert.isTrue(folderParallelism > 0, "Folder parallelism should be positive");
+		this.folderParallelism = folderParallelism;
+	}
+
+	/**
+	 * Synchronizes a folder, the tasks synchronizing its sub folders are the result
+	 */
+	private class FolderSynchronizationTask implements Callable<List<FolderSynchronizationTask>> {
+		
+		private final File localDirectory;
+		private final String bucketName;
+		private final String remoteFolder;
+		
+		FolderSynchronizationTask(File localDirectory, String bucketName, String remoteFolder) {
+			this.localDirectory = localDirectory;
+			this.bucketName = bucketName;
+			this.remoteFolder = remoteFolder;
+		}
+
+		public List<FolderSynchronizationTask> call() {
+			List<FolderSynchronizationTask> subfolders = new ArrayList<FolderSynchronizationTask>();
+			for(String prefix:synchronizeFolder(localDirectory, bucketName, remoteFolder)) {
+				String name = prefix.substring(0, prefix.length() - DELIMITER.length());
+				name = name.substring(name.lastIndexOf(DELIMITER) + 1);
+				if(name.length() == 0 || ".".equals(name) || "..".equals(name)) {
+					if(logger.isWarnEnabled())
+						logger.warn("Skipping the folder " + prefix + " with no valid local directory name");
+					continue;
+				}
+				File directory = new File(localDirectory, name);
+				if(!directory.isDirectory() && !directory.mkdirs()) {
+					logger.error("Unable to create the directory " + directory.getAbsolutePath() 
+							+ ", skipping the folder " + prefix);
+					continue;
+				}
+				subfolders.add(new FolderSynchronizationTask(directory, bucketName, prefix));
+			}
+			return subfolders;
+		}
+	}
+
+	/**
+	 * Creates the named daemon threads of the synchronizer
+	 */
+	private static class DaemonThreadFactory implements ThreadFactory {
+		
+		private final String prefix;
+		private final AtomicInteger threadCount = new AtomicInteger();
+		
+		DaemonThreadFactory(String prefix) {
+			this.prefix = prefix;
+		}
+		
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, prefix + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+	
+	/**
+	 * The progress of the listing of a folder in a synchronization. The next synchronization
+	 * resumes the listing after the last page listed, or before the first object listed that
+	 * was not synchronized, if any
+	 */
+	private static class ListingProgress {
+		
+		private final String listingName;
+		private String nextMarker;
+		private boolean failed;
+		private String failedMarker;
+		
+		ListingProgress(String listingName) {
+			this.listingName = listingName;
+		}
+		
+		synchronized void setNextMarker(String nextMarker) {
+			this.nextMarker = nextMarker;
+		}
+		
+		/**
+		 * Records that an object was not synchronized, the objects are downloaded in any
+		 * order, the listing resumes before the first one in the order of the keys
+		 * @param marker the marker before the object, null for the start of the listing
+		 */
+		synchronized void failed(String marker) {
+			if(!failed || failedMarker != null && (marker == null || marker.compareTo(failedMarker) < 0))
+				failedMarker = marker;
+			failed = true;
+		}
+		
+		synchronized String getMarker() {
+			return failed?failedMarker:nextMarker;
+		}
+	}
 }
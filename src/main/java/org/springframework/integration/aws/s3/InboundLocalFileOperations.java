@@ -58,4 +58,32 @@ public interface InboundLocalFileOperations {
 	 * @param in
 	 */
 	public void writeToFile(File directory,String fileName,InputStream in) throws IOException ;
+	
+	/**
+	 * Writes the contents of the given {@link InputStream} as in 
+	 * {@link #writeToFile(File, String, InputStream)}, the space for the given content length
+	 * is allocated before the contents are written.
+	 * @param directory
+	 * @param fileName
+	 * @param in
+	 * @param contentLength the length of the contents, -1 if unknown
+	 */
+	public void writeToFile(File directory,String fileName,InputStream in,long contentLength) throws IOException ;
+	
+	/**
+	 * The method will write to the file with the specified name in the specified directory
+	 * using the given {@link LocalFileWriter}, the writer writes to a temporary file which
+	 * is renamed upon completion. The {@link FileEventHandler} instance(s) are notified
+	 * as in {@link #writeToFile(File, String, InputStream)}.
+	 * @param directory
+	 * @param fileName
+	 * @param writer
+	 */
+	public void writeToFile(File directory,String fileName,LocalFileWriter writer) throws IOException ;
+	
+	/**
+	 * Forces the files written since the last flush to the storage device, if the files are
+	 * forced in batches
+	 */
+	public void flush() throws IOException ;
 }
@@ -15,33 +15,53 @@
  */
 package org.springframework.integration.aws.s3;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.integration.aws.s3.core.FileChannelWriter;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
 /**
- * The Implementation class for the {@link InboundLocalFileOperations}
+ * The Implementation class for the {@link InboundLocalFileOperations}. The contents of a stream
+ * are written through a file channel, transferred directly from the channel of a file stream or
+ * else gathered in a large direct buffer, with the known content length preallocated. The 
+ * temporary file is renamed to the destination file, replacing it atomically where the file 
+ * system allows it.
+ * <p>
+ * The files are forced to the storage device depending on the durability, not at all (the default),
+ * before each file is renamed, or in batches of files when {@link #flush()} is invoked or the
+ * batch is full.
+ * 
  * @author Amol Nayak
  *
  */
 public class InboundLocalFileOperationsImpl implements
 		InboundLocalFileOperations {
 	
+	public static final String DURABILITY_NONE = "none";
+	public static final String DURABILITY_FSYNC = "fsync";
+	public static final String DURABILITY_BATCHED = "batched";
+	public static final int DEFAULT_WRITE_BUFFER_SIZE = FileChannelWriter.DEFAULT_BUFFER_SIZE;
+	public static final int DEFAULT_SYNC_BATCH_SIZE = 100;
+	
 	private final Log logger = LogFactory.getLog(getClass());
 	
 	private List<FileEventHandler> handlers = new ArrayList<FileEventHandler>();
 	private String tempFileSuffix = ".writing";
+	private String durability = DURABILITY_NONE;
+	private FileChannelWriter channelWriter = new FileChannelWriter();
+	private int syncBatchSize = DEFAULT_SYNC_BATCH_SIZE;
+	//The files written since the last batch was forced
+	private final List<File> unsyncedFiles = new ArrayList<File>();
 	
 	/* (non-Javadoc)
 	 * @see org.springframework.integration.aws.s3.InboundLocalFileOperations#addEventListener(org.springframework.integration.aws.s3.FileEventHandler)
@@ -81,17 +101,59 @@ public class InboundLocalFileOperationsImpl implements
 	
 	public void writeToFile(File directory, String fileName, InputStream in)
 		throws IOException {
-		Assert.isTrue(directory!= null && StringUtils.hasText(fileName) && in != null,
-				"Please provide a valid directory location, non empty file name and non null InputStream");
+		writeToFile(directory, fileName, in, -1);
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.springframework.integration.aws.s3.InboundLocalFileOperations#writeToFile(java.io.File, java.lang.String, java.io.InputStream, long)
+	 */
+	
+	public void writeToFile(File directory, String fileName, final InputStream in,
+			final long contentLength) throws IOException {
+		Assert.isTrue(in != null, "Please provide a non null InputStream");
+		writeToFile(directory, fileName, new LocalFileWriter() {
+			public void write(File file) throws IOException {
+				RandomAccessFile raf = new RandomAccessFile(file, "rw");
+				try {
+					//Preallocate, also truncates any previous contents of a larger size
+					raf.setLength(contentLength > 0?contentLength:0);
+					FileChannel channel = raf.getChannel();
+					long written = in instanceof FileInputStream?
+							transfer(((FileInputStream)in).getChannel(), channel):channelWriter.write(in, channel, 0);
+					//The content length may not be the actual length
+					if(written != contentLength && contentLength > 0)
+						raf.setLength(written);
+				} finally {
+					raf.close();
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Transfers the contents of the file channel without copying them in the JVM
+	 * @return the number of bytes written
+	 */
+	private long transfer(FileChannel source,FileChannel channel) throws IOException {
+		long position = 0;
+		for(long transferred = 0;
+				(transferred = channel.transferFrom(source, position, channelWriter.getBufferSize())) > 0;)
+			position += transferred;
+		return position;
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.springframework.integration.aws.s3.InboundLocalFileOperations#writeToFile(java.io.File, java.lang.String, org.springframework.integration.aws.s3.LocalFileWriter)
+	 */
+	
+	public void writeToFile(File directory, String fileName, LocalFileWriter writer)
+		throws IOException {
+		Assert.isTrue(directory!= null && StringUtils.hasText(fileName) && writer != null,
+				"Please provide a valid directory location, non empty file name and non null writer");
 		if(!directory.isDirectory())
 			throw new IllegalArgumentException("File parameter passed should be a directory");		
 		
-		if(!(in instanceof ByteArrayInputStream) 
-				&& !(in instanceof BufferedInputStream)) {
-			in = new BufferedInputStream(in);
-		}
 		String tempFileName = fileName + tempFileSuffix;
-		byte[] bytes = new byte[4096];	//4K
 		
 		String absoluteDirectoryPath = directory.getAbsolutePath();
 		String filePath;
@@ -101,16 +163,23 @@ public class InboundLocalFileOperationsImpl implements
 			filePath = absoluteDirectoryPath + File.separator + tempFileName;
 		
 		final File fileToWrite = new File(filePath);
-		FileOutputStream fos = new FileOutputStream(fileToWrite);
-		BufferedOutputStream bos = new BufferedOutputStream(fos);
-		for(int read = 0;(read = in.read(bytes)) != -1;) {
-			bos.write(bytes, 0, read);
-		}		
-		bos.close();
+		boolean written = false;
+		try {
+			writer.write(fileToWrite);
+			written = true;
+		} finally {
+			//Do not leave the partially written file behind
+			if(!written && fileToWrite.exists() && !fileToWrite.delete())
+				logger.warn("Unable to delete the partially written file " + fileToWrite.getName());
+		}
+		if(DURABILITY_FSYNC.equals(durability))
+			force(fileToWrite);
 		//Now rename the file
 		final File dest = new File(filePath.substring(0, filePath.indexOf(tempFileSuffix)));
-		//ifDestination file exists, delete it
-		if(dest.exists()) {
+		//The rename replaces an existing file atomically on POSIX file systems, others
+		//refuse to replace it and the existing file is deleted first
+		boolean renamed = fileToWrite.renameTo(dest);
+		if(!renamed && dest.exists()) {
 			boolean isDeleteSuccessful = dest.delete();
 			if(isDeleteSuccessful) {
 				if(logger.isDebugEnabled())
@@ -118,10 +187,12 @@ public class InboundLocalFileOperationsImpl implements
 			} else {
 				if(logger.isWarnEnabled())
 					logger.warn("Deletion of file " + dest.getName() + " not successful");
-			}				
-			//TODO: Check why the delete is not working			
+			}
+			renamed = fileToWrite.renameTo(dest);
 		}
-		final boolean isRenameSuccessful = fileToWrite.renameTo(dest);
+		final boolean isRenameSuccessful = renamed;
+		if(DURABILITY_BATCHED.equals(durability))
+			addToBatch(isRenameSuccessful?dest:fileToWrite);
 		if(isRenameSuccessful ) {
 			if(logger.isDebugEnabled())
 				logger.debug("Renaming of file " + dest.getName() + " to " 
@@ -159,5 +230,81 @@ public class InboundLocalFileOperationsImpl implements
 			}
 		}
 	}
+	
+	/* (non-Javadoc)
+	 * @see org.springframework.integration.aws.s3.InboundLocalFileOperations#flush()
+	 */
+	
+	public void flush() throws IOException {
+		List<File> files;
+		synchronized (unsyncedFiles) {
+			if(unsyncedFiles.isEmpty())
+				return;
+			files = new ArrayList<File>(unsyncedFiles);
+			unsyncedFiles.clear();
+		}
+		if(logger.isDebugEnabled())
+			logger.debug("Forcing " + files.size() + " files to the storage device");
+		for(File file:files) {
+			if(file.exists())	//Unless consumed since
+				force(file);
+		}
+	}
+	
+	/**
+	 * Adds the file to the batch of files to be forced, forcing the batch once full
+	 */
+	private void addToBatch(File file) throws IOException {
+		boolean full;
+		synchronized (unsyncedFiles) {
+			unsyncedFiles.add(file);
+			full = unsyncedFiles.size() >= syncBatchSize;
+		}
+		if(full)
+			flush();
+	}
+	
+	/**
+	 * Forces the contents and the metadata of the file to the storage device
+	 */
+	private void force(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.getChannel().force(true);
+		} finally {
+			raf.close();
+		}
+	}
+	
+	/**
+	 * Sets when the files written are forced to the storage device, {@link #DURABILITY_NONE} leaves
+	 * it to the operating system, {@link #DURABILITY_FSYNC} forces each file before it is renamed
+	 * and {@link #DURABILITY_BATCHED} forces the files once the batch is full or flushed
+	 * @param durability
+	 */
+	public void setDurability(String durability) {
+		Assert.isTrue(DURABILITY_NONE.equals(durability) || DURABILITY_FSYNC.equals(durability) 
+				|| DURABILITY_BATCHED.equals(durability), "Unknown durability " + durability);
+		this.durability = durability;
+	}
+	
+	/**
+	 * Sets the size of the direct buffer in which the contents of a stream are gathered before
+	 * written to the file, allocated once per writing thread
+	 * @param writeBufferSize
+	 */
+	public void setWriteBufferSize(int writeBufferSize) {
+		Assert.isTrue(writeBufferSize > 0, "Write buffer size should be positive");
+		this.channelWriter = new FileChannelWriter(writeBufferSize);
+	}
+	
+	/**
+	 * Sets the number of files forced together with the batched durability
+	 * @param syncBatchSize
+	 */
+	public void setSyncBatchSize(int syncBatchSize) {
+		Assert.isTrue(syncBatchSize > 0, "Sync batch size should be positive");
+		this.syncBatchSize = syncBatchSize;
+	}
 }
 
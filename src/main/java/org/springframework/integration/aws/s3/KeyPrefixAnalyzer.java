@@ -0,0 +1,304 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.util.Assert;
+
+/**
+ * Extracts from the patterns the keys are filtered with the literal prefixes one of which
+ * every key matching the pattern starts with. The listing of the objects can then be limited
+ * to the keys with these prefixes. The prefixes are at most {@link #MAX_PREFIXES}, a pattern
+ * such as <i>(orders|invoices)-2012-.*</i> gives two prefixes, <i>orders-2012-</i> and 
+ * <i>invoices-2012-</i>. The prefixes are shortened rather than exceed the max number.
+ * 
+ * @author Amol Nayak
+ *
+ */
+public class KeyPrefixAnalyzer {
+
+	/**
+	 * The max number of prefixes extracted from a pattern
+	 */
+	public static final int MAX_PREFIXES = 16;
+	
+	private static final String REGEX_META_CHARACTERS = "\\[](){}.*+?^$|";
+	
+	/**
+	 * Gets the prefixes of the keys matching the wildcard, the wildcard is matched 
+	 * case insensitively if so specified, each letter of the prefix is then both in
+	 * lower and upper case
+	 * @param wildcard the wildcard with * and ? as the wildcard characters
+	 * @param ignoreCase true if the wildcard is matched case insensitively
+	 * @return the prefixes or null if keys with any prefix may match
+	 */
+	public static Set<String> getWildcardPrefixes(String wildcard,boolean ignoreCase) {
+		Assert.notNull(wildcard, "Non null wildcard required");
+		Set<String> prefixes = new LinkedHashSet<String>();
+		prefixes.add("");
+		for(int i = 0;i < wildcard.length();i++) {
+			char c = wildcard.charAt(i);
+			if(c == '*' || c == '?')
+				break;
+			Set<String> variants = new LinkedHashSet<String>();
+			variants.add(String.valueOf(c));
+			if(ignoreCase && Character.toLowerCase(c) != Character.toUpperCase(c)) {
+				//Only ASCII letters have a single alternative case
+				if(c > 127)
+					break;
+				variants.add(String.valueOf(Character.toLowerCase(c)));
+				variants.add(String.valueOf(Character.toUpperCase(c)));
+			}
+			Set<String> extended = append(prefixes, variants);
+			if(extended == null)
+				break;
+			prefixes = extended;
+		}
+		return minimize(prefixes);
+	}
+	
+	/**
+	 * Gets the prefixes of the keys matching the regular expression, the literal characters,
+	 * escaped or quoted, at the start of the expression and its alternatives are extracted. 
+	 * Groups of alternatives are expanded. The extraction stops at the first character class,
+	 * wildcard, optional element or flag. 
+	 * @param regex the regular expression matched with the entire key
+	 * @return the prefixes or null if keys with any prefix may match
+	 */
+	public static Set<String> getRegexPrefixes(String regex) {
+		Assert.notNull(regex, "Non null regex required");
+		return minimize(getAlternativesPrefixes(regex, 0, regex.length()).values);
+	}
+	
+	/**
+	 * Gets the prefixes of the alternatives in the given region of the expression
+	 */
+	private static Prefixes getAlternativesPrefixes(String regex,int start,int end) {
+		Prefixes result = new Prefixes(new LinkedHashSet<String>(), true);
+		List<Integer> separators = getAlternativeSeparators(regex, start, end);
+		int branchStart = start;
+		for(int i = 0;i <= separators.size();i++) {
+			int branchEnd = i < separators.size()?separators.get(i):end;
+			Prefixes branch = getBranchPrefixes(regex, branchStart, branchEnd);
+			result.values.addAll(branch.values);
+			result.complete &= branch.complete;
+			if(result.values.contains("") || result.values.size() > MAX_PREFIXES)
+				return new Prefixes(any(), false);
+			branchStart = branchEnd + 1;
+		}
+		return result;
+	}
+	
+	/**
+	 * Gets the prefixes of a branch without alternatives at its top level, the prefixes
+	 * are complete if the branch is literal to its end
+	 */
+	private static Prefixes getBranchPrefixes(String regex,int start,int end) {
+		Set<String> prefixes = any();
+		int i = start;
+		if(i < end && regex.charAt(i) == '^')
+			i++;
+		while(i < end) {
+			char c = regex.charAt(i);
+			Set<String> literals;
+			int next;
+			boolean partial = false;
+			if(c == '\\') {
+				if(i + 1 >= end)
+					return new Prefixes(prefixes, false);
+				char escaped = regex.charAt(i + 1);
+				if(escaped == 'Q') {
+					int quoteEnd = regex.indexOf("\\E", i + 2);
+					if(quoteEnd == -1 || quoteEnd > end)
+						quoteEnd = end;
+					literals = single(regex.substring(i + 2, quoteEnd));
+					next = Math.min(quoteEnd + 2, end);
+				} else if(Character.isLetterOrDigit(escaped)) {
+					//A character class, boundary or back reference
+					return new Prefixes(prefixes, false);
+				} else {
+					literals = single(String.valueOf(escaped));
+					next = i + 2;
+				}
+			} else if(c == '(') {
+				int close = getGroupEnd(regex, i, end);
+				if(close == -1)
+					return new Prefixes(prefixes, false);
+				int groupStart = i + 1;
+				if(regex.startsWith("?:", groupStart))
+					groupStart += 2;
+				else if(groupStart < close && regex.charAt(groupStart) == '?')
+					return new Prefixes(prefixes, false);	//Flags or look around
+				Prefixes groupPrefixes = getAlternativesPrefixes(regex, groupStart, close);
+				if(groupPrefixes.values.contains(""))
+					return new Prefixes(prefixes, false);
+				literals = groupPrefixes.values;
+				next = close + 1;
+				partial = !groupPrefixes.complete;
+			} else if(REGEX_META_CHARACTERS.indexOf(c) != -1) {
+				return new Prefixes(prefixes, false);
+			} else {
+				literals = single(String.valueOf(c));
+				next = i + 1;
+			}
+			char quantifier = next < end?regex.charAt(next):0;
+			if(quantifier == '?' || quantifier == '*' || quantifier == '{') {
+				//The last character or the group is optional or repeated, the literal 
+				//characters before it are a prefix
+				if(c != '(') {
+					String literal = literals.iterator().next();
+					Set<String> extended = append(prefixes, single(literal.substring(0, Math.max(literal.length() - 1, 0))));
+					if(extended != null)
+						prefixes = extended;
+				}
+				return new Prefixes(prefixes, false);
+			}
+			Set<String> extended = append(prefixes, literals);
+			if(extended == null)
+				return new Prefixes(prefixes, false);
+			prefixes = extended;
+			if(quantifier == '+' || partial)
+				return new Prefixes(prefixes, false);
+			i = next;
+		}
+		return new Prefixes(prefixes, true);
+	}
+	
+	/**
+	 * Gets the positions of the | separating the alternatives at the top level of the region
+	 */
+	private static List<Integer> getAlternativeSeparators(String regex,int start,int end) {
+		List<Integer> separators = new ArrayList<Integer>();
+		int depth = 0;
+		for(int i = start;i < end;i++) {
+			char c = regex.charAt(i);
+			if(c == '\\')
+				i++;
+			else if(c == '[')
+				i = getClassEnd(regex, i, end);
+			else if(c == '(')
+				depth++;
+			else if(c == ')')
+				depth--;
+			else if(c == '|' && depth == 0)
+				separators.add(i);
+		}
+		return separators;
+	}
+	
+	/**
+	 * Gets the position of the parenthesis closing the group opened at the given position
+	 * @return the position or -1 if the group is not closed in the region
+	 */
+	private static int getGroupEnd(String regex,int open,int end) {
+		int depth = 0;
+		for(int i = open;i < end;i++) {
+			char c = regex.charAt(i);
+			if(c == '\\')
+				i++;
+			else if(c == '[')
+				i = getClassEnd(regex, i, end);
+			else if(c == '(')
+				depth++;
+			else if(c == ')' && --depth == 0)
+				return i;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Gets the position of the bracket closing the character class opened at the given position
+	 */
+	private static int getClassEnd(String regex,int open,int end) {
+		int i = open + 1;
+		if(i < end && regex.charAt(i) == '^')
+			i++;
+		if(i < end && regex.charAt(i) == ']')
+			i++;	//A ] first in the class is literal
+		for(;i < end;i++) {
+			char c = regex.charAt(i);
+			if(c == '\\')
+				i++;
+			else if(c == ']')
+				return i;
+		}
+		return end;
+	}
+	
+	/**
+	 * Appends each of the suffixes to each of the prefixes
+	 * @return the prefixes or null if they would be more than the max
+	 */
+	private static Set<String> append(Set<String> prefixes,Set<String> suffixes) {
+		if(prefixes.size() * suffixes.size() > MAX_PREFIXES)
+			return null;
+		Set<String> appended = new LinkedHashSet<String>();
+		for(String prefix:prefixes) {
+			for(String suffix:suffixes)
+				appended.add(prefix + suffix);
+		}
+		return appended;
+	}
+	
+	/**
+	 * Removes the prefixes starting with another of the prefixes
+	 * @return the prefixes or null if one of them is empty
+	 */
+	private static Set<String> minimize(Set<String> prefixes) {
+		if(prefixes.isEmpty() || prefixes.contains(""))
+			return null;
+		Set<String> minimal = new LinkedHashSet<String>(prefixes);
+		for(Iterator<String> iterator = minimal.iterator();iterator.hasNext();) {
+			String prefix = iterator.next();
+			for(String other:prefixes) {
+				if(prefix.length() > other.length() && prefix.startsWith(other)) {
+					iterator.remove();
+					break;
+				}
+			}
+		}
+		return minimal;
+	}
+	
+	private static Set<String> any() {
+		return single("");
+	}
+	
+	private static Set<String> single(String value) {
+		Set<String> values = new LinkedHashSet<String>();
+		values.add(value);
+		return values;
+	}
+	
+	/**
+	 * The prefixes of a region of the expression, complete if the region is entirely literal
+	 */
+	private static class Prefixes {
+		
+		private final Set<String> values;
+		private boolean complete;
+		
+		Prefixes(Set<String> values, boolean complete) {
+			this.values = values;
+			this.complete = complete;
+		}
+	}
+}
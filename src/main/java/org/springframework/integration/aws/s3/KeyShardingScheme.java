@@ -0,0 +1,125 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.springframework.util.Assert;
+
+/**
+ * Spreads the objects of a folder across a fixed number of hash prefixes so that
+ * the writes at high rates are not concentrated on a single S3 partition. The object 
+ * with name <i>name</i> is stored as <i>shard/name</i>, where the shard is derived from 
+ * the MD5 hash of the name and written as fixed width lower case hex, for e.g. with 
+ * 16 shards the shards are 0 to f and with 256 shards 00 to ff.
+ * <p>
+ * The scheme is stable, the shard of a name depends only on the name and the number 
+ * of shards, hence the writers and the readers of the folder need to be configured with 
+ * the same number of shards.
+ * 
+ * @author Amol Nayak
+ *
+ */
+public class KeyShardingScheme {
+
+	/**
+	 * The max number of shards supported
+	 */
+	public static final int MAX_SHARDS = 4096;
+	
+	private static final String SHARD_SEPARATOR = "/";
+	
+	private final int shardCount;
+	
+	private final int width;
+	
+	/**
+	 * 
+	 * @param shardCount the number of shards, between 1 and {@link #MAX_SHARDS}
+	 */
+	public KeyShardingScheme(int shardCount) {
+		Assert.isTrue(shardCount > 0 && shardCount <= MAX_SHARDS, 
+				"Shard count should be between 1 and " + MAX_SHARDS);
+		this.shardCount = shardCount;
+		this.width = Integer.toHexString(Math.max(shardCount - 1, 1)).length();
+	}
+	
+	/**
+	 * Gets the shard of the object with the given name
+	 * @param objectName
+	 * @return
+	 */
+	public String getShard(String objectName) {
+		Assert.notNull(objectName, "Object name should be non null");
+		byte[] hash = md5(objectName);
+		int value = ((hash[0] & 0xFF) << 24 | (hash[1] & 0xFF) << 16 | (hash[2] & 0xFF) << 8 | (hash[3] & 0xFF))
+						& Integer.MAX_VALUE;
+		return toShard(value % shardCount);
+	}
+	
+	/**
+	 * Gets the name under which the object with the given name is stored
+	 * @param objectName
+	 * @return
+	 */
+	public String getShardedName(String objectName) {
+		return getShard(objectName) + SHARD_SEPARATOR + objectName;
+	}
+	
+	/**
+	 * Gets the folders of all the shards under the given folder, in order
+	 * @param folder the folder holding the shards, null or / for the root of the bucket
+	 * @return
+	 */
+	public List<String> getShardFolders(String folder) {
+		String base;
+		if(folder == null || SHARD_SEPARATOR.equals(folder))
+			base = "";
+		else
+			base = folder.endsWith(SHARD_SEPARATOR)?folder:folder + SHARD_SEPARATOR;
+		List<String> folders = new ArrayList<String>(shardCount);
+		for(int i = 0;i < shardCount;i++)
+			folders.add(base + toShard(i));
+		return Collections.unmodifiableList(folders);
+	}
+	
+	public int getShardCount() {
+		return shardCount;
+	}
+	
+	private String toShard(int shard) {
+		String hex = Integer.toHexString(shard);
+		StringBuilder builder = new StringBuilder(width);
+		for(int i = hex.length();i < width;i++)
+			builder.append('0');
+		return builder.append(hex).toString();
+	}
+	
+	private byte[] md5(String objectName) {
+		try {
+			return MessageDigest.getInstance("MD5").digest(objectName.getBytes("UTF-8"));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("MD5 digest not available", e);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException("UTF-8 encoding not available", e);
+		}
+	}
+}
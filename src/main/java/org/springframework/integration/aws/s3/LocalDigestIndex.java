@@ -0,0 +1,238 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.integration.aws.core.AmazonWSCommonUtils;
+import org.springframework.util.Assert;
+
+/**
+ * An index of the MD5 digests of the files in a local directory. An entry is valid as long 
+ * as the size and last modified time of the file are those recorded with it, files are
+ * hence hashed only when they change. Along with the digest the index records the ETag of
+ * the remote object known to have the contents of the file.
+ * The index is persisted in a file in the directory it indexes.
+ * 
+ * @author Amol Nayak
+ *
+ */
+public class LocalDigestIndex {
+
+	private final Log logger = LogFactory.getLog(getClass());
+	
+	public static final String DEFAULT_INDEX_FILE_NAME = ".s3-digest-index";
+	
+	private static final String SEPARATOR = ":";
+	
+	private final File directory;
+	
+	private final File indexFile;
+	
+	private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+	
+	private volatile boolean dirty;
+	
+	/**
+	 * Creates the index of the given directory persisted in the file with the
+	 * default name {@link #DEFAULT_INDEX_FILE_NAME}
+	 * @param directory
+	 */
+	public LocalDigestIndex(File directory) {
+		this(directory, DEFAULT_INDEX_FILE_NAME);
+	}
+	
+	/**
+	 * 
+	 * @param directory the directory whose files are indexed
+	 * @param indexFileName the name of the file in the directory the index is persisted in
+	 */
+	public LocalDigestIndex(File directory,String indexFileName) {
+		Assert.notNull(directory, "Non null directory required");
+		Assert.hasText(indexFileName, "Non empty index file name required");
+		this.directory = directory;
+		this.indexFile = new File(directory, indexFileName);
+	}
+	
+	/**
+	 * Gets the hex MD5 digest of the file, the file is hashed only if it is not indexed
+	 * or has changed since it was indexed
+	 * @param file
+	 * @return
+	 */
+	public String getMD5Hex(File file) throws IOException {
+		Entry entry = getValidEntry(file);
+		if(entry != null && entry.md5Hex != null)
+			return entry.md5Hex;
+		long length = file.length();
+		long lastModified = file.lastModified();
+		byte[] md5 = AmazonWSCommonUtils.getContentsMD5AsBytes(file);
+		if(md5 == null)
+			throw new IOException("Unable to compute the MD5 digest of " + file.getAbsolutePath());
+		String md5Hex = new String(Hex.encodeHex(md5));
+		//The file might have changed while being hashed, do not index it then
+		if(file.length() == length && file.lastModified() == lastModified)
+			put(file, new Entry(length, lastModified, md5Hex, entry != null?entry.eTag:null));
+		return md5Hex;
+	}
+	
+	/**
+	 * Gets the ETag of the remote object recorded to have the contents of the file
+	 * @param file
+	 * @return the ETag or null if none recorded or the file changed since
+	 */
+	public String getETag(File file) {
+		Entry entry = getValidEntry(file);
+		return entry != null?entry.eTag:null;
+	}
+	
+	/**
+	 * Records the digest and the remote ETag for the current contents of the file
+	 * @param file
+	 * @param md5Hex the hex MD5 digest of the file, null if not known
+	 * @param eTag the ETag of the remote object the file has the contents of
+	 */
+	public void record(File file,String md5Hex,String eTag) {
+		if(md5Hex == null) {
+			Entry entry = getValidEntry(file);
+			if(entry != null)
+				md5Hex = entry.md5Hex;
+		}
+		put(file, new Entry(file.length(), file.lastModified(), md5Hex, eTag));
+	}
+	
+	/**
+	 * Removes the file from the index
+	 * @param file
+	 */
+	public void remove(File file) {
+		if(entries.remove(file.getName()) != null)
+			dirty = true;
+	}
+	
+	/**
+	 * Loads the index from its file, entries of files that no longer exist are discarded
+	 */
+	public synchronized void load() {
+		Properties properties;
+		try {
+			properties = PropertiesFileUtils.load(indexFile);
+		} catch (IOException e) {
+			logger.warn("Unable to load the digest index " + indexFile.getAbsolutePath() 
+					+ ", files will be rehashed", e);
+			return;
+		}
+		if(properties == null)
+			return;
+		for(Map.Entry<Object, Object> property:properties.entrySet()) {
+			String name = (String)property.getKey();
+			Entry entry = Entry.parse((String)property.getValue());
+			if(entry != null && new File(directory, name).isFile())
+				entries.put(name, entry);
+		}
+		if(logger.isDebugEnabled())
+			logger.debug("Loaded " + entries.size() + " entries from " + indexFile.getAbsolutePath());
+	}
+	
+	/**
+	 * Persists the index if modified since last saved, the file is replaced atomically
+	 * where the platform permits
+	 */
+	public synchronized void save() {
+		if(!dirty)
+			return;
+		dirty = false;
+		Properties properties = new Properties();
+		for(Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();iterator.hasNext();) {
+			Map.Entry<String, Entry> entry = iterator.next();
+			if(!new File(directory, entry.getKey()).isFile()) {
+				iterator.remove();
+				continue;
+			}
+			properties.setProperty(entry.getKey(), entry.getValue().toString());
+		}
+		try {
+			PropertiesFileUtils.store(properties, indexFile, "Digests of the files synchronized from Amazon S3");
+		} catch (IOException e) {
+			dirty = true;
+			logger.warn("Unable to save the digest index " + indexFile.getAbsolutePath(), e);
+		}
+	}
+	
+	/**
+	 * Gets the file the index is persisted in
+	 * @return
+	 */
+	public File getIndexFile() {
+		return indexFile;
+	}
+	
+	private Entry getValidEntry(File file) {
+		Entry entry = entries.get(file.getName());
+		if(entry != null && entry.length == file.length() && entry.lastModified == file.lastModified())
+			return entry;
+		return null;
+	}
+	
+	private void put(File file,Entry entry) {
+		entries.put(file.getName(), entry);
+		dirty = true;
+	}
+	
+	/**
+	 * An indexed file
+	 */
+	private static class Entry {
+		
+		private final long length;
+		private final long lastModified;
+		private final String md5Hex;
+		private final String eTag;
+		
+		Entry(long length, long lastModified, String md5Hex, String eTag) {
+			this.length = length;
+			this.lastModified = lastModified;
+			this.md5Hex = md5Hex;
+			this.eTag = eTag;
+		}
+		
+		static Entry parse(String value) {
+			String[] fields = value.split(SEPARATOR, -1);
+			if(fields.length != 4)
+				return null;
+			try {
+				return new Entry(Long.parseLong(fields[0]), Long.parseLong(fields[1]), 
+						fields[2].length() > 0?fields[2]:null, fields[3].length() > 0?fields[3]:null);
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+
+		public String toString() {
+			return length + SEPARATOR + lastModified + SEPARATOR + (md5Hex != null?md5Hex:"") 
+					+ SEPARATOR + (eTag != null?eTag:"");
+		}
+	}
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The callback used by {@link InboundLocalFileOperations} to write the contents of a
+ * file, the contents are written to a temporary file which is then renamed to the
+ * destination file
+ * 
+ * @author Amol Nayak
+ *
+ */
+public interface LocalFileWriter {
+
+	/**
+	 * Writes the contents to the given temporary file
+	 * @param file
+	 */
+	void write(File file) throws IOException;
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.util.Assert;
+
+/**
+ * Computes the ETag Amazon S3 assigns to an object uploaded in multiple parts, that is
+ * the hex MD5 of the concatenated MD5 of each part followed by "-" and the number of parts.
+ * The part size used by the uploader is not known, the calculator hence tries the configured
+ * part sizes and the size derived from the part count in the ETag. The parts of a file are 
+ * hashed in parallel.
+ * 
+ * @author Amol Nayak
+ *
+ */
+public class MultipartETagCalculator {
+
+	private final Log logger = LogFactory.getLog(getClass());
+	
+	private static final int MB = 1024 * 1024;
+	
+	private static final int BUFFER_SIZE = 65536;
+	
+	/**
+	 * The part sizes used by default by the common tools, 5MB is the minimum part size 
+	 * and is the one used by this library and the Amazon SDK
+	 */
+	public static final long[] DEFAULT_PART_SIZES = {5 * MB, 8 * MB, 15 * MB, 16 * MB};
+	
+	private final Executor executor;
+	
+	private long[] partSizes = DEFAULT_PART_SIZES;
+	
+	/**
+	 * Creates a calculator hashing the parts on a daemon thread pool with
+	 * one thread per available processor
+	 */
+	public MultipartETagCalculator() {
+		this(createDefaultExecutor());
+	}
+	
+	/**
+	 * 
+	 * @param executor the executor on which the parts are hashed
+	 */
+	public MultipartETagCalculator(Executor executor) {
+		Assert.notNull(executor, "Non null executor required");
+		this.executor = executor;
+	}
+	
+	/**
+	 * Checks if the given file has the contents of the object with the given multipart ETag.
+	 * 
+	 * @param file
+	 * @param eTag the ETag of the form &lt;hex md5&gt;-&lt;number of parts&gt;
+	 * @return false if the ETag is not a multipart ETag or if no candidate part size 
+	 * 			gives the ETag
+	 */
+	public boolean matches(File file,String eTag) throws IOException {
+		if(eTag == null)
+			return false;
+		if(eTag.startsWith("\"") && eTag.endsWith("\"") && eTag.length() > 1)
+			eTag = eTag.substring(1, eTag.length() - 1);
+		int index = eTag.lastIndexOf('-');
+		if(index == -1)
+			return false;
+		int partCount;
+		try {
+			partCount = Integer.parseInt(eTag.substring(index + 1));
+		} catch (NumberFormatException e) {
+			return false;
+		}
+		long length = file.length();
+		for(long partSize:getCandidatePartSizes(length, partCount)) {
+			if(eTag.equalsIgnoreCase(calculate(file, partSize))) {
+				if(logger.isDebugEnabled())
+					logger.debug("File " + file.getName() + " matches ETag " + eTag 
+							+ " with a part size of " + partSize);
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Computes the multipart ETag of the given file for the given part size
+	 * @param file
+	 * @param partSize
+	 * @return
+	 */
+	public String calculate(File file,long partSize) throws IOException {
+		Assert.isTrue(partSize > 0, "Part size should be positive");
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long length = channel.size();
+			int partCount = getPartCount(length, partSize);
+			List<Future<byte[]>> parts = new ArrayList<Future<byte[]>>(partCount);
+			try {
+				for(int part = 0;part < partCount;part++) {
+					long position = part * partSize;
+					FutureTask<byte[]> task = new FutureTask<byte[]>(
+							new PartDigestTask(channel, position, Math.min(partSize, length - position)));
+					parts.add(task);
+					executor.execute(task);
+				}
+				MessageDigest digest = getDigest();
+				for(Future<byte[]> part:parts)
+					digest.update(part.get());
+				return new String(Hex.encodeHex(digest.digest())) + "-" + partCount;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				cancel(parts);
+				throw new IOException("Interrupted while hashing " + file.getName());
+			} catch (ExecutionException e) {
+				cancel(parts);
+				Throwable cause = e.getCause();
+				if(cause instanceof IOException)
+					throw (IOException)cause;
+				throw new IllegalStateException("Unable to hash " + file.getName(), cause);
+			}
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Gets the part sizes that split an object of the given length in the given
+	 * number of parts, the configured part sizes are tried first followed by the
+	 * smallest whole number of megabytes giving the part count 
+	 */
+	Set<Long> getCandidatePartSizes(long length,int partCount) {
+		Set<Long> candidates = new LinkedHashSet<Long>();
+		if(partCount < 1)
+			return candidates;
+		for(long partSize:partSizes) {
+			if(getPartCount(length, partSize) == partCount)
+				candidates.add(partSize);
+		}
+		long derived = (length + partCount - 1) / partCount;
+		long derivedMB = ((derived + MB - 1) / MB) * MB;
+		if(derivedMB > 0 && getPartCount(length, derivedMB) == partCount)
+			candidates.add(derivedMB);
+		if(derived > 0 && getPartCount(length, derived) == partCount)
+			candidates.add(derived);
+		return candidates;
+	}
+	
+	private int getPartCount(long length,long partSize) {
+		if(length == 0)
+			return 1;
+		return (int)((length + partSize - 1) / partSize);
+	}
+	
+	private void cancel(List<Future<byte[]>> parts) {
+		for(Future<byte[]> part:parts)
+			part.cancel(true);
+	}
+	
+	private static MessageDigest getDigest() {
+		try {
+			return MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("MD5 digest not available", e);
+		}
+	}
+	
+	private static ExecutorService createDefaultExecutor() {
+		final AtomicInteger threadCount = new AtomicInteger();
+		return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), 
+				new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "s3-etag-hash-" + threadCount.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+	
+	/**
+	 * Sets the part sizes tried in order when matching a multipart ETag
+	 * @param partSizes
+	 */
+	public void setPartSizes(long[] partSizes) {
+		Assert.notNull(partSizes, "Non null part sizes required");
+		this.partSizes = partSizes.clone();
+	}
+	
+	/**
+	 * The task that digests one part of the file
+	 */
+	private static class PartDigestTask implements Callable<byte[]> {
+		
+		private final FileChannel channel;
+		private final long position;
+		private final long length;
+		
+		PartDigestTask(FileChannel channel, long position, long length) {
+			this.channel = channel;
+			this.position = position;
+			this.length = length;
+		}
+
+		public byte[] call() throws Exception {
+			MessageDigest digest = getDigest();
+			ByteBuffer buffer = ByteBuffer.allocate((int)Math.min(BUFFER_SIZE, Math.max(length, 1)));
+			long offset = position;
+			long end = position + length;
+			while(offset < end) {
+				buffer.clear();
+				if(end - offset < buffer.capacity())
+					buffer.limit((int)(end - offset));
+				int read = channel.read(buffer, offset);
+				if(read == -1)
+					throw new IOException("File truncated while hashing");
+				digest.update(buffer.array(), 0, read);
+				offset += read;
+			}
+			return digest.digest();
+		}
+	}
+}
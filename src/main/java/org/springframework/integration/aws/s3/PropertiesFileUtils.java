@@ -0,0 +1,99 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * Loads and saves the local state files, a file is saved to a temporary file first and 
+ * then renamed to replace the previous one atomically where the platform permits
+ * 
+ * @author Amol Nayak
+ *
+ */
+final class PropertiesFileUtils {
+
+	private static final String TEMP_FILE_SUFFIX = ".tmp";
+	
+	private PropertiesFileUtils() {
+		
+	}
+	
+	/**
+	 * Loads the properties from the given file
+	 * @param file
+	 * @return the properties, null if the file does not exist
+	 * @throws IOException
+	 */
+	static Properties load(File file) throws IOException {
+		if(!file.isFile())
+			return null;
+		Properties properties = new Properties();
+		InputStream in = null;
+		try {
+			in = new FileInputStream(file);
+			properties.load(in);
+		} finally {
+			close(in);
+		}
+		return properties;
+	}
+	
+	/**
+	 * Saves the properties to the given file, replacing it
+	 * @param properties
+	 * @param file
+	 * @param comments the comments written at the top of the file
+	 * @throws IOException
+	 */
+	static void store(Properties properties,File file,String comments) throws IOException {
+		File tempFile = new File(file.getAbsolutePath() + TEMP_FILE_SUFFIX);
+		OutputStream out = null;
+		try {
+			out = new FileOutputStream(tempFile);
+			properties.store(out, comments);
+			out.close();
+			out = null;
+			if(!tempFile.renameTo(file)) {
+				//Windows does not replace an existing file on rename
+				file.delete();
+				if(!tempFile.renameTo(file))
+					throw new IOException("Unable to rename " + tempFile + " to " + file);
+			}
+		} catch (IOException e) {
+			close(out);
+			tempFile.delete();
+			throw e;
+		}
+	}
+	
+	private static void close(Closeable closeable) {
+		if(closeable != null) {
+			try {
+				closeable.close();
+			} catch (IOException e) {
+				//Ignore
+			}
+		}
+	}
+}
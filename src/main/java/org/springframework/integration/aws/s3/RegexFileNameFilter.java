@@ -15,6 +15,8 @@
  */
 package org.springframework.integration.aws.s3;
 
+import java.util.Set;
+
 import org.apache.commons.io.filefilter.IOFileFilter;
 import org.apache.commons.io.filefilter.RegexFileFilter;
 import org.springframework.util.Assert;
@@ -29,6 +31,7 @@ import org.springframework.util.StringUtils;
  */
 public class RegexFileNameFilter extends AbstractFileNameFilter {	
 	private IOFileFilter filter;
+	private Set<String> keyPrefixes;
 	
 	/**
 	 * Default constructor accepting the regex
@@ -37,6 +40,7 @@ public class RegexFileNameFilter extends AbstractFileNameFilter {
 	public RegexFileNameFilter(String regex) {
 		Assert.isTrue(StringUtils.hasText(regex), "Regex should be non, non empty String");
 		filter = new RegexFileFilter(regex);
+		keyPrefixes = KeyPrefixAnalyzer.getRegexPrefixes(regex);
 	}
 
 
@@ -49,4 +53,10 @@ public class RegexFileNameFilter extends AbstractFileNameFilter {
 		return filter.accept(null, fileName);
 	}
 
+	/**
+	 * Gets the literal prefixes of the regex
+	 */
+	public Set<String> getKeyPrefixes() {
+		return keyPrefixes;
+	}
 }
@@ -0,0 +1,288 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.integration.Message;
+import org.springframework.util.Assert;
+
+/**
+ * Appends the payloads of the messages to local segment files, one open segment per
+ * remote directory. A segment is rolled once it reaches the max size or the max number
+ * of records, or once it has been open for the max age. The rolled segment is handed
+ * over to the {@link SegmentHandler} for uploading it as one object. The segments the 
+ * handler fails on are retained and handed over again on the next roll and on close. 
+ * A record which fails to be written is dropped from its segment.
+ * 
+ * @author Amol Nayak
+ *
+ */
+class RollingSegmentWriter extends AbstractBatchAccumulator<RollingSegmentWriter.Segment> {
+	
+	private final Log logger = LogFactory.getLog(getClass());
+	
+	private final File directory;
+	
+	private final long maxSize;
+	
+	private final int maxRecords;
+	
+	private final byte[] recordDelimiter;
+	
+	private final SegmentHandler segmentHandler;
+	
+	//The rolled segments the handler failed on, in the order rolled
+	private final List<Segment> retainedSegments = new ArrayList<Segment>();
+	
+	/**
+	 * 
+	 * @param directory the directory in which the segments are written
+	 * @param maxSize the size in bytes at which the segment is rolled, 0 if not bounded
+	 * @param maxRecords the number of records at which the segment is rolled, 0 if not bounded
+	 * @param maxAge the time in milliseconds after which the segment is rolled, 0 if not bounded
+	 * @param recordDelimiter the bytes written after each record, may be null
+	 * @param segmentHandler the handler of the rolled segments
+	 */
+	RollingSegmentWriter(File directory,long maxSize,int maxRecords,long maxAge,
+			byte[] recordDelimiter,SegmentHandler segmentHandler) {
+		super(maxAge > 0?maxAge:0, "s3-segment-roller");
+		Assert.notNull(directory, "Segment directory should be non null");
+		Assert.isTrue(directory.isDirectory(), "Segment directory " + directory + " should be a directory");
+		Assert.isTrue(maxSize > 0 || maxRecords > 0 || maxAge > 0, 
+				"At least one of max size, max records or max age of a segment is required");
+		Assert.notNull(segmentHandler, "Segment handler should be non null");
+		this.directory = directory;
+		this.maxSize = maxSize;
+		this.maxRecords = maxRecords;
+		this.recordDelimiter = recordDelimiter != null ? recordDelimiter : new byte[0];
+		this.segmentHandler = segmentHandler;
+	}
+	
+	/**
+	 * Appends the record to the open segment of the given remote directory, the segment
+	 * is opened if none is open.
+	 * @param folder the remote directory of the segment
+	 * @param message the message whose payload is being appended
+	 * @param record the contents of the record
+	 */
+	void append(String folder,Message<?> message,InputStream record) throws IOException {
+		Segment rolled = null;
+		synchronized (lock) {
+			Segment segment = getOpenBatch(folder);
+			if(segment == null) {
+				segment = openSegment(folder, message);
+				addOpenBatch(folder, segment);
+			}
+			try {
+				segment.write(record);
+			} catch (IOException e) {
+				if(segment.broken) {
+					removeOpenBatch(folder);
+					segment.discard();
+				}
+				throw e;
+			}
+			if((maxSize > 0 && segment.size >= maxSize) 
+					|| (maxRecords > 0 && segment.records >= maxRecords)) {
+				removeOpenBatch(folder);
+				rolled = segment;
+			}
+		}
+		if(rolled != null)
+			complete(rolled);
+	}
+	
+	/**
+	 * Rolls all the open segments, the retained segments are handed over again
+	 */
+	void flush() {
+		handleRetained();
+		super.flush();
+	}
+	
+	/**
+	 * Rolls all the open segments and stops the scheduler rolling the aged segments
+	 */
+	void close() {
+		super.close();
+		synchronized (retainedSegments) {
+			for(Segment segment:retainedSegments)
+				logger.warn("The segment " + segment.file + " of remote directory " + segment.folder 
+						+ " could not be handled and is left in the segment directory");
+			retainedSegments.clear();
+		}
+	}
+	
+	private Segment openSegment(String folder,Message<?> message) throws IOException {
+		File file = File.createTempFile("segment-", ".seg", directory);
+		Segment segment = new Segment(folder, message, file);
+		if(logger.isDebugEnabled())
+			logger.debug("Opened segment " + file.getName() + " for remote directory " + folder);
+		return segment;
+	}
+	
+	/**
+	 * Rolls the segment, the retained segments are handed over before it
+	 */
+	protected void complete(Segment segment) {
+		try {
+			segment.out.close();
+		} catch (IOException e) {
+			logger.error("Unable to close the segment " + segment.file, e);
+			return;
+		}
+		if(logger.isDebugEnabled())
+			logger.debug("Rolling segment " + segment.file.getName() + " with " + segment.records 
+					+ " records and " + segment.size + " bytes");
+		if(handleRetained())
+			handle(segment);
+		else
+			retain(segment);
+	}
+	
+	/**
+	 * Hands the retained segments over to the handler again, in the order they were rolled. 
+	 * The segments following one the handler fails on again are not tried.
+	 * @return true if no segment is retained anymore
+	 */
+	private boolean handleRetained() {
+		List<Segment> segments;
+		synchronized (retainedSegments) {
+			if(retainedSegments.isEmpty())
+				return true;
+			segments = new ArrayList<Segment>(retainedSegments);
+			retainedSegments.clear();
+		}
+		for(int i = 0;i < segments.size();i++) {
+			if(!handle(segments.get(i))) {
+				synchronized (retainedSegments) {
+					retainedSegments.addAll(segments.subList(i + 1, segments.size()));
+				}
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private boolean handle(Segment segment) {
+		try {
+			segmentHandler.handleSegment(segment.folder, segment.firstMessage, segment.file);
+			return true;
+		} catch (RuntimeException e) {
+			logger.error("Unable to handle the rolled segment " + segment.file 
+					+ ", the segment is retained till the next roll", e);
+			retain(segment);
+			return false;
+		}
+	}
+	
+	private void retain(Segment segment) {
+		synchronized (retainedSegments) {
+			retainedSegments.add(segment);
+		}
+	}
+	
+	/**
+	 * The handler of the rolled segments
+	 */
+	interface SegmentHandler {
+		
+		/**
+		 * Handles the rolled segment, the handler owns the segment file
+		 * @param folder the remote directory of the segment
+		 * @param firstMessage the message of the first record of the segment
+		 * @param segmentFile the file holding the records
+		 */
+		void handleSegment(String folder,Message<?> firstMessage,File segmentFile);
+	}
+	
+	/**
+	 * One open segment file
+	 */
+	class Segment {
+		
+		private final String folder;
+		private final Message<?> firstMessage;
+		private final File file;
+		private final FileOutputStream fileOut;
+		private final OutputStream out;
+		private final byte[] buffer = new byte[8192];
+		private long size;
+		private int records;
+		//Set if the segment could not be truncated to its last full record
+		private boolean broken;
+		
+		Segment(String folder,Message<?> firstMessage,File file) throws IOException {
+			this.folder = folder;
+			this.firstMessage = firstMessage;
+			this.file = file;
+			this.fileOut = new FileOutputStream(file);
+			this.out = new BufferedOutputStream(fileOut, 65536);
+		}
+		
+		/**
+		 * Appends the record, the segment is truncated to its last full record if the 
+		 * record fails to be written
+		 */
+		void write(InputStream record) throws IOException {
+			long recordStart = size;
+			try {
+				for(int read = 0;(read = record.read(buffer)) != -1;) {
+					out.write(buffer, 0, read);
+					size += read;
+				}
+				out.write(recordDelimiter);
+				size += recordDelimiter.length;
+			} catch (IOException e) {
+				try {
+					out.flush();
+					fileOut.getChannel().truncate(recordStart);
+					size = recordStart;
+				} catch (IOException truncateFailure) {
+					logger.error("Unable to truncate the segment " + file + " to its last full record", 
+							truncateFailure);
+					broken = true;
+				}
+				throw e;
+			}
+			records++;
+		}
+		
+		/**
+		 * Closes the broken segment without flushing the partial record, the segment file 
+		 * is left in the directory
+		 */
+		void discard() {
+			logger.error("The segment " + file + " of remote directory " + folder + " with " + records 
+					+ " records is left in the segment directory, its last record could not be dropped");
+			try {
+				fileOut.close();
+			} catch (IOException e) {
+				//Nothing to do
+			}
+		}
+	}
+}
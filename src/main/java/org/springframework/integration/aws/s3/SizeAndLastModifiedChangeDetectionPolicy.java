@@ -0,0 +1,45 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3;
+
+import java.io.File;
+import java.util.Date;
+
+import org.springframework.integration.aws.s3.core.S3ObjectSummary;
+
+/**
+ * The cheapest {@link ChangeDetectionPolicy}, the object is considered modified if its size
+ * is different from that of the file or if it was modified after the file. The contents of 
+ * the file are never read. A file whose ETag is recorded in the {@link LocalDigestIndex} with
+ * that of the object is not modified, regardless of its size, as is the case with the objects
+ * downloaded decompressed.
+ * @author Amol Nayak
+ *
+ */
+public class SizeAndLastModifiedChangeDetectionPolicy implements ChangeDetectionPolicy {
+
+	public boolean isModified(File file, S3ObjectSummary summary,
+			LocalDigestIndex index) {
+		//A file downloaded decompressed differs in size from the object
+		String eTag = summary.getETag();
+		if(eTag != null && eTag.equals(index.getETag(file)))
+			return false;
+		if(file.length() != summary.getSize())
+			return true;
+		Date lastModified = summary.getLastModified();
+		return lastModified == null || lastModified.getTime() > file.lastModified();
+	}
+}
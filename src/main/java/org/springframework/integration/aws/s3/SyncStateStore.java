@@ -0,0 +1,87 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3;
+
+/**
+ * The store of the state of the synchronization of a remote folder, it records the
+ * objects already synchronized and the marker from which the listing of a folder resumes.
+ * Objects unchanged since they were recorded are skipped by the synchronizer without 
+ * looking at the local files, the state hence outlives the local files, say when they are 
+ * moved away once processed.
+ * 
+ * @author Amol Nayak
+ *
+ */
+public interface SyncStateStore {
+
+	/**
+	 * Gets the recorded state of the object with the given key
+	 * @param key
+	 * @return the state recorded when the object was last synchronized, null if never
+	 */
+	SyncedObject get(String key);
+	
+	/**
+	 * Records the object as synchronized
+	 * @param object
+	 */
+	void put(SyncedObject object);
+	
+	/**
+	 * Gets the marker from which the listing of the given folder resumes
+	 * @param folder the folder listed, null for the root of the bucket
+	 * @return the marker, null if the listing starts from the first key 
+	 */
+	String getMarker(String folder);
+	
+	/**
+	 * Sets the marker from which the next listing of the given folder resumes
+	 * @param folder the folder listed, null for the root of the bucket
+	 * @param marker the marker, null to start from the first key
+	 */
+	void setMarker(String folder,String marker);
+	
+	/**
+	 * Starts a pass of the listing of the given folder from its first key, the keys listed
+	 * are recorded till the pass completes
+	 * @param folder the folder listed, null for the root of the bucket
+	 */
+	void startListing(String folder);
+	
+	/**
+	 * Records the key as listed in the current pass of the listing of the given folder
+	 * @param folder the folder listed, null for the root of the bucket
+	 * @param key
+	 */
+	void listed(String folder,String key);
+	
+	/**
+	 * Completes the pass of the listing of the given folder, the objects recorded with the 
+	 * given key prefix that were not listed, hence deleted since, are removed. Nothing is
+	 * removed if the pass did not start from the first key
+	 * @param folder the folder listed, null for the root of the bucket
+	 * @param keyPrefix the prefix of all the keys listed
+	 * @param delimiter the delimiter the folder is listed with, the keys with the delimiter
+	 * 			after the prefix are not listed. Null if listed without a delimiter
+	 */
+	void completeListing(String folder,String keyPrefix,String delimiter);
+	
+	/**
+	 * Persists the changes made since last flushed, invoked at the end of every 
+	 * synchronization
+	 */
+	void flush();
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3;
+
+import java.util.Date;
+
+import org.springframework.integration.aws.s3.core.S3ObjectSummary;
+import org.springframework.util.Assert;
+import org.springframework.util.ObjectUtils;
+
+/**
+ * The state of an object when it was synchronized, see {@link SyncStateStore}
+ * 
+ * @author Amol Nayak
+ *
+ */
+public class SyncedObject {
+
+	private final String key;
+	
+	private final String eTag;
+	
+	private final long size;
+	
+	private final long lastModified;
+	
+	/**
+	 * 
+	 * @param key
+	 * @param eTag
+	 * @param size
+	 * @param lastModified the last modified time of the object in milliseconds
+	 */
+	public SyncedObject(String key, String eTag, long size, long lastModified) {
+		Assert.hasText(key, "Non empty key required");
+		this.key = key;
+		this.eTag = eTag;
+		this.size = size;
+		this.lastModified = lastModified;
+	}
+	
+	/**
+	 * Creates the state of the object listed
+	 * @param summary
+	 */
+	public SyncedObject(S3ObjectSummary summary) {
+		this(summary.getKey(), summary.getETag(), summary.getSize(), 
+				summary.getLastModified() != null?summary.getLastModified().getTime():0);
+	}
+	
+	/**
+	 * Checks if the object listed is the one this state was recorded for
+	 * @param summary
+	 * @return true if the key, ETag, size and last modified time are all unchanged
+	 */
+	public boolean matches(S3ObjectSummary summary) {
+		Date modified = summary.getLastModified();
+		return key.equals(summary.getKey()) && ObjectUtils.nullSafeEquals(eTag, summary.getETag()) 
+				&& size == summary.getSize() && lastModified == (modified != null?modified.getTime():0);
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	public String getETag() {
+		return eTag;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	public String toString() {
+		return "SyncedObject [key=" + key + ", eTag=" + eTag + ", size=" + size 
+				+ ", lastModified=" + lastModified + "]";
+	}
+}
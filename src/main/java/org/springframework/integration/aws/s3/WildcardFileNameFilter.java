@@ -15,6 +15,10 @@
  */
 package org.springframework.integration.aws.s3;
 
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
 import org.apache.commons.io.IOCase;
 import org.apache.commons.io.filefilter.IOFileFilter;
 import org.apache.commons.io.filefilter.WildcardFileFilter;
@@ -29,6 +33,8 @@ import org.apache.commons.io.filefilter.WildcardFileFilter;
 public class WildcardFileNameFilter extends AbstractFileNameFilter {
 
 	private IOFileFilter filter;
+	private String wildcardString;
+	private Set<String> keyPrefixes;
 	
 	/**
 	 * Default construtor accepting the wildcard string
@@ -36,7 +42,9 @@ public class WildcardFileNameFilter extends AbstractFileNameFilter {
 	 */
 	public WildcardFileNameFilter(String wildcardString) {
 		filter = new WildcardFileFilter(wildcardString,IOCase.INSENSITIVE);
+		this.wildcardString = wildcardString;
 		//Our checks will be case insensitive
+		keyPrefixes = KeyPrefixAnalyzer.getWildcardPrefixes(wildcardString, true);
 	}
 
 	/* (non-Javadoc)
@@ -47,4 +55,40 @@ public class WildcardFileNameFilter extends AbstractFileNameFilter {
 		return filter.accept(null, fileName);
 	}
 
+	/**
+	 * Gets the literal prefixes of the wildcard, in both cases
+	 */
+	public Set<String> getKeyPrefixes() {
+		return keyPrefixes;
+	}
+	
+	/**
+	 * Gets the literal prefixes of the wildcard for the keys under the given folder. The 
+	 * folder is matched case insensitively and only the rest of the wildcard is expanded 
+	 * in both cases, the folder letters do not use up the prefixes.
+	 */
+	public Set<String> getKeyPrefixes(String folderPrefix) {
+		if(folderPrefix == null || folderPrefix.length() == 0)
+			return keyPrefixes;
+		int literalLength = 0;
+		while(literalLength < wildcardString.length() 
+				&& wildcardString.charAt(literalLength) != '*' && wildcardString.charAt(literalLength) != '?')
+			literalLength++;
+		if(literalLength < folderPrefix.length()) {
+			//The wildcard characters may match the rest of the folder
+			if(folderPrefix.regionMatches(true, 0, wildcardString, 0, literalLength))
+				return null;
+			return Collections.emptySet();
+		}
+		if(!wildcardString.regionMatches(true, 0, folderPrefix, 0, folderPrefix.length()))
+			return Collections.emptySet();
+		Set<String> namePrefixes = 
+			KeyPrefixAnalyzer.getWildcardPrefixes(wildcardString.substring(folderPrefix.length()), true);
+		if(namePrefixes == null)
+			return Collections.singleton(folderPrefix);
+		Set<String> prefixes = new LinkedHashSet<String>();
+		for(String namePrefix:namePrefixes)
+			prefixes.add(folderPrefix + namePrefix);
+		return prefixes;
+	}
 }
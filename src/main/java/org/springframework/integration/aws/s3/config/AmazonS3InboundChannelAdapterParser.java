@@ -43,6 +43,25 @@ public class AmazonS3InboundChannelAdapterParser extends
 	private static final String MAX_OBJECTS_PER_BATCH			=	"max-objects-per-batch";
 	private static final String FILE_WILDCARD					=	"file-wildcard";
 	private static final String FILE_NAME_REGEX					=	"file-name-regex";	
+	private static final String PARALLEL_DOWNLOAD_THRESHOLD		=	"parallel-download-threshold";
+	private static final String DOWNLOAD_RANGE_SIZE				=	"download-range-size";
+	private static final String CHANGE_DETECTION				=	"change-detection";
+	private static final String CHANGE_DETECTION_POLICY			=	"change-detection-policy";
+	private static final String DECOMPRESS						=	"decompress";
+	private static final String METRICS							=	"metrics";
+	private static final String KEY_SHARDS						=	"key-shards";
+	private static final String PARALLELISM						=	"parallelism";
+	private static final String SYNC_STATE_STORE				=	"sync-state-store";
+	private static final String PERSIST_SYNC_STATE				=	"persist-sync-state";
+	private static final String MAX_PAGES_PER_POLL				=	"max-pages-per-poll";
+	private static final String LISTING_PARTITIONS				=	"listing-partitions";
+	private static final String LISTING_THREADS					=	"listing-threads";
+	private static final String RECURSIVE						=	"recursive";
+	private static final String FOLDER_PARALLELISM				=	"folder-parallelism";
+	private static final String BACKGROUND_SYNC					=	"background-sync";
+	private static final String SYNC_INTERVAL					=	"sync-interval";
+	private static final String DURABILITY						=	"durability";
+	private static final String SYNC_BATCH_SIZE					=	"sync-batch-size";
 	
 	/* (non-Javadoc)
 	 * @see org.springframework.integration.config.xml.AbstractPollingInboundChannelAdapterParser#parseSource(org.w3c.dom.Element, org.springframework.beans.factory.xml.ParserContext)
@@ -64,6 +83,25 @@ public class AmazonS3InboundChannelAdapterParser extends
 		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, MAX_OBJECTS_PER_BATCH);
 		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, FILE_WILDCARD);
 		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, FILE_NAME_REGEX);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, PARALLEL_DOWNLOAD_THRESHOLD);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, DOWNLOAD_RANGE_SIZE);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, CHANGE_DETECTION);
+		IntegrationNamespaceUtils.setReferenceIfAttributeDefined(builder, element, CHANGE_DETECTION_POLICY);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, DECOMPRESS);
+		IntegrationNamespaceUtils.setReferenceIfAttributeDefined(builder, element, METRICS);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, KEY_SHARDS);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, PARALLELISM);
+		IntegrationNamespaceUtils.setReferenceIfAttributeDefined(builder, element, SYNC_STATE_STORE);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, PERSIST_SYNC_STATE);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, MAX_PAGES_PER_POLL);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, LISTING_PARTITIONS);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, LISTING_THREADS);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, RECURSIVE);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, FOLDER_PARALLELISM);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, BACKGROUND_SYNC);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, SYNC_INTERVAL);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, DURABILITY);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, SYNC_BATCH_SIZE);
 		
 		return builder.getBeanDefinition();
 	}
@@ -31,6 +31,7 @@ public class AmazonS3NamespaceHandler extends
 	public void init() {	
 		this.registerBeanDefinitionParser("outbound-channel-adapter",new AmazonS3OutboundChannelAdapterParser());
 		this.registerBeanDefinitionParser("inbound-channel-adapter", new AmazonS3InboundChannelAdapterParser());
+		this.registerBeanDefinitionParser("inbound-streaming-channel-adapter", new AmazonS3InboundStreamingChannelAdapterParser());
 	}
 
 }
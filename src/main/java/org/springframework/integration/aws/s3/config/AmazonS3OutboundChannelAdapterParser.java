@@ -16,6 +16,7 @@
 package org.springframework.integration.aws.s3.config;
 
 import org.springframework.beans.factory.BeanDefinitionStoreException;
+import org.springframework.beans.factory.config.RuntimeBeanReference;
 import org.springframework.beans.factory.support.AbstractBeanDefinition;
 import org.springframework.beans.factory.support.BeanDefinitionBuilder;
 import org.springframework.beans.factory.support.BeanDefinitionReaderUtils;
@@ -24,6 +25,7 @@ import org.springframework.expression.common.LiteralExpression;
 import org.springframework.integration.aws.core.config.AbstractAWSOutboundChannelAdapterParser;
 import org.springframework.integration.aws.s3.AmazonS3MessageHandler;
 import org.springframework.integration.aws.s3.DefaultFileNameGenerationStrategy;
+import org.springframework.integration.aws.s3.HashPrefixFileNameGenerationStrategy;
 import org.springframework.integration.aws.s3.core.AmazonS3OperationsImpl;
 import org.springframework.integration.config.ExpressionFactoryBean;
 import org.springframework.integration.config.xml.IntegrationNamespaceUtils;
@@ -49,6 +51,42 @@ public class AmazonS3OutboundChannelAdapterParser extends
 	private static final String REMOTE_DIRECTORY_EXPRESSION		=	"remote-directory-expression";
 	private static final String FILE_NAME_GENERATOR				=	"file-name-generator";
 	private static final String FILE_NAME_GENERATION_EXPRESSION	=	"file-name-generation-expression";
+	private static final String STREAMING_UPLOAD				=	"streaming-upload";
+	private static final String STREAMING_UPLOAD_PART_SIZE		=	"streaming-upload-part-size";
+	private static final String MAX_STREAMING_UPLOAD_MEMORY		=	"max-streaming-upload-memory";
+	private static final String ADAPTIVE_UPLOAD					=	"adaptive-upload";
+	private static final String MIN_UPLOAD_PART_SIZE			=	"min-upload-part-size";
+	private static final String MAX_UPLOAD_PART_SIZE			=	"max-upload-part-size";
+	private static final String MIN_UPLOAD_PARALLELISM			=	"min-upload-parallelism";
+	private static final String MAX_UPLOAD_PARALLELISM			=	"max-upload-parallelism";
+	private static final String UPLOAD_TAIL_LATENCY_TARGET		=	"upload-tail-latency-target";
+	private static final String UPLOAD_JOURNAL_DIRECTORY		=	"upload-journal-directory";
+	private static final String ORPHANED_UPLOAD_AGE				=	"orphaned-upload-age";
+	private static final String ASYNC							=	"async";
+	private static final String REPLY_CHANNEL					=	"reply-channel";
+	private static final String ERROR_CHANNEL					=	"error-channel";
+	private static final String ASYNC_UPLOAD_EXECUTOR			=	"async-upload-executor";
+	private static final String MAX_IN_FLIGHT_UPLOADS			=	"max-in-flight-uploads";
+	private static final String MAX_IN_FLIGHT_UPLOAD_BYTES		=	"max-in-flight-upload-bytes";
+	private static final String SPOOL_QUOTA						=	"spool-quota";
+	private static final String COMPRESSION						=	"compression";
+	private static final String COMPRESSION_LEVEL				=	"compression-level";
+	private static final String METRICS							=	"metrics";
+	private static final String SEGMENT_MAX_SIZE				=	"segment-max-size";
+	private static final String SEGMENT_MAX_RECORDS				=	"segment-max-records";
+	private static final String SEGMENT_MAX_AGE					=	"segment-max-age";
+	private static final String SEGMENT_DIRECTORY				=	"segment-directory";
+	private static final String SEGMENT_RECORD_DELIMITER		=	"segment-record-delimiter";
+	private static final String OPERATION						=	"operation";
+	private static final String DELETE_BATCH_SIZE				=	"delete-batch-size";
+	private static final String DELETE_BATCH_MAX_AGE			=	"delete-batch-max-age";
+	private static final String DELETE_FAILURE_CHANNEL			=	"delete-failure-channel";
+	private static final String SOURCE_KEY_EXPRESSION			=	"source-key-expression";
+	private static final String DESTINATION_KEY_EXPRESSION		=	"destination-key-expression";
+	private static final String DESTINATION_BUCKET				=	"destination-bucket";
+	private static final String COPY_PART_SIZE					=	"copy-part-size";
+	private static final String MAX_COPY_PARTS_IN_FLIGHT		=	"max-copy-parts-in-flight";
+	private static final String KEY_SHARDS						=	"key-shards";
 
 
 	/* (non-Javadoc)
@@ -75,6 +113,26 @@ public class AmazonS3OutboundChannelAdapterParser extends
 		IntegrationNamespaceUtils.setValueIfAttributeDefined(s3OpBuilder, element, TEMPORARY_DIRECTORY);
 		IntegrationNamespaceUtils.setValueIfAttributeDefined(s3OpBuilder, element, TEMPORARY_SUFFIX,"temporaryFileSuffix");
 		IntegrationNamespaceUtils.setReferenceIfAttributeDefined(s3OpBuilder, element, THREADPOOL_EXECUTOR);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(s3OpBuilder, element, STREAMING_UPLOAD);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(s3OpBuilder, element, STREAMING_UPLOAD_PART_SIZE);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(s3OpBuilder, element, MAX_STREAMING_UPLOAD_MEMORY);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(s3OpBuilder, element, ADAPTIVE_UPLOAD);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(s3OpBuilder, element, MIN_UPLOAD_PART_SIZE);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(s3OpBuilder, element, MAX_UPLOAD_PART_SIZE);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(s3OpBuilder, element, MIN_UPLOAD_PARALLELISM);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(s3OpBuilder, element, MAX_UPLOAD_PARALLELISM);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(s3OpBuilder, element, UPLOAD_TAIL_LATENCY_TARGET);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(s3OpBuilder, element, UPLOAD_JOURNAL_DIRECTORY);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(s3OpBuilder, element, ORPHANED_UPLOAD_AGE);
+		IntegrationNamespaceUtils.setReferenceIfAttributeDefined(s3OpBuilder, element, ASYNC_UPLOAD_EXECUTOR);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(s3OpBuilder, element, MAX_IN_FLIGHT_UPLOADS);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(s3OpBuilder, element, MAX_IN_FLIGHT_UPLOAD_BYTES);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(s3OpBuilder, element, SPOOL_QUOTA);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(s3OpBuilder, element, COMPRESSION);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(s3OpBuilder, element, COMPRESSION_LEVEL);
+		IntegrationNamespaceUtils.setReferenceIfAttributeDefined(s3OpBuilder, element, METRICS);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(s3OpBuilder, element, COPY_PART_SIZE);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(s3OpBuilder, element, MAX_COPY_PARTS_IN_FLIGHT);
 
 		String operationsService =
 			BeanDefinitionReaderUtils.registerWithGeneratedName(s3OpBuilder.getBeanDefinition(), context.getRegistry());
@@ -82,6 +140,21 @@ public class AmazonS3OutboundChannelAdapterParser extends
 		//Set the bucket and charset
 		builder.addConstructorArgReference(operationsService);
 		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, CHARSET);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, ASYNC);
+		IntegrationNamespaceUtils.setReferenceIfAttributeDefined(builder, element, REPLY_CHANNEL);
+		IntegrationNamespaceUtils.setReferenceIfAttributeDefined(builder, element, ERROR_CHANNEL);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, SEGMENT_MAX_SIZE);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, SEGMENT_MAX_RECORDS);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, SEGMENT_MAX_AGE);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, SEGMENT_DIRECTORY);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, OPERATION);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, DELETE_BATCH_SIZE);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, DELETE_BATCH_MAX_AGE);
+		IntegrationNamespaceUtils.setReferenceIfAttributeDefined(builder, element, DELETE_FAILURE_CHANNEL);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, DESTINATION_BUCKET);
+		//The delimiter is typically white space, hence not checked for text
+		if(element.hasAttribute(SEGMENT_RECORD_DELIMITER))
+			builder.addPropertyValue("segmentRecordDelimiter", element.getAttribute(SEGMENT_RECORD_DELIMITER));
 		builder.addPropertyValue(S3_BUCKET, element.getAttribute(S3_BUCKET));		//Mandatory
 
 		//Get the remote directory expression or remote directory literal string
@@ -89,6 +162,29 @@ public class AmazonS3OutboundChannelAdapterParser extends
 		String remoteDirectoryExpression = element.getAttribute(REMOTE_DIRECTORY_EXPRESSION);
 		boolean hasRemoteDirectoryExpression = StringUtils.hasText(remoteDirectoryExpression);
 		boolean hasRemoteDirectoryLiteral = StringUtils.hasText(remoteDirectoryLiteral);
+		String operation = element.getAttribute(OPERATION);
+		boolean copyOrMove = AmazonS3MessageHandler.OPERATION_COPY.equals(operation)
+								|| AmazonS3MessageHandler.OPERATION_MOVE.equals(operation);
+		if(copyOrMove) {
+			//The objects copied or moved are named by the source and destination keys
+			if(hasRemoteDirectoryExpression || hasRemoteDirectoryLiteral)
+				throw new BeanDefinitionStoreException(REMOTE_DIRECTORY + " and " + REMOTE_DIRECTORY_EXPRESSION 
+						+ " are not supported with the " + operation + " operation");
+			String sourceKeyExpression = element.getAttribute(SOURCE_KEY_EXPRESSION);
+			String destinationKeyExpression = element.getAttribute(DESTINATION_KEY_EXPRESSION);
+			if(!StringUtils.hasText(sourceKeyExpression) || !StringUtils.hasText(destinationKeyExpression))
+				throw new BeanDefinitionStoreException(SOURCE_KEY_EXPRESSION + " and " + DESTINATION_KEY_EXPRESSION 
+						+ " are required with the " + operation + " operation");
+			builder.addPropertyValue("sourceKeyExpression", 
+					BeanDefinitionBuilder.genericBeanDefinition(ExpressionFactoryBean.class)
+					.addConstructorArgValue(sourceKeyExpression)
+					.getBeanDefinition());
+			builder.addPropertyValue("destinationKeyExpression", 
+					BeanDefinitionBuilder.genericBeanDefinition(ExpressionFactoryBean.class)
+					.addConstructorArgValue(destinationKeyExpression)
+					.getBeanDefinition());
+			return;
+		}
 		if(!(hasRemoteDirectoryExpression ^ hasRemoteDirectoryLiteral)) {
 			throw new BeanDefinitionStoreException("Exactly one of " + REMOTE_DIRECTORY + " or "
 					+ REMOTE_DIRECTORY_EXPRESSION + " is required");
@@ -114,8 +210,9 @@ public class AmazonS3OutboundChannelAdapterParser extends
 			throw new BeanDefinitionStoreException("Exactly one of " + FILE_NAME_GENERATOR + " or "
 					+ FILE_NAME_GENERATION_EXPRESSION + " is required");
 		}
+		Object fileNameGeneratorValue;
 		if(hasFileGenerator) {
-			builder.addPropertyReference("fileNameGenerator", fileNameGenerator);
+			fileNameGeneratorValue = new RuntimeBeanReference(fileNameGenerator);
 		} else {
 			BeanDefinitionBuilder fileNameGeneratorBuilder =
 			BeanDefinitionBuilder.genericBeanDefinition(DefaultFileNameGenerationStrategy.class);
@@ -125,8 +222,18 @@ public class AmazonS3OutboundChannelAdapterParser extends
 			if(hasFileGenerationExpression)
 				fileNameGeneratorBuilder.addPropertyValue("fileNameExpression", fileNameGenerationExpression);
 
-			builder.addPropertyValue("fileNameGenerator", fileNameGeneratorBuilder.getBeanDefinition());
+			fileNameGeneratorValue = fileNameGeneratorBuilder.getBeanDefinition();
+		}
+		//Spread the generated names across the hash prefixes if sharding is configured
+		String keyShards = element.getAttribute(KEY_SHARDS);
+		if(StringUtils.hasText(keyShards)) {
+			fileNameGeneratorValue = BeanDefinitionBuilder
+				.genericBeanDefinition(HashPrefixFileNameGenerationStrategy.class)
+				.addConstructorArgValue(keyShards)
+				.addPropertyValue("fileNameGenerator", fileNameGeneratorValue)
+				.getBeanDefinition();
 		}
+		builder.addPropertyValue("fileNameGenerator", fileNameGeneratorValue);
 	}
 
 }
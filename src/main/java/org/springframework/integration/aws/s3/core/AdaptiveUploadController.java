@@ -0,0 +1,222 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3.core;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.util.Assert;
+
+/**
+ * Tunes the part size and the number of parts uploaded in parallel for the multipart
+ * uploads using the throughput and the tail latency of the recently uploaded parts.
+ *
+ * The parts are evaluated in windows, at the end of each window the aggregate throughput
+ * and the 95th percentile part latency of the window are used as follows
+ * <ul>
+ * 	<li>If the tail latency is above the target, the parallelism is halved, once at its
+ * 	minimum the part size is halved instead</li>
+ * 	<li>Else if the throughput improved over the previous window, the parallelism is
+ * 	increased by one, once at its maximum the part size is doubled provided the tail
+ * 	latency of the doubled parts is expected to stay within the target</li>
+ * 	<li>Else if the throughput dropped, the last increase is reverted</li>
+ * </ul>
+ * The parallelism is applied to the uploads in progress, the part size is applied to the
+ * uploads started later as the parts of one upload should be of the same size for the
+ * ETag of the object to be computed locally.
+ *
+ * @author Amol Nayak
+ *
+ */
+class AdaptiveUploadController {
+
+	private final Log logger = LogFactory.getLog(getClass());
+
+	/**
+	 * The min change in throughput between two windows considered significant
+	 */
+	static final double SIGNIFICANT_CHANGE = 0.05;
+
+	/**
+	 * The min number of parts in a window
+	 */
+	static final int MIN_WINDOW_PARTS = 4;
+
+	private static final int NONE = 0;
+
+	private static final int PARALLELISM = 1;
+
+	private static final int PART_SIZE = 2;
+
+	private final int minPartSize;
+
+	private final int maxPartSize;
+
+	private final int minParallelism;
+
+	private final int maxParallelism;
+
+	private final long tailLatencyTarget;
+
+	private int partSize;
+
+	private int parallelism;
+
+	private int lastIncrease = NONE;
+
+	private double lastThroughput;
+
+	private LatencyHistogram windowLatencies = new LatencyHistogram();
+
+	private int windowParts;
+
+	private long windowBytes;
+
+	private long windowStart = Long.MAX_VALUE;
+
+	private long windowEnd = Long.MIN_VALUE;
+
+	/**
+	 *
+	 * @param minPartSize the min part size in bytes
+	 * @param maxPartSize the max part size in bytes
+	 * @param minParallelism the min number of parts of an upload uploaded in parallel
+	 * @param maxParallelism the max number of parts of an upload uploaded in parallel
+	 * @param tailLatencyTarget the 95th percentile part upload latency in milliseconds
+	 * 			above which the parallelism or the part size is reduced
+	 * @param initialPartSize the part size to start with
+	 * @param initialParallelism the parallelism to start with
+	 */
+	AdaptiveUploadController(int minPartSize,int maxPartSize,int minParallelism,int maxParallelism,
+			long tailLatencyTarget,int initialPartSize,int initialParallelism) {
+		Assert.isTrue(minPartSize >= StreamingMultipartUploader.MIN_PART_SIZE,
+				"Min part size should be at least " + StreamingMultipartUploader.MIN_PART_SIZE + " bytes");
+		Assert.isTrue(maxPartSize >= minPartSize, "Max part size should not be less than the min part size");
+		Assert.isTrue(minParallelism > 0, "Min parallelism should be positive");
+		Assert.isTrue(maxParallelism >= minParallelism, "Max parallelism should not be less than the min parallelism");
+		Assert.isTrue(tailLatencyTarget > 0, "Tail latency target should be positive");
+		this.minPartSize = minPartSize;
+		this.maxPartSize = maxPartSize;
+		this.minParallelism = minParallelism;
+		this.maxParallelism = maxParallelism;
+		this.tailLatencyTarget = tailLatencyTarget;
+		this.partSize = Math.min(Math.max(initialPartSize, minPartSize), maxPartSize);
+		this.parallelism = Math.min(Math.max(initialParallelism, minParallelism), maxParallelism);
+	}
+
+	/**
+	 * The part size to be used for the uploads starting now
+	 */
+	synchronized int getPartSize() {
+		return partSize;
+	}
+
+	/**
+	 * The number of parts of an upload to be uploaded in parallel
+	 */
+	synchronized int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Records the upload of a part
+	 *
+	 * @param bytes the size of the part
+	 * @param startNanos the {@link System#nanoTime()} when the upload of the part started
+	 * @param endNanos the {@link System#nanoTime()} when the upload of the part completed
+	 */
+	synchronized void partUploaded(long bytes,long startNanos,long endNanos) {
+		windowLatencies.record((endNanos - startNanos) / 1000000);
+		windowBytes += bytes;
+		windowStart = Math.min(windowStart, startNanos);
+		windowEnd = Math.max(windowEnd, endNanos);
+		if(++windowParts < Math.max(MIN_WINDOW_PARTS, 2 * parallelism))
+			return;
+		long elapsed = Math.max(windowEnd - windowStart, 1);
+		double throughput = windowBytes * 1000000000d / elapsed;
+		long tailLatency = windowLatencies.getPercentile(95);
+		resetWindow();
+		evaluate(throughput, tailLatency);
+	}
+
+	/**
+	 * Records the failure of a part upload, a failure is treated as a part exceeding
+	 * the tail latency target
+	 */
+	synchronized void partFailed() {
+		resetWindow();
+		decrease();
+	}
+
+	/**
+	 * Adjusts the part size and the parallelism using the throughput and tail latency of
+	 * a window of parts
+	 *
+	 * @param throughput the throughput in bytes per second
+	 * @param tailLatency the 95th percentile latency in milliseconds
+	 */
+	synchronized void evaluate(double throughput,long tailLatency) {
+		if(tailLatency > tailLatencyTarget) {
+			decrease();
+		} else if(lastThroughput == 0 || throughput > lastThroughput * (1 + SIGNIFICANT_CHANGE)) {
+			lastThroughput = throughput;
+			increase(tailLatency);
+		} else if(throughput < lastThroughput * (1 - SIGNIFICANT_CHANGE)) {
+			lastThroughput = throughput;
+			revert();
+		}
+		if(logger.isDebugEnabled())
+			logger.debug("Throughput " + (long)throughput + " bytes/s, tail latency " + tailLatency +
+					" ms, part size now " + partSize + " bytes, parallelism now " + parallelism);
+	}
+
+	private void increase(long tailLatency) {
+		if(parallelism < maxParallelism) {
+			parallelism++;
+			lastIncrease = PARALLELISM;
+		} else if(partSize < maxPartSize && tailLatency * 2 <= tailLatencyTarget) {
+			partSize = (int)Math.min((long)partSize * 2, maxPartSize);
+			lastIncrease = PART_SIZE;
+		} else {
+			lastIncrease = NONE;
+		}
+	}
+
+	private void revert() {
+		if(lastIncrease == PARALLELISM)
+			parallelism = Math.max(parallelism - 1, minParallelism);
+		else if(lastIncrease == PART_SIZE)
+			partSize = Math.max(partSize / 2, minPartSize);
+		lastIncrease = NONE;
+	}
+
+	private void decrease() {
+		if(parallelism > minParallelism)
+			parallelism = Math.max(parallelism / 2, minParallelism);
+		else
+			partSize = Math.max(partSize / 2, minPartSize);
+		lastIncrease = NONE;
+		//The throughput at the reduced settings is the new baseline
+		lastThroughput = 0;
+	}
+
+	private void resetWindow() {
+		windowLatencies = new LatencyHistogram();
+		windowParts = 0;
+		windowBytes = 0;
+		windowStart = Long.MAX_VALUE;
+		windowEnd = Long.MIN_VALUE;
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3.core;
+
+/**
+ * The failure to delete one object of a multi object delete
+ * @author Amol Nayak
+ *
+ */
+public class AmazonS3DeleteError {
+
+	private final String key;
+	
+	private final String code;
+	
+	private final String message;
+	
+	/**
+	 * 
+	 * @param key the key of the object not deleted
+	 * @param code the error code
+	 * @param message the error message
+	 */
+	public AmazonS3DeleteError(String key, String code, String message) {
+		this.key = key;
+		this.code = code;
+		this.message = message;
+	}
+
+	/**
+	 * The key of the object not deleted
+	 * @return
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * The error code, e.g. AccessDenied
+	 * @return
+	 */
+	public String getCode() {
+		return code;
+	}
+
+	/**
+	 * The error message
+	 * @return
+	 */
+	public String getMessage() {
+		return message;
+	}
+
+	@Override
+	public String toString() {
+		return "AmazonS3DeleteError [key=" + key + ", code=" + code + ", message=" + message + "]";
+	}
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedOperationParameter;
+import org.springframework.jmx.export.annotation.ManagedOperationParameters;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * The counters, latency histograms and transfer rates of the operations performed by 
+ * {@link AmazonS3OperationsImpl}, kept per bucket and operation. The instance is exposed
+ * over JMX when declared as a bean in a context with an annotation based MBean exporter,
+ * e.g. &lt;context:mbean-export/&gt;, and is shared by the adapters referring to it.
+ * 
+ * @author Amol Nayak
+ *
+ */
+@ManagedResource(description = "Metrics of the Amazon S3 operations")
+public class AmazonS3Metrics {
+
+	public static final String PUT_OBJECT = "putObject";
+	
+	public static final String SPOOL = "spool";
+	
+	public static final String GET_OBJECT = "getObject";
+	
+	public static final String HEAD_OBJECT = "headObject";
+	
+	public static final String LIST_OBJECTS = "listObjects";
+	
+	public static final String DELETE_OBJECT = "deleteObject";
+	
+	public static final String DELETE_OBJECTS = "deleteObjects";
+	
+	public static final String COPY_OBJECT = "copyObject";
+	
+	private static final String SEPARATOR = "/";
+	
+	/**
+	 * The window in seconds over which the transfer rate is computed 
+	 */
+	private static final int RATE_WINDOW = 60;
+	
+	private final ConcurrentMap<String, OperationMetrics> operations = 
+		new ConcurrentHashMap<String, OperationMetrics>();
+	
+	private final AtomicLong inFlightOperations = new AtomicLong();
+	
+	private final AtomicLong inFlightBytes = new AtomicLong();
+	
+	private final AtomicLongArray rateBytes = new AtomicLongArray(RATE_WINDOW);
+	
+	private final AtomicLongArray rateSeconds = new AtomicLongArray(RATE_WINDOW);
+	
+	/**
+	 * Starts timing an operation
+	 * @param bucketName
+	 * @param operation
+	 * @param bytes the number of bytes expected to be transferred, accounted as in flight
+	 * 			until the operation completes
+	 * @return the sample to be completed when the operation completes
+	 */
+	public Sample start(String bucketName,String operation,long bytes) {
+		return new Sample(getOperationMetrics(bucketName, operation), Math.max(bytes, 0));
+	}
+	
+	@ManagedAttribute(description = "The bucket/operation pairs with recorded metrics")
+	public String[] getOperationNames() {
+		List<String> names = new ArrayList<String>(operations.keySet());
+		Collections.sort(names);
+		return names.toArray(new String[names.size()]);
+	}
+	
+	@ManagedAttribute(description = "The number of operations in progress")
+	public long getInFlightOperations() {
+		return inFlightOperations.get();
+	}
+	
+	@ManagedAttribute(description = "The number of bytes expected to be transferred by the operations in progress")
+	public long getInFlightBytes() {
+		return inFlightBytes.get();
+	}
+	
+	@ManagedAttribute(description = "The bytes transferred per second over the last minute")
+	public long getBytesPerSecond() {
+		long now = currentSecond();
+		long bytes = 0;
+		for(int i = 0;i < RATE_WINDOW;i++) {
+			if(now - rateSeconds.get(i) < RATE_WINDOW)
+				bytes += rateBytes.get(i);
+		}
+		return bytes / RATE_WINDOW;
+	}
+	
+	@ManagedOperation(description = "The number of completed operations")
+	@ManagedOperationParameters({
+		@ManagedOperationParameter(name = "bucketName", description = "The bucket name"),
+		@ManagedOperationParameter(name = "operation", description = "The operation name")})
+	public long getCount(String bucketName,String operation) {
+		OperationMetrics metrics = operations.get(getName(bucketName, operation));
+		return metrics != null?metrics.count.get():0;
+	}
+	
+	@ManagedOperation(description = "The number of failed operations")
+	@ManagedOperationParameters({
+		@ManagedOperationParameter(name = "bucketName", description = "The bucket name"),
+		@ManagedOperationParameter(name = "operation", description = "The operation name")})
+	public long getErrorCount(String bucketName,String operation) {
+		OperationMetrics metrics = operations.get(getName(bucketName, operation));
+		return metrics != null?metrics.errors.get():0;
+	}
+	
+	@ManagedOperation(description = "The number of bytes transferred by the successful operations")
+	@ManagedOperationParameters({
+		@ManagedOperationParameter(name = "bucketName", description = "The bucket name"),
+		@ManagedOperationParameter(name = "operation", description = "The operation name")})
+	public long getBytes(String bucketName,String operation) {
+		OperationMetrics metrics = operations.get(getName(bucketName, operation));
+		return metrics != null?metrics.bytes.get():0;
+	}
+	
+	@ManagedOperation(description = "The mean latency in milliseconds")
+	@ManagedOperationParameters({
+		@ManagedOperationParameter(name = "bucketName", description = "The bucket name"),
+		@ManagedOperationParameter(name = "operation", description = "The operation name")})
+	public long getMeanLatency(String bucketName,String operation) {
+		OperationMetrics metrics = operations.get(getName(bucketName, operation));
+		if(metrics == null)
+			return 0;
+		long count = metrics.count.get() + metrics.errors.get();
+		return count > 0?metrics.totalLatency.get() / count:0;
+	}
+	
+	@ManagedOperation(description = "The approximate latency in milliseconds below which the given percentage of operations completed")
+	@ManagedOperationParameters({
+		@ManagedOperationParameter(name = "bucketName", description = "The bucket name"),
+		@ManagedOperationParameter(name = "operation", description = "The operation name"),
+		@ManagedOperationParameter(name = "percentile", description = "The percentile, between 0 and 100")})
+	public long getLatencyPercentile(String bucketName,String operation,double percentile) {
+		OperationMetrics metrics = operations.get(getName(bucketName, operation));
+		return metrics != null?metrics.latencies.getPercentile(percentile):0;
+	}
+	
+	@ManagedOperation(description = "The bytes per second transferred by the successful operations while in progress")
+	@ManagedOperationParameters({
+		@ManagedOperationParameter(name = "bucketName", description = "The bucket name"),
+		@ManagedOperationParameter(name = "operation", description = "The operation name")})
+	public long getThroughput(String bucketName,String operation) {
+		OperationMetrics metrics = operations.get(getName(bucketName, operation));
+		if(metrics == null)
+			return 0;
+		long latency = metrics.successLatency.get();
+		return latency > 0?metrics.bytes.get() * 1000 / latency:0;
+	}
+	
+	@ManagedAttribute(description = "A line per bucket/operation with its count, errors, bytes and latencies")
+	public String[] getSummary() {
+		List<String> lines = new ArrayList<String>();
+		for(String name:getOperationNames()) {
+			int index = name.lastIndexOf(SEPARATOR);
+			String bucketName = name.substring(0, index);
+			String operation = name.substring(index + 1);
+			lines.add(name + " count=" + getCount(bucketName, operation) 
+					+ " errors=" + getErrorCount(bucketName, operation)
+					+ " bytes=" + getBytes(bucketName, operation)
+					+ " throughput=" + getThroughput(bucketName, operation) + "B/s"
+					+ " mean=" + getMeanLatency(bucketName, operation) + "ms"
+					+ " p50=" + getLatencyPercentile(bucketName, operation, 50) + "ms"
+					+ " p99=" + getLatencyPercentile(bucketName, operation, 99) + "ms"
+					+ " max=" + operations.get(name).latencies.getMax() + "ms");
+		}
+		return lines.toArray(new String[lines.size()]);
+	}
+	
+	@ManagedOperation(description = "Clears the recorded metrics, the in flight gauges are retained")
+	public void reset() {
+		operations.clear();
+		for(int i = 0;i < RATE_WINDOW;i++) {
+			rateBytes.set(i, 0);
+			rateSeconds.set(i, 0);
+		}
+	}
+	
+	private OperationMetrics getOperationMetrics(String bucketName,String operation) {
+		String name = getName(bucketName, operation);
+		OperationMetrics metrics = operations.get(name);
+		if(metrics == null) {
+			metrics = new OperationMetrics();
+			OperationMetrics existing = operations.putIfAbsent(name, metrics);
+			if(existing != null)
+				metrics = existing;
+		}
+		return metrics;
+	}
+	
+	private String getName(String bucketName,String operation) {
+		return bucketName + SEPARATOR + operation;
+	}
+	
+	private long currentSecond() {
+		return System.currentTimeMillis() / 1000;
+	}
+	
+	/**
+	 * Adds the given bytes to the rate of the current second
+	 */
+	private void recordRate(long bytes) {
+		long second = currentSecond();
+		int slot = (int)(second % RATE_WINDOW);
+		long slotSecond = rateSeconds.get(slot);
+		if(slotSecond != second && rateSeconds.compareAndSet(slot, slotSecond, second))
+			rateBytes.set(slot, 0);
+		rateBytes.addAndGet(slot, bytes);
+	}
+	
+	/**
+	 * The metrics of an operation on a bucket
+	 */
+	private static class OperationMetrics {
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong errors = new AtomicLong();
+		private final AtomicLong bytes = new AtomicLong();
+		private final AtomicLong totalLatency = new AtomicLong();
+		private final AtomicLong successLatency = new AtomicLong();
+		private final LatencyHistogram latencies = new LatencyHistogram();
+	}
+	
+	/**
+	 * A timed operation in progress
+	 */
+	public class Sample {
+		
+		private final OperationMetrics metrics;
+		private final long expectedBytes;
+		private final long startTime;
+		private boolean completed;
+		
+		private Sample(OperationMetrics metrics,long expectedBytes) {
+			this.metrics = metrics;
+			this.expectedBytes = expectedBytes;
+			inFlightOperations.incrementAndGet();
+			inFlightBytes.addAndGet(expectedBytes);
+			this.startTime = System.nanoTime();
+		}
+		
+		/**
+		 * Records the successful completion of the operation
+		 * @param bytes the number of bytes transferred
+		 */
+		public void success(long bytes) {
+			long latency = complete();
+			if(latency < 0)
+				return;
+			metrics.count.incrementAndGet();
+			metrics.bytes.addAndGet(bytes);
+			metrics.successLatency.addAndGet(latency);
+			recordRate(bytes);
+		}
+		
+		/**
+		 * Records the failure of the operation
+		 */
+		public void failure() {
+			if(complete() >= 0)
+				metrics.errors.incrementAndGet();
+		}
+		
+		/**
+		 * Completes the sample once, returns the latency in milliseconds or -1 if
+		 * already completed
+		 */
+		private synchronized long complete() {
+			if(completed)
+				return -1;
+			completed = true;
+			inFlightOperations.decrementAndGet();
+			inFlightBytes.addAndGet(-expectedBytes);
+			long latency = (System.nanoTime() - startTime) / 1000000;
+			metrics.totalLatency.addAndGet(latency);
+			metrics.latencies.record(latency);
+			return latency;
+		}
+	}
+}
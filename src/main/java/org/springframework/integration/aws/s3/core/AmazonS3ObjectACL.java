@@ -39,5 +39,20 @@ public class AmazonS3ObjectACL {
 	
 	public void addGrant(ObjectGrant grant) {
 		grants.add(grant);
-	}	
+	}
+
+	public int hashCode() {
+		return grants.hashCode();
+	}
+
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		AmazonS3ObjectACL other = (AmazonS3ObjectACL) obj;
+		return grants.equals(other.grants);
+	}
 }
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3.core;
+
+/**
+ * The callback notified on completion of an asynchronous operation on an S3 object
+ * @author Amol Nayak
+ *
+ */
+public interface AmazonS3OperationCallback {
+
+	/**
+	 * Invoked when the operation on the object completes successfully
+	 * @param bucketName the bucket of the object
+	 * @param key the key of the object
+	 */
+	void onSuccess(String bucketName,String key);
+	
+	/**
+	 * Invoked when the operation on the object fails
+	 * @param bucketName the bucket of the object
+	 * @param key the key of the object
+	 * @param exception the cause of the failure
+	 */
+	void onFailure(String bucketName,String key,AmazonS3OperationException exception);
+}
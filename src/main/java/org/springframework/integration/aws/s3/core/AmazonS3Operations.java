@@ -15,6 +15,10 @@
  */
 package org.springframework.integration.aws.s3.core;
 
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.Future;
+
 /**
  * The Core interface for performing various operations on Amazon S3
  * @author Amol Nayak
@@ -23,6 +27,11 @@ package org.springframework.integration.aws.s3.core;
 public interface AmazonS3Operations {
 
 	public static final String CONTENT_MD5_HEADER = "Content-MD5";
+	
+	/**
+	 * The max number of objects deleted by one multi object delete request
+	 */
+	public static final int MAX_DELETE_BATCH_SIZE = 1000;
 	/**
 	 * Lists Objects in the given bucket and given folder. Provide / if you
 	 * wish to list objects at the root of the bucket
@@ -34,6 +43,35 @@ public interface AmazonS3Operations {
 	 */
 	PaginatedObjectsView listObjects(String bucketName,String folder,String nextMarker,int pageSize);
 	
+	/**
+	 * Lists the objects directly under the given folder of the bucket, the keys of the 
+	 * sub folders, as separated by the delimiter, are rolled up in the common prefixes
+	 * of the view instead. Provide / if you wish to list objects at the root of the bucket
+	 * @param bucketName
+	 * @param folder
+	 * @param nextMarker
+	 * @param pageSize
+	 * @param delimiter the delimiter separating the folders in the keys, typically /, null
+	 * 			to list all the keys under the folder
+	 * @return the {@link PaginatedObjectsView} of the matching result
+	 */
+	PaginatedObjectsView listObjects(String bucketName,String folder,String nextMarker,int pageSize,String delimiter);
+	
+	/**
+	 * Lists the objects under the given folder of the bucket whose names, relative to 
+	 * the folder, start with the given prefix. Only the matching keys are returned by S3.
+	 * @param bucketName
+	 * @param folder
+	 * @param nextMarker
+	 * @param pageSize
+	 * @param delimiter the delimiter separating the folders in the keys, null to list all
+	 * 			the keys under the folder
+	 * @param namePrefix the prefix of the names in the folder, null for all the names
+	 * @return the {@link PaginatedObjectsView} of the matching result
+	 */
+	PaginatedObjectsView listObjects(String bucketName,String folder,String nextMarker,int pageSize,
+			String delimiter,String namePrefix);
+	
 	/**
 	 * Put the given {@link AmazonS3Object} in the provided bucket in the folder specified with the name given
 	 * The object if exists, will be overwritten and the folder path hierarchy 
@@ -47,16 +85,67 @@ public interface AmazonS3Operations {
 	void putObject(String bucketName,String folder,String objectName,AmazonS3Object s3Object);
 	
 	/**
-	 * Gets the Object from Amazon S3 from the specified bucket,folder and with 
-	 * the given objectName
+	 * Put the given {@link AmazonS3Object} asynchronously, the call returns as soon as the
+	 * upload is scheduled. The number of uploads in flight is bounded, the calling thread
+	 * blocks till a slot is available once the limit is reached.
 	 * 
 	 * @param bucketName
 	 * @param folder
 	 * @param objectName
+	 * @param s3Object
+	 * @param callback the optional callback notified on completion of the upload
+	 * @return the {@link Future} that completes when the upload completes
+	 */
+	Future<Void> putObjectAsync(String bucketName,String folder,String objectName,AmazonS3Object s3Object,
+			AmazonS3OperationCallback callback);
+	
+	/**
+	 * Gets the Object from Amazon S3 from the specified bucket,folder and with 
+	 * the given objectName. Unlike the other get methods, the folder is ignored, 
+	 * the object name is the complete key of the object
+	 * 
+	 * @param bucketName
+	 * @param folder ignored
+	 * @param objectName the key of the object
 	 * @return The S3 object corresponding to the given details. Null if no object found 
 	 */
 	AmazonS3Object getObject(String bucketName,String folder,String objectName);
 	
+	/**
+	 * Gets the Object from Amazon S3 only if its ETag is still the given one, the contents
+	 * read then belong to the version of the object that was listed
+	 * 
+	 * @param bucketName
+	 * @param folder the folder of the object, null if the object name is the key
+	 * @param objectName
+	 * @param eTag the ETag the object is expected to have
+	 * @return The S3 object, null if the object now has a different ETag
+	 */
+	AmazonS3Object getObjectIfMatch(String bucketName,String folder,String objectName,String eTag);
+	
+	/**
+	 * Gets the metadata of the object using a HEAD request, the contents are not read.
+	 * The object returned has neither an input stream nor a file as its source
+	 * @param bucketName
+	 * @param folder the folder of the object, null if the object name is the key
+	 * @param objectName
+	 * @return The S3 object with the user metadata and the metadata of the object
+	 */
+	AmazonS3Object getObjectMetadata(String bucketName,String folder,String objectName);
+	
+	/**
+	 * Gets the Object from Amazon S3 and writes its contents to the given file, the 
+	 * existing contents of the file are overwritten. Large objects are downloaded in 
+	 * byte ranges fetched in parallel.
+	 * 
+	 * @param bucketName
+	 * @param folder the folder of the object, null if the object name is the key
+	 * @param objectName
+	 * @param file the file to which the contents are written
+	 * @return The S3 object with the metadata of the object and the given file as its source
+	 */
+	AmazonS3Object getObject(String bucketName,String folder,String objectName,File file);
+	
 	/**
 	 * Removes the specified object from the bucket given, folder specified 
 	 * and the given object name from S3
@@ -67,4 +156,42 @@ public interface AmazonS3Operations {
 	 */	
 	boolean removeObject(String bucketName,String folder,String objectName);
 	
+	/**
+	 * Removes the given objects from the bucket and folder specified using multi object
+	 * delete requests of at most {@link #MAX_DELETE_BATCH_SIZE} objects each. The failure 
+	 * to delete individual objects does not fail the operation, such failures are returned.
+	 * @param bucketName
+	 * @param folder the folder of the objects, null if the object names are the keys
+	 * @param objectNames
+	 * @return the objects not deleted, empty if all are deleted
+	 */
+	List<AmazonS3DeleteError> removeObjects(String bucketName,String folder,List<String> objectNames);
+	
+	/**
+	 * Copies the object to the destination within S3, the contents are not downloaded.
+	 * The metadata of the source object is retained. Objects larger than 5 GB are copied 
+	 * in parts using a multipart upload.
+	 * @param sourceBucketName
+	 * @param sourceFolder the folder of the source object, null if the object name is the key
+	 * @param sourceObjectName
+	 * @param destinationBucketName
+	 * @param destinationFolder the folder of the destination object, null if the object name is the key
+	 * @param destinationObjectName
+	 */
+	void copyObject(String sourceBucketName,String sourceFolder,String sourceObjectName,
+			String destinationBucketName,String destinationFolder,String destinationObjectName);
+	
+	/**
+	 * Moves the object to the destination within S3 by copying it and removing the source 
+	 * object once the copy completes. The source is left untouched if the copy fails.
+	 * @param sourceBucketName
+	 * @param sourceFolder the folder of the source object, null if the object name is the key
+	 * @param sourceObjectName
+	 * @param destinationBucketName
+	 * @param destinationFolder the folder of the destination object, null if the object name is the key
+	 * @param destinationObjectName
+	 */
+	void moveObject(String sourceBucketName,String sourceFolder,String sourceObjectName,
+			String destinationBucketName,String destinationFolder,String destinationObjectName);
+	
 }
@@ -15,44 +15,55 @@
  */
 package org.springframework.integration.aws.s3.core;
 
-import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.UnsupportedEncodingException;
+import java.io.SequenceInputStream;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
-import org.springframework.integration.aws.core.AmazonWSCommonUtils;
 import org.springframework.integration.aws.core.AmazonWSCredentials;
 import org.springframework.integration.aws.core.AmazonWSOperationException;
+import org.springframework.integration.aws.s3.core.AmazonS3Metrics.Sample;
+import org.springframework.integration.aws.s3.core.SpoolDirectory.SpoolFile;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.services.s3.AmazonS3Client;
-import com.amazonaws.services.s3.model.AccessControlList;
-import com.amazonaws.services.s3.model.CanonicalGrantee;
-import com.amazonaws.services.s3.model.EmailAddressGrantee;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest.KeyVersion;
 import com.amazonaws.services.s3.model.GetObjectRequest;
-import com.amazonaws.services.s3.model.GroupGrantee;
 import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException.DeleteError;
 import com.amazonaws.services.s3.model.ObjectListing;
 import com.amazonaws.services.s3.model.ObjectMetadata;
-import com.amazonaws.services.s3.model.Permission;
 import com.amazonaws.services.s3.model.PutObjectRequest;
 import com.amazonaws.services.s3.model.S3Object;
-import com.amazonaws.services.s3.transfer.TransferManager;
-import com.amazonaws.services.s3.transfer.TransferManagerConfiguration;
-import com.amazonaws.services.s3.transfer.Upload;
+import com.amazonaws.services.s3.transfer.internal.TransferManagerUtils;
 
 
 /**
@@ -60,7 +71,7 @@ import com.amazonaws.services.s3.transfer.Upload;
  * @author Amol Nayak
  *
  */
-public class AmazonS3OperationsImpl implements AmazonS3Operations, InitializingBean {
+public class AmazonS3OperationsImpl implements AmazonS3Operations, InitializingBean, DisposableBean {
 
 	
 	private final Log logger = LogFactory.getLog(getClass());
@@ -69,8 +80,6 @@ public class AmazonS3OperationsImpl implements AmazonS3Operations, InitializingB
 	
 	private AmazonS3Client client;
 	
-	private TransferManager transferManager;	//Used to upload to S3 
-	
 	private long multipartUploadThreshold;
 	
 	private ThreadPoolExecutor threadPoolExecutor;
@@ -79,7 +88,101 @@ public class AmazonS3OperationsImpl implements AmazonS3Operations, InitializingB
 	
 	private String temporaryFileSuffix = ".writing";
 	
+	private boolean streamingUpload;
+	
+	private int streamingUploadPartSize = StreamingMultipartUploader.MIN_PART_SIZE;
+	
+	private long maxStreamingUploadMemory = 10 * StreamingMultipartUploader.MIN_PART_SIZE;
+	
+	private StreamingMultipartUploader streamingUploader;
+	
+	private boolean adaptiveUpload;
+	
+	private int minUploadPartSize = StreamingMultipartUploader.MIN_PART_SIZE;
+	
+	private int maxUploadPartSize = 64 * 1024 * 1024;
+	
+	private int minUploadParallelism = 1;
+	
+	private int maxUploadParallelism = 10;
+	
+	private long uploadTailLatencyTarget = 30000;
+	
+	private ThreadPoolExecutor defaultPartUploadExecutor;
+	
+	private Executor asyncUploadExecutor;
+	
+	private ExecutorService defaultAsyncUploadExecutor;
+	
+	private int maxInFlightUploads = DEFAULT_MAX_IN_FLIGHT_UPLOADS;
+	
+	private long maxInFlightUploadBytes = Long.MAX_VALUE;
+	
+	private UploadThrottle uploadThrottle;
+	
+	private final ObjectACLTranslator aclTranslator;
+	
+	private Executor downloadExecutor;
+	
+	private long parallelDownloadThreshold = DEFAULT_PARALLEL_DOWNLOAD_THRESHOLD;
+	
+	private long downloadRangeSize = DEFAULT_DOWNLOAD_RANGE_SIZE;
+	
+	private RangedDownloader rangedDownloader;
+	
+	private long copyPartSize = DEFAULT_COPY_PART_SIZE;
+	
+	private int maxCopyPartsInFlight = 10;
+	
+	private MultipartCopier copier;
+	
+	private long spoolQuota = Long.MAX_VALUE;
+	
+	private SpoolDirectory spoolDirectory;
+	
+	private File uploadJournalDirectory;
+	
+	private long orphanedUploadAge = 7L * 24 * 60 * 60 * 1000;
+	
+	private MultipartUploadJournal uploadJournal;
+	
+	private final AtomicLong lastOrphanSweep = new AtomicLong();
+	
+	private Compression compression;
+	
+	private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+	
+	private boolean decompressDownloads = true;
+	
+	private AmazonS3Metrics metrics = new AmazonS3Metrics();
+	
 	public final String PATH_SEPARATOR = "/";	
+	
+	/**
+	 * The threshold used when none is configured, same as the default of the 
+	 * AWS TransferManager 
+	 */
+	public static final long DEFAULT_MULTIPART_UPLOAD_THRESHOLD = 16 * 1024 * 1024;
+	
+	/**
+	 * The default max number of asynchronous uploads in flight
+	 */
+	public static final int DEFAULT_MAX_IN_FLIGHT_UPLOADS = 100;
+	
+	/**
+	 * The default size above which the objects are downloaded in parallel ranges
+	 */
+	public static final long DEFAULT_PARALLEL_DOWNLOAD_THRESHOLD = 16 * 1024 * 1024;
+	
+	/**
+	 * The default size of a range of a parallel download
+	 */
+	public static final long DEFAULT_DOWNLOAD_RANGE_SIZE = 8 * 1024 * 1024;
+	
+	/**
+	 * The default size of a part of a multipart copy
+	 */
+	public static final long DEFAULT_COPY_PART_SIZE = 512 * 1024 * 1024;
 
 	/**
 	 * Constructor
@@ -91,7 +194,8 @@ public class AmazonS3OperationsImpl implements AmazonS3Operations, InitializingB
 		this.credentials = credentials;
 		
 		client = new AmazonS3Client(new BasicAWSCredentials(credentials.getAccessKey(), 
-				credentials.getSecretKey()));		
+				credentials.getSecretKey()));
+		aclTranslator = new ObjectACLTranslator(client);		
 	}
 	
 	
@@ -99,24 +203,66 @@ public class AmazonS3OperationsImpl implements AmazonS3Operations, InitializingB
 	 * The implemented afterPropertiesSet method
 	 */
 	public void afterPropertiesSet() throws Exception {
-		if(threadPoolExecutor == null) {
+		ThreadPoolExecutor partUploadExecutor = threadPoolExecutor;
+		if(partUploadExecutor == null) {
 			//Will use the Default Executor, 
-			//See com.amazonaws.services.s3.transfer.internal.TransferManagerUtils for more details			
-			transferManager = new TransferManager(client);
-		} else {
-			transferManager = new TransferManager(client, threadPoolExecutor);
-		}		
+			//See com.amazonaws.services.s3.transfer.internal.TransferManagerUtils for more details
+			defaultPartUploadExecutor = TransferManagerUtils.createDefaultExecutorService();
+			partUploadExecutor = defaultPartUploadExecutor;
+		}
 		//As per amazon it is recommended to use Multi part upload above 100 MB
-		if(multipartUploadThreshold > 0) {
-			TransferManagerConfiguration config = new TransferManagerConfiguration();
-			if(multipartUploadThreshold > Integer.MAX_VALUE)
-				config.setMultipartUploadThreshold(Integer.MAX_VALUE);		//2GB
-			else
-				config.setMultipartUploadThreshold((int)multipartUploadThreshold);
-			
-			transferManager.setConfiguration(config);
-		}		
-		//If none is set, we use the default
+		if(multipartUploadThreshold <= 0)
+			multipartUploadThreshold = DEFAULT_MULTIPART_UPLOAD_THRESHOLD;
+		
+		streamingUploader = new StreamingMultipartUploader(client, partUploadExecutor, 
+				streamingUploadPartSize, maxStreamingUploadMemory);
+		if(adaptiveUpload) {
+			int initialParallelism = (int)Math.min(maxStreamingUploadMemory / streamingUploadPartSize - 1, 
+					Integer.MAX_VALUE);
+			streamingUploader.setController(new AdaptiveUploadController(minUploadPartSize, maxUploadPartSize, 
+					minUploadParallelism, maxUploadParallelism, uploadTailLatencyTarget, 
+					streamingUploadPartSize, initialParallelism));
+		}
+		
+		if(downloadExecutor == null)
+			downloadExecutor = partUploadExecutor;
+		rangedDownloader = new RangedDownloader(client, downloadExecutor, 
+				parallelDownloadThreshold, downloadRangeSize);
+		rangedDownloader.setDecompress(decompressDownloads);
+		
+		copier = new MultipartCopier(client, partUploadExecutor, copyPartSize, maxCopyPartsInFlight);
+		
+		spoolDirectory = new SpoolDirectory(temporaryDirectory, temporaryFileSuffix, spoolQuota);
+		
+		if(uploadJournalDirectory != null) {
+			uploadJournal = new MultipartUploadJournal(uploadJournalDirectory);
+			abortOrphanedUploads();
+		}
+		
+		uploadThrottle = new UploadThrottle(maxInFlightUploads, maxInFlightUploadBytes);
+		if(asyncUploadExecutor == null) {
+			//The number of threads is bounded by the max uploads in flight
+			defaultAsyncUploadExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+				private final AtomicInteger threadCount = new AtomicInteger();
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "s3-async-upload-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			asyncUploadExecutor = defaultAsyncUploadExecutor;
+		}
+	}
+	
+	/**
+	 * Shuts down the executors created by this instance, the executors provided
+	 * are left untouched
+	 */
+	public void destroy() throws Exception {
+		if(defaultAsyncUploadExecutor != null)
+			defaultAsyncUploadExecutor.shutdown();
+		if(defaultPartUploadExecutor != null)
+			defaultPartUploadExecutor.shutdown();
 	}
 
 
@@ -126,6 +272,22 @@ public class AmazonS3OperationsImpl implements AmazonS3Operations, InitializingB
 	 * @see org.springframework.integration.aws.s3.AmazonS3Operations#listObjects(java.lang.String, java.lang.String, java.lang.String, int)
 	 */
 	public PaginatedObjectsView listObjects(String bucketName, String folder,String nextMarker,int pageSize) {
+		return listObjects(bucketName, folder, nextMarker, pageSize, null);
+	}
+
+	/* (non-Javadoc)
+	 * @see org.springframework.integration.aws.s3.AmazonS3Operations#listObjects(java.lang.String, java.lang.String, java.lang.String, int, java.lang.String)
+	 */
+	public PaginatedObjectsView listObjects(String bucketName, String folder,String nextMarker,int pageSize,
+			String delimiter) {
+		return listObjects(bucketName, folder, nextMarker, pageSize, delimiter, null);
+	}
+
+	/* (non-Javadoc)
+	 * @see org.springframework.integration.aws.s3.AmazonS3Operations#listObjects(java.lang.String, java.lang.String, java.lang.String, int, java.lang.String, java.lang.String)
+	 */
+	public PaginatedObjectsView listObjects(String bucketName, String folder,String nextMarker,int pageSize,
+			String delimiter,String namePrefix) {
 		if(logger.isDebugEnabled()) {
 			logger.debug("Listing objects from bucket " + bucketName + " and folder " + folder);
 			logger.debug("Next marker is " + nextMarker  + " and pageSize is " + pageSize);
@@ -135,21 +297,39 @@ public class AmazonS3OperationsImpl implements AmazonS3Operations, InitializingB
 		String prefix = null;
 		if(folder != null && !"/".equals(folder)) {
 			prefix = folder;
+			//The folder itself would be rolled up as a common prefix otherwise
+			if(delimiter != null && !prefix.endsWith(delimiter))
+				prefix += delimiter;
+			else if(namePrefix != null && !prefix.endsWith(PATH_SEPARATOR))
+				prefix += PATH_SEPARATOR;
 		}
+		if(namePrefix != null)
+			prefix = prefix != null?prefix + namePrefix:namePrefix;
 		ListObjectsRequest listObjectsRequest = 
 			new ListObjectsRequest()
 			.withBucketName(bucketName)
 			.withPrefix(prefix)
-			.withMarker(nextMarker);
+			.withMarker(nextMarker)
+			.withDelimiter(delimiter);
 		
 		if(pageSize > 0) {
 			listObjectsRequest.withMaxKeys(pageSize);
 		}
 			
-		ObjectListing listing = client.listObjects(listObjectsRequest);
+		Sample sample = metrics.start(bucketName, AmazonS3Metrics.LIST_OBJECTS, 0);
+		ObjectListing listing;
+		try {
+			listing = client.listObjects(listObjectsRequest);
+		} catch (RuntimeException e) {
+			sample.failure();
+			throw e;
+		}
+		sample.success(0);
 		PaginatedObjectsView view = null;
 		List<com.amazonaws.services.s3.model.S3ObjectSummary> summaries = listing.getObjectSummaries();
-		if(summaries != null && !summaries.isEmpty()) {
+		List<String> commonPrefixes = listing.getCommonPrefixes();
+		if((summaries != null && !summaries.isEmpty()) 
+				|| (commonPrefixes != null && !commonPrefixes.isEmpty())) {
 			List<S3ObjectSummary> objectSummaries = new ArrayList<S3ObjectSummary>();
 			for(final com.amazonaws.services.s3.model.S3ObjectSummary summary:summaries) {
 				S3ObjectSummary summ = new S3ObjectSummary() {
@@ -181,7 +361,11 @@ public class AmazonS3OperationsImpl implements AmazonS3Operations, InitializingB
 				};
 				objectSummaries.add(summ);				
 			}
-			view = new PagninatedObjectsViewImpl(objectSummaries,listing.getNextMarker());
+			//S3 returns the next marker only for delimited listings, else the last key is the marker
+			String listedMarker = listing.getNextMarker();
+			if(listedMarker == null && listing.isTruncated() && !summaries.isEmpty())
+				listedMarker = summaries.get(summaries.size() - 1).getKey();
+			view = new PagninatedObjectsViewImpl(objectSummaries,listedMarker,commonPrefixes);
 		}
 		return view;
 	}
@@ -203,7 +387,6 @@ public class AmazonS3OperationsImpl implements AmazonS3Operations, InitializingB
 					objectName,
 					"Object Name is Mandatory");
 		
-		boolean isTempFile = false;
 		File file = s3Object.getFileSource();
 		InputStream in = s3Object.getInputStream();
 		
@@ -219,60 +402,253 @@ public class AmazonS3OperationsImpl implements AmazonS3Operations, InitializingB
 					objectName,
 					"At lease one of File object or Input Stream in the S3 Object are mandatory");
 		
-		String key;
-		if(folder != null) {
-			key = folder.endsWith(PATH_SEPARATOR)?
-					folder + objectName:folder + PATH_SEPARATOR + objectName;
-		} else {
-			key = objectName;
-		}
+		String key = getKey(folder, objectName);
 		
-		if(in != null) {
-			file = getTempFile(in,bucketName,objectName);
-			isTempFile = true;
+		//The ACL is sent along with the upload request, if the upload succeeds the object 
+		//has the ACL set
+		ObjectMetadata metadata = new ObjectMetadata();
+		AmazonS3ObjectACL acl = s3Object.getObjectACL();
+		Map<String, String> aclHeaders;
+		try {
+			aclHeaders = aclTranslator.getHeaders(acl);
+		} catch (Exception e) {
+			throw new AmazonS3OperationException(
+					credentials.getAccessKey(), bucketName, 
+					objectName, 
+					"Encountered Exception while translating the Object ACL for key " + key + 
+					", see nested exceptions for more details", 
+					e);
+		}
+		if(!aclHeaders.isEmpty()) {
+			if(logger.isDebugEnabled())
+				logger.debug("Setting Access control list for key " + key);
+			for(Map.Entry<String, String> header:aclHeaders.entrySet())
+				metadata.setHeader(header.getKey(), header.getValue());
+		} else {
+			if(logger.isDebugEnabled())
+				logger.debug("No Object ACL found to be set");
 		}
 		
-		PutObjectRequest request;
-		if(file != null) {
-			request = new PutObjectRequest(bucketName, key, file);
-			//if the size of the file is greater than the threshold for multipart upload,
-			//set the Content-MD5 header for this upload. This header will also come handy
-			//later in inbound-channel-adapter where we cant find the MD5 sum of the 
-			//multipart upload file from its ETag
-			String stringContentMD5 = null;
-			try {
-				stringContentMD5 = 
-					AmazonWSCommonUtils.encodeHex(AmazonWSCommonUtils.getContentsMD5AsBytes(file));
-			} catch (UnsupportedEncodingException e) {				
-				logger.error("Exception while generating the content's MD5 of the file " + file.getAbsolutePath(), e);
+		Sample sample = metrics.start(bucketName, AmazonS3Metrics.PUT_OBJECT, getUploadSize(s3Object));
+		InputStream source = null;
+		try {
+			if(compression != null) {
+				//The contents are compressed as they are read, the compressed length is not known
+				metadata.setContentEncoding(compression.getContentEncoding());
+				try {
+					if(in instanceof ByteArrayInputStream) {
+						in = compressInMemory((ByteArrayInputStream)in);
+					} else {
+						if(file != null) {
+							source = new FileInputStream(file);
+							file = null;
+						} else
+							source = in;
+						in = compression.compress(source, compressionLevel);
+					}
+				} catch (IOException e) {
+					throw new AmazonS3OperationException(
+							credentials.getAccessKey(), bucketName, 
+							objectName, 
+							"Encountered Exception while compressing the object, " +
+							"see nested exceptions for more details", 
+							e);
+				}
 			}
 			
-			if(stringContentMD5 != null) {
-				ObjectMetadata metadata = new ObjectMetadata();
-				metadata.setContentMD5(stringContentMD5);
-				request.withMetadata(metadata);
+			//The number of bytes sent is known upfront unless read from a stream 
+			long uploadedBytes = file != null?file.length():0;
+			CountingInputStream counter = null;
+			if(in instanceof ByteArrayInputStream) {
+				uploadedBytes = ((ByteArrayInputStream)in).available();
+			} else if(in != null) {
+				counter = new CountingInputStream(in);
+				in = counter;
 			}
-		} else 
-			throw new AmazonS3OperationException(
-					credentials.getAccessKey(), bucketName, objectName, 
-					"Unable to get the File handle to upload the file to S3");
-		
-		Upload upload;
+			
+			if(in != null && streamingUpload) {
+				//Stream the contents straight to S3 without a temporary file
+				try {
+					streamingUploader.upload(bucketName, key, in, metadata);
+				} catch (Exception e) {
+					throw new AmazonS3OperationException(
+							credentials.getAccessKey(), bucketName, 
+							objectName, 
+							"Encountered Exception while streaming the object to S3, " +
+							"see nested exceptions for more details", 
+							e);
+				}
+			} else {
+				uploadFile(bucketName, key, objectName, file, in, metadata);
+			}
+			sample.success(counter != null?counter.getCount():uploadedBytes);
+		} catch (RuntimeException e) {
+			sample.failure();
+			throw e;
+		} finally {
+			if(source != null && s3Object.getFileSource() != null) {
+				//Close the stream opened on the file
+				try {
+					source.close();
+				} catch (IOException e) {
+					//Ignore
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Compresses the contents held in memory, the compressed contents are held
+	 * in memory too
+	 */
+	private ByteArrayInputStream compressInMemory(ByteArrayInputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(in.available() / 4, 32));
+		InputStream compressed = compression.compress(in, compressionLevel);
+		byte[] bytes = new byte[8192];
+		for(int read = 0;(read = compressed.read(bytes)) != -1;)
+			out.write(bytes, 0, read);
+		compressed.close();
+		return new ByteArrayInputStream(out.toByteArray());
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.springframework.integration.aws.s3.core.AmazonS3Operations#putObjectAsync(java.lang.String, java.lang.String, java.lang.String, org.springframework.integration.aws.s3.core.AmazonS3Object, org.springframework.integration.aws.s3.core.AmazonS3OperationCallback)
+	 */
+	
+	public Future<Void> putObjectAsync(final String bucketName, final String folder,
+			final String objectName, final AmazonS3Object s3Object,
+			final AmazonS3OperationCallback callback) {
+		final long uploadSize = getUploadSize(s3Object);
 		try {
-			upload = transferManager.upload(request);
-		} catch (Exception e) {
-			throw new AmazonS3OperationException(
-					credentials.getAccessKey(), bucketName, 
-					objectName, 
-					"Encountered Exception while invoking upload on multipart/single thread file, " +
-					"see nested exceptions for more details", 
-					e); 
+			uploadThrottle.acquire(uploadSize);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AmazonS3OperationException(credentials.getAccessKey(), bucketName, 
+					objectName, "Interrupted while waiting for an upload slot", e);
 		}
-		//Wait till the upload completes, the call to putObject is synchronous
+		final String key = getKey(folder, objectName);
+		FutureTask<Void> upload = new FutureTask<Void>(new Callable<Void>() {
+			public Void call() throws Exception {
+				try {
+					putObject(bucketName, folder, objectName, s3Object);
+				} catch (RuntimeException e) {
+					uploadThrottle.release(uploadSize);
+					AmazonS3OperationException exception;
+					if(e instanceof AmazonS3OperationException)
+						exception = (AmazonS3OperationException)e;
+					else
+						exception = new AmazonS3OperationException(credentials.getAccessKey(), 
+								bucketName, objectName, "Encountered Exception while uploading the object, " +
+								"see nested exceptions for more details", e);
+					if(callback != null)
+						callback.onFailure(bucketName, key, exception);
+					throw exception;
+				}
+				uploadThrottle.release(uploadSize);
+				if(callback != null)
+					callback.onSuccess(bucketName, key);
+				return null;
+			}
+		});
 		try {
-			if(logger.isInfoEnabled())
-				logger.info("Waiting for Upload to complete");
-			upload.waitForCompletion();
+			asyncUploadExecutor.execute(upload);
+		} catch (RejectedExecutionException e) {
+			uploadThrottle.release(uploadSize);
+			throw new AmazonS3OperationException(credentials.getAccessKey(), bucketName, 
+					objectName, "The upload of the object was rejected by the executor", e);
+		}
+		return upload;
+	}
+	
+	/**
+	 * Gets the number of bytes accounted for the given object against the max bytes in 
+	 * flight. Streams of unknown length are accounted as one part of a multipart upload.
+	 */
+	private long getUploadSize(AmazonS3Object s3Object) {
+		if(s3Object.getFileSource() != null)
+			return s3Object.getFileSource().length();
+		InputStream in = s3Object.getInputStream();
+		if(in instanceof ByteArrayInputStream)
+			return ((ByteArrayInputStream)in).available();
+		return streamingUploadPartSize;
+	}
+	
+	/**
+	 * Gets the key of the object with the given name in the given folder
+	 */
+	private String getKey(String folder,String objectName) {
+		if(folder != null) {
+			return folder.endsWith(PATH_SEPARATOR)?
+					folder + objectName:folder + PATH_SEPARATOR + objectName;
+		} else {
+			return objectName;
+		}
+	}
+	
+	/**
+	 * Uploads the given file to S3. If an input stream is provided, contents already in
+	 * memory are uploaded from memory, other streams are first spooled to a unique temporary 
+	 * file which is deleted after the upload, successful or not. A stream that does not fit
+	 * in the spool quota is uploaded in parts, the spooled contents followed by the rest of 
+	 * the stream. 
+	 * The MD5 of the contents is computed while the file is being uploaded and not
+	 * in a separate pass over the file. For single part uploads the client verifies the
+	 * computed MD5 against the ETag returned by S3, for multipart uploads the MD5 is 
+	 * recorded in the user metadata of the object.
+	 */
+	private void uploadFile(String bucketName,String key,String objectName,File file,InputStream in,
+			ObjectMetadata metadata) {
+		SpoolFile spoolFile = null;
+		try {
+			if(in instanceof ByteArrayInputStream) {
+				uploadFromMemory(bucketName, key, (ByteArrayInputStream)in, metadata);
+				return;
+			}
+			if(in != null) {
+				Sample spoolSample = metrics.start(bucketName, AmazonS3Metrics.SPOOL, 0);
+				try {
+					spoolFile = spoolDirectory.spool(in, objectName);
+				} catch (IOException e) {
+					spoolSample.failure();
+					throw e;
+				}
+				spoolSample.success(spoolFile.getLength());
+				file = spoolFile.getFile();
+			}
+			
+			if(spoolFile != null && !spoolFile.isComplete()) {
+				if(logger.isDebugEnabled())
+					logger.debug("Uploading object " + key + " partially spooled using multipart upload");
+				InputStream fin = new FileInputStream(file);
+				try {
+					streamingUploader.upload(bucketName, key, 
+							new SequenceInputStream(fin, spoolFile.getRemainder()), metadata);
+				} finally {
+					fin.close();
+				}
+			} else {
+				long length = file.length();
+				if(length <= multipartUploadThreshold) {
+					if(logger.isDebugEnabled())
+						logger.debug("Uploading file " + file.getName() + " in a single request");
+					client.putObject(new PutObjectRequest(bucketName, key, file).withMetadata(metadata));
+				} else {
+					if(logger.isDebugEnabled())
+						logger.debug("Uploading file " + file.getName() + " using multipart upload");
+					if(uploadJournal != null && spoolFile == null) {
+						//Only the uploads of the files provided can be resumed, spool files are temporary
+						sweepOrphanedUploads();
+						streamingUploader.upload(bucketName, key, file, metadata, uploadJournal);
+					} else {
+						FileInputStream fin = new FileInputStream(file);
+						try {
+							streamingUploader.upload(bucketName, key, fin, metadata, length);
+						} finally {
+							fin.close();
+						}
+					}
+				}
+			}
 			if(logger.isInfoEnabled())
 				logger.info("Upload completed");
 		} catch (Exception e) {
@@ -282,131 +658,61 @@ public class AmazonS3OperationsImpl implements AmazonS3Operations, InitializingB
 					"Encountered Exception while uploading the multipart/single thread file, " +
 					"see nested exceptions for more details", 
 					e);
-		} 
-		if(isTempFile) {
-			//Delete the temp file
-			if(logger.isDebugEnabled())
-				logger.debug("Deleting temp file: " + file.getName());
-			file.delete();
-		}
-		
-		//Now since the object is present on S3, set the AccessControl list on it
-		//Please note that it is not possible to set the object ACL with the
-		//put object request, and hence both these operations cannot be atomic
-		//it is possible the objects is uploaded and the ACl not set due to some
-		//failure
-		
-		AmazonS3ObjectACL acl = s3Object.getObjectACL();
-		AccessControlList objectACL = getAccessControlList(bucketName,key,acl);
-		if(objectACL != null) {
-			if(logger.isInfoEnabled())
-				logger.info("Setting Access control list for key " + key);
-			try {
-				client.setObjectAcl(bucketName, key, objectACL);
-			} catch (Exception e) {
-				throw new AmazonS3OperationException(
-						credentials.getAccessKey(), bucketName, 
-						objectName, 
-						"Encountered Exception while setting the Object ACL for key , " + key + 
-						"see nested exceptions for more details", 
-						e);
+		} finally {
+			if(spoolFile != null) {
+				//Delete the spool file
+				if(logger.isDebugEnabled())
+					logger.debug("Deleting spool file: " + file.getName());
+				spoolFile.delete();
 			}
-			if(logger.isDebugEnabled())
-				logger.debug("Successfully set the object ACL");
-		} else {
-			if(logger.isInfoEnabled())
-				logger.info("No Object ACL found to be set");
 		}
 	}
 	
 	/**
-	 * Gets the {@link AccessControlList} from the given {@link AmazonS3ObjectACL} 
-	 * @param acl
-	 * @return 
+	 * Aborts the journaled multipart uploads not resumed within the orphaned upload age. 
+	 * This is done when the operations are initialized and periodically as the uploads 
+	 * are performed, but may also be invoked to abort the orphaned uploads right away.
+	 * @return the number of uploads aborted
 	 */
-	private AccessControlList getAccessControlList(String bucketName,String key,AmazonS3ObjectACL acl) {
-		AccessControlList accessControlList = null;
-		if(acl != null) {
-			if(!acl.getGrants().isEmpty()) {
-				accessControlList = client.getObjectAcl(bucketName, key);
-				for(ObjectGrant objGrant:acl.getGrants()) {
-					Grantee grantee = objGrant.getGrantee();
-					com.amazonaws.services.s3.model.Grantee awsGrantee;
-					if(grantee.getGranteeType() == GranteeType.CANONICAL_GRANTEE_TYPE) {
-						awsGrantee = new CanonicalGrantee(grantee.getIdentifier());
-					} else if(grantee.getGranteeType() == GranteeType.EMAIL_GRANTEE_TYPE) {
-						awsGrantee = new EmailAddressGrantee(grantee.getIdentifier());
-					} else {
-						awsGrantee = GroupGrantee.parseGroupGrantee(grantee.getIdentifier());
-						if(awsGrantee == null) {
-							logger.warn("Group grantee with identifier: \"" + grantee.getIdentifier() + "\" not found. skipping this grant");
-							continue;
-						}						
-					}
-					ObjectPermissions perm = objGrant.getPermission();
-					Permission permission;
-					if(perm == ObjectPermissions.READ) {
-						permission = Permission.Read;
-					} else if(perm == ObjectPermissions.READ_ACP) {
-						permission = Permission.ReadAcp;
-					} else
-						permission = Permission.WriteAcp;
-					
-					accessControlList.grantPermission(awsGrantee, permission);
-				}				
-			}
-		}
-		return accessControlList;
-	}
-	
-	/**
-	 * Reads the stream provided and writes the file to the temp location
-	 * @param in the Stream from which the data of the Object is to be read
-	 * @param objectName the name of the object that would be used to upload the file
-	 */
-	private File getTempFile(InputStream in,String bucketName,String objectName) {
-		InputStream inStream;
-		if(!(in instanceof BufferedInputStream) && !(in instanceof ByteArrayInputStream)) {
-			inStream = new BufferedInputStream(in);
-		} else 
-			inStream = in;
-		String fileName;
-		if(objectName.contains(PATH_SEPARATOR)) {
-			String[] splits = objectName.split(PATH_SEPARATOR);
-			fileName = splits[splits.length - 1];
-		} else 
-			fileName = objectName;
-		String filePath = temporaryDirectory.getAbsoluteFile() + File.separator + fileName + temporaryFileSuffix;
-		
-		if(logger.isDebugEnabled())
-			logger.debug("Temporary file path is " + filePath);
-			
-		//Write data to temporary file
-		File tempFile = new File(filePath);
-		try {
-			FileOutputStream fos = new FileOutputStream(tempFile);
-			byte[] bytes = new byte[1024];
-			int read = 0;
-			while(true) {
-				read = inStream.read(bytes);
-				if(read == -1)
-					break;
-				fos.write(bytes, 0, read);
-			}
-			fos.flush();
-			fos.close();
-		} catch (FileNotFoundException e) {			
-			throw new AmazonS3OperationException(credentials.getAccessKey(), 
-					 bucketName, 
-					 objectName, 
-					 "Exception caught while writing the temporary file from input stream", e);
-		} catch(IOException ioe) {
-			throw new AmazonS3OperationException(credentials.getAccessKey(), 
-					 bucketName, 
-					 objectName, 
-					 "Exception caught while reading from the provided input stream", ioe);
+	public int abortOrphanedUploads() {
+		if(uploadJournal == null)
+			return 0;
+		lastOrphanSweep.set(System.currentTimeMillis());
+		int aborted = streamingUploader.abortOrphans(uploadJournal, orphanedUploadAge);
+		if(aborted > 0 && logger.isInfoEnabled())
+			logger.info("Aborted " + aborted + " orphaned multipart uploads");
+		return aborted;
+	}
+	
+	/**
+	 * Aborts the orphaned uploads if not done in the last hour or the orphaned upload age
+	 * whichever is less
+	 */
+	private void sweepOrphanedUploads() {
+		long last = lastOrphanSweep.get();
+		long now = System.currentTimeMillis();
+		if(now - last >= Math.min(orphanedUploadAge, 60 * 60 * 1000L) 
+				&& lastOrphanSweep.compareAndSet(last, now))
+			abortOrphanedUploads();
+	}
+	
+	/**
+	 * Uploads the contents held in memory, the length of the contents is known
+	 * upfront and no temporary file is needed
+	 */
+	private void uploadFromMemory(String bucketName,String key,ByteArrayInputStream in,
+			ObjectMetadata metadata) throws IOException {
+		long length = in.available();
+		if(length <= multipartUploadThreshold) {
+			if(logger.isDebugEnabled())
+				logger.debug("Uploading " + length + " bytes from memory in a single request");
+			metadata.setContentLength(length);
+			client.putObject(new PutObjectRequest(bucketName, key, in, metadata));
+		} else {
+			if(logger.isDebugEnabled())
+				logger.debug("Uploading " + length + " bytes from memory using multipart upload");
+			streamingUploader.upload(bucketName, key, in, metadata, length);
 		}
-		return tempFile;
 	}
 
 	/* (non-Javadoc)
@@ -419,7 +725,16 @@ public class AmazonS3OperationsImpl implements AmazonS3Operations, InitializingB
 			logger.debug("Getting from bucket " + bucketName + 
 					", from folder " + folder + " the  object name " + objectName);
 		GetObjectRequest request = new GetObjectRequest(bucketName, objectName);
-		S3Object s3Object = client.getObject(request);
+		//Only the time to the response is measured, the contents are read by the caller 
+		Sample sample = metrics.start(bucketName, AmazonS3Metrics.GET_OBJECT, 0);
+		S3Object s3Object;
+		try {
+			s3Object = client.getObject(request);
+		} catch (RuntimeException e) {
+			sample.failure();
+			throw e;
+		}
+		sample.success(0);
 		AmazonS3Object object = new AmazonS3Object(s3Object.getObjectMetadata().getUserMetadata(), 
 				s3Object.getObjectMetadata().getRawMetadata(), 
 				s3Object.getObjectContent(), 
@@ -428,51 +743,249 @@ public class AmazonS3OperationsImpl implements AmazonS3Operations, InitializingB
 	}
 
 	/* (non-Javadoc)
-	 * @see org.springframework.integration.aws.s3.AmazonS3Operations#removeObject(java.lang.String, java.lang.String, java.lang.String)
+	 * @see org.springframework.integration.aws.s3.core.AmazonS3Operations#getObjectIfMatch(java.lang.String, java.lang.String, java.lang.String, java.lang.String)
 	 */
 	
-	public boolean removeObject(String bucketName, String folder,
-			String objectName) {
-		return false;
+	public AmazonS3Object getObjectIfMatch(String bucketName, String folder,
+			String objectName, String eTag) {
+		Assert.hasText(bucketName, "Bucket name should be non null and non empty");
+		Assert.hasText(objectName, "Object name should be non null and non empty");
+		Assert.hasText(eTag, "ETag should be non null and non empty");
+		String key = getKey(folder, objectName);
+		if(logger.isDebugEnabled())
+			logger.debug("Getting from bucket " + bucketName + " the object " + key + " of ETag " + eTag);
+		GetObjectRequest request = new GetObjectRequest(bucketName, key).withMatchingETagConstraint(eTag);
+		Sample sample = metrics.start(bucketName, AmazonS3Metrics.GET_OBJECT, 0);
+		S3Object s3Object;
+		try {
+			s3Object = client.getObject(request);
+		} catch (AmazonClientException e) {
+			sample.failure();
+			throw new AmazonS3OperationException(
+					credentials.getAccessKey(), bucketName, 
+					objectName, 
+					"Encountered Exception while getting the object from S3, " +
+					"see nested exceptions for more details", 
+					e);
+		}
+		sample.success(0);
+		//The constraint was not met
+		if(s3Object == null)
+			return null;
+		return new AmazonS3Object(s3Object.getObjectMetadata().getUserMetadata(), 
+				s3Object.getObjectMetadata().getRawMetadata(), 
+				s3Object.getObjectContent(), 
+				null);
 	}
 
-
-	/**
-	 * Get the threshold value in bytes above which multi part upload will be used 
-	 * @return
+	/* (non-Javadoc)
+	 * @see org.springframework.integration.aws.s3.core.AmazonS3Operations#getObjectMetadata(java.lang.String, java.lang.String, java.lang.String)
 	 */
-	public long getMultipartUploadThreshold() {
-		return multipartUploadThreshold;
+	
+	public AmazonS3Object getObjectMetadata(String bucketName, String folder,
+			String objectName) {
+		Assert.hasText(bucketName, "Bucket name should be non null and non empty");
+		Assert.hasText(objectName, "Object name should be non null and non empty");
+		String key = getKey(folder, objectName);
+		if(logger.isDebugEnabled())
+			logger.debug("Getting the metadata of object " + key + " from bucket " + bucketName);
+		Sample sample = metrics.start(bucketName, AmazonS3Metrics.HEAD_OBJECT, 0);
+		ObjectMetadata metadata;
+		try {
+			metadata = client.getObjectMetadata(bucketName, key);
+		} catch (AmazonClientException e) {
+			sample.failure();
+			throw new AmazonS3OperationException(
+					credentials.getAccessKey(), bucketName, 
+					objectName, 
+					"Encountered Exception while getting the metadata of the object from S3, " +
+					"see nested exceptions for more details", 
+					e);
+		}
+		sample.success(0);
+		return new AmazonS3Object(metadata.getUserMetadata(), metadata.getRawMetadata(), null, null);
 	}
 
-
-	/**
-	 * The threshold value in bytes above which the service will use multi part upload. 
-	 * All the uploads below this value will be uploaded in a single thread
-	 * Minimum value for the threshold is 5120 Bytes (5 KB). 
-	 * It is recommended by Amazon to use Multi part uploads for all the uploads 
-	 * above 100 MB
-	 * If the value is set to a number above Integer.MAX_VALUE, the value will be
-	 * set to  Integer.MAX_VALUE.
-	 * 
-	 * @param multipartUploadThreshold
+	/* (non-Javadoc)
+	 * @see org.springframework.integration.aws.s3.core.AmazonS3Operations#getObject(java.lang.String, java.lang.String, java.lang.String, java.io.File)
 	 */
-	public void setMultipartUploadThreshold(long multipartUploadThreshold) {
-		this.multipartUploadThreshold = multipartUploadThreshold;
+	
+	public AmazonS3Object getObject(String bucketName, String folder,
+			String objectName, File file) {
+		Assert.hasText(bucketName, "Bucket name should be non null and non empty");
+		Assert.hasText(objectName, "Object name should be non null and non empty");
+		String key = getKey(folder, objectName);
+		if(logger.isDebugEnabled())
+			logger.debug("Downloading from bucket " + bucketName + " the object " + key + " to file " + file);
+		ObjectMetadata metadata;
+		Sample sample = metrics.start(bucketName, AmazonS3Metrics.GET_OBJECT, 0);
+		try {
+			metadata = rangedDownloader.download(bucketName, key, file);
+			sample.success(metadata.getContentLength());
+		} catch (Exception e) {
+			sample.failure();
+			throw new AmazonS3OperationException(
+					credentials.getAccessKey(), bucketName, 
+					objectName, 
+					"Encountered Exception while downloading the object from S3, " +
+					"see nested exceptions for more details", 
+					e);
+		}
+		return new AmazonS3Object(metadata.getUserMetadata(), metadata.getRawMetadata(), null, file);
 	}
 
-
-	/**
-	 * Gets the thread pool executor that will be used to upload the object in multiparts
-	 * concurrently 
-	 * @return
+	/* (non-Javadoc)
+	 * @see org.springframework.integration.aws.s3.AmazonS3Operations#removeObject(java.lang.String, java.lang.String, java.lang.String)
 	 */
-	public ThreadPoolExecutor getThreadPoolExecutor() {
-		return threadPoolExecutor;
+	
+	public boolean removeObject(String bucketName, String folder,
+			String objectName) {
+		Assert.hasText(bucketName, "Bucket name should be non null and non empty");
+		Assert.hasText(objectName, "Object name should be non null and non empty");
+		String key = getKey(folder, objectName);
+		if(logger.isDebugEnabled())
+			logger.debug("Removing object " + key + " from bucket " + bucketName);
+		Sample sample = metrics.start(bucketName, AmazonS3Metrics.DELETE_OBJECT, 0);
+		try {
+			client.deleteObject(bucketName, key);
+		} catch (AmazonClientException e) {
+			sample.failure();
+			throw new AmazonS3OperationException(
+					credentials.getAccessKey(), bucketName, 
+					objectName, 
+					"Encountered Exception while removing the object from S3, " +
+					"see nested exceptions for more details", 
+					e);
+		}
+		sample.success(0);
+		return true;
 	}
 
-
-	/**
+	/* (non-Javadoc)
+	 * @see org.springframework.integration.aws.s3.core.AmazonS3Operations#removeObjects(java.lang.String, java.lang.String, java.util.List)
+	 */
+	
+	public List<AmazonS3DeleteError> removeObjects(String bucketName, String folder,
+			List<String> objectNames) {
+		Assert.hasText(bucketName, "Bucket name should be non null and non empty");
+		Assert.notNull(objectNames, "Object names should be non null");
+		List<AmazonS3DeleteError> errors = new ArrayList<AmazonS3DeleteError>();
+		for(int start = 0;start < objectNames.size();start += MAX_DELETE_BATCH_SIZE) {
+			List<String> batch = objectNames.subList(start, 
+					Math.min(start + MAX_DELETE_BATCH_SIZE, objectNames.size()));
+			List<KeyVersion> keys = new ArrayList<KeyVersion>(batch.size());
+			for(String objectName:batch)
+				keys.add(new KeyVersion(getKey(folder, objectName)));
+			if(logger.isDebugEnabled())
+				logger.debug("Removing " + keys.size() + " objects from bucket " + bucketName);
+			//Quiet mode, only the objects not deleted are in the response
+			DeleteObjectsRequest request = new DeleteObjectsRequest(bucketName)
+				.withKeys(keys)
+				.withQuiet(true);
+			Sample sample = metrics.start(bucketName, AmazonS3Metrics.DELETE_OBJECTS, 0);
+			try {
+				client.deleteObjects(request);
+				sample.success(0);
+			} catch (MultiObjectDeleteException e) {
+				//The request succeeded, some of the objects could not be deleted
+				sample.success(0);
+				for(DeleteError error:e.getErrors())
+					errors.add(new AmazonS3DeleteError(error.getKey(), error.getCode(), error.getMessage()));
+			} catch (AmazonClientException e) {
+				sample.failure();
+				throw new AmazonS3OperationException(
+						credentials.getAccessKey(), bucketName, 
+						null, 
+						"Encountered Exception while removing " + keys.size() + " objects from S3, " +
+						"see nested exceptions for more details", 
+						e);
+			}
+		}
+		return errors;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.springframework.integration.aws.s3.core.AmazonS3Operations#copyObject(java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String)
+	 */
+	
+	public void copyObject(String sourceBucketName, String sourceFolder,
+			String sourceObjectName, String destinationBucketName,
+			String destinationFolder, String destinationObjectName) {
+		Assert.hasText(sourceBucketName, "Source bucket name should be non null and non empty");
+		Assert.hasText(sourceObjectName, "Source object name should be non null and non empty");
+		Assert.hasText(destinationBucketName, "Destination bucket name should be non null and non empty");
+		Assert.hasText(destinationObjectName, "Destination object name should be non null and non empty");
+		String sourceKey = getKey(sourceFolder, sourceObjectName);
+		String destinationKey = getKey(destinationFolder, destinationObjectName);
+		if(logger.isDebugEnabled())
+			logger.debug("Copying object " + sourceKey + " from bucket " + sourceBucketName + 
+					" to " + destinationKey + " in bucket " + destinationBucketName);
+		Sample sample = metrics.start(destinationBucketName, AmazonS3Metrics.COPY_OBJECT, 0);
+		try {
+			//The contents do not pass through this host, hence no bytes are recorded
+			copier.copy(sourceBucketName, sourceKey, destinationBucketName, destinationKey);
+		} catch (AmazonClientException e) {
+			sample.failure();
+			throw new AmazonS3OperationException(
+					credentials.getAccessKey(), sourceBucketName, 
+					sourceObjectName, 
+					"Encountered Exception while copying the object to " + destinationKey + 
+					" in bucket " + destinationBucketName + ", see nested exceptions for more details", 
+					e);
+		}
+		sample.success(0);
+	}
+
+	/* (non-Javadoc)
+	 * @see org.springframework.integration.aws.s3.core.AmazonS3Operations#moveObject(java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String)
+	 */
+	
+	public void moveObject(String sourceBucketName, String sourceFolder,
+			String sourceObjectName, String destinationBucketName,
+			String destinationFolder, String destinationObjectName) {
+		copyObject(sourceBucketName, sourceFolder, sourceObjectName, 
+				destinationBucketName, destinationFolder, destinationObjectName);
+		if(sourceBucketName.equals(destinationBucketName) 
+				&& getKey(sourceFolder, sourceObjectName).equals(getKey(destinationFolder, destinationObjectName)))
+			return;	//Moved onto itself, removing the source would remove the object
+		removeObject(sourceBucketName, sourceFolder, sourceObjectName);
+	}
+
+
+	/**
+	 * Get the threshold value in bytes above which multi part upload will be used 
+	 * @return
+	 */
+	public long getMultipartUploadThreshold() {
+		return multipartUploadThreshold;
+	}
+
+
+	/**
+	 * The threshold value in bytes above which the service will use multi part upload. 
+	 * All the uploads below this value will be uploaded in a single thread
+	 * Minimum value for the threshold is 5120 Bytes (5 KB). 
+	 * It is recommended by Amazon to use Multi part uploads for all the uploads 
+	 * above 100 MB. If not set, a threshold of 16 MB is used.
+	 * 
+	 * @param multipartUploadThreshold
+	 */
+	public void setMultipartUploadThreshold(long multipartUploadThreshold) {
+		this.multipartUploadThreshold = multipartUploadThreshold;
+	}
+
+
+	/**
+	 * Gets the thread pool executor that will be used to upload the object in multiparts
+	 * concurrently 
+	 * @return
+	 */
+	public ThreadPoolExecutor getThreadPoolExecutor() {
+		return threadPoolExecutor;
+	}
+
+
+	/**
 	 * Used only when we upload the data using multi part upload. The thread pool will be used
 	 * to upload the data concurrently 
 	 * @param threadPool
@@ -483,6 +996,497 @@ public class AmazonS3OperationsImpl implements AmazonS3Operations, InitializingB
 	}
 
 
+	/**
+	 * Indicates whether the objects provided as an {@link InputStream} are streamed to S3
+	 * @return
+	 */
+	public boolean isStreamingUpload() {
+		return streamingUpload;
+	}
+
+
+	/**
+	 * When set to true, the objects provided as an {@link InputStream} are not written to
+	 * a temporary file before the upload, instead the stream is cut in parts held in memory
+	 * and uploaded using a multi part upload while the subsequent parts are being read.
+	 * The parts are uploaded using the thread pool executor if one is provided. 
+	 * @param streamingUpload
+	 */
+	public void setStreamingUpload(boolean streamingUpload) {
+		this.streamingUpload = streamingUpload;
+	}
+
+
+	/**
+	 * Gets the size in bytes of each part of the streamed upload
+	 * @return
+	 */
+	public int getStreamingUploadPartSize() {
+		return streamingUploadPartSize;
+	}
+
+
+	/**
+	 * The size in bytes of each part of a streamed or multi part file upload. The minimum 
+	 * value is 5 MB, which is the smallest part size accepted by S3. The part size is increased
+	 * for files which would otherwise need more than 10000 parts.
+	 * @param streamingUploadPartSize
+	 */
+	public void setStreamingUploadPartSize(int streamingUploadPartSize) {
+		Assert.isTrue(streamingUploadPartSize >= StreamingMultipartUploader.MIN_PART_SIZE, 
+				"The part size should be at least " + StreamingMultipartUploader.MIN_PART_SIZE + " bytes");
+		this.streamingUploadPartSize = streamingUploadPartSize;
+	}
+
+
+	/**
+	 * Gets the max memory in bytes that would be used to hold the parts of one streamed upload
+	 * @return
+	 */
+	public long getMaxStreamingUploadMemory() {
+		return maxStreamingUploadMemory;
+	}
+
+
+	/**
+	 * The max memory in bytes used to hold the parts of one streamed upload. Once the
+	 * parts in flight reach this limit, reading the stream blocks till one of the parts 
+	 * is uploaded. At least two parts are always held irrespective of this value.
+	 * @param maxStreamingUploadMemory
+	 */
+	public void setMaxStreamingUploadMemory(long maxStreamingUploadMemory) {
+		Assert.isTrue(maxStreamingUploadMemory > 0, "Max streaming upload memory should be positive");
+		this.maxStreamingUploadMemory = maxStreamingUploadMemory;
+	}
+
+
+	/**
+	 * Indicates whether the part size and parallelism of the multipart uploads are tuned
+	 * @return
+	 */
+	public boolean isAdaptiveUpload() {
+		return adaptiveUpload;
+	}
+
+
+	/**
+	 * When set to true, the part size and the number of parts uploaded in parallel for 
+	 * the multipart uploads are tuned within the configured bounds using the throughput and the 
+	 * tail latency of the recently uploaded parts. The streaming upload part size is used 
+	 * as the initial part size. The parallelism is adjusted for the uploads in progress while 
+	 * the part size is adjusted for the uploads started later. The memory used by one upload 
+	 * is still bounded by the max streaming upload memory.
+	 * @param adaptiveUpload
+	 */
+	public void setAdaptiveUpload(boolean adaptiveUpload) {
+		this.adaptiveUpload = adaptiveUpload;
+	}
+
+
+	/**
+	 * Gets the min part size in bytes of an adaptive upload
+	 * @return
+	 */
+	public int getMinUploadPartSize() {
+		return minUploadPartSize;
+	}
+
+
+	/**
+	 * The min part size in bytes the adaptive uploads may reduce the part size to, 
+	 * at least 5 MB. Defaults to 5 MB
+	 * @param minUploadPartSize
+	 */
+	public void setMinUploadPartSize(int minUploadPartSize) {
+		Assert.isTrue(minUploadPartSize >= StreamingMultipartUploader.MIN_PART_SIZE, 
+				"The part size should be at least " + StreamingMultipartUploader.MIN_PART_SIZE + " bytes");
+		this.minUploadPartSize = minUploadPartSize;
+	}
+
+
+	/**
+	 * Gets the max part size in bytes of an adaptive upload
+	 * @return
+	 */
+	public int getMaxUploadPartSize() {
+		return maxUploadPartSize;
+	}
+
+
+	/**
+	 * The max part size in bytes the adaptive uploads may increase the part size to. 
+	 * Defaults to 64 MB
+	 * @param maxUploadPartSize
+	 */
+	public void setMaxUploadPartSize(int maxUploadPartSize) {
+		Assert.isTrue(maxUploadPartSize >= StreamingMultipartUploader.MIN_PART_SIZE, 
+				"The part size should be at least " + StreamingMultipartUploader.MIN_PART_SIZE + " bytes");
+		this.maxUploadPartSize = maxUploadPartSize;
+	}
+
+
+	/**
+	 * Gets the min number of parts of an adaptive upload uploaded in parallel
+	 * @return
+	 */
+	public int getMinUploadParallelism() {
+		return minUploadParallelism;
+	}
+
+
+	/**
+	 * The min number of parts of an adaptive upload uploaded in parallel, defaults to 1
+	 * @param minUploadParallelism
+	 */
+	public void setMinUploadParallelism(int minUploadParallelism) {
+		Assert.isTrue(minUploadParallelism > 0, "Min upload parallelism should be positive");
+		this.minUploadParallelism = minUploadParallelism;
+	}
+
+
+	/**
+	 * Gets the max number of parts of an adaptive upload uploaded in parallel
+	 * @return
+	 */
+	public int getMaxUploadParallelism() {
+		return maxUploadParallelism;
+	}
+
+
+	/**
+	 * The max number of parts of an adaptive upload uploaded in parallel, defaults to 10.
+	 * The part upload thread pool should have at least as many threads
+	 * @param maxUploadParallelism
+	 */
+	public void setMaxUploadParallelism(int maxUploadParallelism) {
+		Assert.isTrue(maxUploadParallelism > 0, "Max upload parallelism should be positive");
+		this.maxUploadParallelism = maxUploadParallelism;
+	}
+
+
+	/**
+	 * Gets the 95th percentile part upload latency targeted by the adaptive uploads
+	 * @return
+	 */
+	public long getUploadTailLatencyTarget() {
+		return uploadTailLatencyTarget;
+	}
+
+
+	/**
+	 * The 95th percentile latency in milliseconds of a part upload above which the adaptive
+	 * uploads reduce the parallelism, and once at the min parallelism, the part size. 
+	 * Defaults to 30 seconds
+	 * @param uploadTailLatencyTarget
+	 */
+	public void setUploadTailLatencyTarget(long uploadTailLatencyTarget) {
+		Assert.isTrue(uploadTailLatencyTarget > 0, "Upload tail latency target should be positive");
+		this.uploadTailLatencyTarget = uploadTailLatencyTarget;
+	}
+
+
+	/**
+	 * Gets the executor used to perform the asynchronous uploads
+	 * @return
+	 */
+	public Executor getAsyncUploadExecutor() {
+		return asyncUploadExecutor;
+	}
+
+
+	/**
+	 * The executor used to perform the asynchronous uploads, the executor should be able
+	 * to run as many concurrent tasks as the max uploads in flight. If none is provided, 
+	 * a cached thread pool is used. 
+	 * @param asyncUploadExecutor
+	 */
+	public void setAsyncUploadExecutor(Executor asyncUploadExecutor) {
+		this.asyncUploadExecutor = asyncUploadExecutor;
+	}
+
+
+	/**
+	 * Gets the max number of asynchronous uploads in flight
+	 * @return
+	 */
+	public int getMaxInFlightUploads() {
+		return maxInFlightUploads;
+	}
+
+
+	/**
+	 * The max number of asynchronous uploads in flight, the caller of 
+	 * {@link #putObjectAsync(String, String, String, AmazonS3Object, AmazonS3OperationCallback)}
+	 * blocks once the limit is reached. Defaults to 100
+	 * @param maxInFlightUploads
+	 */
+	public void setMaxInFlightUploads(int maxInFlightUploads) {
+		Assert.isTrue(maxInFlightUploads > 0, "Max uploads in flight should be positive");
+		this.maxInFlightUploads = maxInFlightUploads;
+	}
+
+
+	/**
+	 * Gets the max number of bytes of the asynchronous uploads in flight
+	 * @return
+	 */
+	public long getMaxInFlightUploadBytes() {
+		return maxInFlightUploadBytes;
+	}
+
+
+	/**
+	 * The max number of bytes of the asynchronous uploads in flight, the caller blocks 
+	 * once the limit is reached. Streams of unknown length are accounted as one part of
+	 * a multipart upload. Not bounded by default
+	 * @param maxInFlightUploadBytes
+	 */
+	public void setMaxInFlightUploadBytes(long maxInFlightUploadBytes) {
+		Assert.isTrue(maxInFlightUploadBytes > 0, "Max bytes in flight should be positive");
+		this.maxInFlightUploadBytes = maxInFlightUploadBytes;
+	}
+
+
+	/**
+	 * Gets the executor used to download the ranges of large objects
+	 * @return
+	 */
+	public Executor getDownloadExecutor() {
+		return downloadExecutor;
+	}
+
+
+	/**
+	 * The executor used to download the ranges of large objects in parallel, defaults to
+	 * the thread pool executor used for uploading the parts 
+	 * @param downloadExecutor
+	 */
+	public void setDownloadExecutor(Executor downloadExecutor) {
+		this.downloadExecutor = downloadExecutor;
+	}
+
+
+	/**
+	 * Gets the size in bytes above which the objects are downloaded in parallel ranges
+	 * @return
+	 */
+	public long getParallelDownloadThreshold() {
+		return parallelDownloadThreshold;
+	}
+
+
+	/**
+	 * The size in bytes above which the objects are downloaded in parallel ranges, 
+	 * defaults to 16 MB 
+	 * @param parallelDownloadThreshold
+	 */
+	public void setParallelDownloadThreshold(long parallelDownloadThreshold) {
+		Assert.isTrue(parallelDownloadThreshold > 0, "Parallel download threshold should be positive");
+		this.parallelDownloadThreshold = parallelDownloadThreshold;
+	}
+
+
+	/**
+	 * Gets the size in bytes of each range of a parallel download
+	 * @return
+	 */
+	public long getDownloadRangeSize() {
+		return downloadRangeSize;
+	}
+
+
+	/**
+	 * The size in bytes of each range of a parallel download, defaults to 8 MB
+	 * @param downloadRangeSize
+	 */
+	public void setDownloadRangeSize(long downloadRangeSize) {
+		Assert.isTrue(downloadRangeSize > 0, "Download range size should be positive");
+		this.downloadRangeSize = downloadRangeSize;
+	}
+
+
+	/**
+	 * Gets the size in bytes of each part of a multipart copy
+	 * @return
+	 */
+	public long getCopyPartSize() {
+		return copyPartSize;
+	}
+
+
+	/**
+	 * The size in bytes of each part when copying objects larger than 5 GB, defaults to
+	 * 512 MB. The size is raised if needed to keep the number of parts within the limit
+	 * of 10000 parts.
+	 * @param copyPartSize
+	 */
+	public void setCopyPartSize(long copyPartSize) {
+		Assert.isTrue(copyPartSize >= StreamingMultipartUploader.MIN_PART_SIZE 
+				&& copyPartSize <= StreamingMultipartUploader.MAX_COPY_SIZE, 
+				"Copy part size should be between 5 MB and 5 GB");
+		this.copyPartSize = copyPartSize;
+	}
+
+
+	/**
+	 * Gets the max number of parts of one object copied in parallel
+	 * @return
+	 */
+	public int getMaxCopyPartsInFlight() {
+		return maxCopyPartsInFlight;
+	}
+
+
+	/**
+	 * The max number of parts of one object being copied in parallel, defaults to 10
+	 * @param maxCopyPartsInFlight
+	 */
+	public void setMaxCopyPartsInFlight(int maxCopyPartsInFlight) {
+		Assert.isTrue(maxCopyPartsInFlight > 0, "Max copy parts in flight should be positive");
+		this.maxCopyPartsInFlight = maxCopyPartsInFlight;
+	}
+
+
+	/**
+	 * Gets the max number of bytes spooled in the temporary directory at any time
+	 * @return
+	 */
+	public long getSpoolQuota() {
+		return spoolQuota;
+	}
+
+
+	/**
+	 * The max number of bytes of the streams being uploaded that are spooled in the 
+	 * temporary directory at any time, unbounded by default. Streams that do not fit
+	 * are uploaded in parts as they are read.
+	 * @param spoolQuota
+	 */
+	public void setSpoolQuota(long spoolQuota) {
+		Assert.isTrue(spoolQuota > 0, "Spool quota should be positive");
+		this.spoolQuota = spoolQuota;
+	}
+
+
+	/**
+	 * Gets the directory holding the journal of the multipart uploads in progress
+	 * @return
+	 */
+	public File getUploadJournalDirectory() {
+		return uploadJournalDirectory;
+	}
+
+
+	/**
+	 * The directory in which the multipart uploads of files are journaled. When set, the
+	 * upload id and the ETags of the parts uploaded are recorded as the upload progresses, 
+	 * if the upload is interrupted, say by a crash, a later upload of the same unchanged file 
+	 * to the same key resumes it and uploads only the missing parts. Uploads of streams 
+	 * and of compressed objects are not journaled as they are spooled to temporary files.
+	 * Not set by default.
+	 * @param uploadJournalDirectory
+	 */
+	public void setUploadJournalDirectory(File uploadJournalDirectory) {
+		this.uploadJournalDirectory = uploadJournalDirectory;
+	}
+
+
+	/**
+	 * Gets the age in milliseconds after which a journaled upload not resumed is aborted
+	 * @return
+	 */
+	public long getOrphanedUploadAge() {
+		return orphanedUploadAge;
+	}
+
+
+	/**
+	 * The age in milliseconds since the last part uploaded after which a journaled multipart
+	 * upload not resumed is aborted on S3 and its journal deleted. Defaults to 7 days.
+	 * @param orphanedUploadAge
+	 */
+	public void setOrphanedUploadAge(long orphanedUploadAge) {
+		Assert.isTrue(orphanedUploadAge > 0, "Orphaned upload age should be positive");
+		this.orphanedUploadAge = orphanedUploadAge;
+	}
+
+
+	/**
+	 * The compression applied to the objects uploaded, one of gzip, deflate or none.
+	 * The Content-Encoding of the compressed objects is set accordingly. Defaults to none.
+	 * @param compression
+	 */
+	public void setCompression(String compression) {
+		if(!StringUtils.hasText(compression) || "none".equalsIgnoreCase(compression.trim())) {
+			this.compression = null;
+			return;
+		}
+		this.compression = Compression.forContentEncoding(compression);
+		if(this.compression == null)
+			throw new IllegalArgumentException("Unsupported compression " + compression);
+	}
+
+
+	/**
+	 * Gets the compression level
+	 * @return
+	 */
+	public int getCompressionLevel() {
+		return compressionLevel;
+	}
+
+
+	/**
+	 * The level of compression, from 0 (no compression) to 9 (best compression), 
+	 * defaults to the level of the JDK deflater
+	 * @param compressionLevel
+	 */
+	public void setCompressionLevel(int compressionLevel) {
+		Assert.isTrue(compressionLevel >= 0 && compressionLevel <= 9 
+				|| compressionLevel == Deflater.DEFAULT_COMPRESSION, "Invalid compression level");
+		this.compressionLevel = compressionLevel;
+	}
+
+
+	/**
+	 * Checks if the objects with a gzip or deflate Content-Encoding are decompressed
+	 * when downloaded to a file
+	 * @return
+	 */
+	public boolean isDecompressDownloads() {
+		return decompressDownloads;
+	}
+
+
+	/**
+	 * Set to false to download the compressed objects as is, defaults to true
+	 * @param decompressDownloads
+	 */
+	public void setDecompressDownloads(boolean decompressDownloads) {
+		this.decompressDownloads = decompressDownloads;
+	}
+
+
+	/**
+	 * Gets the metrics of the operations performed
+	 * @return
+	 */
+	public AmazonS3Metrics getMetrics() {
+		return metrics;
+	}
+
+
+	/**
+	 * Sets the metrics the operations are recorded in, an instance can be shared by
+	 * several operations and exposed over JMX. Each instance records its own metrics by default.
+	 * @param metrics
+	 */
+	public void setMetrics(AmazonS3Metrics metrics) {
+		Assert.notNull(metrics, "Non null metrics required");
+		this.metrics = metrics;
+	}
+
+
 	/**
 	 * Gets the temporary directory
 	 * @return
@@ -547,11 +1551,13 @@ class PagninatedObjectsViewImpl implements PaginatedObjectsView {
 
 	private List<S3ObjectSummary> objectSummary;
 	private String nextMarker;	
+	private List<String> commonPrefixes;
 	
 	public PagninatedObjectsViewImpl(List<S3ObjectSummary> objectSummary,
-			String nextMarker) {		
+			String nextMarker,List<String> commonPrefixes) {		
 		this.objectSummary = objectSummary;
 		this.nextMarker = nextMarker;
+		this.commonPrefixes = commonPrefixes;
 	}
 
 	
@@ -568,5 +1574,10 @@ class PagninatedObjectsViewImpl implements PaginatedObjectsView {
 	public String getNextMarker() {		
 		return nextMarker;
 	}
+
+
+	public List<String> getCommonPrefixes() {
+		return commonPrefixes != null?commonPrefixes:new ArrayList<String>();
+	}
 	
 }
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * An {@link InputStream} reading the compressed contents of the underlying stream, 
+ * in the gzip or the zlib (HTTP deflate) format. The contents are compressed as they are
+ * read, the compressed length is hence not known upfront.
+ * 
+ * @author Amol Nayak
+ *
+ */
+class CompressingInputStream extends InputStream {
+
+	private static final int BUFFER_SIZE = 8192;
+	
+	private static final byte[] GZIP_HEADER = {
+		(byte)0x1f, (byte)0x8b, 		//Magic number
+		Deflater.DEFLATED, 				//Compression method 
+		0, 								//Flags
+		0, 0, 0, 0, 					//Modification time
+		0, 								//Extra flags
+		(byte)0xff						//Operating system, unknown
+	};
+	
+	private final InputStream in;
+	
+	private final Deflater deflater;
+	
+	private final CRC32 crc;
+	
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	
+	private final byte[] single = new byte[1];
+	
+	private byte[] header;
+	
+	private byte[] trailer;
+	
+	private int position;
+	
+	private boolean closed;
+	
+	/**
+	 * 
+	 * @param in the stream whose contents are compressed
+	 * @param level the compression level, 0-9 or {@link Deflater#DEFAULT_COMPRESSION}
+	 * @param gzip true for the gzip format, false for the zlib format 
+	 */
+	CompressingInputStream(InputStream in,int level,boolean gzip) {
+		this.in = in;
+		this.deflater = new Deflater(level, gzip);
+		this.crc = gzip?new CRC32():null;
+		this.header = gzip?GZIP_HEADER:null;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int read = read(single, 0, 1);
+		return read == -1?-1:single[0] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if(closed)
+			throw new IOException("Stream closed");
+		if(len == 0)
+			return 0;
+		if(header != null) {
+			int read = copy(header, b, off, len);
+			if(position == header.length) {
+				header = null;
+				position = 0;
+			}
+			return read;
+		}
+		while(!deflater.finished()) {
+			int deflated = deflater.deflate(b, off, len);
+			if(deflated > 0)
+				return deflated;
+			if(deflater.needsInput()) {
+				int read = in.read(buffer);
+				if(read == -1) {
+					deflater.finish();
+				} else if(read > 0) {
+					if(crc != null)
+						crc.update(buffer, 0, read);
+					deflater.setInput(buffer, 0, read);
+				}
+			}
+		}
+		if(crc == null)
+			return -1;
+		if(trailer == null)
+			trailer = getGzipTrailer();
+		if(position == trailer.length)
+			return -1;
+		return copy(trailer, b, off, len);
+	}
+	
+	@Override
+	public void close() throws IOException {
+		if(!closed) {
+			closed = true;
+			deflater.end();
+			in.close();
+		}
+	}
+	
+	private int copy(byte[] source,byte[] b,int off,int len) {
+		int count = Math.min(len, source.length - position);
+		System.arraycopy(source, position, b, off, count);
+		position += count;
+		return count;
+	}
+	
+	/**
+	 * The CRC32 and the size modulo 2^32 of the uncompressed contents, little endian
+	 */
+	private byte[] getGzipTrailer() {
+		byte[] bytes = new byte[8];
+		writeInt(bytes, 0, crc.getValue());
+		writeInt(bytes, 4, deflater.getBytesRead());
+		return bytes;
+	}
+	
+	private void writeInt(byte[] bytes,int offset,long value) {
+		for(int i = 0;i < 4;i++)
+			bytes[offset + i] = (byte)(value >>> (8 * i));
+	}
+}
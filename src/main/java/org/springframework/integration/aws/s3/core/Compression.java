@@ -0,0 +1,84 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The compression formats in which the objects can be stored, identified by the
+ * Content-Encoding of the object
+ * 
+ * @author Amol Nayak
+ *
+ */
+public enum Compression {
+	
+	GZIP("gzip"),
+	
+	DEFLATE("deflate");
+	
+	private final String contentEncoding;
+	
+	private Compression(String contentEncoding) {
+		this.contentEncoding = contentEncoding;
+	}
+	
+	/**
+	 * The value of the Content-Encoding header of objects compressed in this format
+	 * @return
+	 */
+	public String getContentEncoding() {
+		return contentEncoding;
+	}
+	
+	/**
+	 * Gets a stream reading the compressed contents of the given stream
+	 * @param in
+	 * @param level the compression level, 0-9 or -1 for the default level
+	 * @return
+	 */
+	public InputStream compress(InputStream in,int level) {
+		return new CompressingInputStream(in, level, this == GZIP);
+	}
+	
+	/**
+	 * Gets a stream reading the decompressed contents of the given stream
+	 * @param in
+	 * @return
+	 */
+	public InputStream decompress(InputStream in) throws IOException {
+		return this == GZIP?new GZIPInputStream(in, 8192):new InflaterInputStream(in);
+	}
+	
+	/**
+	 * Gets the compression for the given Content-Encoding
+	 * @param contentEncoding
+	 * @return the compression or null if the encoding is not one of the compressions
+	 */
+	public static Compression forContentEncoding(String contentEncoding) {
+		if(contentEncoding == null)
+			return null;
+		String encoding = contentEncoding.trim();
+		for(Compression compression:values()) {
+			if(compression.contentEncoding.equalsIgnoreCase(encoding))
+				return compression;
+		}
+		return null;
+	}
+}
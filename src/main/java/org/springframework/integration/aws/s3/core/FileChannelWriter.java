@@ -0,0 +1,86 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.springframework.util.Assert;
+
+/**
+ * Writes the contents of a stream to a file channel in large chunks. The stream is read
+ * straight into the array of the buffer and each chunk is written positionally with a 
+ * single call to the channel, no system call is made per read of the stream.
+ * 
+ * @author Amol Nayak
+ *
+ */
+public class FileChannelWriter {
+
+	public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+	
+	private final int bufferSize;
+	
+	public FileChannelWriter() {
+		this(DEFAULT_BUFFER_SIZE);
+	}
+	
+	/**
+	 * 
+	 * @param bufferSize the size of the buffer the contents are gathered in before 
+	 * 			written to the channel
+	 */
+	public FileChannelWriter(int bufferSize) {
+		Assert.isTrue(bufferSize > 0, "Buffer size should be positive");
+		this.bufferSize = bufferSize;
+	}
+	
+	/**
+	 * Writes the contents of the stream at the given position of the channel, the stream
+	 * is not closed
+	 * @param in
+	 * @param channel
+	 * @param position
+	 * @return the number of bytes written
+	 * @throws IOException
+	 */
+	public long write(InputStream in,FileChannel channel,long position) throws IOException {
+		byte[] bytes = new byte[bufferSize];
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		long written = 0;
+		for(int read = 0;(read = in.read(bytes, buffer.position(), buffer.remaining())) != -1;) {
+			buffer.position(buffer.position() + read);
+			if(!buffer.hasRemaining())
+				written += write(buffer, channel, position + written);
+		}
+		return written + write(buffer, channel, position + written);
+	}
+	
+	public int getBufferSize() {
+		return bufferSize;
+	}
+	
+	private int write(ByteBuffer buffer,FileChannel channel,long position) throws IOException {
+		buffer.flip();
+		int written = buffer.remaining();
+		while(buffer.hasRemaining())
+			position += channel.write(buffer, position);
+		buffer.clear();
+		return written;
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies in fixed buckets, the percentiles are hence approximated
+ * to the upper bound of the bucket they fall in. Recording is lock free.
+ * 
+ * @author Amol Nayak
+ *
+ */
+class LatencyHistogram {
+
+	/**
+	 * The upper bounds in milliseconds of the buckets, the last bucket is unbounded
+	 */
+	static final long[] BUCKET_BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 
+		1000, 2000, 5000, 10000, 30000, 60000, 300000};
+	
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_BOUNDS.length + 1);
+	
+	private final AtomicLong max = new AtomicLong();
+	
+	/**
+	 * Records a latency
+	 * @param latency the latency in milliseconds
+	 */
+	void record(long latency) {
+		int bucket = 0;
+		while(bucket < BUCKET_BOUNDS.length && latency > BUCKET_BOUNDS[bucket])
+			bucket++;
+		counts.incrementAndGet(bucket);
+		while(true) {
+			long current = max.get();
+			if(latency <= current || max.compareAndSet(current, latency))
+				break;
+		}
+	}
+	
+	/**
+	 * Gets the approximate latency below which the given percentage of the latencies fall
+	 * @param percentile between 0 and 100
+	 * @return the latency in milliseconds, 0 if nothing is recorded 
+	 */
+	long getPercentile(double percentile) {
+		long[] snapshot = new long[counts.length()];
+		long total = 0;
+		for(int i = 0;i < snapshot.length;i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		if(total == 0)
+			return 0;
+		long rank = (long)Math.ceil(total * Math.min(Math.max(percentile, 0), 100) / 100);
+		long cumulative = 0;
+		for(int i = 0;i < snapshot.length;i++) {
+			cumulative += snapshot[i];
+			if(cumulative >= rank && snapshot[i] > 0)
+				return i < BUCKET_BOUNDS.length?Math.min(BUCKET_BOUNDS[i], max.get()):max.get();
+		}
+		return max.get();
+	}
+	
+	/**
+	 * The max latency recorded
+	 * @return
+	 */
+	long getMax() {
+		return max.get();
+	}
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.util.Assert;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.CopyPartRequest;
+import com.amazonaws.services.s3.model.CopyPartResult;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+
+/**
+ * Copies objects within S3 without the contents leaving S3. Objects up to
+ * {@link StreamingMultipartUploader#MAX_COPY_SIZE} are copied using a single copy request,
+ * larger objects are copied using a multipart upload whose parts are copied from ranges
+ * of the source object in parallel. The parts are copied only if the source object is
+ * unchanged since the copy started.
+ *
+ * @author Amol Nayak
+ *
+ */
+class MultipartCopier {
+
+	private final Log logger = LogFactory.getLog(getClass());
+
+	private final AmazonS3Client client;
+
+	private final Executor executor;
+
+	private final long partSize;
+
+	private final int maxPartsInFlight;
+
+	/**
+	 *
+	 * @param client the client used to copy the objects
+	 * @param executor the executor on which the parts are copied
+	 * @param partSize the size of each part in bytes of a multipart copy
+	 * @param maxPartsInFlight the max number of parts of one object copied in parallel
+	 */
+	MultipartCopier(AmazonS3Client client,Executor executor,long partSize,int maxPartsInFlight) {
+		Assert.notNull(client, "Non null client required");
+		Assert.notNull(executor, "Non null executor required");
+		Assert.isTrue(partSize >= StreamingMultipartUploader.MIN_PART_SIZE && partSize <= StreamingMultipartUploader.MAX_COPY_SIZE,
+				"Part size should be between " + StreamingMultipartUploader.MIN_PART_SIZE + " and " +
+				StreamingMultipartUploader.MAX_COPY_SIZE + " bytes");
+		Assert.isTrue(maxPartsInFlight > 0, "Max parts in flight should be positive");
+		this.client = client;
+		this.executor = executor;
+		this.partSize = partSize;
+		this.maxPartsInFlight = maxPartsInFlight;
+	}
+
+	/**
+	 * Copies the source object to the destination, the metadata of the source object
+	 * is retained
+	 * @return the size of the object copied
+	 */
+	long copy(String sourceBucketName,String sourceKey,String destinationBucketName,String destinationKey) {
+		ObjectMetadata sourceMetadata = client.getObjectMetadata(sourceBucketName, sourceKey);
+		long length = sourceMetadata.getContentLength();
+		if(length <= StreamingMultipartUploader.MAX_COPY_SIZE) {
+			if(logger.isDebugEnabled())
+				logger.debug("Copying " + sourceKey + " to " + destinationKey + " in a single request");
+			client.copyObject(new CopyObjectRequest(sourceBucketName, sourceKey, destinationBucketName, destinationKey)
+				.withMatchingETagConstraint(sourceMetadata.getETag()));
+			return length;
+		}
+		copyParts(sourceBucketName, sourceKey, destinationBucketName, destinationKey, sourceMetadata);
+		return length;
+	}
+
+	/**
+	 * Gets the part size used to copy an object of the given length, S3 allows at most
+	 * {@link StreamingMultipartUploader#MAX_PARTS} parts in an upload
+	 */
+	long getPartSize(long length) {
+		return Math.max(partSize, (length + StreamingMultipartUploader.MAX_PARTS - 1) / StreamingMultipartUploader.MAX_PARTS);
+	}
+
+	private void copyParts(String sourceBucketName,String sourceKey,String destinationBucketName,
+			String destinationKey,ObjectMetadata sourceMetadata) {
+		long length = sourceMetadata.getContentLength();
+		long copyPartSize = getPartSize(length);
+		String uploadId = client.initiateMultipartUpload(new InitiateMultipartUploadRequest(
+				destinationBucketName, destinationKey, getNewMetadata(sourceMetadata))).getUploadId();
+		if(logger.isDebugEnabled())
+			logger.debug("Initiated multipart copy with id " + uploadId + " of " + sourceKey + " to " + destinationKey);
+		List<PartETag> partETags = Collections.synchronizedList(new ArrayList<PartETag>());
+		AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Semaphore inFlight = new Semaphore(maxPartsInFlight);
+		try {
+			int partNumber = 1;
+			for(long firstByte = 0;firstByte < length && failure.get() == null;firstByte += copyPartSize) {
+				CopyPartRequest request = new CopyPartRequest()
+					.withSourceBucketName(sourceBucketName)
+					.withSourceKey(sourceKey)
+					.withDestinationBucketName(destinationBucketName)
+					.withDestinationKey(destinationKey)
+					.withUploadId(uploadId)
+					.withPartNumber(partNumber++)
+					.withFirstByte(firstByte)
+					.withLastByte(Math.min(firstByte + copyPartSize, length) - 1)
+					.withMatchingETagConstraint(sourceMetadata.getETag());
+				inFlight.acquire();
+				executor.execute(new PartCopyTask(request, inFlight, partETags, failure));
+			}
+			inFlight.acquire(maxPartsInFlight);
+			inFlight.release(maxPartsInFlight);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			abort(destinationBucketName, destinationKey, uploadId);
+			throw new AmazonClientException("Interrupted while copying the parts of " + sourceKey, e);
+		} catch (RuntimeException e) {
+			abort(destinationBucketName, destinationKey, uploadId);
+			throw e;
+		}
+		Throwable cause = failure.get();
+		if(cause != null) {
+			abort(destinationBucketName, destinationKey, uploadId);
+			throw new AmazonClientException("Copy of a part of " + sourceKey + " failed", cause);
+		}
+		List<PartETag> sortedETags = new ArrayList<PartETag>(partETags);
+		Collections.sort(sortedETags, new Comparator<PartETag>() {
+			public int compare(PartETag o1, PartETag o2) {
+				return o1.getPartNumber() - o2.getPartNumber();
+			}
+		});
+		try {
+			client.completeMultipartUpload(new CompleteMultipartUploadRequest(
+					destinationBucketName, destinationKey, uploadId, sortedETags));
+		} catch (AmazonClientException e) {
+			abort(destinationBucketName, destinationKey, uploadId);
+			throw e;
+		}
+		if(logger.isDebugEnabled())
+			logger.debug("Completed multipart copy of " + sortedETags.size() + " parts of " + sourceKey);
+	}
+
+	/**
+	 * The metadata of the destination object, the headers describing the contents and the
+	 * user metadata are taken from the source object
+	 */
+	private ObjectMetadata getNewMetadata(ObjectMetadata sourceMetadata) {
+		ObjectMetadata metadata = new ObjectMetadata();
+		if(sourceMetadata.getContentType() != null)
+			metadata.setContentType(sourceMetadata.getContentType());
+		if(sourceMetadata.getContentEncoding() != null)
+			metadata.setContentEncoding(sourceMetadata.getContentEncoding());
+		if(sourceMetadata.getCacheControl() != null)
+			metadata.setCacheControl(sourceMetadata.getCacheControl());
+		if(sourceMetadata.getContentDisposition() != null)
+			metadata.setContentDisposition(sourceMetadata.getContentDisposition());
+		if(sourceMetadata.getServerSideEncryption() != null)
+			metadata.setServerSideEncryption(sourceMetadata.getServerSideEncryption());
+		metadata.setUserMetadata(new HashMap<String, String>(sourceMetadata.getUserMetadata()));
+		return metadata;
+	}
+
+	private void abort(String bucketName,String key,String uploadId) {
+		try {
+			client.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, key, uploadId));
+		} catch (Exception e) {
+			logger.warn("Unable to abort the multipart copy " + uploadId + " for key " + key, e);
+		}
+	}
+
+	/**
+	 * The task copying one part
+	 */
+	private class PartCopyTask implements Runnable {
+
+		private final CopyPartRequest request;
+		private final Semaphore inFlight;
+		private final List<PartETag> partETags;
+		private final AtomicReference<Throwable> failure;
+
+		PartCopyTask(CopyPartRequest request, Semaphore inFlight,
+				List<PartETag> partETags, AtomicReference<Throwable> failure) {
+			this.request = request;
+			this.inFlight = inFlight;
+			this.partETags = partETags;
+			this.failure = failure;
+		}
+
+		public void run() {
+			try {
+				if(failure.get() != null)
+					return;	//Copy already failed, dont bother
+				CopyPartResult result = client.copyPart(request);
+				partETags.add(new PartETag(request.getPartNumber(), result.getETag()));
+			} catch (Throwable t) {
+				failure.compareAndSet(null, t);
+			} finally {
+				inFlight.release();
+			}
+		}
+	}
+}
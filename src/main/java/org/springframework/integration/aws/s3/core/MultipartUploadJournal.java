@@ -0,0 +1,335 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.util.Assert;
+
+/**
+ * A journal of the multipart uploads of files in progress, persisted in a local directory
+ * so that the uploads interrupted by a crash can be resumed. Each upload has a journal file
+ * holding the upload id, the identity of the file uploaded and the ETags of the parts uploaded
+ * so far. The ETag of a part is appended to the journal file and synced to the disk once the
+ * part is uploaded, a line not completely written before a crash is ignored.
+ *
+ * The journal file of an upload is deleted once the upload completes or is aborted.
+ *
+ * @author Amol Nayak
+ *
+ */
+class MultipartUploadJournal {
+
+	private final Log logger = LogFactory.getLog(getClass());
+
+	private static final String JOURNAL_SUFFIX = ".journal";
+
+	private static final String UPLOAD_ID = "uploadId";
+	private static final String BUCKET = "bucket";
+	private static final String KEY = "key";
+	private static final String FILE = "file";
+	private static final String LENGTH = "length";
+	private static final String LAST_MODIFIED = "lastModified";
+	private static final String PART_SIZE = "partSize";
+	private static final String PART_PREFIX = "part.";
+
+	private final File directory;
+
+	private final Set<File> inUse = new HashSet<File>();
+
+	/**
+	 *
+	 * @param directory the directory holding the journal files
+	 */
+	MultipartUploadJournal(File directory) {
+		Assert.notNull(directory, "Non null journal directory required");
+		if(!directory.exists() && !directory.mkdirs() && !directory.isDirectory())
+			throw new IllegalArgumentException("Unable to create the journal directory " + directory.getAbsolutePath());
+		Assert.isTrue(directory.isDirectory(), directory.getAbsolutePath() + " is not a directory");
+		this.directory = directory;
+	}
+
+	/**
+	 * Gets the journaled upload of the file to the given key, the entry found is reserved for
+	 * the caller till released. The entry returned is of the last upload of the file started
+	 * and the caller should check whether the file has changed since using {@link Entry#matches(File)}
+	 *
+	 * @return the entry or null if none found or the upload is in progress
+	 */
+	synchronized Entry find(String bucketName,String key,File file) {
+		File journalFile = getJournalFile(bucketName, key, file);
+		if(!journalFile.isFile() || inUse.contains(journalFile))
+			return null;
+		Entry entry = read(journalFile);
+		if(entry != null)
+			inUse.add(journalFile);
+		return entry;
+	}
+
+	/**
+	 * Starts the journal of a new upload of the file, any previous journal of an upload of the
+	 * file to the same key is replaced
+	 */
+	synchronized Entry begin(String bucketName,String key,File file,int partSize,String uploadId) throws IOException {
+		File journalFile = getJournalFile(bucketName, key, file);
+		File tempFile = new File(directory, journalFile.getName() + ".tmp");
+		Entry entry = new Entry(journalFile, bucketName, key, file.getAbsolutePath(),
+				file.length(), file.lastModified(), partSize, uploadId);
+		FileOutputStream out = new FileOutputStream(tempFile);
+		try {
+			write(out, UPLOAD_ID, uploadId);
+			write(out, BUCKET, bucketName);
+			write(out, KEY, key);
+			write(out, FILE, entry.path);
+			write(out, LENGTH, String.valueOf(entry.length));
+			write(out, LAST_MODIFIED, String.valueOf(entry.lastModified));
+			write(out, PART_SIZE, String.valueOf(partSize));
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+		if(journalFile.exists() && !journalFile.delete())
+			throw new IOException("Unable to replace the journal " + journalFile.getAbsolutePath());
+		if(!tempFile.renameTo(journalFile))
+			throw new IOException("Unable to create the journal " + journalFile.getAbsolutePath());
+		inUse.add(journalFile);
+		return entry;
+	}
+
+	/**
+	 * Releases the entry reserved for an upload, the journal file of the entry is retained
+	 * unless deleted
+	 */
+	synchronized void release(Entry entry) {
+		entry.close();
+		inUse.remove(entry.journalFile);
+	}
+
+	/**
+	 * Gets the entries of the uploads not in progress whose journal was last written
+	 * before the given age, the entries are reserved for the caller till released
+	 * @param maxAge the age in milliseconds
+	 */
+	synchronized List<Entry> findOrphans(long maxAge) {
+		File[] journalFiles = directory.listFiles();
+		if(journalFiles == null)
+			return Collections.emptyList();
+		long oldest = System.currentTimeMillis() - maxAge;
+		List<Entry> orphans = new ArrayList<Entry>();
+		for(File journalFile:journalFiles) {
+			if(!journalFile.getName().endsWith(JOURNAL_SUFFIX) || inUse.contains(journalFile)
+					|| journalFile.lastModified() >= oldest)
+				continue;
+			Entry entry = read(journalFile);
+			if(entry != null) {
+				inUse.add(journalFile);
+				orphans.add(entry);
+			}
+		}
+		return orphans;
+	}
+
+	/**
+	 * The directory holding the journal files
+	 * @return
+	 */
+	File getDirectory() {
+		return directory;
+	}
+
+	private File getJournalFile(String bucketName,String key,File file) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("MD5");
+			digest.update((bucketName + "/" + key + "\n" + file.getAbsolutePath()).getBytes("UTF-8"));
+			return new File(directory, new String(Hex.encodeHex(digest.digest())) + JOURNAL_SUFFIX);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("Unable to get an MD5 digest instance", e);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Reads the journal file, a journal file that cannot be read is deleted
+	 */
+	private Entry read(File journalFile) {
+		Map<String, String> values = new HashMap<String, String>();
+		try {
+			InputStream in = new FileInputStream(journalFile);
+			ByteArrayOutputStream contents = new ByteArrayOutputStream();
+			try {
+				byte[] bytes = new byte[4096];
+				for(int read = 0;(read = in.read(bytes)) != -1;)
+					contents.write(bytes, 0, read);
+			} finally {
+				in.close();
+			}
+			String text = contents.toString("UTF-8");
+			//A line without the line separator was not completely written
+			int end = text.lastIndexOf('\n');
+			for(String line:text.substring(0, end + 1).split("\n")) {
+				int separator = line.indexOf('=');
+				if(separator > 0)
+					values.put(line.substring(0, separator),
+							URLDecoder.decode(line.substring(separator + 1), "UTF-8"));
+			}
+			Entry entry = new Entry(journalFile, values.get(BUCKET), values.get(KEY), values.get(FILE),
+					Long.parseLong(values.get(LENGTH)), Long.parseLong(values.get(LAST_MODIFIED)),
+					Integer.parseInt(values.get(PART_SIZE)), values.get(UPLOAD_ID));
+			Assert.hasText(entry.bucketName);
+			Assert.hasText(entry.key);
+			Assert.hasText(entry.uploadId);
+			for(Map.Entry<String, String> value:values.entrySet()) {
+				if(value.getKey().startsWith(PART_PREFIX))
+					entry.parts.put(Integer.valueOf(value.getKey().substring(PART_PREFIX.length())), value.getValue());
+			}
+			return entry;
+		} catch (Exception e) {
+			//The journal is of no use if it cant be read, the upload would be started afresh
+			logger.warn("Discarding the unreadable upload journal " + journalFile.getAbsolutePath(), e);
+			journalFile.delete();
+			return null;
+		}
+	}
+
+	private static void write(FileOutputStream out,String name,String value) throws IOException {
+		out.write((name + "=" + URLEncoder.encode(value, "UTF-8") + "\n").getBytes("UTF-8"));
+	}
+
+	/**
+	 * The journal of one multipart upload
+	 */
+	class Entry {
+
+		private final File journalFile;
+		private final String bucketName;
+		private final String key;
+		private final String path;
+		private final long length;
+		private final long lastModified;
+		private final int partSize;
+		private final String uploadId;
+		private final Map<Integer, String> parts = new HashMap<Integer, String>();
+		private FileOutputStream out;
+
+		private Entry(File journalFile, String bucketName, String key, String path,
+				long length, long lastModified, int partSize, String uploadId) {
+			this.journalFile = journalFile;
+			this.bucketName = bucketName;
+			this.key = key;
+			this.path = path;
+			this.length = length;
+			this.lastModified = lastModified;
+			this.partSize = partSize;
+			this.uploadId = uploadId;
+		}
+
+		String getBucketName() {
+			return bucketName;
+		}
+
+		String getKey() {
+			return key;
+		}
+
+		String getUploadId() {
+			return uploadId;
+		}
+
+		int getPartSize() {
+			return partSize;
+		}
+
+		/**
+		 * Checks if the file is the one whose upload is journaled and is unchanged since
+		 */
+		boolean matches(File file) {
+			return file.getAbsolutePath().equals(path) && file.length() == length
+				&& file.lastModified() == lastModified;
+		}
+
+		/**
+		 * Gets the ETag of an uploaded part
+		 * @return the ETag or null if the part is not uploaded
+		 */
+		synchronized String getPartETag(int partNumber) {
+			return parts.get(partNumber);
+		}
+
+		/**
+		 * The number of parts uploaded
+		 */
+		synchronized int getPartCount() {
+			return parts.size();
+		}
+
+		/**
+		 * Records the upload of a part, the failure to record is logged and not propagated
+		 * as the upload can go on, the part would be uploaded again if the upload is resumed
+		 */
+		synchronized void partUploaded(int partNumber,String eTag) {
+			parts.put(partNumber, eTag);
+			try {
+				if(out == null)
+					out = new FileOutputStream(journalFile, true);
+				write(out, PART_PREFIX + partNumber, eTag);
+				out.getFD().sync();
+			} catch (IOException e) {
+				logger.warn("Unable to journal the part " + partNumber + " of the upload " + uploadId, e);
+			}
+		}
+
+		/**
+		 * Deletes the journal of the upload, called once the upload completes or is aborted
+		 */
+		synchronized void delete() {
+			close();
+			if(!journalFile.delete() && journalFile.exists())
+				logger.warn("Unable to delete the upload journal " + journalFile.getAbsolutePath());
+		}
+
+		private synchronized void close() {
+			if(out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					//Ignore
+				}
+				out = null;
+			}
+		}
+	}
+}
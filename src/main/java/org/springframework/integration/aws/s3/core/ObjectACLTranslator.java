@@ -0,0 +1,182 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3.core;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.CannedAccessControlList;
+import com.amazonaws.services.s3.model.GroupGrantee;
+
+/**
+ * Translates the {@link AmazonS3ObjectACL} to the request headers setting the ACL of an
+ * object while it is being uploaded, thus avoiding the separate requests to get and
+ * set the ACL after the upload. 
+ * Grants equivalent to a canned ACL are sent as the canned ACL, other grants are sent 
+ * as the x-amz-grant-* headers along with full control for the owner of the object.
+ * The translated headers are cached per distinct {@link AmazonS3ObjectACL}.
+ *
+ * @author Amol Nayak
+ *
+ */
+class ObjectACLTranslator {
+
+	private final Log logger = LogFactory.getLog(getClass());
+	
+	static final String CANNED_ACL_HEADER = "x-amz-acl";
+	
+	static final String GRANT_READ_HEADER = "x-amz-grant-read";
+	
+	static final String GRANT_READ_ACP_HEADER = "x-amz-grant-read-acp";
+	
+	static final String GRANT_WRITE_ACP_HEADER = "x-amz-grant-write-acp";
+	
+	static final String GRANT_FULL_CONTROL_HEADER = "x-amz-grant-full-control";
+	
+	/**
+	 * The max number of distinct ACLs whose translation is cached
+	 */
+	private static final int MAX_CACHED_ACLS = 1024;
+	
+	private final AmazonS3Client client;
+	
+	private final Map<AmazonS3ObjectACL, Map<String, String>> cache = 
+		new ConcurrentHashMap<AmazonS3ObjectACL, Map<String,String>>();
+	
+	private volatile String ownerId;
+	
+	/**
+	 * 
+	 * @param client the client used to find the canonical id of the owner of the uploaded objects
+	 */
+	ObjectACLTranslator(AmazonS3Client client) {
+		this.client = client;
+	}
+	
+	/**
+	 * Gets the headers to be sent with the upload request to set the given ACL
+	 * @param acl
+	 * @return the headers, empty if no grants are present in the ACL 
+	 */
+	Map<String, String> getHeaders(AmazonS3ObjectACL acl) {
+		if(acl == null || acl.getGrants().isEmpty())
+			return Collections.emptyMap();
+		Map<String, String> headers = cache.get(acl);
+		if(headers == null) {
+			headers = Collections.unmodifiableMap(translate(acl));
+			if(cache.size() < MAX_CACHED_ACLS) {
+				//Cache against a copy, the ACL provided may be changed later
+				AmazonS3ObjectACL key = new AmazonS3ObjectACL();
+				key.setGrants(new HashSet<ObjectGrant>(acl.getGrants()));
+				cache.put(key, headers);
+			}
+		}
+		return headers;
+	}
+	
+	/**
+	 * Translates the grants of the given ACL to the request headers
+	 */
+	private Map<String, String> translate(AmazonS3ObjectACL acl) {
+		Map<String, String> headers = new LinkedHashMap<String, String>();
+		CannedAccessControlList cannedACL = getCannedACL(acl);
+		if(cannedACL != null) {
+			headers.put(CANNED_ACL_HEADER, cannedACL.toString());
+			return headers;
+		}
+		
+		StringBuilder read = new StringBuilder();
+		StringBuilder readAcp = new StringBuilder();
+		StringBuilder writeAcp = new StringBuilder();
+		for(ObjectGrant objGrant:acl.getGrants()) {
+			Grantee grantee = objGrant.getGrantee();
+			String granteeHeader;
+			if(grantee.getGranteeType() == GranteeType.CANONICAL_GRANTEE_TYPE) {
+				granteeHeader = "id=\"" + grantee.getIdentifier() + "\"";
+			} else if(grantee.getGranteeType() == GranteeType.EMAIL_GRANTEE_TYPE) {
+				granteeHeader = "emailAddress=\"" + grantee.getIdentifier() + "\"";
+			} else {
+				GroupGrantee groupGrantee = GroupGrantee.parseGroupGrantee(grantee.getIdentifier());
+				if(groupGrantee == null) {
+					logger.warn("Group grantee with identifier: \"" + grantee.getIdentifier() + "\" not found. skipping this grant");
+					continue;
+				}
+				granteeHeader = "uri=\"" + groupGrantee.getIdentifier() + "\"";
+			}
+			ObjectPermissions perm = objGrant.getPermission();
+			if(perm == ObjectPermissions.READ) {
+				append(read, granteeHeader);
+			} else if(perm == ObjectPermissions.READ_ACP) {
+				append(readAcp, granteeHeader);
+			} else
+				append(writeAcp, granteeHeader);
+		}
+		
+		//Explicit grants replace the default ACL, the owner needs to retain full control
+		headers.put(GRANT_FULL_CONTROL_HEADER, "id=\"" + getOwnerId() + "\"");
+		if(read.length() > 0)
+			headers.put(GRANT_READ_HEADER, read.toString());
+		if(readAcp.length() > 0)
+			headers.put(GRANT_READ_ACP_HEADER, readAcp.toString());
+		if(writeAcp.length() > 0)
+			headers.put(GRANT_WRITE_ACP_HEADER, writeAcp.toString());
+		return headers;
+	}
+	
+	/**
+	 * Gets the canned ACL equivalent to the grants of the given ACL, null if none
+	 */
+	private CannedAccessControlList getCannedACL(AmazonS3ObjectACL acl) {
+		if(acl.getGrants().size() != 1)
+			return null;
+		ObjectGrant grant = acl.getGrants().iterator().next();
+		if(grant.getPermission() != ObjectPermissions.READ
+				|| grant.getGrantee().getGranteeType() != GranteeType.GROUP_GRANTEE_TYPE)
+			return null;
+		String identifier = grant.getGrantee().getIdentifier();
+		if(GroupGranteeType.AllUsers.getIdentifier().equals(identifier))
+			return CannedAccessControlList.PublicRead;
+		if(GroupGranteeType.AuthenticatedUsers.getIdentifier().equals(identifier))
+			return CannedAccessControlList.AuthenticatedRead;
+		return null;
+	}
+	
+	/**
+	 * Gets the canonical id of the account owning the uploaded objects, looked up 
+	 * once and then remembered
+	 */
+	private String getOwnerId() {
+		String id = ownerId;
+		if(id == null) {
+			id = client.getS3AccountOwner().getId();
+			ownerId = id;
+		}
+		return id;
+	}
+	
+	private void append(StringBuilder builder,String granteeHeader) {
+		if(builder.length() > 0)
+			builder.append(", ");
+		builder.append(granteeHeader);
+	}
+}
@@ -45,4 +45,12 @@ public interface PaginatedObjectsView {
 	 */
 	String getNextMarker();
 	
+	/**
+	 * Gets the prefixes of the sub folders of the folder listed, present only when the 
+	 * objects are listed with a delimiter. The keys in these sub folders are not listed 
+	 * in the object summaries.
+	 * @return the {@link List} of prefixes ending with the delimiter, empty if none
+	 */
+	List<String> getCommonPrefixes();
+	
 }
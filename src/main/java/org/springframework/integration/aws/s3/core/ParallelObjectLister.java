@@ -0,0 +1,379 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * Lists the objects of a folder by splitting the key space into partitions that are listed
+ * concurrently, the listing throughput hence grows with the number of partitions listed in 
+ * parallel. The partitions are the ranges of keys between the partition boundaries, for e.g. 
+ * boundaries <i>folder/4</i> and <i>folder/8</i> give the partitions of the keys before 
+ * <i>folder/4</i>, of the keys from <i>folder/4</i> to before <i>folder/8</i> and of the 
+ * keys from <i>folder/8</i>, every key of the folder is hence in exactly one partition. 
+ * <p>
+ * The summaries of the objects listed are delivered, in no particular order, through 
+ * an {@link ObjectSummaryStream} as the pages are listed. The listing of a partition blocks 
+ * when the consumer of the stream falls behind. When listed with a delimiter, the prefixes
+ * of the sub folders are available from the stream once all the summaries are consumed.
+ * 
+ * @author Amol Nayak
+ *
+ */
+public class ParallelObjectLister {
+
+	private final Log logger = LogFactory.getLog(getClass());
+	
+	private static final String PATH_SEPARATOR = "/";
+	
+	private static final int DEFAULT_BUFFER_SIZE = 10000;
+	
+	//U+10FFFF, sorts after any other character in the UTF-8 order of the keys and unlike
+	//U+FFFF is a valid XML character, the marker is echoed in the listing response
+	private static final String MAX_CODE_POINT = "\uDBFF\uDFFF";
+	
+	private static final int MARKER_PADDING = 16;
+	
+	private final AmazonS3Operations operations;
+	
+	private final Executor executor;
+	
+	private final int pageSize;
+	
+	private int bufferSize = DEFAULT_BUFFER_SIZE;
+	
+	/**
+	 * 
+	 * @param operations the operations used to list the pages of the partitions
+	 * @param executor the executor on which the partitions are listed, one task per partition
+	 * @param pageSize the number of keys per page, non positive for the S3 default of 1000
+	 */
+	public ParallelObjectLister(AmazonS3Operations operations,Executor executor,int pageSize) {
+		Assert.notNull(operations, "Non null operations required");
+		Assert.notNull(executor, "Non null executor required");
+		this.operations = operations;
+		this.executor = executor;
+		this.pageSize = pageSize;
+	}
+	
+	/**
+	 * Gets the boundaries partitioning the keys of the folder by their first character after
+	 * the folder, a partition per character given. The first partition also holds the keys
+	 * starting with characters before the first character given and the last one those 
+	 * starting with characters after the last character given.
+	 * @param folder the folder, null or / for the root of the bucket
+	 * @param characters the distinct characters the partitions start at, for e.g. 0-9a-f
+	 * @return the boundaries in order
+	 */
+	public static List<String> getCharacterBoundaries(String folder,String characters) {
+		Assert.hasText(characters, "Non empty partition characters required");
+		String prefix;
+		if(folder == null || PATH_SEPARATOR.equals(folder))
+			prefix = "";
+		else
+			prefix = folder.endsWith(PATH_SEPARATOR)?folder:folder + PATH_SEPARATOR;
+		char[] sorted = expandRanges(characters).toCharArray();
+		java.util.Arrays.sort(sorted);
+		List<String> boundaries = new ArrayList<String>();
+		for(int i = 1;i < sorted.length;i++) {
+			if(sorted[i] != sorted[i - 1])
+				boundaries.add(prefix + sorted[i]);
+		}
+		return boundaries;
+	}
+	
+	/**
+	 * Expands the ranges such as a-z in the given characters
+	 */
+	static String expandRanges(String characters) {
+		StringBuilder builder = new StringBuilder();
+		for(int i = 0;i < characters.length();i++) {
+			char c = characters.charAt(i);
+			if(i + 2 < characters.length() && characters.charAt(i + 1) == '-') {
+				char end = characters.charAt(i + 2);
+				Assert.isTrue(end >= c, "Invalid character range " + c + "-" + end);
+				for(char r = c;r <= end;r++)
+					builder.append(r);
+				i += 2;
+			} else
+				builder.append(c);
+		}
+		return builder.toString();
+	}
+	
+	/**
+	 * Lists the objects of the folder concurrently in the partitions defined by the 
+	 * given boundaries
+	 * @param bucketName
+	 * @param folder the folder listed, null or / for the root of the bucket
+	 * @param boundaries the keys at which the partitions start, in order. The first partition
+	 * starts at the first key of the folder 
+	 * @return the stream of the objects listed, to be closed if not consumed entirely
+	 */
+	public ObjectSummaryStream list(String bucketName,String folder,List<String> boundaries) {
+		return list(bucketName, folder, boundaries, null);
+	}
+	
+	/**
+	 * Lists the objects directly under the folder concurrently in the partitions defined 
+	 * by the given boundaries, the sub folders are rolled up in the common prefixes of the 
+	 * stream
+	 * @param bucketName
+	 * @param folder the folder listed, null or / for the root of the bucket
+	 * @param boundaries the keys at which the partitions start, in order
+	 * @param delimiter the delimiter separating the folders in the keys, null to list all
+	 * 			the keys under the folder
+	 * @return the stream of the objects listed, to be closed if not consumed entirely
+	 */
+	public ObjectSummaryStream list(String bucketName,String folder,List<String> boundaries,String delimiter) {
+		Assert.hasText(bucketName, "Non empty bucket name required");
+		Assert.notNull(boundaries, "Non null boundaries required");
+		ObjectSummaryStream stream = new ObjectSummaryStream(boundaries.size() + 1, bufferSize);
+		for(int i = 0;i <= boundaries.size();i++) {
+			String from = i > 0?boundaries.get(i - 1):null;
+			String to = i < boundaries.size()?boundaries.get(i):null;
+			Assert.isTrue(from == null || to == null || from.compareTo(to) < 0, "Boundaries should be in order");
+			try {
+				executor.execute(new PartitionListingTask(bucketName, folder, delimiter, from, to, stream));
+			} catch (RejectedExecutionException e) {
+				stream.close();
+				throw new AmazonS3OperationException(null, bucketName, null, 
+						"The listing of a partition was rejected by the executor", e);
+			}
+		}
+		return stream;
+	}
+	
+	/**
+	 * Sets the max number of summaries listed and not yet consumed, defaults to 10000
+	 * @param bufferSize
+	 */
+	public void setBufferSize(int bufferSize) {
+		Assert.isTrue(bufferSize > 0, "Buffer size should be positive");
+		this.bufferSize = bufferSize;
+	}
+	
+	/**
+	 * The marker from which the listing of the keys starting at the given key begins, 
+	 * the marker is exclusive hence the key is made to sort just before the given key
+	 * and after the keys of the previous partition. The last character is decremented
+	 * and padded with the max code point, the keys starting with the decremented character
+	 * thus sort before the marker and are not listed again. 
+	 */
+	static String getMarkerBefore(String key) {
+		char last = key.charAt(key.length() - 1);
+		if(last == 0)
+			return key.substring(0, key.length() - 1);
+		StringBuilder marker = new StringBuilder(key.substring(0, key.length() - 1)).append((char)(last - 1));
+		for(int i = 0;i < MARKER_PADDING;i++)
+			marker.append(MAX_CODE_POINT);
+		return marker.toString();
+	}
+	
+	/**
+	 * Lists the pages of one partition
+	 */
+	private class PartitionListingTask implements Runnable {
+
+		private final String bucketName;
+		private final String folder;
+		private final String delimiter;
+		private final String from;
+		private final String to;
+		private final ObjectSummaryStream stream;
+		
+		PartitionListingTask(String bucketName, String folder, String delimiter, String from, 
+				String to, ObjectSummaryStream stream) {
+			this.bucketName = bucketName;
+			this.folder = folder;
+			this.delimiter = delimiter;
+			this.from = from;
+			this.to = to;
+			this.stream = stream;
+		}
+
+		public void run() {
+			try {
+				String marker = from != null?getMarkerBefore(from):null;
+				int keys = 0;
+				boolean done = false;
+				while(!done && !stream.isClosed()) {
+					PaginatedObjectsView view = operations.listObjects(bucketName, folder, marker, pageSize, delimiter);
+					if(view == null)
+						break;
+					for(String prefix:view.getCommonPrefixes()) {
+						if((from == null || prefix.compareTo(from) >= 0) && (to == null || prefix.compareTo(to) < 0))
+							stream.addCommonPrefix(prefix);
+					}
+					for(S3ObjectSummary summary:view.getObjectSummary()) {
+						String key = summary.getKey();
+						if(from != null && key.compareTo(from) < 0)
+							continue;
+						if(to != null && key.compareTo(to) >= 0) {
+							done = true;
+							break;
+						}
+						if(!stream.offer(summary))
+							return;		//Closed
+						keys++;
+					}
+					marker = view.getNextMarker();
+					done |= marker == null;
+				}
+				if(logger.isDebugEnabled())
+					logger.debug("Listed " + keys + " keys of partition " 
+							+ (StringUtils.hasText(from)?from:"<first>") + " to " + (to != null?to:"<last>"));
+			} catch (Throwable t) {
+				stream.fail(t);
+			} finally {
+				stream.partitionListed();
+			}
+		}
+	}
+	
+	/**
+	 * The summaries of the objects listed concurrently, iterating blocks until the next 
+	 * summary is listed or all the partitions are listed. If the listing of a partition
+	 * fails, the iteration fails with the cause once the summaries listed are consumed.
+	 */
+	public static class ObjectSummaryStream implements Iterator<S3ObjectSummary> {
+		
+		private static final Object END = new Object();
+		
+		private final BlockingQueue<Object> queue;
+		
+		private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		
+		private final List<String> commonPrefixes = Collections.synchronizedList(new ArrayList<String>());
+		
+		private int partitions;
+		
+		private volatile boolean closed;
+		
+		private S3ObjectSummary next;
+		
+		ObjectSummaryStream(int partitions,int bufferSize) {
+			this.partitions = partitions;
+			this.queue = new ArrayBlockingQueue<Object>(bufferSize);
+		}
+
+		public boolean hasNext() {
+			while(next == null && partitions > 0) {
+				Object item;
+				try {
+					item = queue.take();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					close();
+					throw new AmazonS3OperationException(null, null, null, "Interrupted while listing the objects", e);
+				}
+				if(item == END)
+					partitions--;
+				else
+					next = (S3ObjectSummary)item;
+			}
+			if(next == null) {
+				Throwable cause = failure.get();
+				if(cause instanceof RuntimeException)
+					throw (RuntimeException)cause;
+				if(cause != null)
+					throw new AmazonS3OperationException(null, null, null, "Listing of the objects failed", cause);
+			}
+			return next != null;
+		}
+
+		public S3ObjectSummary next() {
+			if(!hasNext())
+				throw new NoSuchElementException();
+			S3ObjectSummary summary = next;
+			next = null;
+			return summary;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+		
+		/**
+		 * Gets the prefixes of the sub folders listed, complete only once all the 
+		 * summaries are consumed
+		 * @return the prefixes in no particular order
+		 */
+		public List<String> getCommonPrefixes() {
+			synchronized (commonPrefixes) {
+				return new ArrayList<String>(commonPrefixes);
+			}
+		}
+		
+		/**
+		 * Stops the listing, the summaries not yet consumed are discarded
+		 */
+		public void close() {
+			closed = true;
+			queue.clear();
+		}
+		
+		boolean isClosed() {
+			return closed;
+		}
+		
+		/**
+		 * Offers the summary listed, blocking while the buffer is full
+		 * @return false if the stream is closed
+		 */
+		boolean offer(S3ObjectSummary summary) throws InterruptedException {
+			while(!closed) {
+				if(queue.offer(summary, 100, TimeUnit.MILLISECONDS))
+					return true;
+			}
+			return false;
+		}
+		
+		void addCommonPrefix(String prefix) {
+			commonPrefixes.add(prefix);
+		}
+		
+		void fail(Throwable t) {
+			failure.compareAndSet(null, t);
+		}
+		
+		void partitionListed() {
+			//The end marker is put even if closed so that the consumer never blocks forever 
+			try {
+				while(!queue.offer(END, 100, TimeUnit.MILLISECONDS))
+					if(closed)
+						queue.clear();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.util.Assert;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+
+/**
+ * Downloads the contents of an object to a local file. The first request fetches the 
+ * object up to the parallel download threshold, if the object is larger, the remainder
+ * is split in byte ranges fetched concurrently on the provided {@link Executor}. 
+ * Each range is written at its offset in the file using positional writes of a 
+ * {@link FileChannelWriter}, the file is preallocated to the size of the object.
+ * The ranges are fetched only if the object is not modified since the first request.
+ * Compressed objects are optionally decompressed, these are fetched sequentially.
+ * 
+ * @author Amol Nayak
+ *
+ */
+class RangedDownloader {
+
+	private final Log logger = LogFactory.getLog(getClass());
+	
+	private static final String CONTENT_RANGE_HEADER = "Content-Range";
+	
+	private static final int INVALID_RANGE_STATUS = 416;
+	
+	private final AmazonS3Client client;
+	
+	private final Executor executor;
+	
+	private final long threshold;
+	
+	private final long rangeSize;
+	
+	private final FileChannelWriter channelWriter = new FileChannelWriter();
+	
+	private boolean decompress;
+	
+	/**
+	 * 
+	 * @param client the client used to download
+	 * @param executor the executor on which the ranges are fetched
+	 * @param threshold the size in bytes above which the object is downloaded in ranges
+	 * @param rangeSize the size in bytes of each range
+	 */
+	RangedDownloader(AmazonS3Client client,Executor executor,long threshold,long rangeSize) {
+		Assert.notNull(client, "Non null client required");
+		Assert.notNull(executor, "Non null executor required");
+		Assert.isTrue(threshold > 0, "Parallel download threshold should be positive");
+		Assert.isTrue(rangeSize > 0, "Download range size should be positive");
+		this.client = client;
+		this.executor = executor;
+		this.threshold = threshold;
+		this.rangeSize = rangeSize;
+	}
+	
+	/**
+	 * Downloads the object with the given key to the given file, the contents of the file
+	 * if any are overwritten
+	 * @param bucketName
+	 * @param key
+	 * @param file
+	 * @return the metadata of the downloaded object
+	 */
+	public ObjectMetadata download(String bucketName,String key,File file) throws IOException {
+		S3Object first;
+		try {
+			first = client.getObject(new GetObjectRequest(bucketName, key).withRange(0, threshold - 1));
+		} catch (AmazonS3Exception e) {
+			if(e.getStatusCode() != INVALID_RANGE_STATUS)
+				throw e;
+			//Empty objects cannot be fetched by range
+			first = client.getObject(new GetObjectRequest(bucketName, key));
+		}
+		ObjectMetadata metadata = first.getObjectMetadata();
+		long firstLength = metadata.getContentLength();
+		long totalLength = getTotalLength(metadata);
+		
+		Compression compression = decompress?Compression.forContentEncoding(metadata.getContentEncoding()):null;
+		if(compression != null) {
+			downloadCompressed(bucketName, key, file, first, totalLength, compression);
+			metadata.setContentLength(totalLength);
+			return metadata;
+		}
+		
+		RandomAccessFile raf;
+		try {
+			raf = new RandomAccessFile(file, "rw");
+		} catch (IOException e) {
+			abort(first.getObjectContent());
+			throw e;
+		}
+		try {
+			//Preallocate, also truncates any previous contents of a larger size
+			raf.setLength(totalLength);
+			FileChannel channel = raf.getChannel();
+			List<Future<Void>> ranges = new ArrayList<Future<Void>>();
+			try {
+				for(long start = firstLength;start < totalLength;start += rangeSize) {
+					long end = Math.min(start + rangeSize, totalLength) - 1;
+					FutureTask<Void> range = new FutureTask<Void>(
+							new RangeTask(bucketName, key, metadata.getETag(), start, end, channel));
+					ranges.add(range);
+					executor.execute(range);
+				}
+				if(logger.isDebugEnabled() && !ranges.isEmpty())
+					logger.debug("Downloading " + key + " of size " + totalLength + " in " 
+							+ (ranges.size() + 1) + " ranges");
+				
+				//The first range is written by the calling thread
+				write(first.getObjectContent(), channel, 0, firstLength);
+				for(Future<Void> range:ranges)
+					range.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				cancel(ranges);
+				throw new AmazonClientException("Interrupted while downloading " + key, e);
+			} catch (ExecutionException e) {
+				cancel(ranges);
+				Throwable cause = e.getCause();
+				if(cause instanceof IOException)
+					throw (IOException)cause;
+				throw new AmazonClientException("Download of a range of " + key + " failed", cause);
+			} catch (IOException e) {
+				abort(first.getObjectContent());
+				cancel(ranges);
+				throw e;
+			} catch (RuntimeException e) {
+				abort(first.getObjectContent());
+				cancel(ranges);
+				throw e;
+			}
+		} finally {
+			raf.close();
+		}
+		metadata.setContentLength(totalLength);
+		return metadata;
+	}
+	
+	/**
+	 * Downloads a compressed object, the contents are decompressed as they are written
+	 * to the file. A compressed stream can be decompressed only sequentially, the ranges
+	 * are hence not downloaded in parallel, the object is fetched in a single request.
+	 */
+	private void downloadCompressed(String bucketName,String key,File file,S3Object first,
+			long totalLength,Compression compression) throws IOException {
+		InputStream in = first.getObjectContent();
+		if(first.getObjectMetadata().getContentLength() < totalLength) {
+			abort(in);
+			GetObjectRequest request = new GetObjectRequest(bucketName, key);
+			String eTag = first.getObjectMetadata().getETag();
+			if(eTag != null)
+				request.withMatchingETagConstraint(eTag);
+			S3Object object = client.getObject(request);
+			if(object == null)
+				throw new IOException("Object " + key + " was modified while being downloaded");
+			in = object.getObjectContent();
+		}
+		if(logger.isDebugEnabled())
+			logger.debug("Downloading and decompressing " + key + " of " + compression.getContentEncoding() 
+					+ " encoding");
+		boolean complete = false;
+		RandomAccessFile raf = null;
+		try {
+			InputStream decompressed = compression.decompress(in);
+			raf = new RandomAccessFile(file, "rw");
+			//Truncates any previous contents of a larger size
+			raf.setLength(channelWriter.write(decompressed, raf.getChannel(), 0));
+			raf.close();
+			raf = null;
+			decompressed.close();
+			complete = true;
+		} finally {
+			if(raf != null) {
+				try {
+					raf.close();
+				} catch (IOException e) {
+					//Ignore
+				}
+			}
+			if(!complete)
+				abort(in);
+		}
+	}
+	
+	/**
+	 * Gets the total length of the object from the Content-Range header of the ranged
+	 * response, if absent the complete object was returned
+	 */
+	private long getTotalLength(ObjectMetadata metadata) {
+		Object contentRange = metadata.getRawMetadata().get(CONTENT_RANGE_HEADER);
+		if(contentRange != null) {
+			//Of the form bytes 0-1023/4096
+			String range = contentRange.toString();
+			int index = range.lastIndexOf('/');
+			if(index != -1) {
+				try {
+					return Long.parseLong(range.substring(index + 1).trim());
+				} catch (NumberFormatException e) {
+					logger.warn("Unable to parse the Content-Range " + range);
+				}
+			}
+		}
+		return metadata.getContentLength();
+	}
+	
+	/**
+	 * Writes the contents of the stream at the given position of the channel
+	 */
+	private void write(InputStream in,FileChannel channel,long position,long length) throws IOException {
+		long written;
+		try {
+			written = channelWriter.write(in, channel, position);
+		} finally {
+			in.close();
+		}
+		if(written != length)
+			throw new IOException("Expected " + length + " bytes but received " + written);
+	}
+	
+	private void abort(InputStream in) {
+		try {
+			if(in instanceof S3ObjectInputStream)
+				((S3ObjectInputStream)in).abort();
+			else if(in != null)
+				in.close();
+		} catch (IOException e) {
+			//Nothing more can be done
+		}
+	}
+	
+	/**
+	 * Set to true to decompress the objects with a gzip or deflate Content-Encoding
+	 * @param decompress
+	 */
+	void setDecompress(boolean decompress) {
+		this.decompress = decompress;
+	}
+	
+	private void cancel(List<Future<Void>> ranges) {
+		for(Future<Void> range:ranges)
+			range.cancel(true);
+	}
+	
+	/**
+	 * The task that fetches one range and writes it at its offset
+	 */
+	private class RangeTask implements Callable<Void> {
+		
+		private final String bucketName;
+		private final String key;
+		private final String eTag;
+		private final long start;
+		private final long end;
+		private final FileChannel channel;
+		
+		RangeTask(String bucketName, String key, String eTag, long start,
+				long end, FileChannel channel) {
+			this.bucketName = bucketName;
+			this.key = key;
+			this.eTag = eTag;
+			this.start = start;
+			this.end = end;
+			this.channel = channel;
+		}
+
+		public Void call() throws Exception {
+			GetObjectRequest request = new GetObjectRequest(bucketName, key).withRange(start, end);
+			if(eTag != null)
+				request.withMatchingETagConstraint(eTag);
+			S3Object range = client.getObject(request);
+			if(range == null)
+				throw new IOException("Object " + key + " was modified while being downloaded");
+			write(range.getObjectContent(), channel, start, end - start + 1);
+			return null;
+		}
+	}
+}
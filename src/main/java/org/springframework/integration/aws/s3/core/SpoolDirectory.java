@@ -0,0 +1,193 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3.core;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.util.Assert;
+
+/**
+ * The directory in which the streams to be uploaded are spooled. Each upload gets a 
+ * spool file with a unique name, concurrent uploads of objects with the same name hence do 
+ * not interfere. The total size of the spool files is bounded by a quota, a stream that
+ * does not fit is spooled only partially, the remainder of the stream is to be read from 
+ * the stream itself.
+ * 
+ * @author Amol Nayak
+ *
+ */
+class SpoolDirectory {
+	
+	private final Log logger = LogFactory.getLog(getClass());
+	
+	private static final int BUFFER_SIZE = 8192;
+	
+	private static final int MAX_PREFIX_LENGTH = 32;
+	
+	private final File directory;
+	
+	private final String suffix;
+	
+	private final long quota;
+	
+	private final AtomicLong usedBytes = new AtomicLong();
+	
+	/**
+	 * 
+	 * @param directory the directory the spool files are created in
+	 * @param suffix the suffix of the spool files
+	 * @param quota the max number of bytes spooled at any time
+	 */
+	SpoolDirectory(File directory,String suffix,long quota) {
+		Assert.notNull(directory, "Non null spool directory required");
+		Assert.isTrue(quota > 0, "Spool quota should be positive");
+		this.directory = directory;
+		this.suffix = suffix;
+		this.quota = quota;
+	}
+	
+	/**
+	 * Spools the given stream to a new file, the file is deleted if spooling fails
+	 * @param in
+	 * @param objectName the name of the object used to name the file
+	 * @return
+	 */
+	SpoolFile spool(InputStream in,String objectName) throws IOException {
+		File file = File.createTempFile(getPrefix(objectName), suffix, directory);
+		if(logger.isDebugEnabled())
+			logger.debug("Spooling object " + objectName + " to " + file.getAbsolutePath());
+		SpoolFile spoolFile = new SpoolFile(file);
+		boolean spooled = false;
+		try {
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 4 * BUFFER_SIZE);
+			try {
+				byte[] bytes = new byte[BUFFER_SIZE];
+				for(int read = 0;(read = in.read(bytes)) != -1;) {
+					if(!reserve(read)) {
+						if(logger.isDebugEnabled())
+							logger.debug("Spool quota exhausted after " + spoolFile.length 
+									+ " bytes of object " + objectName);
+						spoolFile.remainder = new SequenceInputStream(
+								new ByteArrayInputStream(bytes, 0, read), in);
+						break;
+					}
+					spoolFile.length += read;
+					out.write(bytes, 0, read);
+				}
+			} finally {
+				out.close();
+			}
+			spooled = true;
+			return spoolFile;
+		} finally {
+			if(!spooled)
+				spoolFile.delete();
+		}
+	}
+	
+	/**
+	 * Gets the number of bytes currently spooled
+	 * @return
+	 */
+	long getUsedBytes() {
+		return usedBytes.get();
+	}
+	
+	private boolean reserve(long bytes) {
+		while(true) {
+			long used = usedBytes.get();
+			if(used + bytes > quota)
+				return false;
+			if(usedBytes.compareAndSet(used, used + bytes))
+				return true;
+		}
+	}
+	
+	/**
+	 * The prefix of the spool file, the name of the object stripped of its folder
+	 * and of the characters not safe in file names
+	 */
+	private String getPrefix(String objectName) {
+		String name = objectName != null?objectName.substring(objectName.lastIndexOf('/') + 1):"";
+		name = name.replaceAll("[^A-Za-z0-9._-]", "_");
+		if(name.length() > MAX_PREFIX_LENGTH)
+			name = name.substring(0, MAX_PREFIX_LENGTH);
+		return "s3-" + name + "-";
+	}
+	
+	/**
+	 * A file spooled in this directory
+	 */
+	class SpoolFile {
+		
+		private final File file;
+		private long length;
+		private InputStream remainder;
+		private final AtomicBoolean deleted = new AtomicBoolean();
+		
+		private SpoolFile(File file) {
+			this.file = file;
+		}
+		
+		File getFile() {
+			return file;
+		}
+		
+		/**
+		 * The number of bytes in the spool file
+		 */
+		long getLength() {
+			return length;
+		}
+		
+		/**
+		 * Checks if the complete stream is in the spool file
+		 */
+		boolean isComplete() {
+			return remainder == null;
+		}
+		
+		/**
+		 * The stream with the contents following those in the spool file, null if 
+		 * the spool file is complete
+		 */
+		InputStream getRemainder() {
+			return remainder;
+		}
+		
+		/**
+		 * Deletes the spool file and returns its bytes to the quota
+		 */
+		void delete() {
+			if(deleted.compareAndSet(false, true)) {
+				if(!file.delete() && file.exists())
+					logger.warn("Unable to delete the spool file " + file.getAbsolutePath());
+				usedBytes.addAndGet(-length);
+			}
+		}
+	}
+}
@@ -0,0 +1,646 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.integration.aws.core.AmazonWSCommonUtils;
+import org.springframework.util.Assert;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ListPartsRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+
+/**
+ * Uploads the contents of an {@link InputStream} to S3 without spooling it to the
+ * file system. The stream is cut into parts held in memory, each part is uploaded
+ * on the provided {@link Executor} while the subsequent parts are still being read.
+ * The number of parts held in memory for an upload is bounded, the reading thread
+ * blocks once all the buffers of the upload are in flight.
+ * The part buffers are returned to a pool once uploaded and reused for later parts
+ * and uploads.
+ *
+ * When an {@link AdaptiveUploadController} is set, the part size and the number of parts
+ * uploaded in parallel are taken from the controller and each part upload is reported to it.
+ *
+ * Streams smaller than one part are uploaded in a single put request.
+ *
+ * @author Amol Nayak
+ *
+ */
+class StreamingMultipartUploader {
+
+	private final Log logger = LogFactory.getLog(getClass());
+
+	/**
+	 * The minimum size of a part (except the last one) accepted by S3
+	 */
+	public static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+	/**
+	 * The max number of parts in a multipart upload
+	 */
+	public static final int MAX_PARTS = 10000;
+
+	/**
+	 * The max size of an object that can be copied using a single copy request
+	 */
+	public static final long MAX_COPY_SIZE = 5L * 1024 * 1024 * 1024;
+
+	private final AmazonS3Client client;
+
+	private final Executor executor;
+
+	private final int partSize;
+
+	private final long maxUploadMemory;
+
+	private volatile int pooledBufferSize;
+
+	private volatile AdaptiveUploadController controller;
+
+	private final ConcurrentLinkedQueue<byte[]> bufferPool = new ConcurrentLinkedQueue<byte[]>();
+
+	private final AtomicInteger pooledBuffers = new AtomicInteger();
+
+	/**
+	 *
+	 * @param client the client used to perform the upload
+	 * @param executor the executor on which the parts are uploaded
+	 * @param partSize the size of each part in bytes
+	 * @param maxUploadMemory the max memory in bytes used for holding parts of one upload
+	 */
+	StreamingMultipartUploader(AmazonS3Client client,Executor executor,int partSize,long maxUploadMemory) {
+		Assert.notNull(client, "Non null client required");
+		Assert.notNull(executor, "Non null executor required");
+		Assert.isTrue(partSize >= MIN_PART_SIZE, "Part size should be at least " + MIN_PART_SIZE + " bytes");
+		this.client = client;
+		this.executor = executor;
+		this.partSize = partSize;
+		this.maxUploadMemory = maxUploadMemory;
+		this.pooledBufferSize = partSize;
+	}
+
+	/**
+	 * Sets the controller tuning the part size and parallelism of the uploads
+	 * @param controller
+	 */
+	void setController(AdaptiveUploadController controller) {
+		this.controller = controller;
+	}
+
+	/**
+	 * Uploads the contents of the stream of unknown length to the given key.
+	 * The stream is read till the end but is not closed.
+	 *
+	 * @param bucketName
+	 * @param key
+	 * @param in
+	 * @param metadata the metadata of the object to be uploaded
+	 */
+	public void upload(String bucketName,String key,InputStream in,ObjectMetadata metadata) throws IOException {
+		upload(bucketName, key, in, metadata, -1);
+	}
+
+	/**
+	 * Uploads the contents of the stream to the given key. The ETag of a multipart uploaded 
+	 * object is not the MD5 of its contents, the inbound side matches it against the ETag 
+	 * computed locally from the parts of the file.
+	 * The stream is read till the end but is not closed.
+	 *
+	 * @param bucketName
+	 * @param key
+	 * @param in
+	 * @param metadata the metadata of the object to be uploaded
+	 * @param contentLength the length of the contents if known in advance, else -1
+	 */
+	public void upload(String bucketName,String key,InputStream in,ObjectMetadata metadata,
+			long contentLength) throws IOException {
+		int uploadPartSize = getPartSize(contentLength);
+		usePartSize(uploadPartSize);
+		byte[] firstPart = borrowBuffer(uploadPartSize);
+		int read;
+		try {
+			read = readFully(in, firstPart);
+		} catch (IOException e) {
+			returnBuffer(firstPart);
+			throw e;
+		}
+		if(read < uploadPartSize) {
+			//The complete stream fits in one part, no need of a multi part upload
+			try {
+				putSinglePart(bucketName, key, firstPart, read, metadata);
+			} finally {
+				returnBuffer(firstPart);
+			}
+			return;
+		}
+
+		String uploadId;
+		try {
+			uploadId = initiate(bucketName, key, metadata);
+		} catch (AmazonClientException e) {
+			returnBuffer(firstPart);
+			throw e;
+		}
+
+		List<PartETag> partETags = new ArrayList<PartETag>();
+		try {
+			uploadParts(bucketName, key, uploadId, in, firstPart, read,
+					uploadPartSize, partETags, null);
+		} catch (IOException e) {
+			abort(bucketName, key, uploadId);
+			throw e;
+		} catch (RuntimeException e) {
+			abort(bucketName, key, uploadId);
+			throw e;
+		}
+		try {
+			complete(bucketName, key, uploadId, partETags);
+		} catch (AmazonClientException e) {
+			abort(bucketName, key, uploadId);
+			throw e;
+		}
+	}
+
+	/**
+	 * Uploads the file to the given key using a multipart upload journaled in the given
+	 * journal. If the journal has an upload of the same unchanged file to the key which
+	 * still exists on S3, the upload is resumed and only the parts not uploaded before
+	 * are read and uploaded, the file is skipped past the others. An upload that fails is not aborted and is left to be resumed
+	 * unless S3 rejects its completion.
+	 *
+	 * @param bucketName
+	 * @param key
+	 * @param file the file to upload
+	 * @param metadata the metadata of the object to be uploaded
+	 * @param journal the journal of the multipart uploads
+	 */
+	public void upload(String bucketName,String key,File file,ObjectMetadata metadata,
+			MultipartUploadJournal journal) throws IOException {
+		MultipartUploadJournal.Entry entry = journal.find(bucketName, key, file);
+		try {
+			if(entry != null && !canResume(entry, file)) {
+				journal.release(entry);
+				entry = null;
+			}
+			int uploadPartSize;
+			if(entry != null) {
+				uploadPartSize = entry.getPartSize();
+				if(logger.isInfoEnabled())
+					logger.info("Resuming the multipart upload " + entry.getUploadId() + " of " +
+							file.getAbsolutePath() + " with " + entry.getPartCount() + " parts already uploaded");
+			} else {
+				uploadPartSize = getPartSize(file.length());
+				usePartSize(uploadPartSize);
+				String uploadId = initiate(bucketName, key, metadata);
+				try {
+					entry = journal.begin(bucketName, key, file, uploadPartSize, uploadId);
+				} catch (IOException e) {
+					abort(bucketName, key, uploadId);
+					throw e;
+				}
+			}
+
+			List<PartETag> partETags = new ArrayList<PartETag>();
+			InputStream in = new FileInputStream(file);
+			try {
+				uploadParts(bucketName, key, entry.getUploadId(), in, null, 0,
+						uploadPartSize, partETags, entry);
+			} finally {
+				in.close();
+			}
+			try {
+				complete(bucketName, key, entry.getUploadId(), partETags);
+			} catch (AmazonServiceException e) {
+				//S3 rejected the parts, resuming would not help
+				abort(bucketName, key, entry.getUploadId());
+				entry.delete();
+				throw e;
+			}
+			entry.delete();
+		} finally {
+			if(entry != null)
+				journal.release(entry);
+		}
+	}
+
+	/**
+	 * Aborts the journaled uploads whose journal was not written to for the given age,
+	 * such uploads are of files no longer being uploaded.
+	 *
+	 * @param journal the journal of the multipart uploads
+	 * @param maxAge the age in milliseconds
+	 * @return the number of uploads aborted
+	 */
+	public int abortOrphans(MultipartUploadJournal journal,long maxAge) {
+		int aborted = 0;
+		for(MultipartUploadJournal.Entry orphan:journal.findOrphans(maxAge)) {
+			try {
+				if(logger.isInfoEnabled())
+					logger.info("Aborting the orphaned multipart upload " + orphan.getUploadId() +
+							" for key " + orphan.getKey());
+				if(abort(orphan.getBucketName(), orphan.getKey(), orphan.getUploadId())) {
+					orphan.delete();
+					aborted++;
+				}
+			} finally {
+				journal.release(orphan);
+			}
+		}
+		return aborted;
+	}
+
+	/**
+	 * Checks if the journaled upload can be resumed for the given file, the uploads which
+	 * cannot be resumed are aborted and their journal deleted
+	 */
+	private boolean canResume(MultipartUploadJournal.Entry entry,File file) {
+		if(!entry.matches(file)) {
+			if(logger.isInfoEnabled())
+				logger.info("File " + file.getAbsolutePath() + " changed since the upload " +
+						entry.getUploadId() + " was started, the upload will be started afresh");
+			abort(entry.getBucketName(), entry.getKey(), entry.getUploadId());
+			entry.delete();
+			return false;
+		}
+		try {
+			client.listParts(new ListPartsRequest(entry.getBucketName(), entry.getKey(), entry.getUploadId())
+				.withMaxParts(1));
+			return true;
+		} catch (AmazonServiceException e) {
+			if(e.getStatusCode() != 404)
+				throw e;
+			if(logger.isInfoEnabled())
+				logger.info("The multipart upload " + entry.getUploadId() + " no longer exists, " +
+						"the upload will be started afresh");
+			entry.delete();
+			return false;
+		}
+	}
+
+	/**
+	 * Reads the parts from the stream and uploads them in parallel, the first part is
+	 * already read unless null. The parts already uploaded as per the journal entry, if any, 
+	 * are skipped in the stream and the uploaded ones are recorded in it. The ETags of the 
+	 * parts are added to the given list in the order of the part numbers.
+	 */
+	private void uploadParts(String bucketName,String key,String uploadId,InputStream in,byte[] firstPart,
+			int read,int uploadPartSize,List<PartETag> partETags,
+			MultipartUploadJournal.Entry entry) throws IOException {
+		AdaptiveUploadController controller = this.controller;
+		int permits = getMaxBuffers(uploadPartSize);
+		AdjustableSemaphore inFlight = new AdjustableSemaphore(permits);
+		List<PartETag> uploadedETags = Collections.synchronizedList(new ArrayList<PartETag>());
+		AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		try {
+			inFlight.acquire();	//For the first part
+			byte[] buffer = firstPart;
+			int partNumber = 1;
+			if(buffer == null) {
+				partNumber = skipUploadedParts(in, partNumber, uploadPartSize, entry, uploadedETags);
+				buffer = borrowBuffer(uploadPartSize);
+				read = readPart(in, buffer, inFlight);
+			}
+			while(read > 0) {
+				executor.execute(new PartUploadTask(bucketName, key, uploadId, partNumber,
+						buffer, read, inFlight, uploadedETags, failure, entry));
+				if(failure.get() != null)
+					break;
+				if(controller != null) {
+					//Apply the parallelism as tuned by the parts uploaded so far
+					int newPermits = getMaxBuffers(uploadPartSize);
+					if(newPermits > permits)
+						inFlight.release(newPermits - permits);
+					else if(newPermits < permits)
+						inFlight.reducePermits(permits - newPermits);
+					permits = newPermits;
+				}
+				inFlight.acquire();
+				partNumber = skipUploadedParts(in, partNumber + 1, uploadPartSize, entry, uploadedETags);
+				buffer = borrowBuffer(uploadPartSize);
+				read = readPart(in, buffer, inFlight);
+			}
+			//Wait for all the parts in flight to complete
+			inFlight.acquire(permits);
+			inFlight.release(permits);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AmazonClientException("Interrupted while uploading the parts of " + key, e);
+		}
+
+		Throwable cause = failure.get();
+		if(cause != null)
+			throw new AmazonClientException("Upload of a part of " + key + " failed", cause);
+
+		List<PartETag> sortedETags = new ArrayList<PartETag>(uploadedETags);
+		Collections.sort(sortedETags, new Comparator<PartETag>() {
+			public int compare(PartETag o1, PartETag o2) {
+				return o1.getPartNumber() - o2.getPartNumber();
+			}
+		});
+		partETags.addAll(sortedETags);
+	}
+
+	/**
+	 * Skips the parts uploaded before the upload was interrupted as per the journal entry,
+	 * if any, a file is not read for them but seeked past them
+	 * @return the number of the next part to be read
+	 */
+	private int skipUploadedParts(InputStream in,int partNumber,int uploadPartSize,
+			MultipartUploadJournal.Entry entry,List<PartETag> uploadedETags) throws IOException {
+		if(entry == null)
+			return partNumber;
+		String uploadedETag;
+		while((uploadedETag = entry.getPartETag(partNumber)) != null) {
+			long skipped = 0;
+			while(skipped < uploadPartSize) {
+				long count = in.skip(uploadPartSize - skipped);
+				if(count <= 0)
+					break;
+				skipped += count;
+			}
+			if(skipped == 0)
+				break;
+			uploadedETags.add(new PartETag(partNumber, uploadedETag));
+			partNumber++;
+		}
+		return partNumber;
+	}
+
+	/**
+	 * Reads the next part in the given buffer, the buffer and its permit are released
+	 * if the stream has ended or could not be read
+	 * @return the number of bytes read in the buffer
+	 */
+	private int readPart(InputStream in,byte[] buffer,Semaphore inFlight) throws IOException {
+		int read;
+		try {
+			read = readFully(in, buffer);
+		} catch (IOException e) {
+			returnBuffer(buffer);
+			inFlight.release();
+			throw e;
+		}
+		if(read == 0) {
+			returnBuffer(buffer);
+			inFlight.release();
+		}
+		return read;
+	}
+
+	private String initiate(String bucketName,String key,ObjectMetadata metadata) {
+		String uploadId = client.initiateMultipartUpload(
+				new InitiateMultipartUploadRequest(bucketName, key, metadata)).getUploadId();
+		if(logger.isDebugEnabled())
+			logger.debug("Initiated multipart upload with id " + uploadId + " for key " + key);
+		return uploadId;
+	}
+
+	private void complete(String bucketName,String key,String uploadId,List<PartETag> partETags) {
+		client.completeMultipartUpload(
+				new CompleteMultipartUploadRequest(bucketName, key, uploadId, partETags));
+		if(logger.isDebugEnabled())
+			logger.debug("Completed multipart upload of " + partETags.size() + " parts for key " + key);
+	}
+
+	/**
+	 * Switches the pooled buffers to the part size tuned by the controller
+	 */
+	private void usePartSize(int uploadPartSize) {
+		AdaptiveUploadController controller = this.controller;
+		if(controller != null && uploadPartSize != pooledBufferSize && uploadPartSize == controller.getPartSize()) {
+			//The controller changed the part size, the buffers of the old size are no longer useful
+			pooledBufferSize = uploadPartSize;
+			bufferPool.clear();
+			pooledBuffers.set(0);
+		}
+	}
+
+	/**
+	 * Gets the part size to be used for an upload of the given length, S3 allows
+	 * at most {@link #MAX_PARTS} parts in an upload and hence the configured part size
+	 * is increased for uploads which would need more parts.
+	 */
+	int getPartSize(long contentLength) {
+		AdaptiveUploadController controller = this.controller;
+		int partSize = controller != null?controller.getPartSize():this.partSize;
+		if(contentLength <= (long)partSize * MAX_PARTS)
+			return partSize;
+		long requiredPartSize = (contentLength + MAX_PARTS - 1) / MAX_PARTS;
+		Assert.isTrue(requiredPartSize <= Integer.MAX_VALUE, "Content length " + contentLength + " too large");
+		return (int)requiredPartSize;
+	}
+
+	/**
+	 * Gets the max number of part buffers of the given size one upload can hold. We need
+	 * at least one part being read while other one is being uploaded, with a controller
+	 * set, one buffer is held for each part uploaded in parallel and one for the part
+	 * being read, but never more than what the max upload memory allows.
+	 */
+	int getMaxBuffers(int uploadPartSize) {
+		int maxBuffers = (int)Math.max(2, Math.min(maxUploadMemory / uploadPartSize, Integer.MAX_VALUE));
+		AdaptiveUploadController controller = this.controller;
+		if(controller == null)
+			return maxBuffers;
+		return Math.max(2, Math.min(controller.getParallelism() + 1, maxBuffers));
+	}
+
+	/**
+	 * Uploads the given bytes using a single put request
+	 */
+	private void putSinglePart(String bucketName,String key,byte[] bytes,int length,ObjectMetadata metadata) {
+		metadata.setContentLength(length);
+		String contentMD5 = toBase64(AmazonWSCommonUtils.getContentsMD5AsBytes(bytes, 0, length));
+		if(contentMD5 != null)
+			metadata.setContentMD5(contentMD5);
+		client.putObject(new PutObjectRequest(bucketName, key,
+				new ByteArrayInputStream(bytes, 0, length), metadata));
+	}
+
+	/**
+	 * Aborts the multipart upload, the failure to abort is logged and not propagated
+	 */
+	private boolean abort(String bucketName,String key,String uploadId) {
+		try {
+			client.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, key, uploadId));
+			return true;
+		} catch (AmazonServiceException e) {
+			if(e.getStatusCode() == 404)
+				return true;	//Already aborted or completed
+			logger.warn("Unable to abort the multipart upload " + uploadId + " for key " + key, e);
+		} catch (Exception e) {
+			logger.warn("Unable to abort the multipart upload " + uploadId + " for key " + key, e);
+		}
+		return false;
+	}
+
+	/**
+	 * Reads from the stream till the buffer is full or the end of the stream is reached
+	 * @return the number of bytes read in the buffer
+	 */
+	private int readFully(InputStream in,byte[] buffer) throws IOException {
+		int total = 0;
+		while(total < buffer.length) {
+			int read = in.read(buffer, total, buffer.length - total);
+			if(read == -1)
+				break;
+			total += read;
+		}
+		return total;
+	}
+
+	private byte[] borrowBuffer(int size) {
+		if(size != pooledBufferSize)
+			return new byte[size];
+		byte[] buffer = bufferPool.poll();
+		if(buffer != null) {
+			pooledBuffers.decrementAndGet();
+			return buffer;
+		}
+		return new byte[size];
+	}
+
+	private void returnBuffer(byte[] buffer) {
+		//Retain at most as many buffers as one upload can use, rest are left for the GC
+		int size = pooledBufferSize;
+		if(buffer.length != size)
+			return;
+		if(pooledBuffers.incrementAndGet() <= getMaxBuffers(size))
+			bufferPool.offer(buffer);
+		else
+			pooledBuffers.decrementAndGet();
+	}
+
+	private String toBase64(byte[] md5) {
+		if(md5 == null)
+			return null;
+		try {
+			return AmazonWSCommonUtils.encodeHex(md5);
+		} catch (UnsupportedEncodingException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * The task that uploads one part and returns its buffer to the pool
+	 */
+	private class PartUploadTask implements Runnable {
+
+		private final String bucketName;
+		private final String key;
+		private final String uploadId;
+		private final int partNumber;
+		private final byte[] buffer;
+		private final int length;
+		private final AdjustableSemaphore inFlight;
+		private final List<PartETag> partETags;
+		private final AtomicReference<Throwable> failure;
+		private final MultipartUploadJournal.Entry entry;
+
+		PartUploadTask(String bucketName, String key, String uploadId,
+				int partNumber, byte[] buffer, int length, AdjustableSemaphore inFlight,
+				List<PartETag> partETags, AtomicReference<Throwable> failure,
+				MultipartUploadJournal.Entry entry) {
+			this.bucketName = bucketName;
+			this.key = key;
+			this.uploadId = uploadId;
+			this.partNumber = partNumber;
+			this.buffer = buffer;
+			this.length = length;
+			this.inFlight = inFlight;
+			this.partETags = partETags;
+			this.failure = failure;
+			this.entry = entry;
+		}
+
+		public void run() {
+			AdaptiveUploadController controller = StreamingMultipartUploader.this.controller;
+			try {
+				if(failure.get() != null)
+					return;	//Upload already failed, dont bother
+				long start = System.nanoTime();
+				UploadPartRequest request = new UploadPartRequest()
+					.withBucketName(bucketName)
+					.withKey(key)
+					.withUploadId(uploadId)
+					.withPartNumber(partNumber)
+					.withPartSize(length)
+					.withInputStream(new ByteArrayInputStream(buffer, 0, length));
+				String partMD5 = toBase64(AmazonWSCommonUtils.getContentsMD5AsBytes(buffer, 0, length));
+				if(partMD5 != null)
+					request.withMD5Digest(partMD5);
+				UploadPartResult result = client.uploadPart(request);
+				partETags.add(result.getPartETag());
+				if(entry != null)
+					entry.partUploaded(partNumber, result.getPartETag().getETag());
+				if(controller != null)
+					controller.partUploaded(length, start, System.nanoTime());
+				if(logger.isDebugEnabled())
+					logger.debug("Uploaded part " + partNumber + " of size " + length + " for key " + key);
+			} catch (Throwable t) {
+				if(controller != null)
+					controller.partFailed();
+				failure.compareAndSet(null, t);
+			} finally {
+				returnBuffer(buffer);
+				inFlight.release();
+			}
+		}
+	}
+
+	/**
+	 * A semaphore whose permits can be reduced while permits are held, used to change
+	 * the parallelism of an upload in progress
+	 */
+	@SuppressWarnings("serial")
+	private static class AdjustableSemaphore extends Semaphore {
+
+		AdjustableSemaphore(int permits) {
+			super(permits);
+		}
+
+		@Override
+		protected void reducePermits(int reduction) {
+			super.reducePermits(reduction);
+		}
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3.core;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.util.Assert;
+
+/**
+ * Bounds the number of uploads and the number of bytes being uploaded concurrently. 
+ * The thread acquiring a slot blocks till enough uploads in flight complete. An upload
+ * larger than the max bytes allowed is let through when no other upload is in flight.
+ *
+ * @author Amol Nayak
+ *
+ */
+class UploadThrottle {
+
+	private final int maxUploads;
+	
+	private final long maxBytes;
+	
+	private final ReentrantLock lock = new ReentrantLock();
+	
+	private final Condition released = lock.newCondition();
+	
+	private int inFlightUploads;
+	
+	private long inFlightBytes;
+	
+	/**
+	 * 
+	 * @param maxUploads the max number of uploads in flight
+	 * @param maxBytes the max number of bytes in flight
+	 */
+	UploadThrottle(int maxUploads,long maxBytes) {
+		Assert.isTrue(maxUploads > 0, "Max uploads in flight should be positive");
+		Assert.isTrue(maxBytes > 0, "Max bytes in flight should be positive");
+		this.maxUploads = maxUploads;
+		this.maxBytes = maxBytes;
+	}
+	
+	/**
+	 * Acquires a slot for an upload of the given size, blocks till the slot is available
+	 * @param bytes
+	 * @throws InterruptedException
+	 */
+	void acquire(long bytes) throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			while(inFlightUploads >= maxUploads 
+					|| (inFlightUploads > 0 && inFlightBytes + bytes > maxBytes))
+				released.await();
+			inFlightUploads++;
+			inFlightBytes += bytes;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Releases the slot acquired for an upload of the given size
+	 * @param bytes
+	 */
+	void release(long bytes) {
+		lock.lock();
+		try {
+			inFlightUploads--;
+			inFlightBytes -= bytes;
+			released.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Gets the number of uploads currently in flight
+	 */
+	int getInFlightUploads() {
+		lock.lock();
+		try {
+			return inFlightUploads;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Gets the number of bytes currently in flight
+	 */
+	long getInFlightBytes() {
+		lock.lock();
+		try {
+			return inFlightBytes;
+		} finally {
+			lock.unlock();
+		}
+	}
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.DirectFieldAccessor;
+import org.springframework.integration.Message;
+import org.springframework.integration.aws.TestUtils;
+import org.springframework.integration.aws.core.BasicAWSCredentials;
+import org.springframework.integration.aws.s3.core.AmazonS3Object;
+import org.springframework.integration.aws.s3.core.AmazonS3OperationsImpl;
+import org.springframework.integration.aws.s3.core.PaginatedObjectsView;
+import org.springframework.integration.aws.s3.core.S3ObjectSummary;
+
+/**
+ * The test case for the {@link AmazonS3InboundStreamingMessageSource}, the objects are
+ * listed and fetched from a stub of the S3 operations
+ * @author Amol Nayak
+ *
+ */
+public class AmazonS3InboundStreamingMessageSourceTest {
+
+	private AmazonS3InboundStreamingMessageSource source;
+	
+	private StubOperations operations;
+	
+	@Before
+	public void setup() throws Exception {
+		operations = new StubOperations();
+		source = createSource("*.txt");
+	}
+	
+	private AmazonS3InboundStreamingMessageSource createSource(String fileWildcard) throws Exception {
+		AmazonS3InboundStreamingMessageSource source = new AmazonS3InboundStreamingMessageSource();
+		source.setCredentials(new BasicAWSCredentials("accessKey", "secretKey"));
+		source.setBucket("bucket");
+		source.setRemoteDirectory("folder");
+		source.setFileWildcard(fileWildcard);
+		source.setMaxObjectsPerBatch(2);
+		source.setInMemoryThreshold(8);
+		source.afterPropertiesSet();
+		new DirectFieldAccessor(source).setPropertyValue("client", operations);
+		return source;
+	}
+	
+	/**
+	 * Small objects are emitted as a byte[], once only unless changed
+	 */
+	@Test
+	public void smallObjectsEmittedInMemory() throws Exception {
+		operations.put("folder/a.txt", "small", "etag-1");
+		operations.put("folder/b.json", "small", "etag-2");
+		Message<Object> message = source.receive();
+		assertNotNull(message);
+		assertArrayEquals("small".getBytes(), (byte[])message.getPayload());
+		assertEquals("folder/a.txt", message.getHeaders().get(AmazonS3MessageHeaders.OBJECT_KEY));
+		assertEquals("a.txt", message.getHeaders().get(AmazonS3MessageHeaders.FILE_NAME));
+		assertEquals("etag-1", message.getHeaders().get(AmazonS3MessageHeaders.OBJECT_ETAG));
+		assertEquals(5L, message.getHeaders().get(AmazonS3MessageHeaders.OBJECT_SIZE));
+		assertEquals("bucket", message.getHeaders().get(AmazonS3MessageHeaders.BUCKET_NAME));
+		assertEquals(Collections.singletonMap("owner", "test"), 
+				message.getHeaders().get(AmazonS3MessageHeaders.USER_METADATA));
+		assertNull("The json object is filtered and a.txt is already emitted", source.receive());
+		
+		operations.put("folder/a.txt", "changed", "etag-3");
+		assertEquals("etag-3", source.receive().getHeaders().get(AmazonS3MessageHeaders.OBJECT_ETAG));
+		assertNull(source.receive());
+		assertEquals(0, operations.metadataRequests);
+	}
+	
+	/**
+	 * Large objects are emitted as streams getting the object only when read, the object
+	 * is not emitted again once the stream is read till the end or closed
+	 */
+	@Test
+	public void largeObjectsStreamed() throws Exception {
+		operations.put("folder/c.txt", "some large contents", "etag-1");
+		operations.put("folder/d.txt", "more large contents", "etag-2");
+		operations.put("folder/e.txt", "even more contents", "etag-3");
+		Message<Object> first = source.receive();
+		Message<Object> second = source.receive();
+		Message<Object> third = source.receive();
+		assertEquals(0, operations.getRequests);
+		assertEquals(3, operations.metadataRequests);
+		assertEquals(Collections.singletonMap("owner", "test"), 
+				first.getHeaders().get(AmazonS3MessageHeaders.USER_METADATA));
+		assertNull("The streams emitted are not yet processed", source.receive());
+		
+		InputStream in = (InputStream)first.getPayload();
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		for(int read = 0;(read = in.read()) != -1;)
+			bos.write(read);
+		assertEquals("some large contents", bos.toString());
+		assertEquals(1, operations.getRequests);
+		assertTrue("The stream is released once read fully", operations.closedStreams.contains("folder/c.txt"));
+		assertEquals(-1, in.read());
+		
+		((InputStream)second.getPayload()).close();
+		assertEquals("A stream closed unread never gets the object", 1, operations.getRequests);
+		assertNull(source.receive());
+		
+		//Reading a part of the contents and closing releases the stream
+		InputStream partial = (InputStream)third.getPayload();
+		assertEquals('e', partial.read());
+		partial.close();
+		assertEquals(2, operations.getRequests);
+		assertTrue(operations.closedStreams.contains("folder/e.txt"));
+		assertEquals(-1, partial.read());
+		
+		operations.put("folder/e.txt", "changed large contents", "etag-4");
+		assertEquals("etag-4", source.receive().getHeaders().get(AmazonS3MessageHeaders.OBJECT_ETAG));
+		assertNull(source.receive());
+	}
+	
+	/**
+	 * A stream neither read till the end nor closed is emitted again once the in flight 
+	 * timeout expires, releasing the discarded stream later does not affect the new one
+	 */
+	@Test
+	public void discardedStreamEmittedAgain() throws Exception {
+		source.setInFlightTimeout(50);
+		operations.put("folder/c.txt", "some large contents", "etag-1");
+		Message<Object> discarded = source.receive();
+		assertNotNull(discarded);
+		assertNull("The stream is in flight", source.receive());
+		Thread.sleep(100);
+		Message<Object> again = source.receive();
+		assertNotNull(again);
+		assertEquals("folder/c.txt", again.getHeaders().get(AmazonS3MessageHeaders.OBJECT_KEY));
+		
+		source.setInFlightTimeout(60000);
+		((InputStream)discarded.getPayload()).close();
+		//The stream emitted again is still in flight, the object was recorded though
+		assertNull(source.receive());
+		assertEquals(1, TestUtils.getPropertyValue(source, "inFlightObjects", Map.class).size());
+		((InputStream)again.getPayload()).close();
+		assertEquals(0, TestUtils.getPropertyValue(source, "inFlightObjects", Map.class).size());
+		assertNull(source.receive());
+	}
+	
+	/**
+	 * The contents of an object modified after its stream is emitted are not read, they
+	 * would not be those described by the headers
+	 */
+	@Test
+	public void modifiedObjectNotRead() throws Exception {
+		operations.put("folder/c.txt", "some large contents", "etag-1");
+		Message<Object> message = source.receive();
+		operations.put("folder/c.txt", "replaced large contents", "etag-2");
+		InputStream in = (InputStream)message.getPayload();
+		try {
+			in.read();
+			fail("The contents of the modified object were read");
+		} catch (IOException e) {
+			//Expected
+		}
+		in.close();
+		assertEquals("etag-2", source.receive().getHeaders().get(AmazonS3MessageHeaders.OBJECT_ETAG));
+	}
+	
+	/**
+	 * The objects deleted since emitted are forgotten once a listing of the directory 
+	 * completes, they are emitted again if created again
+	 */
+	@Test
+	public void deletedObjectsForgotten() throws Exception {
+		operations.put("folder/a.txt", "small", "etag-1");
+		operations.put("folder/b.txt", "small", "etag-2");
+		assertNotNull(source.receive());
+		assertNotNull(source.receive());
+		assertNull(source.receive());
+		assertEquals(2, TestUtils.getPropertyValue(source, "emittedObjects", Map.class).size());
+		
+		operations.objects.remove("folder/a.txt");
+		assertNull(source.receive());
+		assertEquals(1, TestUtils.getPropertyValue(source, "emittedObjects", Map.class).size());
+		operations.put("folder/a.txt", "small", "etag-1");
+		assertEquals("folder/a.txt", source.receive().getHeaders().get(AmazonS3MessageHeaders.OBJECT_KEY));
+	}
+	
+	/**
+	 * Only the names with the prefixes the filter accepts are listed, one prefix after the
+	 * other
+	 */
+	@Test
+	public void filterPushedDownToListing() throws Exception {
+		AmazonS3InboundStreamingMessageSource source = createSource("folder/a*.txt");
+		operations.put("folder/a1.txt", "small", "etag-1");
+		operations.put("folder/a2.txt", "small", "etag-2");
+		operations.put("folder/a3.txt", "small", "etag-3");
+		operations.put("folder/b1.txt", "small", "etag-4");
+		List<Object> keys = new ArrayList<Object>();
+		for(Message<Object> message;(message = source.receive()) != null;)
+			keys.add(message.getHeaders().get(AmazonS3MessageHeaders.OBJECT_KEY));
+		assertEquals(Arrays.asList("folder/a1.txt", "folder/a2.txt", "folder/a3.txt"), keys);
+		//The prefix in both cases, the one in lower case is listed in two pages
+		assertEquals(3, operations.namePrefixes.size());
+		assertEquals(new HashSet<String>(Arrays.asList("a", "A")), new HashSet<String>(operations.namePrefixes));
+		
+		//The next listing starts over from the first prefix
+		operations.put("folder/a4.txt", "small", "etag-6");
+		assertEquals("folder/a4.txt", source.receive().getHeaders().get(AmazonS3MessageHeaders.OBJECT_KEY));
+	}
+	
+	/**
+	 * The threads of the S3 operations created by the source are stopped on destroy
+	 */
+	@Test
+	public void destroyStopsOperationsThreads() throws Exception {
+		AmazonS3InboundStreamingMessageSource source = new AmazonS3InboundStreamingMessageSource();
+		source.setCredentials(new BasicAWSCredentials("accessKey", "secretKey"));
+		source.setBucket("bucket");
+		source.afterPropertiesSet();
+		ThreadPoolExecutor executor = TestUtils.getPropertyValue(source, 
+				"client.defaultPartUploadExecutor", ThreadPoolExecutor.class);
+		assertFalse(executor.isShutdown());
+		source.destroy();
+		assertTrue(executor.isShutdown());
+	}
+	
+	private static class StubOperations extends AmazonS3OperationsImpl {
+		
+		private final TreeMap<String, String[]> objects = new TreeMap<String, String[]>();
+		private final List<String> namePrefixes = new ArrayList<String>();
+		private final List<String> closedStreams = Collections.synchronizedList(new ArrayList<String>());
+		private int getRequests;
+		private int metadataRequests;
+		
+		StubOperations() {
+			super(new BasicAWSCredentials("accessKey", "secretKey"));
+		}
+		
+		void put(String key,String contents,String eTag) {
+			objects.put(key, new String[]{contents, eTag});
+		}
+
+		@Override
+		public PaginatedObjectsView listObjects(String bucketName, String folder, 
+				String nextMarker, int pageSize, String delimiter, String namePrefix) {
+			if(namePrefix != null)
+				namePrefixes.add(namePrefix);
+			String prefix = folder + "/" + (namePrefix != null?namePrefix:"");
+			final List<S3ObjectSummary> summaries = new ArrayList<S3ObjectSummary>();
+			String lastKey = null;
+			boolean truncated = false;
+			Map<String, String[]> remaining = nextMarker != null?objects.tailMap(nextMarker + "\0"):objects;
+			for(Map.Entry<String, String[]> entry:remaining.entrySet()) {
+				if(!entry.getKey().startsWith(prefix))
+					continue;
+				if(summaries.size() == pageSize) {
+					truncated = true;
+					break;
+				}
+				summaries.add(summary(entry.getKey(), entry.getValue()));
+				lastKey = entry.getKey();
+			}
+			final String marker = truncated?lastKey:null;
+			return new PaginatedObjectsView() {
+				public List<S3ObjectSummary> getObjectSummary() {
+					return summaries;
+				}
+				public boolean hasMoreResults() {
+					return marker != null;
+				}
+				public String getNextMarker() {
+					return marker;
+				}
+				public List<String> getCommonPrefixes() {
+					return Collections.emptyList();
+				}
+			};
+		}
+
+		@Override
+		public AmazonS3Object getObjectIfMatch(String bucketName, String folder, final String objectName, 
+				String eTag) {
+			getRequests++;
+			if(!objects.get(objectName)[1].equals(eTag))
+				return null;
+			InputStream in = new ByteArrayInputStream(objects.get(objectName)[0].getBytes()) {
+				public void close() {
+					closedStreams.add(objectName);
+				}
+			};
+			return new AmazonS3Object(metadata(), new HashMap<String, Object>(), in, null);
+		}
+
+		@Override
+		public AmazonS3Object getObjectMetadata(String bucketName, String folder, String objectName) {
+			metadataRequests++;
+			Map<String, Object> metadata = new HashMap<String, Object>();
+			metadata.put("ETag", objects.get(objectName)[1]);
+			return new AmazonS3Object(metadata(), metadata, null, null);
+		}
+		
+		private Map<String, String> metadata() {
+			return Collections.singletonMap("owner", "test");
+		}
+		
+		private S3ObjectSummary summary(final String key,final String[] object) {
+			return new S3ObjectSummary() {
+				public long getSize() {
+					return object[0].length();
+				}
+				public Date getLastModified() {
+					return new Date(0);
+				}
+				public String getKey() {
+					return key;
+				}
+				public String getETag() {
+					return object[1];
+				}
+				public String getBucketName() {
+					return "bucket";
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.DirectFieldAccessor;
+import org.springframework.integration.Message;
+import org.springframework.integration.aws.TestUtils;
+import org.springframework.integration.aws.core.BasicAWSCredentials;
+
+/**
+ * The test case for the background synchronization of the 
+ * {@link AmazonS3InboundSynchronizationMessageSource}, the synchronizer is a stub emitting 
+ * the files as it synchronizes them
+ * @author Amol Nayak
+ *
+ */
+public class AmazonS3InboundSynchronizationMessageSourceTest {
+
+	private File directory;
+	
+	private AmazonS3InboundSynchronizationMessageSource source;
+	
+	private SlowSynchronizer synchronizer;
+	
+	@Before
+	public void setup() throws Exception {
+		directory = File.createTempFile("s3-source", "");
+		directory.delete();
+		directory.mkdir();
+		source = new AmazonS3InboundSynchronizationMessageSource();
+		source.setCredentials(new BasicAWSCredentials("accessKey", "secretKey"));
+		source.setBucket("bucket");
+		source.setRemoteDirectory("folder");
+		source.setDirectory(directory);
+		source.setBackgroundSync(true);
+		source.setSyncInterval(10);
+		source.afterPropertiesSet();
+		synchronizer = new SlowSynchronizer();
+		new DirectFieldAccessor(source).setPropertyValue("synchronizer", synchronizer);
+	}
+	
+	@After
+	public void destroy() throws Exception {
+		synchronizer.remainingFiles.countDown();
+		source.destroy();
+		directory.delete();
+	}
+	
+	/**
+	 * The first file is received while the synchronization that downloaded it is still
+	 * in progress, the polling thread never runs the synchronization
+	 */
+	@Test
+	public void filesReceivedDuringSynchronization() throws Exception {
+		assertNull(source.receive());
+		Message<File> message = receive();
+		assertNotNull(message);
+		assertEquals("file-0", message.getPayload().getName());
+		assertFalse("The synchronization was not in progress", synchronizer.completed);
+		assertFalse(Thread.currentThread().getName().equals(synchronizer.threadName));
+		
+		synchronizer.remainingFiles.countDown();
+		assertEquals("file-1", receive().getPayload().getName());
+		assertEquals("file-2", receive().getPayload().getName());
+		//The synchronization is repeated after the interval
+		assertEquals("file-0", receive().getPayload().getName());
+		assertTrue(synchronizer.synchronizations.get() > 1);
+	}
+	
+	/**
+	 * Without the background synchronization the polling thread synchronizing is the one
+	 * draining the queue, the files emitted once the queue is full are still received
+	 */
+	@Test
+	public void filesBeyondQueueSizeReceived() throws Exception {
+		source.destroy();
+		source = new AmazonS3InboundSynchronizationMessageSource();
+		source.setCredentials(new BasicAWSCredentials("accessKey", "secretKey"));
+		source.setBucket("bucket");
+		source.setRemoteDirectory("folder");
+		source.setDirectory(directory);
+		source.setQueueSize(1);
+		source.afterPropertiesSet();
+		synchronizer.remainingFiles.countDown();
+		new DirectFieldAccessor(source).setPropertyValue("synchronizer", synchronizer);
+		assertEquals("file-0", source.receive().getPayload().getName());
+		assertTrue(synchronizer.completed);
+		assertEquals("file-1", source.receive().getPayload().getName());
+		assertEquals("file-2", source.receive().getPayload().getName());
+		assertEquals(1, synchronizer.synchronizations.get());
+	}
+	
+	/**
+	 * The threads of the S3 operations created by the source are stopped on destroy
+	 */
+	@Test
+	public void destroyStopsOperationsThreads() throws Exception {
+		ThreadPoolExecutor executor = TestUtils.getPropertyValue(source, 
+				"s3Operations.defaultPartUploadExecutor", ThreadPoolExecutor.class);
+		assertFalse(executor.isShutdown());
+		source.destroy();
+		assertTrue(executor.isShutdown());
+	}
+	
+	private Message<File> receive() throws InterruptedException {
+		long timeout = System.currentTimeMillis() + 5000;
+		Message<File> message;
+		while((message = source.receive()) == null && System.currentTimeMillis() < timeout)
+			Thread.sleep(5);
+		return message;
+	}
+	
+	/**
+	 * Emits one file then waits for the test before emitting the remaining ones
+	 */
+	private class SlowSynchronizer implements InboundFileSynchronizer {
+		
+		final CountDownLatch remainingFiles = new CountDownLatch(1);
+		final AtomicInteger synchronizations = new AtomicInteger();
+		volatile boolean completed;
+		volatile String threadName;
+		
+		public void synchronizeToLocalDirectory(File localDirectory, String bucketName, String remoteFolder) {
+			threadName = Thread.currentThread().getName();
+			synchronizations.incrementAndGet();
+			try {
+				emit(new File(localDirectory, "file-0"));
+				if(!remainingFiles.await(5, TimeUnit.SECONDS))
+					return;
+				emit(new File(localDirectory, "file-1"));
+				emit(new File(localDirectory, "file-2"));
+				completed = true;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		
+		private void emit(final File file) {
+			source.onEvent(new FileEvent() {
+				public FileOperationType getFileOperation() {
+					return FileOperationType.CREATE;
+				}
+				public File getFile() {
+					return file;
+				}
+			});
+		}
+
+		public void setSynchronizingBatchSize(int batchSize) {
+		}
+
+		public void setFileNamePattern(String fileNameRegex) {
+		}
+
+		public void setFileWildcard(String wildcardString) {
+		}
+	}
+}
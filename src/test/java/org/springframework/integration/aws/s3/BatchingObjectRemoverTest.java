@@ -0,0 +1,183 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.springframework.integration.Message;
+import org.springframework.integration.aws.s3.core.AmazonS3DeleteError;
+import org.springframework.integration.aws.s3.core.AmazonS3Object;
+import org.springframework.integration.aws.s3.core.AmazonS3OperationCallback;
+import org.springframework.integration.aws.s3.core.AmazonS3OperationException;
+import org.springframework.integration.aws.s3.core.AmazonS3Operations;
+import org.springframework.integration.aws.s3.core.PaginatedObjectsView;
+import org.springframework.integration.support.MessageBuilder;
+
+/**
+ * The test case for {@link BatchingObjectRemover}
+ * @author Amol Nayak
+ *
+ */
+public class BatchingObjectRemoverTest {
+
+	@Test
+	public void flushOnSize() {
+		RecordingOperations operations = new RecordingOperations();
+		operations.failedKey = "key-1";
+		RecordingResultHandler results = new RecordingResultHandler(3);
+		BatchingObjectRemover remover = new BatchingObjectRemover(operations, 3, 0, results);
+		for(int i = 0;i < 4;i++)
+			remover.remove("bucket", "key-" + i, MessageBuilder.withPayload("key-" + i).build());
+		assertEquals(1, operations.batches.size());
+		assertEquals(3, operations.batches.get(0).size());
+		assertEquals(2, results.deleted.size());
+		assertEquals(1, results.failed.size());
+		assertEquals("key-1", results.failed.get(0).getPayload());
+		//The open batch is flushed on close
+		remover.close();
+		assertEquals(2, operations.batches.size());
+		assertEquals(Collections.singletonList("key-3"), operations.batches.get(1));
+	}
+	
+	@Test
+	public void flushOnAge() throws Exception {
+		RecordingOperations operations = new RecordingOperations();
+		RecordingResultHandler results = new RecordingResultHandler(2);
+		BatchingObjectRemover remover = new BatchingObjectRemover(operations, 1000, 100, results);
+		remover.remove("bucket", "key-1", MessageBuilder.withPayload("key-1").build());
+		remover.remove("other", "key-2", MessageBuilder.withPayload("key-2").build());
+		assertTrue(results.latch.await(10, TimeUnit.SECONDS));
+		//One batch per bucket
+		assertEquals(2, operations.batches.size());
+		remover.close();
+	}
+	
+	@Test
+	public void batchFailure() {
+		RecordingOperations operations = new RecordingOperations();
+		operations.fail = true;
+		RecordingResultHandler results = new RecordingResultHandler(2);
+		BatchingObjectRemover remover = new BatchingObjectRemover(operations, 2, 0, results);
+		remover.remove("bucket", "key-1", MessageBuilder.withPayload("key-1").build());
+		remover.remove("bucket", "key-2", MessageBuilder.withPayload("key-2").build());
+		assertEquals(0, results.deleted.size());
+		assertEquals(2, results.failed.size());
+	}
+	
+	private static class RecordingResultHandler implements BatchingObjectRemover.DeleteResultHandler {
+		
+		final List<Message<?>> deleted = Collections.synchronizedList(new ArrayList<Message<?>>());
+		final List<Message<?>> failed = Collections.synchronizedList(new ArrayList<Message<?>>());
+		final CountDownLatch latch;
+		
+		RecordingResultHandler(int expected) {
+			latch = new CountDownLatch(expected);
+		}
+
+		public void onDeleted(String bucketName, String key, Message<?> message) {
+			deleted.add(message);
+			latch.countDown();
+		}
+
+		public void onFailure(String bucketName, String key, Message<?> message, AmazonS3DeleteError error) {
+			failed.add(message);
+			latch.countDown();
+		}
+	}
+	
+	/**
+	 * Records the batches of deletes, the other operations are not supported
+	 */
+	private static class RecordingOperations implements AmazonS3Operations {
+		
+		final List<List<String>> batches = Collections.synchronizedList(new ArrayList<List<String>>());
+		String failedKey;
+		boolean fail;
+
+		public List<AmazonS3DeleteError> removeObjects(String bucketName, String folder, List<String> objectNames) {
+			if(fail)
+				throw new AmazonS3OperationException("access", bucketName, null, "Delete failed", null);
+			batches.add(new ArrayList<String>(objectNames));
+			List<AmazonS3DeleteError> errors = new ArrayList<AmazonS3DeleteError>();
+			if(objectNames.contains(failedKey))
+				errors.add(new AmazonS3DeleteError(failedKey, "AccessDenied", "Access Denied"));
+			return errors;
+		}
+
+		public PaginatedObjectsView listObjects(String bucketName, String folder, String nextMarker, int pageSize) {
+			throw new UnsupportedOperationException();
+		}
+
+		public PaginatedObjectsView listObjects(String bucketName, String folder, String nextMarker, int pageSize,
+				String delimiter) {
+			throw new UnsupportedOperationException();
+		}
+
+		public PaginatedObjectsView listObjects(String bucketName, String folder, String nextMarker, int pageSize,
+				String delimiter, String namePrefix) {
+			throw new UnsupportedOperationException();
+		}
+
+		public void putObject(String bucketName, String folder, String objectName, AmazonS3Object s3Object) {
+			throw new UnsupportedOperationException();
+		}
+
+		public Future<Void> putObjectAsync(String bucketName, String folder, String objectName,
+				AmazonS3Object s3Object, AmazonS3OperationCallback callback) {
+			throw new UnsupportedOperationException();
+		}
+
+		public AmazonS3Object getObject(String bucketName, String folder, String objectName) {
+			throw new UnsupportedOperationException();
+		}
+
+		public AmazonS3Object getObjectIfMatch(String bucketName, String folder, String objectName, String eTag) {
+			throw new UnsupportedOperationException();
+		}
+
+		public AmazonS3Object getObjectMetadata(String bucketName, String folder, String objectName) {
+			throw new UnsupportedOperationException();
+		}
+
+		public AmazonS3Object getObject(String bucketName, String folder, String objectName, File file) {
+			throw new UnsupportedOperationException();
+		}
+
+		public boolean removeObject(String bucketName, String folder, String objectName) {
+			throw new UnsupportedOperationException();
+		}
+
+		public void copyObject(String sourceBucketName, String sourceFolder, String sourceObjectName,
+				String destinationBucketName, String destinationFolder, String destinationObjectName) {
+			throw new UnsupportedOperationException();
+		}
+
+		public void moveObject(String sourceBucketName, String sourceFolder, String sourceObjectName,
+				String destinationBucketName, String destinationFolder, String destinationObjectName) {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
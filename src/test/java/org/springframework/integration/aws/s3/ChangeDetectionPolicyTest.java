@@ -0,0 +1,184 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Hex;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.integration.aws.core.BasicAWSCredentials;
+import org.springframework.integration.aws.s3.core.AmazonS3Object;
+import org.springframework.integration.aws.s3.core.AmazonS3OperationsImpl;
+import org.springframework.integration.aws.s3.core.S3ObjectSummary;
+
+/**
+ * The test cases for the {@link ChangeDetectionPolicy} implementations
+ * @author Amol Nayak
+ *
+ */
+public class ChangeDetectionPolicyTest {
+
+	private static final String CONTENTS = "Some contents of the file";
+	
+	private File directory;
+	
+	private File file;
+	
+	private LocalDigestIndex index;
+	
+	private ExecutorService executor;
+	
+	@Before
+	public void setup() throws IOException {
+		directory = File.createTempFile("change", "detection");
+		directory.delete();
+		directory.mkdir();
+		file = new File(directory, "file.txt");
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(CONTENTS.getBytes());
+		out.close();
+		index = new LocalDigestIndex(directory);
+		executor = Executors.newSingleThreadExecutor();
+	}
+	
+	@After
+	public void destroy() {
+		executor.shutdownNow();
+		for(File child:directory.listFiles())
+			child.delete();
+		directory.delete();
+	}
+	
+	@Test
+	public void sizeAndLastModified() {
+		ChangeDetectionPolicy policy = new SizeAndLastModifiedChangeDetectionPolicy();
+		assertFalse(policy.isModified(file, summary("etag", CONTENTS.length(), file.lastModified()), index));
+		assertTrue(policy.isModified(file, summary("etag", CONTENTS.length() + 1, file.lastModified()), index));
+		assertTrue(policy.isModified(file, summary("etag", CONTENTS.length(), file.lastModified() + 1000), index));
+	}
+	
+	@Test
+	public void eTag() {
+		ChangeDetectionPolicy policy = new ETagChangeDetectionPolicy();
+		assertTrue(policy.isModified(file, summary("etag", CONTENTS.length(), 0), index));
+		index.record(file, null, "etag");
+		assertFalse(policy.isModified(file, summary("etag", CONTENTS.length(), 0), index));
+		assertTrue(policy.isModified(file, summary("other", CONTENTS.length(), 0), index));
+	}
+	
+	@Test
+	public void singlePartDigest() throws Exception {
+		StubOperations operations = new StubOperations();
+		ChangeDetectionPolicy policy = new DigestChangeDetectionPolicy(operations, new MultipartETagCalculator(executor));
+		assertFalse(policy.isModified(file, summary(md5Hex(CONTENTS), CONTENTS.length(), 0), index));
+		assertTrue(policy.isModified(file, summary(md5Hex("Some contents of the fild"), CONTENTS.length(), 0), index));
+		assertEquals(0, operations.headObjectCount);
+	}
+	
+	@Test
+	public void multipartDigest() throws Exception {
+		StubOperations operations = new StubOperations();
+		ChangeDetectionPolicy policy = new DigestChangeDetectionPolicy(operations, new MultipartETagCalculator(executor));
+		//The ETag of a single part multipart upload 
+		MessageDigest digest = MessageDigest.getInstance("MD5");
+		digest.update(Hex.decodeHex(md5Hex(CONTENTS).toCharArray()));
+		String eTag = new String(Hex.encodeHex(digest.digest())) + "-1";
+		assertFalse(policy.isModified(file, summary(eTag, CONTENTS.length(), 0), index));
+		assertEquals(0, operations.headObjectCount);
+		
+		//Unknown part size, the MD5 from the user metadata is used
+		operations.contentMD5 = new String(Base64.encodeBase64(Hex.decodeHex(md5Hex(CONTENTS).toCharArray())));
+		assertFalse(policy.isModified(file, summary("0123456789abcdef0123456789abcdef-3", CONTENTS.length(), 0), index));
+		assertEquals(1, operations.headObjectCount);
+		//Now recorded in the index
+		assertFalse(policy.isModified(file, summary("0123456789abcdef0123456789abcdef-3", CONTENTS.length(), 0), index));
+		assertEquals(1, operations.headObjectCount);
+		
+		operations.contentMD5 = null;
+		assertTrue(policy.isModified(file, summary("fedcba9876543210fedcba9876543210-3", CONTENTS.length(), 0), index));
+	}
+	
+	private String md5Hex(String contents) throws Exception {
+		return new String(Hex.encodeHex(MessageDigest.getInstance("MD5").digest(contents.getBytes())));
+	}
+	
+	private S3ObjectSummary summary(final String eTag,final long size,final long lastModified) {
+		return new S3ObjectSummary() {
+			
+			public long getSize() {
+				return size;
+			}
+			
+			public Date getLastModified() {
+				return new Date(lastModified);
+			}
+			
+			public String getKey() {
+				return "folder/file.txt";
+			}
+			
+			public String getETag() {
+				return eTag;
+			}
+			
+			public String getBucketName() {
+				return "bucket";
+			}
+		};
+	}
+	
+	/**
+	 * Returns an object with the configured Content-MD5 user metadata
+	 */
+	private static class StubOperations extends AmazonS3OperationsImpl {
+		
+		private String contentMD5;
+		private int headObjectCount;
+		
+		StubOperations() {
+			super(new BasicAWSCredentials("accessKey", "secretKey"));
+		}
+
+		@Override
+		public AmazonS3Object getObject(String bucketName, String folder,
+				String objectName) {
+			throw new UnsupportedOperationException("The contents should not be read");
+		}
+
+		@Override
+		public AmazonS3Object getObjectMetadata(String bucketName, String folder,
+				String objectName) {
+			headObjectCount++;
+			return new AmazonS3Object(contentMD5 != null?Collections.singletonMap("content-md5", contentMD5)
+					:Collections.<String, String>emptyMap(), 
+					Collections.<String, Object>emptyMap(), null, null);
+		}
+	}
+}
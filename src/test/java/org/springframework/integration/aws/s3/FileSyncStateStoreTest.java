@@ -0,0 +1,145 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.integration.aws.s3.core.S3ObjectSummary;
+
+/**
+ * The test case for {@link FileSyncStateStore}
+ * @author Amol Nayak
+ *
+ */
+public class FileSyncStateStoreTest {
+
+	private File stateFile;
+	
+	@Before
+	public void setup() throws IOException {
+		stateFile = File.createTempFile("sync-state", ".properties");
+		stateFile.delete();
+	}
+	
+	@After
+	public void destroy() {
+		stateFile.delete();
+	}
+	
+	/**
+	 * The objects and the markers are reloaded from the file once flushed
+	 */
+	@Test
+	public void persistedState() {
+		FileSyncStateStore store = new FileSyncStateStore(stateFile);
+		store.put(new SyncedObject(summary("folder/a=b:c.txt", "etag-1", 10, 1000)));
+		store.put(new SyncedObject("folder/b.txt", null, 20, 2000));
+		store.setMarker("folder", "folder/b.txt");
+		store.setMarker(null, "c.txt");
+		assertFalse(stateFile.exists());
+		store.flush();
+		assertTrue(stateFile.exists());
+		
+		FileSyncStateStore reloaded = new FileSyncStateStore(stateFile);
+		SyncedObject object = reloaded.get("folder/a=b:c.txt");
+		assertEquals("etag-1", object.getETag());
+		assertEquals(10, object.getSize());
+		assertEquals(1000, object.getLastModified());
+		assertNull(reloaded.get("folder/b.txt").getETag());
+		assertEquals("folder/b.txt", reloaded.getMarker("folder"));
+		assertEquals("c.txt", reloaded.getMarker(null));
+		
+		reloaded.setMarker("folder", null);
+		reloaded.flush();
+		assertNull(new FileSyncStateStore(stateFile).getMarker("folder"));
+	}
+	
+	/**
+	 * The objects of the folder not listed in a complete pass of its listing are removed,
+	 * those of the sub folders and other folders are kept
+	 */
+	@Test
+	public void objectsNotListedPruned() {
+		FileSyncStateStore store = new FileSyncStateStore(stateFile);
+		store.put(new SyncedObject("folder/a.txt", null, 10, 1000));
+		store.put(new SyncedObject("folder/b.txt", null, 10, 1000));
+		store.put(new SyncedObject("folder/sub/c.txt", null, 10, 1000));
+		store.put(new SyncedObject("other/d.txt", null, 10, 1000));
+		
+		//The pass did not start from the first key, nothing is pruned
+		store.listed("folder", "folder/a.txt");
+		store.completeListing("folder", "folder/", "/");
+		assertNotNull(store.get("folder/b.txt"));
+		
+		store.startListing("folder");
+		store.listed("folder", "folder/a.txt");
+		store.completeListing("folder", "folder/", "/");
+		assertNotNull(store.get("folder/a.txt"));
+		assertNull(store.get("folder/b.txt"));
+		assertNotNull(store.get("folder/sub/c.txt"));
+		assertNotNull(store.get("other/d.txt"));
+		store.flush();
+		assertNull(new FileSyncStateStore(stateFile).get("folder/b.txt"));
+	}
+	
+	/**
+	 * The recorded state matches the object only if it is unchanged
+	 */
+	@Test
+	public void matchesUnchangedObject() {
+		SyncedObject object = new SyncedObject(summary("a.txt", "etag", 10, 1000));
+		assertTrue(object.matches(summary("a.txt", "etag", 10, 1000)));
+		assertFalse(object.matches(summary("a.txt", "other", 10, 1000)));
+		assertFalse(object.matches(summary("a.txt", "etag", 11, 1000)));
+		assertFalse(object.matches(summary("a.txt", "etag", 10, 2000)));
+	}
+	
+	private S3ObjectSummary summary(final String key,final String eTag,final long size,final long lastModified) {
+		return new S3ObjectSummary() {
+			
+			public long getSize() {
+				return size;
+			}
+			
+			public Date getLastModified() {
+				return new Date(lastModified);
+			}
+			
+			public String getKey() {
+				return key;
+			}
+			
+			public String getETag() {
+				return eTag;
+			}
+			
+			public String getBucketName() {
+				return "bucket";
+			}
+		};
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.springframework.integration.Message;
+import org.springframework.integration.support.MessageBuilder;
+
+/**
+ * The test case for {@link HashPrefixFileNameGenerationStrategy} and the {@link KeyShardingScheme}
+ * @author Amol Nayak
+ *
+ */
+public class HashPrefixFileNameGenerationStrategyTest {
+
+	/**
+	 * The generated name is prefixed with its shard folder, the same name always maps to the
+	 * same shard
+	 */
+	@Test
+	public void shardedFileName() {
+		HashPrefixFileNameGenerationStrategy strategy = new HashPrefixFileNameGenerationStrategy(16);
+		Message<String> message = MessageBuilder.withPayload("contents")
+			.setHeader(AmazonS3MessageHeaders.FILE_NAME, "2012-10-18-00001.log")
+			.build();
+		String name = strategy.generateFileName(message);
+		assertTrue(name.matches("[0-9a-f]/2012-10-18-00001\\.log"));
+		assertEquals(name, strategy.generateFileName(message));
+		assertEquals(name, new HashPrefixFileNameGenerationStrategy(16).generateFileName(message));
+	}
+	
+	/**
+	 * Sequential names are spread across all the shards
+	 */
+	@Test
+	public void sequentialNamesSpread() {
+		KeyShardingScheme scheme = new KeyShardingScheme(256);
+		List<String> shardFolders = scheme.getShardFolders("logs/");
+		assertEquals(256, shardFolders.size());
+		assertEquals("logs/00", shardFolders.get(0));
+		assertEquals("logs/ff", shardFolders.get(255));
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		for(int i = 0;i < 25600;i++) {
+			String shard = scheme.getShard("2012-10-18-" + i + ".log");
+			assertTrue(shardFolders.contains("logs/" + shard));
+			Integer count = counts.get(shard);
+			counts.put(shard, count == null?1:count + 1);
+		}
+		assertEquals(256, counts.size());
+		for(Integer count:counts.values())
+			assertTrue("Skewed shard with " + count + " names", count > 50 && count < 200);
+	}
+	
+	/**
+	 * The shard folders of the root of the bucket have no parent folder
+	 */
+	@Test
+	public void rootShardFolders() {
+		KeyShardingScheme scheme = new KeyShardingScheme(1);
+		assertEquals("0/a.txt", scheme.getShardedName("a.txt"));
+		assertEquals("0", scheme.getShardFolders(null).get(0));
+		assertEquals("0", scheme.getShardFolders("/").get(0));
+		assertEquals("test/0", new KeyShardingScheme(10).getShardFolders("test").get(0));
+	}
+}
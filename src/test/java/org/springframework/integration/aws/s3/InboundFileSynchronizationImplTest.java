@@ -0,0 +1,523 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.integration.aws.s3.core.AmazonS3DeleteError;
+import org.springframework.integration.aws.s3.core.AmazonS3Object;
+import org.springframework.integration.aws.s3.core.AmazonS3OperationCallback;
+import org.springframework.integration.aws.s3.core.AmazonS3OperationException;
+import org.springframework.integration.aws.s3.core.AmazonS3Operations;
+import org.springframework.integration.aws.s3.core.PaginatedObjectsView;
+import org.springframework.integration.aws.s3.core.S3ObjectSummary;
+import org.springframework.util.FileCopyUtils;
+
+/**
+ * The test case for {@link InboundFileSynchronizationImpl}, uses a stub of the 
+ * {@link AmazonS3Operations} listing the objects in pages
+ * @author Amol Nayak
+ *
+ */
+public class InboundFileSynchronizationImplTest {
+
+	private static final int PAGES = 3;
+	
+	private static final int PAGE_SIZE = 20;
+	
+	private File directory;
+	
+	private PagedOperations operations;
+	
+	private InboundFileSynchronizationImpl synchronizer;
+	
+	@Before
+	public void setup() throws IOException {
+		directory = File.createTempFile("s3-sync", "");
+		directory.delete();
+		directory.mkdir();
+		operations = new PagedOperations();
+		synchronizer = new InboundFileSynchronizationImpl(operations, new InboundLocalFileOperationsImpl());
+		synchronizer.setChangeDetectionPolicy(new ETagChangeDetectionPolicy());
+	}
+	
+	@After
+	public void destroy() throws Exception {
+		synchronizer.destroy();
+		delete(directory);
+	}
+	
+	/**
+	 * All the objects of all the pages are synchronized one after the other
+	 */
+	@Test
+	public void sequentialSynchronization() throws Exception {
+		synchronizer.afterPropertiesSet();
+		synchronizer.synchronizeToLocalDirectory(directory, "bucket", "folder");
+		assertSynchronized();
+		assertEquals(1, operations.maxConcurrentDownloads.get());
+	}
+	
+	/**
+	 * The objects are downloaded in parallel and the next page is listed while the objects 
+	 * of the first page are being downloaded
+	 */
+	@Test
+	public void parallelSynchronization() throws Exception {
+		synchronizer.setParallelism(4);
+		synchronizer.afterPropertiesSet();
+		operations.awaitSecondPage = true;
+		operations.downloadTime = 20;
+		synchronizer.synchronizeToLocalDirectory(directory, "bucket", "folder");
+		assertSynchronized();
+		assertTrue(operations.maxConcurrentDownloads.get() > 1);
+		assertTrue(operations.maxConcurrentDownloads.get() <= 4);
+		assertTrue("The second page was not listed during the downloads of the first", 
+				operations.prefetched);
+	}
+	
+	/**
+	 * The objects unchanged since they were synchronized are not requested again
+	 */
+	@Test
+	public void unchangedObjectsNotDownloaded() throws Exception {
+		synchronizer.afterPropertiesSet();
+		synchronizer.synchronizeToLocalDirectory(directory, "bucket", "folder");
+		assertEquals(PAGES * PAGE_SIZE, operations.downloads.get());
+		synchronizer.synchronizeToLocalDirectory(directory, "bucket", "folder");
+		assertEquals(PAGES * PAGE_SIZE, operations.downloads.get());
+	}
+	
+	/**
+	 * The listing resumes across synchronizations from the recorded marker, the objects
+	 * recorded are not synchronized again even if the local files are gone
+	 */
+	@Test
+	public void incrementalSynchronization() throws Exception {
+		File stateFile = new File(directory, FileSyncStateStore.DEFAULT_STATE_FILE_NAME);
+		synchronizer.setSyncStateStore(new FileSyncStateStore(stateFile));
+		synchronizer.setMaxPagesPerPoll(1);
+		synchronizer.afterPropertiesSet();
+		for(int page = 1;page <= PAGES;page++) {
+			synchronizer.synchronizeToLocalDirectory(directory, "bucket", "folder");
+			assertEquals(page, operations.listings.get());
+			assertEquals(page * PAGE_SIZE, operations.downloads.get());
+		}
+		assertSynchronized();
+		new File(directory, getName(0)).delete();
+		
+		//A restart, the listing starts over and the objects are skipped
+		synchronizer.destroy();
+		synchronizer = new InboundFileSynchronizationImpl(operations, new InboundLocalFileOperationsImpl());
+		synchronizer.setSyncStateStore(new FileSyncStateStore(stateFile));
+		synchronizer.afterPropertiesSet();
+		synchronizer.synchronizeToLocalDirectory(directory, "bucket", "folder");
+		assertEquals(PAGES * 2, operations.listings.get());
+		assertEquals(PAGES * PAGE_SIZE, operations.downloads.get());
+		assertTrue(!new File(directory, getName(0)).exists());
+	}
+	
+	/**
+	 * The objects deleted since synchronized are pruned from the state once a pass of
+	 * the listing, across synchronizations, completes
+	 */
+	@Test
+	public void deletedObjectsPruned() throws Exception {
+		FileSyncStateStore store = new FileSyncStateStore(new File(directory, FileSyncStateStore.DEFAULT_STATE_FILE_NAME));
+		store.put(new SyncedObject("folder/deleted.txt", null, 10, 1000));
+		store.put(new SyncedObject("folder/sub/kept.txt", null, 10, 1000));
+		synchronizer.setSyncStateStore(store);
+		synchronizer.setMaxPagesPerPoll(1);
+		synchronizer.afterPropertiesSet();
+		for(int page = 1;page < PAGES;page++) {
+			synchronizer.synchronizeToLocalDirectory(directory, "bucket", "folder");
+			assertNotNull(store.get("folder/deleted.txt"));
+		}
+		synchronizer.synchronizeToLocalDirectory(directory, "bucket", "folder");
+		assertNull(store.get("folder/deleted.txt"));
+		assertNotNull(store.get("folder/sub/kept.txt"));
+		assertNotNull(store.get("folder/" + getName(0)));
+		assertNotNull(store.get("folder/" + getName(PAGES * PAGE_SIZE - 1)));
+	}
+	
+	/**
+	 * Destroying the synchronizer interrupts the download threads blocked by the handler of
+	 * the file events, the synchronization in progress then completes
+	 */
+	@Test
+	public void destroyStopsBlockedSynchronization() throws Exception {
+		final BlockingQueue<File> files = new ArrayBlockingQueue<File>(1);
+		InboundLocalFileOperationsImpl fileOperations = new InboundLocalFileOperationsImpl();
+		fileOperations.addEventListener(new FileEventHandler() {
+			public void onEvent(FileEvent event) {
+				try {
+					files.put(event.getFile());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		final InboundFileSynchronizationImpl blocked = new InboundFileSynchronizationImpl(operations, fileOperations);
+		blocked.setChangeDetectionPolicy(new ETagChangeDetectionPolicy());
+		blocked.setParallelism(4);
+		blocked.afterPropertiesSet();
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				blocked.synchronizeToLocalDirectory(directory, "bucket", "folder");
+			}
+		});
+		thread.start();
+		long timeout = System.currentTimeMillis() + 5000;
+		while(files.remainingCapacity() > 0 && System.currentTimeMillis() < timeout)
+			Thread.sleep(5);
+		//The download threads and the synchronizing thread are all blocked by now
+		Thread.sleep(100);
+		thread.interrupt();
+		blocked.destroy();
+		thread.join(5000);
+		assertFalse("The synchronization did not complete", thread.isAlive());
+	}
+	
+	/**
+	 * Stopping the synchronization leaves the objects not yet downloaded for the next 
+	 * synchronization, which resumes the listing at the first of them
+	 */
+	@Test
+	public void stoppedSynchronizationResumed() throws Exception {
+		FileSyncStateStore store = new FileSyncStateStore(new File(directory, FileSyncStateStore.DEFAULT_STATE_FILE_NAME));
+		final AtomicInteger files = new AtomicInteger();
+		InboundLocalFileOperationsImpl fileOperations = new InboundLocalFileOperationsImpl();
+		final InboundFileSynchronizationImpl stopping = new InboundFileSynchronizationImpl(operations, fileOperations);
+		fileOperations.addEventListener(new FileEventHandler() {
+			public void onEvent(FileEvent event) {
+				if(files.incrementAndGet() == 5)
+					stopping.stopSynchronization();
+			}
+		});
+		stopping.setChangeDetectionPolicy(new ETagChangeDetectionPolicy());
+		stopping.setSyncStateStore(store);
+		stopping.setParallelism(4);
+		stopping.afterPropertiesSet();
+		try {
+			stopping.synchronizeToLocalDirectory(directory, "bucket", "folder");
+			int downloaded = operations.downloads.get();
+			assertTrue(downloaded >= 5);
+			assertTrue(downloaded < PAGE_SIZE);
+			
+			stopping.synchronizeToLocalDirectory(directory, "bucket", "folder");
+			assertSynchronized(directory, "folder/");
+			assertEquals(PAGES * PAGE_SIZE, operations.downloads.get());
+		} finally {
+			stopping.destroy();
+		}
+	}
+	
+	/**
+	 * The listing resumes before the first object not downloaded, whether downloaded 
+	 * sequentially or by the download threads
+	 */
+	@Test
+	public void listingResumesBeforeFailedObject() throws Exception {
+		assertResumesBeforeFailedObject(1);
+	}
+	
+	@Test
+	public void parallelListingResumesBeforeFailedObject() throws Exception {
+		assertResumesBeforeFailedObject(4);
+	}
+	
+	private void assertResumesBeforeFailedObject(int parallelism) throws Exception {
+		FileSyncStateStore store = new FileSyncStateStore(new File(directory, FileSyncStateStore.DEFAULT_STATE_FILE_NAME));
+		synchronizer.setSyncStateStore(store);
+		synchronizer.setMaxPagesPerPoll(1);
+		synchronizer.setParallelism(parallelism);
+		synchronizer.afterPropertiesSet();
+		operations.failingKeys.add("folder/" + getName(5));
+		operations.failingKeys.add("folder/" + getName(8));
+		synchronizer.synchronizeToLocalDirectory(directory, "bucket", "folder");
+		assertEquals(PAGE_SIZE - 2, operations.downloads.get());
+		assertEquals("folder/" + getName(4), store.getMarker("folder"));
+		
+		//The page listed from the first failed object ends with the first 5 objects of the next page
+		operations.failingKeys.clear();
+		synchronizer.synchronizeToLocalDirectory(directory, "bucket", "folder");
+		assertEquals(PAGE_SIZE + 5, operations.downloads.get());
+		assertTrue(new File(directory, getName(5)).exists());
+		assertTrue(new File(directory, getName(8)).exists());
+		assertEquals("folder/" + getName(PAGE_SIZE + 4), store.getMarker("folder"));
+	}
+	
+	/**
+	 * The sub folders are mirrored in sub directories, each folder is listed on its own
+	 */
+	@Test
+	public void recursiveSynchronization() throws Exception {
+		operations.subfolders.put("folder", Arrays.asList("folder/a/", "folder/b/"));
+		operations.subfolders.put("folder/a", Arrays.asList("folder/a/c/"));
+		synchronizer.setRecursive(true);
+		synchronizer.setFolderParallelism(2);
+		synchronizer.afterPropertiesSet();
+		synchronizer.synchronizeToLocalDirectory(directory, "bucket", "folder");
+		assertSynchronized(directory, "folder/");
+		assertSynchronized(new File(directory, "a"), "folder/a/");
+		assertSynchronized(new File(directory, "b"), "folder/b/");
+		assertSynchronized(new File(directory, "a/c"), "folder/a/c/");
+		assertEquals(4 * PAGES, operations.listings.get());
+	}
+	
+	/**
+	 * Only the names with the literal prefixes of the file name pattern are listed
+	 */
+	@Test
+	public void filterPushedDownToListing() throws Exception {
+		synchronizer.setFileNamePattern("folder/(file-1|file-2)[0-9]\\.txt");
+		synchronizer.afterPropertiesSet();
+		synchronizer.synchronizeToLocalDirectory(directory, "bucket", "folder");
+		assertEquals(new HashSet<String>(Arrays.asList("file-1", "file-2")), operations.namePrefixes);
+		//Only file-10 to file-19 and file-20 to file-29 are downloaded
+		assertEquals(20, operations.downloads.get());
+		assertTrue(new File(directory, getName(10)).exists());
+		assertTrue(!new File(directory, getName(1)).exists());
+		
+		//The pattern accepts no key of another folder, which is not listed at all
+		operations.listings.set(0);
+		synchronizer.synchronizeToLocalDirectory(directory, "bucket", "other");
+		assertEquals(0, operations.listings.get());
+	}
+	
+	@Test
+	public void wildcardWithFolderPushedDownToListing() throws Exception {
+		//The folder letters in both cases alone exceed the max number of prefixes
+		synchronizer.setFileWildcard("FOLDER/file-1*.txt");
+		synchronizer.afterPropertiesSet();
+		synchronizer.synchronizeToLocalDirectory(directory, "bucket", "folder");
+		assertEquals(KeyPrefixAnalyzer.MAX_PREFIXES, operations.namePrefixes.size());
+		assertTrue(operations.namePrefixes.contains("file-1"));
+		assertTrue(operations.namePrefixes.contains("FILE-1"));
+		//Only file-1 and file-10 to file-19 are downloaded
+		assertEquals(11, operations.downloads.get());
+		assertTrue(new File(directory, getName(10)).exists());
+		assertTrue(!new File(directory, getName(20)).exists());
+		
+		operations.listings.set(0);
+		synchronizer.synchronizeToLocalDirectory(directory, "bucket", "other");
+		assertEquals(0, operations.listings.get());
+	}
+	
+	private void assertSynchronized() throws IOException {
+		assertSynchronized(directory, "folder/");
+		assertEquals(PAGES, operations.listings.get());
+	}
+	
+	private void assertSynchronized(File directory,String prefix) throws IOException {
+		for(int i = 0;i < PAGES * PAGE_SIZE;i++) {
+			File file = new File(directory, getName(i));
+			assertTrue(file.getPath() + " not synchronized", file.exists());
+			assertEquals(prefix + getName(i), new String(FileCopyUtils.copyToByteArray(file)));
+		}
+	}
+	
+	private static void delete(File file) {
+		File[] files = file.listFiles();
+		if(files != null) {
+			for(File child:files)
+				delete(child);
+		}
+		file.delete();
+	}
+	
+	private static String getName(int index) {
+		return "file-" + index + ".txt";
+	}
+	
+	/**
+	 * Lists the objects in pages and writes the key as the contents of the downloaded objects
+	 */
+	private static class PagedOperations implements AmazonS3Operations {
+		
+		final AtomicInteger listings = new AtomicInteger();
+		final AtomicInteger downloads = new AtomicInteger();
+		final AtomicInteger concurrentDownloads = new AtomicInteger();
+		final AtomicInteger maxConcurrentDownloads = new AtomicInteger();
+		final CountDownLatch secondPageListed = new CountDownLatch(1);
+		volatile boolean awaitSecondPage;
+		volatile boolean prefetched;
+		volatile long downloadTime;
+		final Map<String, List<String>> subfolders = new ConcurrentHashMap<String, List<String>>();
+		final Set<String> namePrefixes = Collections.synchronizedSet(new HashSet<String>());
+		final Set<String> failingKeys = Collections.synchronizedSet(new HashSet<String>());
+
+		public PaginatedObjectsView listObjects(String bucketName, String folder, String nextMarker, int pageSize) {
+			return listObjects(bucketName, folder, nextMarker, pageSize, null);
+		}
+		
+		public PaginatedObjectsView listObjects(String bucketName, String folder, String nextMarker, 
+				int pageSize, String delimiter) {
+			return listObjects(bucketName, folder, nextMarker, pageSize, delimiter, null);
+		}
+		
+		public PaginatedObjectsView listObjects(final String bucketName, String folder, String nextMarker, 
+				int pageSize, String delimiter, String namePrefix) {
+			if(namePrefix != null)
+				namePrefixes.add(namePrefix);
+			if(folder.endsWith("/"))
+				folder = folder.substring(0, folder.length() - 1);
+			final List<String> prefixes = delimiter != null && nextMarker == null && subfolders.containsKey(folder)?
+					subfolders.get(folder):Collections.<String>emptyList();
+			//The marker is the number of the page or the key after which the listing starts
+			int start = nextMarker == null?0:nextMarker.startsWith(folder + "/")?
+					Integer.parseInt(nextMarker.substring(folder.length() + 6, nextMarker.length() - 4)) + 1
+					:Integer.parseInt(nextMarker) * PAGE_SIZE;
+			int end = Math.min(start + PAGE_SIZE, PAGES * PAGE_SIZE);
+			listings.incrementAndGet();
+			if(start == PAGE_SIZE)
+				secondPageListed.countDown();
+			final List<S3ObjectSummary> summaries = new ArrayList<S3ObjectSummary>();
+			for(int i = start;i < end;i++) {
+				final String key = folder + "/" + getName(i);
+				if(namePrefix != null && !getName(i).startsWith(namePrefix))
+					continue;
+				summaries.add(new S3ObjectSummary() {
+					public long getSize() {
+						return key.length();
+					}
+					public Date getLastModified() {
+						return new Date(1000);
+					}
+					public String getKey() {
+						return key;
+					}
+					public String getETag() {
+						return "etag";
+					}
+					public String getBucketName() {
+						return bucketName;
+					}
+				});
+			}
+			final String marker = end == PAGES * PAGE_SIZE?null
+					:end % PAGE_SIZE == 0?String.valueOf(end / PAGE_SIZE):folder + "/" + getName(end - 1);
+			return new PaginatedObjectsView() {
+				public List<S3ObjectSummary> getObjectSummary() {
+					return summaries;
+				}
+				public boolean hasMoreResults() {
+					return marker != null;
+				}
+				public String getNextMarker() {
+					return marker;
+				}
+				public List<String> getCommonPrefixes() {
+					return prefixes;
+				}
+			};
+		}
+
+		public AmazonS3Object getObject(String bucketName, String folder, String objectName, File file) {
+			if(failingKeys.contains(objectName))
+				throw new AmazonS3OperationException(null, bucketName, objectName, "Download failed");
+			downloads.incrementAndGet();
+			int concurrent = concurrentDownloads.incrementAndGet();
+			try {
+				synchronized (maxConcurrentDownloads) {
+					if(concurrent > maxConcurrentDownloads.get())
+						maxConcurrentDownloads.set(concurrent);
+				}
+				if(awaitSecondPage && !prefetched)
+					prefetched = secondPageListed.await(5, TimeUnit.SECONDS);
+				Thread.sleep(downloadTime);
+				//The key of the object is written, the object name is in the folder if any
+				String key = folder != null?folder + "/" + objectName:objectName;
+				FileOutputStream out = new FileOutputStream(file);
+				try {
+					out.write(key.getBytes());
+				} finally {
+					out.close();
+				}
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			} finally {
+				concurrentDownloads.decrementAndGet();
+			}
+			return new AmazonS3Object(null, null, null, file);
+		}
+
+		public void putObject(String bucketName, String folder, String objectName, AmazonS3Object s3Object) {
+			throw new UnsupportedOperationException();
+		}
+
+		public Future<Void> putObjectAsync(String bucketName, String folder, String objectName,
+				AmazonS3Object s3Object, AmazonS3OperationCallback callback) {
+			throw new UnsupportedOperationException();
+		}
+
+		public AmazonS3Object getObject(String bucketName, String folder, String objectName) {
+			throw new UnsupportedOperationException();
+		}
+
+		public AmazonS3Object getObjectIfMatch(String bucketName, String folder, String objectName, String eTag) {
+			throw new UnsupportedOperationException();
+		}
+
+		public AmazonS3Object getObjectMetadata(String bucketName, String folder, String objectName) {
+			throw new UnsupportedOperationException();
+		}
+
+		public boolean removeObject(String bucketName, String folder, String objectName) {
+			throw new UnsupportedOperationException();
+		}
+
+		public List<AmazonS3DeleteError> removeObjects(String bucketName, String folder, List<String> objectNames) {
+			throw new UnsupportedOperationException();
+		}
+
+		public void copyObject(String sourceBucketName, String sourceFolder, String sourceObjectName,
+				String destinationBucketName, String destinationFolder, String destinationObjectName) {
+			throw new UnsupportedOperationException();
+		}
+
+		public void moveObject(String sourceBucketName, String sourceFolder, String sourceObjectName,
+				String destinationBucketName, String destinationFolder, String destinationObjectName) {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.integration.aws.TestUtils;
+
+/**
+ * The test case for the writes of the {@link InboundLocalFileOperationsImpl}
+ * @author Amol Nayak
+ *
+ */
+public class InboundLocalFileOperationsImplTest {
+
+	private static final String CONTENTS = "The contents of the object written to the local file";
+	
+	private File directory;
+	
+	private InboundLocalFileOperationsImpl fileOperations;
+	
+	private final List<File> createdFiles = new ArrayList<File>();
+	
+	@Before
+	public void setup() throws Exception {
+		directory = File.createTempFile("s3-file-operations", "");
+		directory.delete();
+		directory.mkdir();
+		fileOperations = new InboundLocalFileOperationsImpl();
+		//Small enough for the buffer to be written several times
+		fileOperations.setWriteBufferSize(16);
+		fileOperations.addEventListener(new FileEventHandler() {
+			public void onEvent(FileEvent event) {
+				createdFiles.add(event.getFile());
+			}
+		});
+	}
+	
+	@After
+	public void destroy() throws Exception {
+		FileUtils.deleteDirectory(directory);
+	}
+	
+	/**
+	 * The stream is written in the temporary file which replaces the existing file
+	 */
+	@Test
+	public void streamReplacesExistingFile() throws Exception {
+		File file = new File(directory, "file.txt");
+		FileUtils.writeStringToFile(file, CONTENTS + CONTENTS);
+		fileOperations.writeToFile(directory, "file.txt", stream(CONTENTS), CONTENTS.length());
+		assertEquals(CONTENTS, FileUtils.readFileToString(file));
+		assertFalse(new File(directory, "file.txt.writing").exists());
+		assertEquals(1, createdFiles.size());
+		assertEquals(file, createdFiles.get(0));
+	}
+	
+	/**
+	 * A wrong or unknown content length does not change the contents written
+	 */
+	@Test
+	public void contentLengthNotMatching() throws Exception {
+		fileOperations.writeToFile(directory, "larger.txt", stream(CONTENTS), CONTENTS.length() * 2);
+		assertEquals(CONTENTS, FileUtils.readFileToString(new File(directory, "larger.txt")));
+		fileOperations.writeToFile(directory, "unknown.txt", stream(CONTENTS));
+		assertEquals(CONTENTS, FileUtils.readFileToString(new File(directory, "unknown.txt")));
+		fileOperations.writeToFile(directory, "empty.txt", stream(""), 0);
+		assertEquals(0, new File(directory, "empty.txt").length());
+	}
+	
+	/**
+	 * The contents of a file stream are transferred between the channels
+	 */
+	@Test
+	public void fileStreamTransferred() throws Exception {
+		File source = File.createTempFile("s3-source", ".txt");
+		try {
+			FileOutputStream fos = new FileOutputStream(source);
+			for(int i = 0;i < 100;i++)
+				fos.write(CONTENTS.getBytes());
+			fos.close();
+			InputStream in = new FileInputStream(source);
+			try {
+				fileOperations.writeToFile(directory, "copy.txt", in, source.length());
+			} finally {
+				in.close();
+			}
+			assertEquals(FileUtils.readFileToString(source), 
+					FileUtils.readFileToString(new File(directory, "copy.txt")));
+		} finally {
+			source.delete();
+		}
+	}
+	
+	/**
+	 * The files written are forced once the batch is full or flushed
+	 */
+	@Test
+	public void batchedDurability() throws Exception {
+		fileOperations.setDurability(InboundLocalFileOperationsImpl.DURABILITY_BATCHED);
+		fileOperations.setSyncBatchSize(2);
+		fileOperations.writeToFile(directory, "one.txt", stream(CONTENTS), CONTENTS.length());
+		assertEquals(1, unsyncedFiles());
+		fileOperations.writeToFile(directory, "two.txt", stream(CONTENTS), CONTENTS.length());
+		assertEquals(0, unsyncedFiles());
+		fileOperations.writeToFile(directory, "three.txt", stream(CONTENTS), CONTENTS.length());
+		assertEquals(1, unsyncedFiles());
+		fileOperations.flush();
+		assertEquals(0, unsyncedFiles());
+		
+		fileOperations.setDurability(InboundLocalFileOperationsImpl.DURABILITY_FSYNC);
+		fileOperations.writeToFile(directory, "four.txt", stream(CONTENTS), CONTENTS.length());
+		assertEquals(0, unsyncedFiles());
+		assertEquals(CONTENTS, FileUtils.readFileToString(new File(directory, "four.txt")));
+	}
+	
+	/**
+	 * A failed write leaves the existing file untouched and no temporary file behind
+	 */
+	@Test
+	public void failedWrite() throws Exception {
+		File file = new File(directory, "file.txt");
+		FileUtils.writeStringToFile(file, CONTENTS);
+		InputStream failing = new FilterInputStream(stream(CONTENTS + CONTENTS)) {
+			private int reads;
+			public int read(byte[] b, int off, int len) throws IOException {
+				if(++reads > 2)
+					throw new IOException("Connection reset");
+				return super.read(b, off, len);
+			}
+		};
+		try {
+			fileOperations.writeToFile(directory, "file.txt", failing, CONTENTS.length() * 2);
+		} catch (IOException e) {
+			//Expected
+		}
+		assertEquals(CONTENTS, FileUtils.readFileToString(file));
+		assertFalse(new File(directory, "file.txt.writing").exists());
+		assertEquals(0, createdFiles.size());
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void unknownDurability() {
+		fileOperations.setDurability("always");
+	}
+	
+	private int unsyncedFiles() {
+		return TestUtils.getPropertyValue(fileOperations, "unsyncedFiles", List.class).size();
+	}
+	
+	/**
+	 * A stream other than a file or a byte array stream
+	 */
+	private InputStream stream(String contents) {
+		return new FilterInputStream(new ByteArrayInputStream(contents.getBytes())) {};
+	}
+}
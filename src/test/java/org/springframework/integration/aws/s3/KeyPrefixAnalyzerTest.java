@@ -0,0 +1,83 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * The test case for {@link KeyPrefixAnalyzer}
+ * @author Amol Nayak
+ *
+ */
+public class KeyPrefixAnalyzerTest {
+
+	@Test
+	public void wildcardPrefixes() {
+		assertEquals(set("orders-2012-10-"), KeyPrefixAnalyzer.getWildcardPrefixes("orders-2012-10-*.csv", false));
+		assertEquals(set("test/2012-10-"), KeyPrefixAnalyzer.getWildcardPrefixes("test/2012-10-?.csv", false));
+		assertNull(KeyPrefixAnalyzer.getWildcardPrefixes("*.txt", false));
+		//Both cases of each letter, the prefix is shortened to at most 16 prefixes
+		assertEquals(set("ab-", "aB-", "Ab-", "AB-"), KeyPrefixAnalyzer.getWildcardPrefixes("ab-*", true));
+		assertEquals(16, KeyPrefixAnalyzer.getWildcardPrefixes("orders-2012-*", true).size());
+		assertEquals(set("2012-10-"), KeyPrefixAnalyzer.getWildcardPrefixes("2012-10-*", true));
+	}
+	
+	@Test
+	public void literalRegexPrefixes() {
+		assertEquals(set("orders-2012-"), KeyPrefixAnalyzer.getRegexPrefixes("orders-2012-.*\\.csv"));
+		assertEquals(set("test/file.txt"), KeyPrefixAnalyzer.getRegexPrefixes("^test/file\\.txt"));
+		assertEquals(set("a.b"), KeyPrefixAnalyzer.getRegexPrefixes("\\Qa.b\\E[0-9]+"));
+		assertNull(KeyPrefixAnalyzer.getRegexPrefixes("[a-zA-Z0-9]+\\.txt"));
+		assertNull(KeyPrefixAnalyzer.getRegexPrefixes("(?i)orders.*"));
+		assertNull(KeyPrefixAnalyzer.getRegexPrefixes("\\w+\\.txt"));
+	}
+	
+	@Test
+	public void quantifiedRegexPrefixes() {
+		//The optional character is not part of the prefix
+		assertEquals(set("order"), KeyPrefixAnalyzer.getRegexPrefixes("orders?-.*"));
+		assertEquals(set("order"), KeyPrefixAnalyzer.getRegexPrefixes("orders*-.*"));
+		assertEquals(set("orders"), KeyPrefixAnalyzer.getRegexPrefixes("orders+-.*"));
+		assertEquals(set("order"), KeyPrefixAnalyzer.getRegexPrefixes("orders{2}.*"));
+		assertEquals(set("log-"), KeyPrefixAnalyzer.getRegexPrefixes("log-(a|b)?.*"));
+	}
+	
+	@Test
+	public void alternationRegexPrefixes() {
+		assertEquals(set("orders-2012-", "invoices-2012-"), 
+				KeyPrefixAnalyzer.getRegexPrefixes("(orders|invoices)-2012-.*"));
+		assertEquals(set("orders-", "invoices-"), 
+				KeyPrefixAnalyzer.getRegexPrefixes("orders-.*|invoices-.*"));
+		assertEquals(set("a/x", "a/y", "b/x", "b/y"), KeyPrefixAnalyzer.getRegexPrefixes("(?:a|b)/(x|y).*"));
+		//A group not literal to its end ends the prefixes
+		assertEquals(set("log-a", "log-b"), KeyPrefixAnalyzer.getRegexPrefixes("log-(a.*|b)c"));
+		//An alternative that may match any key
+		assertNull(KeyPrefixAnalyzer.getRegexPrefixes("orders-.*|.*\\.csv"));
+		//Prefixes extended by others are redundant
+		assertEquals(set("log"), KeyPrefixAnalyzer.getRegexPrefixes("log.*|logs-.*"));
+	}
+	
+	private static Set<String> set(String... values) {
+		return new HashSet<String>(Arrays.asList(values));
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.apache.commons.codec.binary.Hex;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.integration.aws.core.AmazonWSCommonUtils;
+
+/**
+ * The test case for {@link LocalDigestIndex}
+ * @author Amol Nayak
+ *
+ */
+public class LocalDigestIndexTest {
+
+	private File directory;
+	
+	private File file;
+	
+	@Before
+	public void setup() throws IOException {
+		directory = File.createTempFile("digest", "index");
+		directory.delete();
+		directory.mkdir();
+		file = new File(directory, "file.txt");
+		write(file, "Some contents");
+	}
+	
+	@After
+	public void destroy() {
+		for(File child:directory.listFiles())
+			child.delete();
+		directory.delete();
+	}
+	
+	@Test
+	public void digestCachedUntilFileChanges() throws Exception {
+		LocalDigestIndex index = new LocalDigestIndex(directory);
+		assertEquals(md5Hex("Some contents"), index.getMD5Hex(file));
+		index.record(file, null, "etag");
+		assertEquals("etag", index.getETag(file));
+		//Same size and same modification time, the cached digest is returned
+		long lastModified = file.lastModified();
+		write(file, "Same contents");
+		file.setLastModified(lastModified);
+		assertEquals(md5Hex("Some contents"), index.getMD5Hex(file));
+		//Changed modification time invalidates the entry
+		file.setLastModified(lastModified - 10000);
+		assertNull(index.getETag(file));
+		assertEquals(md5Hex("Same contents"), index.getMD5Hex(file));
+	}
+	
+	@Test
+	public void persistedIndex() throws Exception {
+		File other = new File(directory, "other.txt");
+		write(other, "Other contents");
+		LocalDigestIndex index = new LocalDigestIndex(directory);
+		index.getMD5Hex(file);
+		index.record(other, md5Hex("Other contents"), "\"etag-2\"");
+		index.save();
+		assertTrue(index.getIndexFile().isFile());
+		other.delete();
+		
+		LocalDigestIndex loaded = new LocalDigestIndex(directory);
+		loaded.load();
+		assertNull(loaded.getETag(other));
+		long lastModified = file.lastModified();
+		write(file, "Same contents");
+		file.setLastModified(lastModified);
+		assertEquals(md5Hex("Some contents"), loaded.getMD5Hex(file));
+	}
+	
+	private void write(File file,String contents) throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(contents.getBytes());
+		out.close();
+	}
+	
+	private String md5Hex(String contents) {
+		return new String(Hex.encodeHex(AmazonWSCommonUtils.getContentsMD5AsBytes(contents)));
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.codec.binary.Hex;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The test case for {@link MultipartETagCalculator}
+ * @author Amol Nayak
+ *
+ */
+public class MultipartETagCalculatorTest {
+
+	private static final int PART_SIZE = 5 * 1024 * 1024;
+	
+	private ExecutorService executor;
+	
+	private File file;
+	
+	private byte[] contents;
+	
+	@Before
+	public void setup() throws IOException {
+		executor = Executors.newFixedThreadPool(4);
+		contents = new byte[2 * PART_SIZE + 1234];
+		new Random().nextBytes(contents);
+		file = File.createTempFile("etag", ".dat");
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(contents);
+		out.close();
+	}
+	
+	@After
+	public void destroy() {
+		executor.shutdownNow();
+		file.delete();
+	}
+	
+	@Test
+	public void calculateETag() throws Exception {
+		MultipartETagCalculator calculator = new MultipartETagCalculator(executor);
+		assertEquals(expectedETag(PART_SIZE), calculator.calculate(file, PART_SIZE));
+	}
+	
+	@Test
+	public void matchDefaultPartSize() throws Exception {
+		MultipartETagCalculator calculator = new MultipartETagCalculator(executor);
+		assertTrue(calculator.matches(file, expectedETag(PART_SIZE)));
+		assertTrue(calculator.matches(file, "\"" + expectedETag(PART_SIZE) + "\""));
+	}
+	
+	@Test
+	public void matchDerivedPartSize() throws Exception {
+		//Two parts of 6MB, not one of the default sizes 
+		MultipartETagCalculator calculator = new MultipartETagCalculator(executor);
+		assertTrue(calculator.matches(file, expectedETag(6 * 1024 * 1024)));
+	}
+	
+	@Test
+	public void mismatch() throws Exception {
+		MultipartETagCalculator calculator = new MultipartETagCalculator(executor);
+		String eTag = expectedETag(PART_SIZE);
+		assertFalse(calculator.matches(file, "0" + eTag.substring(1, eTag.length() - 1) + "4"));
+		assertFalse(calculator.matches(file, eTag.substring(0, eTag.indexOf('-'))));
+		contents[10] ^= 1;
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(contents);
+		out.close();
+		assertFalse(calculator.matches(file, eTag));
+	}
+	
+	private String expectedETag(int partSize) throws Exception {
+		MessageDigest digest = MessageDigest.getInstance("MD5");
+		int parts = 0;
+		for(int offset = 0;offset < contents.length;offset += partSize) {
+			MessageDigest partDigest = MessageDigest.getInstance("MD5");
+			partDigest.update(contents, offset, Math.min(partSize, contents.length - offset));
+			digest.update(partDigest.digest());
+			parts++;
+		}
+		return new String(Hex.encodeHex(digest.digest())) + "-" + parts;
+	}
+}
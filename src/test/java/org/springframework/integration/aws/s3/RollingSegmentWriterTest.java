@@ -0,0 +1,178 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.integration.Message;
+import org.springframework.integration.support.MessageBuilder;
+
+/**
+ * The test case for {@link RollingSegmentWriter}
+ * @author Amol Nayak
+ *
+ */
+public class RollingSegmentWriterTest {
+
+	private File directory;
+	
+	private final List<String> rolled = new ArrayList<String>();
+	
+	private CountDownLatch rolledLatch = new CountDownLatch(1);
+	
+	private final RollingSegmentWriter.SegmentHandler handler = new RollingSegmentWriter.SegmentHandler() {
+		public void handleSegment(String folder, Message<?> firstMessage, File segmentFile) {
+			try {
+				synchronized (rolled) {
+					rolled.add(folder + ":" + firstMessage.getPayload() + ":" + read(segmentFile));
+				}
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			segmentFile.delete();
+			rolledLatch.countDown();
+		}
+	};
+	
+	@Before
+	public void setup() throws IOException {
+		directory = File.createTempFile("segments", "");
+		directory.delete();
+		directory.mkdir();
+	}
+	
+	@After
+	public void destroy() {
+		for(File file:directory.listFiles())
+			file.delete();
+		directory.delete();
+	}
+	
+	@Test
+	public void rollOnRecordCount() throws Exception {
+		RollingSegmentWriter writer = new RollingSegmentWriter(directory, 0, 2, 0, "\n".getBytes(), handler);
+		append(writer, "a", "one");
+		append(writer, "b", "two");
+		append(writer, "a", "three");
+		assertEquals(1, rolled.size());
+		assertEquals("a:one:one\nthree\n", rolled.get(0));
+		writer.close();
+		assertEquals(2, rolled.size());
+		assertEquals("b:two:two\n", rolled.get(1));
+		assertEquals(0, directory.listFiles().length);
+	}
+	
+	@Test
+	public void rollOnSize() throws Exception {
+		RollingSegmentWriter writer = new RollingSegmentWriter(directory, 5, 0, 0, null, handler);
+		append(writer, "a", "abc");
+		assertTrue(rolled.isEmpty());
+		append(writer, "a", "def");
+		assertEquals("a:abc:abcdef", rolled.get(0));
+		writer.close();
+		assertEquals(1, rolled.size());
+	}
+	
+	@Test
+	public void rollOnAge() throws Exception {
+		RollingSegmentWriter writer = new RollingSegmentWriter(directory, 0, 0, 100, null, handler);
+		append(writer, "a", "abc");
+		assertTrue(rolledLatch.await(5, TimeUnit.SECONDS));
+		assertEquals("a:abc:abc", rolled.get(0));
+		writer.close();
+		assertEquals(1, rolled.size());
+	}
+	
+	@Test
+	public void failedSegmentHandledOnNextRoll() throws Exception {
+		final AtomicInteger failures = new AtomicInteger(1);
+		RollingSegmentWriter writer = new RollingSegmentWriter(directory, 0, 1, 0, null, 
+				new RollingSegmentWriter.SegmentHandler() {
+			public void handleSegment(String folder, Message<?> firstMessage, File segmentFile) {
+				if(failures.getAndDecrement() > 0)
+					throw new IllegalStateException("Upload failed");
+				handler.handleSegment(folder, firstMessage, segmentFile);
+			}
+		});
+		append(writer, "a", "one");
+		assertTrue(rolled.isEmpty());
+		assertEquals(1, directory.listFiles().length);
+		append(writer, "a", "two");
+		assertEquals(2, rolled.size());
+		assertEquals("a:one:one", rolled.get(0));
+		assertEquals("a:two:two", rolled.get(1));
+		
+		failures.set(1);
+		append(writer, "b", "three");
+		writer.close();
+		assertEquals("b:three:three", rolled.get(2));
+		assertEquals(0, directory.listFiles().length);
+	}
+	
+	@Test
+	public void failedRecordDropped() throws Exception {
+		RollingSegmentWriter writer = new RollingSegmentWriter(directory, 0, 3, 0, "\n".getBytes(), handler);
+		append(writer, "a", "one");
+		try {
+			writer.append("a", MessageBuilder.withPayload("two").build(), new InputStream() {
+				int read;
+				public int read() throws IOException {
+					if(read++ < 2)
+						return 't';
+					throw new IOException("Record not readable");
+				}
+			});
+		} catch (IOException e) {
+			//expected
+		}
+		append(writer, "a", "three");
+		writer.close();
+		assertEquals("a:one:one\nthree\n", rolled.get(0));
+	}
+	
+	private void append(RollingSegmentWriter writer,String folder,String record) throws IOException {
+		writer.append(folder, MessageBuilder.withPayload(record).build(), 
+				new ByteArrayInputStream(record.getBytes()));
+	}
+	
+	private String read(File file) throws IOException {
+		FileInputStream fin = new FileInputStream(file);
+		try {
+			byte[] bytes = new byte[(int)file.length()];
+			int read = 0;
+			while(read < bytes.length)
+				read += fin.read(bytes, read, bytes.length - read);
+			return new String(bytes);
+		} finally {
+			fin.close();
+		}
+	}
+}
@@ -16,7 +16,10 @@
 package org.springframework.integration.aws.s3.config;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.util.regex.Pattern;
@@ -26,7 +29,11 @@ import org.junit.Before;
 import org.junit.Test;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
 import org.springframework.integration.aws.TestUtils;
+import org.springframework.integration.aws.s3.AmazonS3InboundStreamingMessageSource;
 import org.springframework.integration.aws.s3.AmazonS3InboundSynchronizationMessageSource;
+import org.springframework.integration.aws.s3.DigestChangeDetectionPolicy;
+import org.springframework.integration.aws.s3.FileSyncStateStore;
+import org.springframework.integration.aws.s3.SizeAndLastModifiedChangeDetectionPolicy;
 import org.springframework.integration.endpoint.SourcePollingChannelAdapter;
 
 /**
@@ -65,6 +72,55 @@ public class AmazonS3InboundChannelAdapterParserTest {
 		assertEquals("*.txt", wildcards[0]);
 		Pattern pattern = TestUtils.getPropertyValue(messageSourceOne, "synchronizer.filter.filter.pattern", Pattern.class);
 		assertEquals("[a-zA-Z0-9]+\\.txt", pattern.pattern());
+		assertEquals(33554432L,TestUtils.getPropertyValue(messageSource, "synchronizer.client.parallelDownloadThreshold", Long.class).longValue());
+		assertTrue(TestUtils.getPropertyValue(messageSource, "synchronizer.changeDetectionPolicy") 
+				instanceof SizeAndLastModifiedChangeDetectionPolicy);
+		assertTrue(TestUtils.getPropertyValue(messageSourceOne, "synchronizer.changeDetectionPolicy") 
+				instanceof DigestChangeDetectionPolicy);
+		assertTrue(TestUtils.getPropertyValue(messageSource, "synchronizer.client.decompressDownloads", Boolean.class));
+		assertFalse(TestUtils.getPropertyValue(messageSourceOne, "synchronizer.client.decompressDownloads", Boolean.class));
+		assertEquals(4194304L,TestUtils.getPropertyValue(messageSource, "synchronizer.client.downloadRangeSize", Long.class).longValue());
+		assertNull(TestUtils.getPropertyValue(messageSource, "synchronizer.shardingScheme"));
+		assertEquals(256, TestUtils.getPropertyValue(messageSourceOne, "synchronizer.shardingScheme.shardCount", Integer.class).intValue());
+		assertEquals(1, TestUtils.getPropertyValue(messageSource, "synchronizer.parallelism", Integer.class).intValue());
+		assertNull(TestUtils.getPropertyValue(messageSource, "synchronizer.downloadExecutor"));
+		assertEquals(8, TestUtils.getPropertyValue(messageSourceOne, "synchronizer.parallelism", Integer.class).intValue());
+		assertNotNull(TestUtils.getPropertyValue(messageSourceOne, "synchronizer.downloadExecutor"));
+		assertNull(TestUtils.getPropertyValue(messageSource, "synchronizer.syncStateStore"));
+		assertTrue(TestUtils.getPropertyValue(messageSourceOne, "synchronizer.syncStateStore") instanceof FileSyncStateStore);
+		assertEquals(100, TestUtils.getPropertyValue(messageSourceOne, "synchronizer.maxPagesPerPoll", Integer.class).intValue());
+		assertEquals("0-9a-z", TestUtils.getPropertyValue(messageSource, "synchronizer.listingPartitions"));
+		assertNotNull(TestUtils.getPropertyValue(messageSource, "synchronizer.objectLister"));
+		assertEquals(4, TestUtils.getPropertyValue(messageSource, "synchronizer.partitionListingExecutor.corePoolSize", Integer.class).intValue());
+		assertNull(TestUtils.getPropertyValue(messageSourceOne, "synchronizer.objectLister"));
+		assertTrue(TestUtils.getPropertyValue(messageSource, "synchronizer.recursive", Boolean.class));
+		assertEquals(2, TestUtils.getPropertyValue(messageSource, "synchronizer.folderExecutor.corePoolSize", Integer.class).intValue());
+		assertFalse(TestUtils.getPropertyValue(messageSourceOne, "synchronizer.recursive", Boolean.class));
+		assertNull(TestUtils.getPropertyValue(messageSourceOne, "synchronizer.folderExecutor"));
+		assertFalse(TestUtils.getPropertyValue(messageSource, "backgroundSync", Boolean.class));
+		assertEquals(1000L, TestUtils.getPropertyValue(messageSource, "syncInterval", Long.class).longValue());
+		assertTrue(TestUtils.getPropertyValue(messageSourceOne, "backgroundSync", Boolean.class));
+		assertEquals(5000L, TestUtils.getPropertyValue(messageSourceOne, "syncInterval", Long.class).longValue());
+		assertEquals("none", TestUtils.getPropertyValue(messageSource, "synchronizer.fileOperations.durability"));
+		assertEquals("batched", TestUtils.getPropertyValue(messageSourceOne, "synchronizer.fileOperations.durability"));
+		assertEquals(50, TestUtils.getPropertyValue(messageSourceOne, "synchronizer.fileOperations.syncBatchSize", Integer.class).intValue());
+	}
+	
+	@Test
+	public void testS3InboundStreamingChannelAdapterParser() {
+		SourcePollingChannelAdapter adapter = ctx.getBean("inboundStreaming",SourcePollingChannelAdapter.class);
+		AmazonS3InboundStreamingMessageSource messageSource =
+			TestUtils.getPropertyValue(adapter, "source", AmazonS3InboundStreamingMessageSource.class);
+		assertEquals("test_bucket",TestUtils.getPropertyValue(messageSource, "bucket", String.class));
+		assertEquals("test",TestUtils.getPropertyValue(messageSource, "remoteDirectory", String.class));
+		assertEquals(50,TestUtils.getPropertyValue(messageSource, "maxObjectsPerBatch", Integer.class).intValue());
+		String[] wildcards = TestUtils.getPropertyValue(messageSource, "filter.filter.wildcards", String[].class);
+		assertEquals("*.json", wildcards[0]);
+		assertEquals(1024L,TestUtils.getPropertyValue(messageSource, "inMemoryThreshold", Long.class).longValue());
+		assertEquals(60000L,TestUtils.getPropertyValue(messageSource, "inFlightTimeout", Long.class).longValue());
+		assertFalse(TestUtils.getPropertyValue(messageSource, "decompress", Boolean.class));
+		assertNull(TestUtils.getPropertyValue(messageSource, "syncStateStore"));
+		assertNotNull(TestUtils.getPropertyValue(messageSource, "client"));
 	}
 
 	@After
@@ -16,6 +16,10 @@
 package org.springframework.integration.aws.s3.config;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 
@@ -24,7 +28,11 @@ import org.junit.Before;
 import org.junit.Test;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
 import org.springframework.integration.aws.TestUtils;
+import org.springframework.integration.aws.s3.AmazonS3MessageHandler;
+import org.springframework.integration.aws.s3.DefaultFileNameGenerationStrategy;
 import org.springframework.integration.aws.s3.FileNameGenerationStrategy;
+import org.springframework.integration.aws.s3.HashPrefixFileNameGenerationStrategy;
+import org.springframework.integration.aws.s3.core.Compression;
 import org.springframework.integration.core.MessageHandler;
 import org.springframework.integration.endpoint.EventDrivenConsumer;
 
@@ -38,12 +46,16 @@ public class AmazonS3OutboundChannelAdapterParserTest {
 	private ClassPathXmlApplicationContext ctx;
 	private EventDrivenConsumer adapter1;
 	private EventDrivenConsumer adapter2;
+	private EventDrivenConsumer adapter3;
+	private EventDrivenConsumer adapter4;
 
 	@Before
 	public void setup() {
 		ctx = new ClassPathXmlApplicationContext("classpath:S3OutboundChannelAdapterParserTest.xml");
 		adapter1 = ctx.getBean("adapterOne", EventDrivenConsumer.class);
 		adapter2 = ctx.getBean("adapterTwo", EventDrivenConsumer.class);
+		adapter3 = ctx.getBean("adapterThree", EventDrivenConsumer.class);
+		adapter4 = ctx.getBean("adapterFour", EventDrivenConsumer.class);
 	}
 
 	@Test
@@ -58,12 +70,70 @@ public class AmazonS3OutboundChannelAdapterParserTest {
 		assertEquals("C:\\Windows\\Temp", tempDirectory.getAbsolutePath());
 		assertEquals(10240,TestUtils.getPropertyValue(handlerOne, "operations.multipartUploadThreshold",Long.class).longValue());
 		assertEquals(".temp",TestUtils.getPropertyValue(handlerOne, "operations.temporaryFileSuffix",String.class));
+		File journalDirectory = TestUtils.getPropertyValue(handlerOne, "operations.uploadJournalDirectory", File.class);
+		assertEquals("C:\\Windows\\Temp", journalDirectory.getAbsolutePath());
+		assertEquals(86400000L, TestUtils.getPropertyValue(handlerOne, "operations.orphanedUploadAge", Long.class).longValue());
+		assertNull(TestUtils.getPropertyValue(handlerTwo, "operations.uploadJournal"));
 		FileNameGenerationStrategy fNameStrategy = TestUtils.getPropertyValue(handlerOne, "fileNameGenerator", FileNameGenerationStrategy.class);
 		assertEquals(DummyFilenameGenerationStrategy.class.getName(), fNameStrategy.getClass().getName());
 		String expression = TestUtils.getPropertyValue(handlerTwo, "remoteDirectoryProcessor.expression.expression", String.class);
 		assertEquals("headers['tempdir']", expression);
 		String fNameExpression = TestUtils.getPropertyValue(handlerTwo, "fileNameGenerator.fileNameExpression", String.class);
 		assertEquals("headers['file-name']", fNameExpression);
+		assertEquals(false, TestUtils.getPropertyValue(handlerOne, "operations.streamingUpload", Boolean.class));
+		assertEquals(true, TestUtils.getPropertyValue(handlerTwo, "operations.streamingUpload", Boolean.class));
+		assertEquals(10485760, TestUtils.getPropertyValue(handlerTwo, "operations.streamingUploadPartSize", Integer.class).intValue());
+		assertEquals(52428800L, TestUtils.getPropertyValue(handlerTwo, "operations.maxStreamingUploadMemory", Long.class).longValue());
+		assertEquals(false, TestUtils.getPropertyValue(handlerOne, "async", Boolean.class));
+		assertEquals(1000, TestUtils.getPropertyValue(handlerOne, "segmentMaxRecords", Integer.class).intValue());
+		assertEquals(60000L, TestUtils.getPropertyValue(handlerOne, "segmentMaxAge", Long.class).longValue());
+		assertEquals("\n", TestUtils.getPropertyValue(handlerOne, "segmentRecordDelimiter", String.class));
+		assertNotNull(TestUtils.getPropertyValue(handlerOne, "segmentWriter"));
+		assertNull(TestUtils.getPropertyValue(handlerTwo, "segmentWriter"));
+		assertEquals(true, TestUtils.getPropertyValue(handlerTwo, "async", Boolean.class));
+		assertEquals(ctx.getBean("s3ReplyChannel"), TestUtils.getPropertyValue(handlerTwo, "replyChannel"));
+		assertEquals(ctx.getBean("s3ErrorChannel"), TestUtils.getPropertyValue(handlerTwo, "errorChannel"));
+		assertEquals(200, TestUtils.getPropertyValue(handlerTwo, "operations.maxInFlightUploads", Integer.class).intValue());
+		assertEquals(104857600L, TestUtils.getPropertyValue(handlerTwo, "operations.maxInFlightUploadBytes", Long.class).longValue());
+		assertEquals(1073741824L, TestUtils.getPropertyValue(handlerTwo, "operations.spoolQuota", Long.class).longValue());
+		assertEquals(Compression.GZIP, TestUtils.getPropertyValue(handlerTwo, "operations.compression", Compression.class));
+		assertEquals(9, TestUtils.getPropertyValue(handlerTwo, "operations.compressionLevel", Integer.class).intValue());
+		assertTrue(TestUtils.getPropertyValue(handlerTwo, "operations.adaptiveUpload", Boolean.class));
+		assertEquals(20971520, TestUtils.getPropertyValue(handlerTwo, "operations.maxUploadPartSize", Integer.class).intValue());
+		assertEquals(8, TestUtils.getPropertyValue(handlerTwo, "operations.maxUploadParallelism", Integer.class).intValue());
+		assertEquals(20000L, TestUtils.getPropertyValue(handlerTwo, "operations.uploadTailLatencyTarget", Long.class).longValue());
+		assertNotNull(TestUtils.getPropertyValue(handlerTwo, "operations.streamingUploader.controller"));
+		assertSame(ctx.getBean("s3Metrics"), TestUtils.getPropertyValue(handlerTwo, "operations.metrics"));
+		assertNull(TestUtils.getPropertyValue(handlerOne, "operations.compression"));
+		assertEquals(AmazonS3MessageHandler.OPERATION_UPLOAD, TestUtils.getPropertyValue(handlerOne, "operation"));
+		assertNull(TestUtils.getPropertyValue(handlerOne, "objectRemover"));
+	}
+	
+	@Test
+	public void testDeleteOperation() {
+		MessageHandler handlerThree = TestUtils.getPropertyValue(adapter3, "handler", MessageHandler.class);
+		assertEquals(AmazonS3MessageHandler.OPERATION_DELETE, TestUtils.getPropertyValue(handlerThree, "operation"));
+		assertEquals(500, TestUtils.getPropertyValue(handlerThree, "objectRemover.maxSize", Integer.class).intValue());
+		assertEquals(5000L, TestUtils.getPropertyValue(handlerThree, "objectRemover.maxAge", Long.class).longValue());
+		assertSame(ctx.getBean("s3ReplyChannel"), TestUtils.getPropertyValue(handlerThree, "replyChannel"));
+		assertSame(ctx.getBean("s3DeleteFailureChannel"), TestUtils.getPropertyValue(handlerThree, "deleteFailureChannel"));
+		assertTrue(TestUtils.getPropertyValue(handlerThree, "fileNameGenerator") instanceof HashPrefixFileNameGenerationStrategy);
+		assertEquals(16, TestUtils.getPropertyValue(handlerThree, "fileNameGenerator.shardingScheme.shardCount", Integer.class).intValue());
+		assertTrue(TestUtils.getPropertyValue(handlerThree, "fileNameGenerator.fileNameGenerator") instanceof DefaultFileNameGenerationStrategy);
+	}
+
+	@Test
+	public void testMoveOperation() {
+		MessageHandler handlerFour = TestUtils.getPropertyValue(adapter4, "handler", MessageHandler.class);
+		assertEquals(AmazonS3MessageHandler.OPERATION_MOVE, TestUtils.getPropertyValue(handlerFour, "operation"));
+		assertEquals("archive_bucket", TestUtils.getPropertyValue(handlerFour, "destinationBucket"));
+		assertEquals("headers['source-key']", 
+				TestUtils.getPropertyValue(handlerFour, "sourceKeyProcessor.expression.expression"));
+		assertEquals("'archive/' + headers['source-key']", 
+				TestUtils.getPropertyValue(handlerFour, "destinationKeyProcessor.expression.expression"));
+		assertNull(TestUtils.getPropertyValue(handlerFour, "remoteDirectoryProcessor"));
+		assertEquals(1073741824L, TestUtils.getPropertyValue(handlerFour, "operations.copyPartSize", Long.class).longValue());
+		assertEquals(4, TestUtils.getPropertyValue(handlerFour, "operations.maxCopyPartsInFlight", Integer.class).intValue());
 	}
 
 	@After
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3.core;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * The test case for {@link AdaptiveUploadController}
+ * @author Amol Nayak
+ *
+ */
+public class AdaptiveUploadControllerTest {
+
+	private static final int PART_SIZE = StreamingMultipartUploader.MIN_PART_SIZE;
+
+	@Test
+	public void increaseWhileThroughputImproves() {
+		AdaptiveUploadController controller = 
+			new AdaptiveUploadController(PART_SIZE, 4 * PART_SIZE, 1, 3, 1000, PART_SIZE, 2);
+		controller.evaluate(100, 100);
+		assertEquals(3, controller.getParallelism());
+		//At max parallelism, the part size is increased next
+		controller.evaluate(200, 100);
+		assertEquals(3, controller.getParallelism());
+		assertEquals(2 * PART_SIZE, controller.getPartSize());
+		//Throughput did not change significantly, hold
+		controller.evaluate(202, 100);
+		assertEquals(2 * PART_SIZE, controller.getPartSize());
+		//Doubled parts would exceed the tail latency target
+		controller.evaluate(300, 600);
+		assertEquals(2 * PART_SIZE, controller.getPartSize());
+	}
+
+	@Test
+	public void revertWhenThroughputDrops() {
+		AdaptiveUploadController controller = 
+			new AdaptiveUploadController(PART_SIZE, 4 * PART_SIZE, 1, 8, 1000, PART_SIZE, 2);
+		controller.evaluate(100, 100);
+		assertEquals(3, controller.getParallelism());
+		controller.evaluate(80, 100);
+		assertEquals(2, controller.getParallelism());
+		//Only the last increase is reverted
+		controller.evaluate(50, 100);
+		assertEquals(2, controller.getParallelism());
+	}
+
+	@Test
+	public void decreaseOnTailLatency() {
+		AdaptiveUploadController controller = 
+			new AdaptiveUploadController(PART_SIZE, 4 * PART_SIZE, 1, 8, 1000, 4 * PART_SIZE, 8);
+		controller.evaluate(100, 2000);
+		assertEquals(4, controller.getParallelism());
+		controller.partFailed();
+		assertEquals(2, controller.getParallelism());
+		controller.evaluate(100, 2000);
+		controller.evaluate(100, 2000);
+		assertEquals(1, controller.getParallelism());
+		assertEquals(2 * PART_SIZE, controller.getPartSize());
+		controller.evaluate(100, 2000);
+		controller.evaluate(100, 2000);
+		assertEquals(PART_SIZE, controller.getPartSize());
+	}
+
+	@Test
+	public void evaluateWindowOfParts() {
+		AdaptiveUploadController controller = 
+			new AdaptiveUploadController(PART_SIZE, PART_SIZE, 1, 4, 1000, PART_SIZE, 1);
+		long second = 1000000000L;
+		//A window is at least four parts
+		for(int i = 0;i < 3;i++)
+			controller.partUploaded(PART_SIZE, i * second, i * second + second / 2);
+		assertEquals(1, controller.getParallelism());
+		controller.partUploaded(PART_SIZE, 3 * second, 3 * second + second / 2);
+		assertEquals(2, controller.getParallelism());
+		//Slow parts reduce the parallelism
+		for(int i = 0;i < 4;i++)
+			controller.partUploaded(PART_SIZE, i * second, i * second + 2 * second);
+		assertEquals(1, controller.getParallelism());
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+
+import org.junit.Test;
+import org.springframework.beans.DirectFieldAccessor;
+import org.springframework.integration.aws.core.BasicAWSCredentials;
+import org.springframework.integration.aws.s3.core.AmazonS3Metrics.Sample;
+
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+
+/**
+ * The test case for {@link AmazonS3Metrics}
+ * @author Amol Nayak
+ *
+ */
+public class AmazonS3MetricsTest {
+
+	@Test
+	public void countsAndInFlightGauges() {
+		AmazonS3Metrics metrics = new AmazonS3Metrics();
+		Sample first = metrics.start("bucket", AmazonS3Metrics.PUT_OBJECT, 100);
+		Sample second = metrics.start("bucket", AmazonS3Metrics.PUT_OBJECT, 50);
+		assertEquals(2, metrics.getInFlightOperations());
+		assertEquals(150, metrics.getInFlightBytes());
+		first.success(100);
+		//Completing twice has no effect
+		first.failure();
+		second.failure();
+		assertEquals(0, metrics.getInFlightOperations());
+		assertEquals(0, metrics.getInFlightBytes());
+		assertEquals(1, metrics.getCount("bucket", AmazonS3Metrics.PUT_OBJECT));
+		assertEquals(1, metrics.getErrorCount("bucket", AmazonS3Metrics.PUT_OBJECT));
+		assertEquals(100, metrics.getBytes("bucket", AmazonS3Metrics.PUT_OBJECT));
+		assertEquals(0, metrics.getCount("other", AmazonS3Metrics.PUT_OBJECT));
+		assertArrayEquals(new String[]{"bucket/putObject"}, metrics.getOperationNames());
+		assertEquals(1, metrics.getSummary().length);
+		metrics.reset();
+		assertEquals(0, metrics.getOperationNames().length);
+	}
+	
+	@Test
+	public void latencyPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getPercentile(50));
+		for(int i = 0;i < 90;i++)
+			histogram.record(3);
+		for(int i = 0;i < 10;i++)
+			histogram.record(700);
+		assertEquals(5, histogram.getPercentile(50));
+		assertEquals(5, histogram.getPercentile(90));
+		assertEquals(700, histogram.getPercentile(99));
+		assertEquals(700, histogram.getMax());
+		histogram.record(400000);
+		assertEquals(400000, histogram.getPercentile(100));
+	}
+	
+	@Test
+	public void putObjectRecorded() throws Exception {
+		AmazonS3OperationsImpl operations = new AmazonS3OperationsImpl(new BasicAWSCredentials("accessKey", "secretKey"));
+		AmazonS3Metrics metrics = new AmazonS3Metrics();
+		operations.setMetrics(metrics);
+		operations.afterPropertiesSet();
+		//Replace the client with one accepting every put
+		DirectFieldAccessor accessor = new DirectFieldAccessor(operations);
+		accessor.setPropertyValue("client", new AmazonS3Client() {
+			@Override
+			public PutObjectResult putObject(PutObjectRequest request) {
+				return new PutObjectResult();
+			}
+		});
+		try {
+			operations.putObject("bucket", "folder", "object", 
+					new AmazonS3Object(null, null, new ByteArrayInputStream(new byte[1234]), null));
+		} finally {
+			operations.destroy();
+		}
+		assertEquals(1, metrics.getCount("bucket", AmazonS3Metrics.PUT_OBJECT));
+		assertEquals(1234, metrics.getBytes("bucket", AmazonS3Metrics.PUT_OBJECT));
+		assertTrue(metrics.getBytesPerSecond() >= 0);
+	}
+}
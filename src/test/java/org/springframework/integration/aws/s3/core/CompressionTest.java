@@ -0,0 +1,99 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.Test;
+
+/**
+ * The test case for {@link Compression} and {@link CompressingInputStream}
+ * @author Amol Nayak
+ *
+ */
+public class CompressionTest {
+
+	@Test
+	public void gzipReadableByJdk() throws Exception {
+		byte[] contents = compressibleBytes(200000);
+		byte[] compressed = readFully(Compression.GZIP.compress(new ByteArrayInputStream(contents), 6));
+		assertTrue(compressed.length < contents.length / 2);
+		assertArrayEquals(contents, readFully(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+	}
+	
+	@Test
+	public void deflateReadableByJdk() throws Exception {
+		byte[] contents = compressibleBytes(200000);
+		byte[] compressed = readFully(Compression.DEFLATE.compress(new ByteArrayInputStream(contents), 9));
+		assertTrue(compressed.length < contents.length / 2);
+		assertArrayEquals(contents, readFully(new InflaterInputStream(new ByteArrayInputStream(compressed))));
+	}
+	
+	@Test
+	public void roundTripByteAtATime() throws Exception {
+		byte[] contents = new byte[5000];
+		new Random().nextBytes(contents);
+		InputStream in = Compression.GZIP.compress(new ByteArrayInputStream(contents), -1);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for(int read = 0;(read = in.read()) != -1;)
+			out.write(read);
+		in.close();
+		assertArrayEquals(contents, 
+				readFully(Compression.GZIP.decompress(new ByteArrayInputStream(out.toByteArray()))));
+	}
+	
+	@Test
+	public void emptyContents() throws Exception {
+		byte[] compressed = readFully(Compression.GZIP.compress(new ByteArrayInputStream(new byte[0]), 6));
+		assertEquals(0, readFully(new GZIPInputStream(new ByteArrayInputStream(compressed))).length);
+	}
+	
+	@Test
+	public void contentEncoding() {
+		assertEquals(Compression.GZIP, Compression.forContentEncoding("gzip"));
+		assertEquals(Compression.DEFLATE, Compression.forContentEncoding(" Deflate"));
+		assertNull(Compression.forContentEncoding("identity"));
+		assertNull(Compression.forContentEncoding(null));
+	}
+	
+	private byte[] compressibleBytes(int size) {
+		StringBuilder builder = new StringBuilder();
+		Random random = new Random();
+		while(builder.length() < size)
+			builder.append("{\"id\":").append(random.nextInt(1000)).append(",\"name\":\"record\"}\n");
+		return builder.substring(0, size).getBytes();
+	}
+	
+	private byte[] readFully(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] bytes = new byte[1024];
+		for(int read = 0;(read = in.read(bytes)) != -1;)
+			out.write(bytes, 0, read);
+		in.close();
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The test case for {@link FileChannelWriter}
+ * @author Amol Nayak
+ *
+ */
+public class FileChannelWriterTest {
+
+	private File file;
+	
+	@Before
+	public void setup() throws IOException {
+		file = File.createTempFile("channel", ".dat");
+	}
+	
+	@After
+	public void destroy() {
+		file.delete();
+	}
+	
+	/**
+	 * The contents larger than the buffer are written at the given position in several chunks,
+	 * the bytes before the position are left as they are
+	 */
+	@Test
+	public void writeAtPosition() throws IOException {
+		byte[] contents = new byte[1000];
+		new Random().nextBytes(contents);
+		FileChannelWriter writer = new FileChannelWriter(64);
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.write(new byte[] {1, 2, 3});
+			assertEquals(contents.length, writer.write(new ByteArrayInputStream(contents), raf.getChannel(), 3));
+			//The buffer of the thread is reused
+			assertEquals(0, writer.write(new ByteArrayInputStream(new byte[0]), raf.getChannel(), 1003));
+			assertEquals(1003, raf.length());
+			byte[] written = new byte[1003];
+			raf.seek(0);
+			raf.readFully(written);
+			assertEquals(1, written[0]);
+			assertEquals(3, written[2]);
+			byte[] copy = new byte[1000];
+			System.arraycopy(written, 3, copy, 0, 1000);
+			assertArrayEquals(contents, copy);
+		} finally {
+			raf.close();
+		}
+	}
+}
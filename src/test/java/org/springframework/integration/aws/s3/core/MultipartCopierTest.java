@@ -0,0 +1,227 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.CopyObjectResult;
+import com.amazonaws.services.s3.model.CopyPartRequest;
+import com.amazonaws.services.s3.model.CopyPartResult;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+
+/**
+ * The test case for {@link MultipartCopier}, uses a stub of the {@link AmazonS3Client}
+ * recording the copy requests
+ * @author Amol Nayak
+ *
+ */
+public class MultipartCopierTest {
+
+	private static final long GB = 1024L * 1024 * 1024;
+	
+	private ExecutorService executor;
+	
+	private CopyRecordingS3Client client;
+	
+	@Before
+	public void setup() {
+		executor = Executors.newFixedThreadPool(4);
+		client = new CopyRecordingS3Client();
+	}
+	
+	@After
+	public void destroy() {
+		executor.shutdownNow();
+	}
+	
+	/**
+	 * Objects up to 5 GB are copied using a single request conditional on the ETag
+	 */
+	@Test
+	public void singleRequestCopy() {
+		client.length = 5 * GB;
+		MultipartCopier copier = new MultipartCopier(client, executor, GB, 2);
+		assertEquals(5 * GB, copier.copy("source", "a/b.txt", "destination", "c/d.txt"));
+		assertEquals(1, client.copyRequests.size());
+		CopyObjectRequest request = client.copyRequests.get(0);
+		assertEquals("source", request.getSourceBucketName());
+		assertEquals("a/b.txt", request.getSourceKey());
+		assertEquals("destination", request.getDestinationBucketName());
+		assertEquals("c/d.txt", request.getDestinationKey());
+		assertEquals(Collections.singletonList("source-etag"), request.getMatchingETagConstraints());
+		assertEquals(0, client.initiated);
+	}
+	
+	/**
+	 * Larger objects are copied in contiguous ranges and the upload completed with the 
+	 * parts in order, the metadata of the source is retained
+	 */
+	@Test
+	public void multipartCopy() {
+		client.length = 11 * GB + 1;
+		MultipartCopier copier = new MultipartCopier(client, executor, GB, 2);
+		copier.copy("source", "a/b.txt", "destination", "c/d.txt");
+		assertEquals(1, client.initiated);
+		assertEquals("value", client.initiatedMetadata.getUserMetadata().get("key"));
+		assertEquals("text/plain", client.initiatedMetadata.getContentType());
+		assertEquals(12, client.partRequests.size());
+		long expectedFirstByte = 0;
+		for(int i = 1;i <= 12;i++) {
+			CopyPartRequest request = client.getPartRequest(i);
+			assertEquals(expectedFirstByte, request.getFirstByte().longValue());
+			assertEquals(Collections.singletonList("source-etag"), request.getMatchingETagConstraints());
+			expectedFirstByte = request.getLastByte() + 1;
+		}
+		assertEquals(client.length, expectedFirstByte);
+		List<PartETag> completed = client.completedETags;
+		assertEquals(12, completed.size());
+		for(int i = 0;i < completed.size();i++) {
+			assertEquals(i + 1, completed.get(i).getPartNumber());
+			assertEquals("etag-" + (i + 1), completed.get(i).getETag());
+		}
+		assertEquals(0, client.aborted);
+	}
+	
+	/**
+	 * The upload is aborted and not completed if a part fails to copy
+	 */
+	@Test
+	public void failedPartAbortsCopy() {
+		client.length = 11 * GB;
+		client.failPart = 3;
+		MultipartCopier copier = new MultipartCopier(client, executor, GB, 2);
+		try {
+			copier.copy("source", "a/b.txt", "destination", "c/d.txt");
+			fail("Expected the copy to fail");
+		} catch (AmazonClientException e) {
+			//expected
+		}
+		assertEquals(1, client.aborted);
+		assertEquals(null, client.completedETags);
+	}
+	
+	/**
+	 * The part size is raised to keep the copy within the max number of parts
+	 */
+	@Test
+	public void partSizeRaisedForLargeObjects() {
+		MultipartCopier copier = new MultipartCopier(client, executor, StreamingMultipartUploader.MIN_PART_SIZE, 2);
+		assertEquals(StreamingMultipartUploader.MIN_PART_SIZE, copier.getPartSize(6 * GB));
+		long partSize = copier.getPartSize(5 * 1024 * GB);
+		assertTrue(partSize > StreamingMultipartUploader.MIN_PART_SIZE);
+		assertTrue((5 * 1024 * GB + partSize - 1) / partSize <= StreamingMultipartUploader.MAX_PARTS);
+	}
+	
+	/**
+	 * The stub client recording the copy requests
+	 */
+	private static class CopyRecordingS3Client extends AmazonS3Client {
+		
+		long length;
+		volatile int failPart;
+		int initiated;
+		int aborted;
+		ObjectMetadata initiatedMetadata;
+		List<PartETag> completedETags;
+		final List<CopyObjectRequest> copyRequests = new ArrayList<CopyObjectRequest>();
+		final List<CopyPartRequest> partRequests = new ArrayList<CopyPartRequest>();
+		
+		@Override
+		public ObjectMetadata getObjectMetadata(String bucketName, String key)
+				throws AmazonClientException {
+			ObjectMetadata metadata = new ObjectMetadata();
+			metadata.setContentLength(length);
+			metadata.setContentType("text/plain");
+			metadata.addUserMetadata("key", "value");
+			metadata.setHeader("ETag", "source-etag");
+			return metadata;
+		}
+
+		@Override
+		public synchronized CopyObjectResult copyObject(CopyObjectRequest request)
+				throws AmazonClientException {
+			copyRequests.add(request);
+			return new CopyObjectResult();
+		}
+
+		@Override
+		public synchronized InitiateMultipartUploadResult initiateMultipartUpload(
+				InitiateMultipartUploadRequest request)
+				throws AmazonClientException {
+			initiated++;
+			initiatedMetadata = request.getObjectMetadata();
+			InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+			result.setUploadId("upload-id");
+			return result;
+		}
+
+		@Override
+		public CopyPartResult copyPart(CopyPartRequest request)
+				throws AmazonClientException {
+			if(request.getPartNumber() == failPart)
+				throw new AmazonClientException("Part copy failed");
+			synchronized (this) {
+				partRequests.add(request);
+			}
+			CopyPartResult result = new CopyPartResult();
+			result.setPartNumber(request.getPartNumber());
+			result.setETag("etag-" + request.getPartNumber());
+			return result;
+		}
+
+		@Override
+		public synchronized CompleteMultipartUploadResult completeMultipartUpload(
+				CompleteMultipartUploadRequest request)
+				throws AmazonClientException {
+			completedETags = request.getPartETags();
+			return new CompleteMultipartUploadResult();
+		}
+
+		@Override
+		public synchronized void abortMultipartUpload(AbortMultipartUploadRequest request)
+				throws AmazonClientException {
+			aborted++;
+		}
+		
+		synchronized CopyPartRequest getPartRequest(int partNumber) {
+			for(CopyPartRequest request:partRequests)
+				if(request.getPartNumber() == partNumber)
+					return request;
+			throw new AssertionError("No request for part " + partNumber);
+		}
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The test case for {@link MultipartUploadJournal}
+ * @author Amol Nayak
+ *
+ */
+public class MultipartUploadJournalTest {
+
+	private File directory;
+	
+	private File file;
+	
+	@Before
+	public void setup() throws IOException {
+		directory = File.createTempFile("upload", "journal");
+		directory.delete();
+		file = File.createTempFile("upload", ".dat");
+		FileOutputStream out = new FileOutputStream(file);
+		out.write("Some contents".getBytes());
+		out.close();
+	}
+	
+	@After
+	public void destroy() {
+		for(File child:directory.listFiles())
+			child.delete();
+		directory.delete();
+		file.delete();
+	}
+	
+	@Test
+	public void journaledPartsRead() throws Exception {
+		MultipartUploadJournal journal = new MultipartUploadJournal(directory);
+		MultipartUploadJournal.Entry entry = journal.begin("bucket", "some key", file, 5242880, "upload-id");
+		entry.partUploaded(1, "\"etag-1\"");
+		entry.partUploaded(2, "\"etag-2\"");
+		//The entry is reserved till released
+		assertNull(journal.find("bucket", "some key", file));
+		journal.release(entry);
+		//A line partially written before a crash is ignored
+		File journalFile = directory.listFiles()[0];
+		FileOutputStream out = new FileOutputStream(journalFile, true);
+		out.write("part.3=%22et".getBytes());
+		out.close();
+		
+		MultipartUploadJournal.Entry found = new MultipartUploadJournal(directory).find("bucket", "some key", file);
+		assertEquals("upload-id", found.getUploadId());
+		assertEquals("some key", found.getKey());
+		assertEquals(5242880, found.getPartSize());
+		assertEquals(2, found.getPartCount());
+		assertEquals("\"etag-2\"", found.getPartETag(2));
+		assertNull(found.getPartETag(3));
+		assertTrue(found.matches(file));
+		file.setLastModified(file.lastModified() - 10000);
+		assertFalse(found.matches(file));
+		assertNull(journal.find("bucket", "other key", file));
+	}
+	
+	@Test
+	public void orphansFound() throws Exception {
+		MultipartUploadJournal journal = new MultipartUploadJournal(directory);
+		MultipartUploadJournal.Entry entry = journal.begin("bucket", "key", file, 5242880, "upload-id");
+		journal.release(entry);
+		assertTrue(journal.findOrphans(60000).isEmpty());
+		File journalFile = directory.listFiles()[0];
+		journalFile.setLastModified(System.currentTimeMillis() - 120000);
+		List<MultipartUploadJournal.Entry> orphans = journal.findOrphans(60000);
+		assertEquals(1, orphans.size());
+		//Reserved till released
+		assertTrue(journal.findOrphans(60000).isEmpty());
+		orphans.get(0).delete();
+		journal.release(orphans.get(0));
+		assertFalse(journalFile.exists());
+	}
+}
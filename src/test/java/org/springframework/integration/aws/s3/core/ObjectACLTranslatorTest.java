@@ -0,0 +1,103 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.Owner;
+
+/**
+ * The test case for {@link ObjectACLTranslator}
+ * @author Amol Nayak
+ *
+ */
+public class ObjectACLTranslatorTest {
+	
+	private final OwnerS3Client client = new OwnerS3Client();
+	
+	private final ObjectACLTranslator translator = new ObjectACLTranslator(client);
+	
+	@Test
+	public void noGrants() {
+		assertTrue(translator.getHeaders(null).isEmpty());
+		assertTrue(translator.getHeaders(new AmazonS3ObjectACL()).isEmpty());
+	}
+	
+	@Test
+	public void cannedACL() {
+		Map<String, String> headers = translator.getHeaders(
+				acl(new ObjectGrant(new Grantee(GroupGranteeType.AllUsers.getIdentifier(), 
+						GranteeType.GROUP_GRANTEE_TYPE), ObjectPermissions.READ)));
+		assertEquals(1, headers.size());
+		assertEquals("public-read", headers.get(ObjectACLTranslator.CANNED_ACL_HEADER));
+		assertEquals(0, client.ownerLookups);
+	}
+	
+	@Test
+	public void explicitGrants() {
+		AmazonS3ObjectACL acl = acl(
+				new ObjectGrant(new Grantee("someone@example.com", GranteeType.EMAIL_GRANTEE_TYPE), 
+						ObjectPermissions.READ),
+				new ObjectGrant(new Grantee("abcd", GranteeType.CANONICAL_GRANTEE_TYPE), 
+						ObjectPermissions.WRITE_ACP));
+		Map<String, String> headers = translator.getHeaders(acl);
+		assertEquals("id=\"owner-id\"", headers.get(ObjectACLTranslator.GRANT_FULL_CONTROL_HEADER));
+		assertEquals("emailAddress=\"someone@example.com\"", headers.get(ObjectACLTranslator.GRANT_READ_HEADER));
+		assertEquals("id=\"abcd\"", headers.get(ObjectACLTranslator.GRANT_WRITE_ACP_HEADER));
+		assertNull(headers.get(ObjectACLTranslator.GRANT_READ_ACP_HEADER));
+		assertNull(headers.get(ObjectACLTranslator.CANNED_ACL_HEADER));
+	}
+	
+	@Test
+	public void translationCached() {
+		ObjectGrant grant = new ObjectGrant(new Grantee("abcd", GranteeType.CANONICAL_GRANTEE_TYPE), 
+				ObjectPermissions.READ);
+		Map<String, String> headers = translator.getHeaders(acl(grant));
+		//An equal ACL built for another message gets the same translation
+		assertSame(headers, translator.getHeaders(acl(grant)));
+		assertEquals(1, client.ownerLookups);
+	}
+	
+	private AmazonS3ObjectACL acl(ObjectGrant... grants) {
+		AmazonS3ObjectACL acl = new AmazonS3ObjectACL();
+		for(ObjectGrant grant:grants)
+			acl.addGrant(grant);
+		return acl;
+	}
+	
+	/**
+	 * The stub client returning a fixed owner
+	 */
+	private static class OwnerS3Client extends AmazonS3Client {
+		
+		int ownerLookups;
+
+		@Override
+		public Owner getS3AccountOwner() throws AmazonClientException {
+			ownerLookups++;
+			return new Owner("owner-id", "owner");
+		}
+	}
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.integration.aws.core.BasicAWSCredentials;
+
+/**
+ * The test case for {@link ParallelObjectLister}, the objects are listed from a stub of the
+ * {@link AmazonS3Operations} paginating a sorted set of keys the way S3 does
+ * @author Amol Nayak
+ *
+ */
+public class ParallelObjectListerTest {
+
+	private static final String CHARACTERS = "0123456789abcdefghijklmnopqrstuvwxyz";
+	
+	private final ExecutorService executor = Executors.newFixedThreadPool(4);
+	
+	@After
+	public void destroy() {
+		executor.shutdownNow();
+	}
+	
+	/**
+	 * The boundaries are the sorted distinct characters but the first under the folder
+	 */
+	@Test
+	public void characterBoundaries() {
+		assertEquals(Arrays.asList("test/1", "test/2", "test/a", "test/b"), 
+				ParallelObjectLister.getCharacterBoundaries("test", "b0-2a1"));
+		assertEquals(Arrays.asList("1"), ParallelObjectLister.getCharacterBoundaries("/", "01"));
+		assertEquals(15, ParallelObjectLister.getCharacterBoundaries(null, "0-9a-f").size());
+	}
+	
+	/**
+	 * Every key of the folder is listed exactly once, including those before the first
+	 * and after the last boundary, and no key of another folder is listed
+	 */
+	@Test
+	public void allKeysListedOnce() {
+		SortedKeyOperations operations = new SortedKeyOperations();
+		Random random = new Random(7);
+		Set<String> expected = new HashSet<String>();
+		for(int i = 0;i < 2000;i++) {
+			StringBuilder name = new StringBuilder();
+			for(int j = 0;j < 8;j++)
+				name.append(CHARACTERS.charAt(random.nextInt(CHARACTERS.length())));
+			String key = "test/" + name;
+			expected.add(key);
+			operations.keys.add(key);
+		}
+		operations.keys.add("other/0file");
+		operations.keys.add("test/-first");
+		operations.keys.add("test/~last");
+		expected.add("test/-first");
+		expected.add("test/~last");
+		
+		ParallelObjectLister lister = new ParallelObjectLister(operations, executor, 50);
+		lister.setBufferSize(16);
+		ParallelObjectLister.ObjectSummaryStream stream = lister.list("bucket", "test", 
+				ParallelObjectLister.getCharacterBoundaries("test", "0-9a-f"));
+		Set<String> listed = new HashSet<String>();
+		while(stream.hasNext())
+			assertTrue(listed.add(stream.next().getKey()));
+		assertEquals(expected, listed);
+	}
+	
+	/**
+	 * Each partition starts listing after the keys of the previous one, only the last page
+	 * of a partition lists keys of the next one
+	 */
+	@Test
+	public void partitionsNotListedTwice() {
+		SortedKeyOperations operations = new SortedKeyOperations();
+		String characters = "0123456789abcdef";
+		for(int i = 0;i < characters.length();i++) {
+			for(int j = 0;j < 1000;j++)
+				operations.keys.add("test/" + characters.charAt(i) + j);
+		}
+		ParallelObjectLister lister = new ParallelObjectLister(operations, executor, 100);
+		ParallelObjectLister.ObjectSummaryStream stream = lister.list("bucket", "test", 
+				ParallelObjectLister.getCharacterBoundaries("test", "0-9a-f"));
+		int keys = 0;
+		while(stream.hasNext()) {
+			stream.next();
+			keys++;
+		}
+		assertEquals(16000, keys);
+		assertTrue("Listed " + operations.listed.get() + " keys", 
+				operations.listed.get() <= 16000 + 15 * 100);
+	}
+	
+	@Test
+	public void markerBefore() {
+		String marker = ParallelObjectLister.getMarkerBefore("test/4");
+		assertTrue(marker.compareTo("test/3") > 0);
+		assertTrue(marker.compareTo("test/3zzzzzzz") > 0);
+		assertTrue(marker.compareTo("test/4") < 0);
+	}
+	
+	/**
+	 * With a delimiter, only the keys directly under the folder are listed and the sub
+	 * folders are rolled up in the common prefixes, whichever partition they fall in
+	 */
+	@Test
+	public void delimitedListing() {
+		SortedKeyOperations operations = new SortedKeyOperations();
+		Set<String> expected = new HashSet<String>();
+		for(int i = 0;i < 200;i++) {
+			String key = "test/" + Integer.toHexString(i * 79);
+			expected.add(key);
+			operations.keys.add(key);
+			operations.keys.add("test/" + (char)('a' + i % 6) + "sub/" + i);
+			operations.keys.add("test/0sub/deeper/" + i);
+		}
+		ParallelObjectLister lister = new ParallelObjectLister(operations, executor, 25);
+		ParallelObjectLister.ObjectSummaryStream stream = lister.list("bucket", "test", 
+				ParallelObjectLister.getCharacterBoundaries("test", "0-9a-f"), "/");
+		Set<String> listed = new HashSet<String>();
+		while(stream.hasNext())
+			assertTrue(listed.add(stream.next().getKey()));
+		assertEquals(expected, listed);
+		assertEquals(new HashSet<String>(Arrays.asList("test/0sub/", "test/asub/", "test/bsub/", 
+				"test/csub/", "test/dsub/", "test/esub/", "test/fsub/")), 
+				new HashSet<String>(stream.getCommonPrefixes()));
+		assertEquals(7, stream.getCommonPrefixes().size());
+	}
+	
+	/**
+	 * The failure of the listing of a partition fails the iteration
+	 */
+	@Test
+	public void listingFailurePropagated() {
+		SortedKeyOperations operations = new SortedKeyOperations();
+		for(int i = 0;i < 100;i++)
+			operations.keys.add("test/" + i);
+		operations.failAfter = "test/5";
+		ParallelObjectLister lister = new ParallelObjectLister(operations, executor, 10);
+		ParallelObjectLister.ObjectSummaryStream stream = lister.list("bucket", "test", 
+				ParallelObjectLister.getCharacterBoundaries("test", "0-9"));
+		try {
+			while(stream.hasNext())
+				stream.next();
+			fail("Expected the listing to fail");
+		} catch (AmazonS3OperationException e) {
+			assertEquals("Listing failed", e.getMessage());
+		} finally {
+			stream.close();
+		}
+	}
+	
+	/**
+	 * Lists the keys after the marker in pages, as S3 does for a listing without delimiter
+	 */
+	private static class SortedKeyOperations extends AmazonS3OperationsImpl {
+		
+		final SortedSet<String> keys = new TreeSet<String>();
+		volatile String failAfter;
+		final AtomicInteger listed = new AtomicInteger();
+		
+		SortedKeyOperations() {
+			super(new BasicAWSCredentials("accessKey", "secretKey"));
+		}
+
+		@Override
+		public PaginatedObjectsView listObjects(final String bucketName, String folder,
+				String nextMarker, int pageSize, String delimiter) {
+			String prefix = folder + "/";
+			if(failAfter != null && nextMarker != null && nextMarker.compareTo(failAfter) >= 0)
+				throw new AmazonS3OperationException(null, bucketName, null, "Listing failed");
+			SortedSet<String> tail;
+			synchronized (keys) {
+				tail = new TreeSet<String>(keys.tailSet(nextMarker != null?nextMarker + "\0":prefix));
+			}
+			final List<S3ObjectSummary> summaries = new ArrayList<S3ObjectSummary>();
+			final List<String> commonPrefixes = new ArrayList<String>();
+			String last = null;
+			for(final String key:tail) {
+				if(!key.startsWith(prefix) || summaries.size() + commonPrefixes.size() == pageSize)
+					break;
+				int index = delimiter != null?key.indexOf(delimiter, prefix.length()):-1;
+				if(index != -1) {
+					//Rolled up in the common prefix, once
+					String commonPrefix = key.substring(0, index + delimiter.length());
+					if(!commonPrefix.equals(last) && (nextMarker == null || !nextMarker.startsWith(commonPrefix))) {
+						commonPrefixes.add(commonPrefix);
+						last = commonPrefix;
+					}
+					continue;
+				}
+				last = key;
+				summaries.add(new S3ObjectSummary() {
+					public long getSize() {
+						return 0;
+					}
+					public Date getLastModified() {
+						return null;
+					}
+					public String getKey() {
+						return key;
+					}
+					public String getETag() {
+						return null;
+					}
+					public String getBucketName() {
+						return bucketName;
+					}
+				});
+			}
+			listed.addAndGet(summaries.size());
+			if(last == null)
+				return null;
+			boolean truncated = summaries.size() + commonPrefixes.size() == pageSize 
+					&& tail.tailSet(last + "\0").size() > 0 && tail.tailSet(last + "\0").first().startsWith(prefix);
+			final String marker = truncated?last:null;
+			return new PaginatedObjectsView() {
+				public List<S3ObjectSummary> getObjectSummary() {
+					return summaries;
+				}
+				public boolean hasMoreResults() {
+					return marker != null;
+				}
+				public String getNextMarker() {
+					return marker;
+				}
+				public List<String> getCommonPrefixes() {
+					return commonPrefixes;
+				}
+			};
+		}
+	}
+}
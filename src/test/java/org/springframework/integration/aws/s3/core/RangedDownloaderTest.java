@@ -0,0 +1,197 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.client.methods.HttpGet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+
+/**
+ * The test case for {@link RangedDownloader}, uses an in memory stub of the 
+ * {@link AmazonS3Client}
+ * @author Amol Nayak
+ *
+ */
+public class RangedDownloaderTest {
+
+	private static final String ETAG = "0123456789abcdef0123456789abcdef";
+	
+	private ExecutorService executor;
+	
+	private File file;
+	
+	@Before
+	public void setup() throws IOException {
+		executor = Executors.newFixedThreadPool(4);
+		file = File.createTempFile("ranged", ".dat");
+	}
+	
+	@After
+	public void destroy() {
+		executor.shutdownNow();
+		file.delete();
+	}
+	
+	@Test
+	public void downloadSmallObject() throws Exception {
+		byte[] contents = randomBytes(1000);
+		RangedObjectClient client = new RangedObjectClient(contents);
+		RangedDownloader downloader = new RangedDownloader(client, executor, 4096, 1024);
+		ObjectMetadata metadata = downloader.download("bucket", "key", file);
+		assertEquals(1, client.requests.get());
+		assertEquals(1000, metadata.getContentLength());
+		assertArrayEquals(contents, readFile());
+	}
+	
+	@Test
+	public void downloadInRanges() throws Exception {
+		byte[] contents = randomBytes(10000);
+		RangedObjectClient client = new RangedObjectClient(contents);
+		RangedDownloader downloader = new RangedDownloader(client, executor, 4096, 1000);
+		ObjectMetadata metadata = downloader.download("bucket", "key", file);
+		//The first 4096 bytes and then 6 ranges of at most 1000 bytes
+		assertEquals(7, client.requests.get());
+		assertEquals(10000, metadata.getContentLength());
+		assertArrayEquals(contents, readFile());
+	}
+	
+	@Test
+	public void downloadOverwritesLargerFile() throws Exception {
+		byte[] previous = randomBytes(20000);
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(previous);
+		out.close();
+		byte[] contents = randomBytes(5000);
+		RangedDownloader downloader = new RangedDownloader(new RangedObjectClient(contents), executor, 2048, 2048);
+		downloader.download("bucket", "key", file);
+		assertArrayEquals(contents, readFile());
+	}
+	
+	@Test
+	public void downloadCompressedObject() throws Exception {
+		byte[] contents = randomBytes(10000);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GZIPOutputStream gzip = new GZIPOutputStream(out);
+		gzip.write(contents);
+		gzip.close();
+		RangedObjectClient client = new RangedObjectClient(out.toByteArray());
+		client.contentEncoding = "gzip";
+		RangedDownloader downloader = new RangedDownloader(client, executor, 1024, 1024);
+		downloader.setDecompress(true);
+		downloader.download("bucket", "key", file);
+		//The first range and then the complete object
+		assertEquals(2, client.requests.get());
+		assertArrayEquals(contents, readFile());
+	}
+	
+	@Test
+	public void downloadOfModifiedObject() throws Exception {
+		RangedObjectClient client = new RangedObjectClient(randomBytes(5000));
+		client.modified = true;
+		RangedDownloader downloader = new RangedDownloader(client, executor, 1024, 1024);
+		try {
+			downloader.download("bucket", "key", file);
+			fail("Expected the download of a modified object to fail");
+		} catch (IOException e) {
+			//expected
+		}
+	}
+	
+	private byte[] readFile() throws IOException {
+		byte[] bytes = new byte[(int)file.length()];
+		FileInputStream in = new FileInputStream(file);
+		try {
+			int offset = 0;
+			for(int read = 0;offset < bytes.length && (read = in.read(bytes, offset, bytes.length - offset)) != -1;)
+				offset += read;
+		} finally {
+			in.close();
+		}
+		return bytes;
+	}
+	
+	private byte[] randomBytes(int size) {
+		byte[] bytes = new byte[size];
+		new Random().nextBytes(bytes);
+		return bytes;
+	}
+	
+	/**
+	 * Serves the ranges of a single object held in memory
+	 */
+	private static class RangedObjectClient extends AmazonS3Client {
+		
+		private final byte[] contents;
+		private final AtomicInteger requests = new AtomicInteger();
+		private volatile boolean modified;
+		private volatile String contentEncoding;
+		
+		RangedObjectClient(byte[] contents) {
+			this.contents = contents;
+		}
+
+		@Override
+		public S3Object getObject(GetObjectRequest request) {
+			requests.incrementAndGet();
+			List<String> eTags = request.getMatchingETagConstraints();
+			if(modified && eTags != null && !eTags.isEmpty())
+				return null;
+			long start = 0;
+			long end = contents.length - 1;
+			ObjectMetadata metadata = new ObjectMetadata();
+			metadata.setHeader("ETag", ETAG);
+			if(contentEncoding != null)
+				metadata.setContentEncoding(contentEncoding);
+			long[] range = request.getRange();
+			if(range != null) {
+				start = range[0];
+				end = Math.min(range[1], contents.length - 1);
+				metadata.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + contents.length);
+			}
+			int length = (int)(end - start + 1);
+			metadata.setContentLength(length);
+			S3Object object = new S3Object();
+			object.setObjectMetadata(metadata);
+			object.setObjectContent(new S3ObjectInputStream(
+					new ByteArrayInputStream(contents, (int)start, length), new HttpGet()));
+			return object;
+		}
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.integration.aws.s3.core.SpoolDirectory.SpoolFile;
+
+/**
+ * The test case for {@link SpoolDirectory}
+ * @author Amol Nayak
+ *
+ */
+public class SpoolDirectoryTest {
+
+	private File directory;
+	
+	@Before
+	public void setup() throws IOException {
+		directory = File.createTempFile("spool", "dir");
+		directory.delete();
+		directory.mkdir();
+	}
+	
+	@After
+	public void destroy() {
+		for(File child:directory.listFiles())
+			child.delete();
+		directory.delete();
+	}
+	
+	@Test
+	public void uniqueSpoolFiles() throws Exception {
+		SpoolDirectory spool = new SpoolDirectory(directory, ".writing", Long.MAX_VALUE);
+		SpoolFile first = spool.spool(new ByteArrayInputStream(new byte[100]), "folder/object.txt");
+		SpoolFile second = spool.spool(new ByteArrayInputStream(new byte[200]), "folder/object.txt");
+		assertFalse(first.getFile().equals(second.getFile()));
+		assertTrue(first.getFile().getName().endsWith(".writing"));
+		assertTrue(first.isComplete());
+		assertEquals(100, first.getFile().length());
+		assertEquals(300, spool.getUsedBytes());
+		first.delete();
+		first.delete();
+		assertFalse(first.getFile().exists());
+		assertEquals(200, spool.getUsedBytes());
+		second.delete();
+		assertEquals(0, spool.getUsedBytes());
+	}
+	
+	@Test
+	public void partialSpoolOverQuota() throws Exception {
+		byte[] contents = new byte[50000];
+		new Random().nextBytes(contents);
+		SpoolDirectory spool = new SpoolDirectory(directory, ".writing", 20000);
+		SpoolFile spoolFile = spool.spool(new ByteArrayInputStream(contents), "object");
+		assertFalse(spoolFile.isComplete());
+		assertTrue(spoolFile.getLength() <= 20000);
+		assertEquals(spoolFile.getLength(), spool.getUsedBytes());
+		InputStream in = new SequenceInputStream(new FileInputStream(spoolFile.getFile()), spoolFile.getRemainder());
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] bytes = new byte[4096];
+		for(int read = 0;(read = in.read(bytes)) != -1;)
+			out.write(bytes, 0, read);
+		in.close();
+		assertArrayEquals(contents, out.toByteArray());
+		spoolFile.delete();
+		assertEquals(0, spool.getUsedBytes());
+	}
+	
+	@Test
+	public void spoolFileDeletedOnFailure() throws Exception {
+		SpoolDirectory spool = new SpoolDirectory(directory, ".writing", Long.MAX_VALUE);
+		InputStream failing = new SequenceInputStream(new ByteArrayInputStream(new byte[10000]), 
+				new InputStream() {
+					@Override
+					public int read() throws IOException {
+						throw new IOException("Stream broken");
+					}
+				});
+		try {
+			spool.spool(failing, "object");
+			fail("Expected the spooling to fail");
+		} catch (IOException e) {
+			//expected
+		}
+		assertEquals(0, directory.listFiles().length);
+		assertEquals(0, spool.getUsedBytes());
+	}
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.CopyObjectResult;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ListPartsRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PartListing;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+
+/**
+ * The test case for {@link StreamingMultipartUploader}, uses an in memory stub of the 
+ * {@link AmazonS3Client}
+ * @author Amol Nayak
+ *
+ */
+public class StreamingMultipartUploaderTest {
+
+	private static final int PART_SIZE = StreamingMultipartUploader.MIN_PART_SIZE;
+	
+	private ExecutorService executor;
+	
+	private InMemoryS3Client client;
+	
+	@Before
+	public void setup() {
+		executor = Executors.newFixedThreadPool(4);
+		client = new InMemoryS3Client();
+	}
+	
+	@After
+	public void destroy() {
+		executor.shutdownNow();
+	}
+	
+	@Test
+	public void uploadSmallStream() throws Exception {
+		byte[] contents = randomBytes(1024);
+		StreamingMultipartUploader uploader = new StreamingMultipartUploader(client, executor, PART_SIZE, 2 * PART_SIZE);
+		uploader.upload("bucket", "key", new ByteArrayInputStream(contents), new ObjectMetadata());
+		assertEquals(0, client.initiated);
+		assertArrayEquals(contents, client.putContents);
+		assertNull(client.copyMetadata);
+	}
+	
+	@Test
+	public void uploadMultipleParts() throws Exception {
+		byte[] contents = randomBytes(3 * PART_SIZE + 100);
+		StreamingMultipartUploader uploader = new StreamingMultipartUploader(client, executor, PART_SIZE, 2 * PART_SIZE);
+		ObjectMetadata metadata = new ObjectMetadata();
+		metadata.addUserMetadata("owner", "test");
+		uploader.upload("bucket", "key", new ByteArrayInputStream(contents), metadata);
+		assertEquals(1, client.initiated);
+		assertEquals(4, client.parts.size());
+		assertArrayEquals(contents, client.completedContents);
+		assertEquals(0, client.aborted);
+		//The uploaded object is never copied over itself
+		assertNull(client.copyMetadata);
+	}
+	
+	@Test
+	public void partSizeForLargeContent() {
+		StreamingMultipartUploader uploader = new StreamingMultipartUploader(client, executor, PART_SIZE, 2 * PART_SIZE);
+		assertEquals(PART_SIZE, uploader.getPartSize(-1));
+		assertEquals(PART_SIZE, uploader.getPartSize((long)PART_SIZE * StreamingMultipartUploader.MAX_PARTS));
+		long large = (long)PART_SIZE * StreamingMultipartUploader.MAX_PARTS + 1;
+		int partSize = uploader.getPartSize(large);
+		assertTrue(partSize > PART_SIZE);
+		assertTrue((long)partSize * StreamingMultipartUploader.MAX_PARTS >= large);
+	}
+	
+	@Test
+	public void abortOnStreamFailure() throws Exception {
+		final byte[] contents = randomBytes(2 * PART_SIZE);
+		InputStream failing = new InputStream() {
+			private int read;
+			public int read() throws IOException {
+				if(read == contents.length)
+					throw new IOException("Broken stream");
+				return contents[read++] & 0xff;
+			}
+		};
+		StreamingMultipartUploader uploader = new StreamingMultipartUploader(client, executor, PART_SIZE, 2 * PART_SIZE);
+		try {
+			uploader.upload("bucket", "key", failing, new ObjectMetadata());
+		} catch (IOException e) {
+			//expected
+		}
+		assertEquals(1, client.aborted);
+		assertTrue(client.completedContents == null);
+	}
+	
+	@Test
+	public void uploadWithController() throws Exception {
+		byte[] contents = randomBytes(9 * PART_SIZE + 100);
+		StreamingMultipartUploader uploader = new StreamingMultipartUploader(client, executor, PART_SIZE, 20 * PART_SIZE);
+		final AtomicInteger reportedParts = new AtomicInteger();
+		AdaptiveUploadController controller = 
+			new AdaptiveUploadController(PART_SIZE, 2 * PART_SIZE, 1, 3, 60000, PART_SIZE, 1) {
+				@Override
+				synchronized void partUploaded(long bytes, long startNanos, long endNanos) {
+					reportedParts.incrementAndGet();
+					super.partUploaded(bytes, startNanos, endNanos);
+				}
+			};
+		uploader.setController(controller);
+		assertEquals(2, uploader.getMaxBuffers(PART_SIZE));
+		uploader.upload("bucket", "key", new ByteArrayInputStream(contents), new ObjectMetadata());
+		assertArrayEquals(contents, client.completedContents);
+		assertEquals(10, reportedParts.get());
+		assertEquals(controller.getParallelism() + 1, uploader.getMaxBuffers(PART_SIZE));
+		//The max upload memory bounds the buffers irrespective of the parallelism
+		assertEquals(2, uploader.getMaxBuffers(20 * PART_SIZE));
+	}
+	
+	@Test
+	public void resumeJournaledUpload() throws Exception {
+		byte[] contents = randomBytes(3 * PART_SIZE + 100);
+		File file = File.createTempFile("journaled", ".dat");
+		File directory = File.createTempFile("upload", "journal");
+		directory.delete();
+		try {
+			FileOutputStream out = new FileOutputStream(file);
+			out.write(contents);
+			out.close();
+			MultipartUploadJournal journal = new MultipartUploadJournal(directory);
+			StreamingMultipartUploader uploader = new StreamingMultipartUploader(client, executor, PART_SIZE, 2 * PART_SIZE);
+			client.failPart = 3;
+			try {
+				uploader.upload("bucket", "key", file, new ObjectMetadata(), journal);
+			} catch (AmazonClientException e) {
+				//expected
+			}
+			//The failed upload is left to be resumed
+			assertEquals(0, client.aborted);
+			assertEquals(1, directory.listFiles().length);
+			int uploadedParts = client.parts.size();
+			assertTrue(uploadedParts >= 2);
+			
+			client.failPart = 0;
+			client.uploadedParts.set(0);
+			uploader.upload("bucket", "key", file, new ObjectMetadata(), 
+					new MultipartUploadJournal(directory));
+			assertEquals(1, client.initiated);
+			assertEquals(1, client.listed);
+			assertEquals(4 - uploadedParts, client.uploadedParts.get());
+			assertArrayEquals(contents, client.completedContents);
+			assertEquals(0, directory.listFiles().length);
+		} finally {
+			for(File child:directory.listFiles())
+				child.delete();
+			directory.delete();
+			file.delete();
+		}
+	}
+	
+	@Test
+	public void abortOrphans() throws Exception {
+		File file = File.createTempFile("journaled", ".dat");
+		File directory = File.createTempFile("upload", "journal");
+		directory.delete();
+		try {
+			MultipartUploadJournal journal = new MultipartUploadJournal(directory);
+			journal.release(journal.begin("bucket", "key", file, PART_SIZE, "upload-id"));
+			StreamingMultipartUploader uploader = new StreamingMultipartUploader(client, executor, PART_SIZE, 2 * PART_SIZE);
+			assertEquals(0, uploader.abortOrphans(journal, 60000));
+			directory.listFiles()[0].setLastModified(System.currentTimeMillis() - 120000);
+			assertEquals(1, uploader.abortOrphans(journal, 60000));
+			assertEquals(1, client.aborted);
+			assertEquals(0, directory.listFiles().length);
+		} finally {
+			directory.delete();
+			file.delete();
+		}
+	}
+	
+	private byte[] randomBytes(int size) {
+		byte[] bytes = new byte[size];
+		new Random().nextBytes(bytes);
+		return bytes;
+	}
+	
+	/**
+	 * The stub client holding the uploaded parts in memory
+	 */
+	private static class InMemoryS3Client extends AmazonS3Client {
+		
+		int initiated;
+		int aborted;
+		byte[] putContents;
+		byte[] completedContents;
+		ObjectMetadata copyMetadata;
+		int listed;
+		volatile int failPart;
+		final AtomicInteger uploadedParts = new AtomicInteger();
+		final Map<Integer, byte[]> parts = new TreeMap<Integer, byte[]>();
+
+		@Override
+		public PutObjectResult putObject(PutObjectRequest request)
+				throws AmazonClientException {
+			putContents = drain(request.getInputStream());
+			return new PutObjectResult();
+		}
+
+		@Override
+		public synchronized InitiateMultipartUploadResult initiateMultipartUpload(
+				InitiateMultipartUploadRequest request)
+				throws AmazonClientException {
+			initiated++;
+			InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+			result.setUploadId("upload-id");
+			return result;
+		}
+
+		@Override
+		public UploadPartResult uploadPart(UploadPartRequest request)
+				throws AmazonClientException {
+			if(request.getPartNumber() == failPart)
+				throw new AmazonClientException("Part upload failed");
+			byte[] part = drain(request.getInputStream());
+			uploadedParts.incrementAndGet();
+			synchronized (this) {
+				parts.put(request.getPartNumber(), part);				
+			}
+			UploadPartResult result = new UploadPartResult();
+			result.setPartNumber(request.getPartNumber());
+			result.setETag("etag-" + request.getPartNumber());
+			return result;
+		}
+
+		@Override
+		public synchronized CompleteMultipartUploadResult completeMultipartUpload(
+				CompleteMultipartUploadRequest request)
+				throws AmazonClientException {
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			for(PartETag tag:request.getPartETags()) {
+				byte[] part = parts.get(tag.getPartNumber());
+				bos.write(part, 0, part.length);
+			}
+			completedContents = bos.toByteArray();
+			return new CompleteMultipartUploadResult();
+		}
+
+		@Override
+		public synchronized PartListing listParts(ListPartsRequest request)
+				throws AmazonClientException {
+			listed++;
+			return new PartListing();
+		}
+
+		@Override
+		public synchronized CopyObjectResult copyObject(CopyObjectRequest request)
+				throws AmazonClientException {
+			copyMetadata = request.getNewObjectMetadata();
+			return new CopyObjectResult();
+		}
+
+		@Override
+		public synchronized void abortMultipartUpload(AbortMultipartUploadRequest request)
+				throws AmazonClientException {
+			aborted++;
+		}
+		
+		private byte[] drain(InputStream in) {
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			byte[] bytes = new byte[8192];
+			try {
+				for(int read = 0;(read = in.read(bytes)) != -1;)
+					bos.write(bytes, 0, read);
+			} catch (IOException e) {
+				throw new AmazonClientException("Unable to read the stream", e);
+			}
+			return bos.toByteArray();
+		}
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.aws.s3.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * The test case for {@link UploadThrottle}
+ * @author Amol Nayak
+ *
+ */
+public class UploadThrottleTest {
+
+	@Test
+	public void blocksOnMaxUploads() throws Exception {
+		final UploadThrottle throttle = new UploadThrottle(2, Long.MAX_VALUE);
+		throttle.acquire(10);
+		throttle.acquire(10);
+		CountDownLatch acquired = acquireInThread(throttle, 10);
+		assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+		throttle.release(10);
+		assertTrue(acquired.await(5, TimeUnit.SECONDS));
+		assertEquals(2, throttle.getInFlightUploads());
+		assertEquals(20, throttle.getInFlightBytes());
+	}
+	
+	@Test
+	public void blocksOnMaxBytes() throws Exception {
+		final UploadThrottle throttle = new UploadThrottle(10, 100);
+		throttle.acquire(60);
+		CountDownLatch acquired = acquireInThread(throttle, 60);
+		assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+		throttle.release(60);
+		assertTrue(acquired.await(5, TimeUnit.SECONDS));
+	}
+	
+	@Test
+	public void largeUploadAllowedWhenIdle() throws Exception {
+		UploadThrottle throttle = new UploadThrottle(10, 100);
+		throttle.acquire(1000);
+		assertEquals(1, throttle.getInFlightUploads());
+		throttle.release(1000);
+		assertEquals(0, throttle.getInFlightBytes());
+	}
+	
+	private CountDownLatch acquireInThread(final UploadThrottle throttle,final long bytes) {
+		final CountDownLatch latch = new CountDownLatch(1);
+		Thread thread = new Thread() {
+			public void run() {
+				try {
+					throttle.acquire(bytes);
+					latch.countDown();
+				} catch (InterruptedException e) {
+					//Test fails on timeout
+				}
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+		return latch;
+	}
+}
@@ -56,4 +56,15 @@ public class FileFilterTest {
 		System.out.println("testing for root folder");
 	}
 	
+	@Test
+	public void testGivenFolderPaths() {
+		Assert.assertTrue(filter.accept("test/anotherfolder", "test/anotherfolder/test.txt"));
+		Assert.assertTrue(filter.accept("test/anotherfolder/", "test/anotherfolder/test.txt"));
+		Assert.assertFalse(filter.accept("test/anotherfolder/", "test/test.txt"));
+		Assert.assertFalse(filter.accept("test/anotherfolder/", "test/anotherfolder/"));
+		Assert.assertTrue(filter.accept(null, "test.txt"));
+		//The folder set on the filter is unchanged
+		Assert.assertTrue(filter.accept("test/test.txt"));
+	}
+	
 }